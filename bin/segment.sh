@@ -0,0 +1,11 @@
+#!/bin/bash
+
+ROOT=`dirname $0`/..
+CP_FILE=$ROOT/target/classpath.txt
+if [ ! -d $ROOT/target/classes ]; then
+    mvn -q -f $ROOT/pom.xml compile
+fi
+if [ ! -f $CP_FILE ]; then
+    mvn -q -f $ROOT/pom.xml dependency:build-classpath -Dmdep.outputFile=$CP_FILE
+fi
+java $JAVA_OPTS -cp $ROOT/target/classes:`cat $CP_FILE` org.manlier.analysis.jieba.corpus.CorpusSegmenter "$@"
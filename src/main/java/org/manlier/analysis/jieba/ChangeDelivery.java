@@ -0,0 +1,253 @@
+package org.manlier.analysis.jieba;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 词典变更通知的异步投递方式。
+ * <p>
+ * 变更在一个时间窗口内或累计到一定数目后合并为一次通知，同一个词只保留最后的频率，
+ * 通知在独立的线程上投递给订阅者，修改词典的线程不会被处理较慢的订阅者阻塞。
+ * 一次修改（如批量调整、载入用户词典）中的变更总是在同一次通知中投递，不会被拆分，
+ * 因此一次修改最多占用缓冲区中的一次通知，再大的批量修改也不会使缓冲区溢出。
+ * 时间窗口从窗口中的第一个变更开始计时，没有变更时不会唤醒投递线程。
+ * 订阅者来不及处理时，尚未投递的通知暂存在有界的缓冲区中，缓冲区满后的行为由{@link Overflow}决定
+ */
+public final class ChangeDelivery {
+
+    /**
+     * 订阅者来不及处理、缓冲区已满时的策略
+     */
+    public enum Overflow {
+        // 丢弃缓冲区中最早的通知，只保留最新的bufferSize次通知，适用于收到通知后重新加载全部数据的订阅者
+        LATEST,
+        // 继续缓存，不丢弃任何通知，但占用的内存不再有上限
+        BUFFER,
+        // 向订阅者发送MissingBackpressureException并结束订阅
+        ERROR
+    }
+
+    private static final long DEFAULT_WINDOW_MILLIS = 50;
+    private static final int DEFAULT_MAX_CHANGES = 1000;
+    private static final int DEFAULT_BUFFER_SIZE = 16;
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final long windowMillis;
+    private final int maxChanges;
+    private final Overflow overflow;
+    private final int bufferSize;
+    private final Scheduler scheduler;
+
+    private ChangeDelivery(long windowMillis, int maxChanges, Overflow overflow, int bufferSize, Scheduler scheduler) {
+        if (windowMillis < 0 || maxChanges <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("invalid delivery: " + windowMillis + ", " + maxChanges + ", " + bufferSize);
+        }
+        this.windowMillis = windowMillis;
+        this.maxChanges = maxChanges;
+        this.overflow = overflow;
+        this.bufferSize = bufferSize;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 默认的投递方式：合并50毫秒内的变更，累计1000个变更后立即投递，最多缓存16次通知，
+     * 缓冲区满后向订阅者发送错误并结束订阅（{@link Overflow#ERROR}），不会悄悄丢弃变更。
+     * 缓冲区中的每次通知至少对应一次修改，只有订阅者落后超过16次修改时才会溢出
+     */
+    public static ChangeDelivery create() {
+        return of(DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_CHANGES);
+    }
+
+    /**
+     * 最多缓存16次通知，缓冲区满后的策略为{@link Overflow#ERROR}，可通过{@link #withOverflow(Overflow, int)}修改
+     *
+     * @param windowMillis 合并变更的时间窗口，为0表示不跨越多次修改合并，只合并同一次修改中的重复的词
+     * @param maxChanges   窗口中的变更达到该数目后立即投递，不等待时间窗口结束。
+     *                     一次修改中的变更不会被拆分，因此一次通知可能包含更多的变更
+     * @return 投递方式
+     */
+    public static ChangeDelivery of(long windowMillis, int maxChanges) {
+        return new ChangeDelivery(windowMillis, maxChanges, Overflow.ERROR, DEFAULT_BUFFER_SIZE, null);
+    }
+
+    /**
+     * @param overflow   缓冲区满后的策略
+     * @param bufferSize 缓冲区最多暂存的通知数
+     * @return 新的投递方式
+     */
+    public ChangeDelivery withOverflow(Overflow overflow, int bufferSize) {
+        return new ChangeDelivery(windowMillis, maxChanges, overflow, bufferSize, scheduler);
+    }
+
+    /**
+     * 在指定的调度器上投递通知。默认每个订阅者使用一个独立的守护线程，取消订阅后结束
+     *
+     * @param scheduler 调度器
+     * @return 新的投递方式
+     */
+    public ChangeDelivery withScheduler(Scheduler scheduler) {
+        return new ChangeDelivery(windowMillis, maxChanges, overflow, bufferSize, scheduler);
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public int getMaxChanges() {
+        return maxChanges;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 按该投递方式订阅变更
+     *
+     * @param changes  同步发出的变更
+     * @param consumer 订阅者
+     * @param onError  接收错误，如缓冲区溢出
+     * @return Disposable对象，可用于取消订阅
+     */
+    Disposable subscribe(Flowable<List<Pair<String>>> changes, Consumer<List<Pair<String>>> consumer,
+                         Consumer<? super Throwable> onError) {
+        ExecutorService executor = null;
+        Scheduler target = scheduler;
+        if (target == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "jieba-dict-changes-" + THREADS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            target = Schedulers.from(executor);
+        }
+
+        Flowable<List<Pair<String>>> batches;
+        if (windowMillis > 0) {
+            Scheduler timer = target;
+            batches = Flowable.<List<Pair<String>>>create(emitter -> {
+                Window window = new Window(emitter, timer);
+                Disposable upstream = changes.subscribe(window::add, emitter::onError, emitter::onComplete);
+                emitter.setCancellable(() -> {
+                    upstream.dispose();
+                    window.cancel();
+                });
+            }, BackpressureStrategy.MISSING).map(ChangeDelivery::coalesce);
+        } else {
+            batches = changes.map(ChangeDelivery::coalesce);
+        }
+        switch (overflow) {
+            case LATEST:
+                batches = batches.onBackpressureBuffer(bufferSize, null, BackpressureOverflowStrategy.DROP_OLDEST);
+                break;
+            case BUFFER:
+                batches = batches.onBackpressureBuffer(bufferSize, false, true);
+                break;
+            default:
+                batches = batches.onBackpressureBuffer(bufferSize);
+                break;
+        }
+        // 订阅者每次只取一个通知，其余的都留在上面的缓冲区中
+        batches = batches.observeOn(target, false, 1);
+        if (executor != null) {
+            batches = batches.doFinally(executor::shutdown);
+        }
+        return batches.subscribe(consumer, onError);
+    }
+
+    /**
+     * 一个订阅者的时间窗口。窗口中的第一个变更到达时才开始计时，达到数目上限时在修改词典的线程上立即结束窗口，
+     * 计时结束时在投递线程上结束窗口。一次修改中的变更整体加入窗口，每次修改最多结束一个窗口
+     */
+    private final class Window {
+        private final FlowableEmitter<List<Pair<String>>> emitter;
+        private final Scheduler scheduler;
+        private List<Pair<String>> pending = new ArrayList<>();
+        private Disposable timer;
+        // 每结束一个窗口加1，用于识别已过期的计时
+        private long generation;
+
+        Window(FlowableEmitter<List<Pair<String>>> emitter, Scheduler scheduler) {
+            this.emitter = emitter;
+            this.scheduler = scheduler;
+        }
+
+        synchronized void add(List<Pair<String>> changes) {
+            pending.addAll(changes);
+            if (pending.size() >= maxChanges) {
+                flush();
+            } else if (!pending.isEmpty() && timer == null) {
+                long current = generation;
+                timer = scheduler.scheduleDirect(() -> expire(current), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void expire(long expected) {
+            if (generation == expected) {
+                timer = null;
+                flush();
+            }
+        }
+
+        // 在持有锁时投递，保证通知依次发出
+        private void flush() {
+            List<Pair<String>> batch = pending;
+            pending = new ArrayList<>();
+            generation++;
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            emitter.onNext(batch);
+        }
+
+        synchronized void cancel() {
+            generation++;
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            pending = new ArrayList<>();
+        }
+    }
+
+    /**
+     * 合并变更，同一个词只保留最后的频率，并按最后一次修改的顺序排列
+     */
+    static List<Pair<String>> coalesce(List<Pair<String>> changes) {
+        Map<String, Pair<String>> merged = new LinkedHashMap<>();
+        for (Pair<String> change : changes) {
+            merged.remove(change.key);
+            merged.put(change.key, change);
+        }
+        if (merged.size() == changes.size()) {
+            return changes;
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeDelivery [windowMillis=" + windowMillis + ", maxChanges=" + maxChanges
+                + ", overflow=" + overflow + ", bufferSize=" + bufferSize + "]";
+    }
+}
@@ -1,5 +1,6 @@
 package org.manlier.analysis.jieba;
 
+import java.util.List;
 import java.util.regex.Pattern;
 
 
@@ -50,6 +51,69 @@ public class CharacterUtil {
     }
 
 
+    /**
+     * 切分不含中文的片段，结果与用{@link #reSkip}逐个查找相同：带小数部分的数字、英文数字串各为一个词，
+     * 相邻的其他字符（如连接符）合并为一个词。只扫描一遍，不使用正则表达式
+     *
+     * @param text   文本
+     * @param begin  开始位置
+     * @param end    结束位置（不包含）
+     * @param tokens 用于存放切分结果
+     */
+    public static void splitAlphanumeric(String text, int begin, int end, List<String> tokens) {
+        splitAlphanumeric(text, begin, end, tokens, null);
+    }
+
+    /**
+     * 同{@link #splitAlphanumeric(String, int, int, List)}，按类型被丢弃的词以占位符代替，不截取字符串
+     *
+     * @param filter 词元过滤规则，为null时不过滤
+     */
+    static void splitAlphanumeric(String text, int begin, int end, List<String> tokens, TokenFilter filter) {
+        // 尚未输出的其他字符的起始位置
+        int pending = begin;
+        int i = begin;
+        while (i < end) {
+            char ch = text.charAt(i);
+            if (!isEnglishLetter(ch) && !isDigit(ch)) {
+                i++;
+                continue;
+            }
+            int j = i;
+            if (isDigit(ch)) {
+                while (j < end && isDigit(text.charAt(j))) {
+                    j++;
+                }
+                if (j + 1 < end && text.charAt(j) == '.' && isDigit(text.charAt(j + 1))) {
+                    j += 2;
+                    while (j < end && isDigit(text.charAt(j))) {
+                        j++;
+                    }
+                } else {
+                    j = i;
+                }
+            }
+            if (j == i) {
+                while (j < end && (isEnglishLetter(text.charAt(j)) || isDigit(text.charAt(j)))) {
+                    j++;
+                }
+            }
+            if (pending < i) {
+                tokens.add(substring(filter, text, pending, i));
+            }
+            tokens.add(substring(filter, text, i, j));
+            pending = i = j;
+        }
+        if (pending < end) {
+            tokens.add(substring(filter, text, pending, end));
+        }
+    }
+
+    private static String substring(TokenFilter filter, String text, int begin, int end) {
+        return filter != null ? filter.substring(text, begin, end) : text.substring(begin, end);
+    }
+
+
     /**
      * 全角 to 半角,大写 to 小写
      * 
@@ -0,0 +1,270 @@
+package org.manlier.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 词典树上的前缀补全，按频率从高到低返回以给定前缀开始的词。
+ * <p>
+ * 每个非叶节点缓存以该节点为前缀的词中频率最高的若干个（{@link Candidates}），查询时下降到前缀所在的节点，
+ * 直接取出缓存的候选词，不需要遍历整棵子树。缓存按需计算：节点的候选词由自身的词与各子节点的候选词合并得到，
+ * 子节点的缓存失效时递归地重新计算。
+ * <p>
+ * 词被添加、删除或修改频率时只有从根节点到该词的路径上的节点失效，其余节点的缓存仍然有效。
+ * 每次失效都会递增修改序号并记录在路径上的节点中，缓存则记录开始计算时的修改序号，
+ * 早于节点失效序号的缓存视为失效，因此与词典更新并发进行的计算不会留下过期的缓存
+ */
+final class CompletionCache {
+
+    private static final String CONFIG_NAME = "jieba.completionCacheSize";
+    // 每个节点缓存的候选词数目，查询的数目超过该值时遍历子树
+    static final int DEFAULT_CACHE_SIZE = Integer.getInteger(CONFIG_NAME, 10);
+
+    // 按频率从高到低排列，频率相同时按词排列
+    static final Comparator<Pair<String>> ORDER = (a, b) -> {
+        int c = Double.compare(b.freq, a.freq);
+        return c != 0 ? c : a.key.compareTo(b.key);
+    };
+
+    private static final Candidates EMPTY = new Candidates(new String[0], new double[0], Long.MAX_VALUE);
+
+    private final ToDoubleFunction<String> scorer;
+    private final int cacheSize;
+    // 词典的修改序号
+    private final AtomicLong modCount = new AtomicLong();
+    // 早于该序号计算的缓存全部失效
+    private volatile long validFrom;
+
+    /**
+     * @param scorer    词的频率，频率越大排名越靠前
+     * @param cacheSize 每个节点缓存的候选词数目
+     */
+    CompletionCache(ToDoubleFunction<String> scorer, int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive: " + cacheSize);
+        }
+        this.scorer = scorer;
+        this.cacheSize = cacheSize;
+    }
+
+    int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * 词被添加、删除或修改了频率，使从根节点到该词的路径上的缓存失效
+     *
+     * @param root 词典树的根节点
+     * @param word 词
+     */
+    void invalidate(DictSegment root, String word) {
+        long stamp = modCount.incrementAndGet();
+        DictSegment ds = root;
+        ds.invalidateCompletions(stamp);
+        for (int i = 0; i < word.length() && ds != null; i++) {
+            ds = ds.getChild(word.charAt(i));
+            if (ds != null) {
+                ds.invalidateCompletions(stamp);
+            }
+        }
+    }
+
+    /**
+     * 使所有节点的缓存失效，用于大量词的频率同时改变的情况
+     */
+    void invalidateAll() {
+        validFrom = modCount.incrementAndGet();
+    }
+
+    /**
+     * 获得以node为前缀的词中频率最高的topK个
+     *
+     * @param node 前缀所在的节点，为null时表示没有以该前缀开始的词
+     * @param topK 返回的词数
+     * @return 词及其频率，按频率从高到低排列
+     */
+    List<Pair<String>> complete(DictSegment node, int topK) {
+        if (node == null || topK <= 0) {
+            return Collections.emptyList();
+        }
+        if (topK > cacheSize) {
+            TopK top = new TopK(topK);
+            collect(node, top);
+            return top.toCandidates(0).toList(topK);
+        }
+        return candidates(node).toList(topK);
+    }
+
+    /**
+     * 获得节点缓存的候选词，缓存失效时重新计算。叶节点不缓存，直接返回其自身的词
+     */
+    private Candidates candidates(DictSegment node) {
+        if (!node.hasNextNode()) {
+            if (!node.isWord()) {
+                return EMPTY;
+            }
+            String word = node.getWord();
+            return new Candidates(new String[]{word}, new double[]{scorer.applyAsDouble(word)}, Long.MAX_VALUE);
+        }
+        Candidates cached = node.getCompletions();
+        if (cached != null && cached.stamp >= validFrom && cached.stamp >= node.getCompletionsInvalidated()) {
+            return cached;
+        }
+        // 在读取词典之前取得修改序号
+        long stamp = modCount.get();
+        TopK top = new TopK(cacheSize);
+        if (node.isWord()) {
+            top.offer(node.getWord(), scorer.applyAsDouble(node.getWord()));
+        }
+        for (DictSegment child : node.getChildren()) {
+            Candidates candidates = candidates(child);
+            for (int i = 0; i < candidates.words.length; i++) {
+                // 子节点的候选词已按频率排列，之后的词不会再进入前topK
+                if (!top.offer(candidates.words[i], candidates.scores[i])) {
+                    break;
+                }
+            }
+        }
+        Candidates computed = top.toCandidates(stamp);
+        node.setCompletions(computed);
+        return computed;
+    }
+
+    /**
+     * 遍历子树中所有的词
+     */
+    private void collect(DictSegment node, TopK top) {
+        if (node.isWord()) {
+            top.offer(node.getWord(), scorer.applyAsDouble(node.getWord()));
+        }
+        if (node.hasNextNode()) {
+            for (DictSegment child : node.getChildren()) {
+                collect(child, top);
+            }
+        }
+    }
+
+    /**
+     * 节点缓存的候选词，按频率从高到低排列
+     */
+    static final class Candidates {
+        final String[] words;
+        final double[] scores;
+        // 开始计算时词典的修改序号
+        final long stamp;
+
+        Candidates(String[] words, double[] scores, long stamp) {
+            this.words = words;
+            this.scores = scores;
+            this.stamp = stamp;
+        }
+
+        List<Pair<String>> toList(int topK) {
+            int size = Math.min(topK, words.length);
+            List<Pair<String>> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(new Pair<>(words[i], scores[i]));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * 以小顶堆保留频率最高的k个词
+     */
+    private static final class TopK {
+        private final String[] words;
+        private final double[] scores;
+        private int size;
+
+        TopK(int k) {
+            words = new String[k];
+            scores = new double[k];
+        }
+
+        /**
+         * @return 词是否进入了前k个
+         */
+        boolean offer(String word, double score) {
+            if (size < words.length) {
+                words[size] = word;
+                scores[size] = score;
+                siftUp(size++);
+                return true;
+            }
+            if (!before(word, score, 0)) {
+                return false;
+            }
+            words[0] = word;
+            scores[0] = score;
+            siftDown(0);
+            return true;
+        }
+
+        // 词(word, score)是否排在堆中第i个词之前
+        private boolean before(String word, double score, int i) {
+            int c = Double.compare(score, scores[i]);
+            return c != 0 ? c > 0 : word.compareTo(words[i]) < 0;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(words[parent], scores[parent], i)) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(words[child], scores[child], child + 1)) {
+                    child++;
+                }
+                if (!before(words[i], scores[i], child)) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            String word = words[i];
+            words[i] = words[j];
+            words[j] = word;
+            double score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+
+        Candidates toCandidates(long stamp) {
+            // 依次取出堆顶（最小的词）放到末尾
+            String[] sortedWords = new String[size];
+            double[] sortedScores = new double[size];
+            for (int i = size - 1; i >= 0; i--) {
+                sortedWords[i] = words[0];
+                sortedScores[i] = scores[0];
+                size--;
+                if (size > 0) {
+                    words[0] = words[size];
+                    scores[0] = scores[size];
+                    siftDown(0);
+                }
+            }
+            Arrays.fill(words, null);
+            return new Candidates(sortedWords, sortedScores, stamp);
+        }
+    }
+}
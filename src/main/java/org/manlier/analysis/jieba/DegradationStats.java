@@ -0,0 +1,105 @@
+package org.manlier.analysis.jieba;
+
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带预算的分词的降级统计，用于调整预算。
+ * 按每次分词最终使用的策略计数，并累计各策略处理的字符数
+ */
+public class DegradationStats {
+
+    private static final SegBudget.Level[] LEVELS = SegBudget.Level.values();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder[] callsByLevel = new LongAdder[LEVELS.length];
+    private final LongAdder[] charsByLevel = new LongAdder[LEVELS.length];
+
+    DegradationStats() {
+        for (int i = 0; i < LEVELS.length; i++) {
+            callsByLevel[i] = new LongAdder();
+            charsByLevel[i] = new LongAdder();
+        }
+    }
+
+    void record(SegBudget budget) {
+        calls.increment();
+        callsByLevel[budget.getLevel().ordinal()].increment();
+        for (SegBudget.Level level : LEVELS) {
+            long chars = budget.getChars(level);
+            if (chars > 0) {
+                charsByLevel[level.ordinal()].add(chars);
+            }
+        }
+    }
+
+    /**
+     * @return 带预算的分词次数
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return 最终使用该策略的分词次数
+     */
+    public long getCalls(SegBudget.Level level) {
+        return callsByLevel[level.ordinal()].sum();
+    }
+
+    /**
+     * @return 发生了降级的分词次数
+     */
+    public long getDegradedCalls() {
+        return getCalls() - getCalls(SegBudget.Level.FULL);
+    }
+
+    /**
+     * @return 发生了降级的分词所占的比例，没有任何分词时为0
+     */
+    public double getDegradedRate() {
+        long total = getCalls();
+        return total == 0 ? 0d : (double) getDegradedCalls() / total;
+    }
+
+    /**
+     * @return 以该策略处理的字符数
+     */
+    public long getChars(SegBudget.Level level) {
+        return charsByLevel[level.ordinal()].sum();
+    }
+
+    public void reset() {
+        calls.reset();
+        for (int i = 0; i < LEVELS.length; i++) {
+            callsByLevel[i].reset();
+            charsByLevel[i].reset();
+        }
+    }
+
+    /**
+     * 以指标的形式输出，便于接入监控系统
+     *
+     * @return 指标名与值，按名称排序
+     */
+    public SortedMap<String, Long> toMetrics() {
+        SortedMap<String, Long> metrics = new TreeMap<>();
+        metrics.put("jieba.budget.calls", getCalls());
+        metrics.put("jieba.budget.calls.degraded", getDegradedCalls());
+        for (SegBudget.Level level : LEVELS) {
+            String name = level.name().toLowerCase(Locale.ROOT);
+            metrics.put("jieba.budget.calls." + name, getCalls(level));
+            metrics.put("jieba.budget.chars." + name, getChars(level));
+        }
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "DegradationStats [calls=" + getCalls() + ", full=" + getCalls(SegBudget.Level.FULL)
+                + ", noHmm=" + getCalls(SegBudget.Level.NO_HMM) + ", maxMatch=" + getCalls(SegBudget.Level.MAX_MATCH)
+                + ", degradedRate=" + getDegradedRate() + "]";
+    }
+}
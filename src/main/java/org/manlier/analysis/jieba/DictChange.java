@@ -0,0 +1,76 @@
+package org.manlier.analysis.jieba;
+
+/**
+ * 分词器发出的一个词典变更。除词语及实际频率（0表示移除）外，还记录了应用时使用的规格化频率，
+ * 以及被移除的词是否被强制切分，变更日志及复制据此在另一个词典上精确地重放，
+ * 不依赖重放时的频率总和
+ */
+public class DictChange extends Pair<String> {
+
+    // 规格化后的频率，移除时为负无穷
+    private final double normalizedFreq;
+    // 移除时是否强制切分该词
+    private final boolean forceSplit;
+
+    private DictChange(String word, long actualFreq, double normalizedFreq, boolean forceSplit) {
+        super(word, actualFreq);
+        this.normalizedFreq = normalizedFreq;
+        this.forceSplit = forceSplit;
+    }
+
+    /**
+     * @param word           规格化后的词
+     * @param actualFreq     实际频率，大于0
+     * @param normalizedFreq 规格化后的频率
+     * @return 添加或更新一个词的变更
+     */
+    public static DictChange put(String word, long actualFreq, double normalizedFreq) {
+        return new DictChange(word, actualFreq, normalizedFreq, false);
+    }
+
+    /**
+     * @param word       规格化后的词
+     * @param forceSplit 是否强制切分该词
+     * @return 移除一个词的变更
+     */
+    public static DictChange remove(String word, boolean forceSplit) {
+        return new DictChange(word, 0, Double.NEGATIVE_INFINITY, forceSplit);
+    }
+
+    /**
+     * 分词器发出的变更本身就是DictChange；其他变更使用词典中当前的规格化频率，被移除的词不强制切分
+     *
+     * @param change   变更
+     * @param wordDict 变更所属的词典
+     * @return 变更
+     */
+    public static DictChange of(Pair<String> change, WordDictionary wordDict) {
+        if (change instanceof DictChange) {
+            return (DictChange) change;
+        }
+        long actualFreq = change.freq.longValue();
+        return actualFreq > 0
+                ? put(change.key, actualFreq, wordDict.getFreq(change.key, Double.NEGATIVE_INFINITY))
+                : remove(change.key, false);
+    }
+
+    public String getWord() {
+        return key;
+    }
+
+    public long getActualFreq() {
+        return freq.longValue();
+    }
+
+    public double getNormalizedFreq() {
+        return normalizedFreq;
+    }
+
+    public boolean isRemoval() {
+        return freq.longValue() == 0;
+    }
+
+    public boolean isForceSplit() {
+        return forceSplit;
+    }
+}
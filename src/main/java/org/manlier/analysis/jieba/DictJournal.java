@@ -0,0 +1,389 @@
+package org.manlier.analysis.jieba;
+
+import io.reactivex.disposables.Disposable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 词典变更日志，将分词器发出的每一批变更追加到二进制日志文件中，重启后可以恢复运行时对词典所做的修改
+ * （addWord、delWord、suggestFreq(true, ...)等）。
+ * <p>
+ * 日志由后台线程写入，同时到达的多批变更只做一次fsync。日志超过一定大小后会做一次检查点：
+ * 将所有变更合并为每个词的最终频率写入快照文件，然后清空日志，因此恢复所需的时间只与检查点之后的变更数量
+ * 及被修改过的词的数量有关，与变更的完整历史无关。
+ * <p>
+ * 日志只记录变更，不记录字典本身，应在载入默认字典及用户字典之后再打开日志，
+ * 否则载入用户字典产生的变更也会被写入日志。
+ * <p>
+ * 日志格式（大端序）：
+ * <pre>
+ * int    魔数 'JDJL'
+ * int    版本号
+ * 之后为若干条记录，每条记录对应一批变更：
+ * int    内容长度
+ * int    内容的CRC32
+ * varint 变更数，之后每个变更为：UTF 词语，varint 实际频率（0表示移除），
+ *        实际频率大于0时为double 规格化频率，否则为boolean 是否强制切分
+ * </pre>
+ * 快照格式：int 魔数 'JDCK'，int 版本号，int 词数，之后每个词与日志中的变更相同。
+ * 恢复时使用记录下来的规格化频率及强制切分标记（见{@link DictChange}），不会根据恢复时的频率总和重新计算，
+ * 恢复后的词典与记录日志的词典分词结果相同。写入中断导致的不完整记录在恢复时会被丢弃。
+ */
+public class DictJournal implements Closeable {
+
+    static final String JOURNAL_FILE = "journal.log";
+    static final String CHECKPOINT_FILE = "checkpoint.dat";
+    private static final int JOURNAL_MAGIC = 0x4A444A4C;
+    private static final int CHECKPOINT_MAGIC = 0x4A44434B;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final long DEFAULT_CHECKPOINT_BYTES = 16L << 20;
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final JiebaSegmenter segmenter;
+    private final Path dir;
+    private final long checkpointBytes;
+    private final FileChannel journal;
+    // 合并后每个词的最终频率，即检查点的内容
+    private final Map<String, DictChange> state = new LinkedHashMap<>();
+    private final BlockingQueue<List<Pair<String>>> pending = new LinkedBlockingQueue<>();
+    private final Object lock = new Object();
+    private final Thread writer;
+    private Disposable subscription;
+    private volatile boolean running = true;
+    // 已收到的批次数与已写入磁盘的批次数，由lock保护
+    private long received;
+    private long durable;
+    private IOException failure;
+    private int restoredWords;
+
+    private DictJournal(JiebaSegmenter segmenter, Path dir, long checkpointBytes) throws IOException {
+        this.segmenter = segmenter;
+        this.dir = dir;
+        this.checkpointBytes = checkpointBytes;
+        Files.createDirectories(dir);
+        this.journal = FileChannel.open(dir.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writer = new Thread(this::write, "jieba-dict-journal");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * 打开日志目录，恢复检查点及其后的变更，然后开始记录分词器的变更
+     *
+     * @param segmenter 分词器
+     * @param dir       日志目录
+     * @return 日志
+     */
+    public static DictJournal open(JiebaSegmenter segmenter, Path dir) throws IOException {
+        return open(segmenter, dir, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * @param segmenter       分词器
+     * @param dir             日志目录
+     * @param checkpointBytes 日志超过该大小时自动做一次检查点，不大于0时只在调用checkpoint时进行
+     */
+    public static DictJournal open(JiebaSegmenter segmenter, Path dir, long checkpointBytes) throws IOException {
+        DictJournal journal = new DictJournal(segmenter, dir, checkpointBytes);
+        try {
+            journal.restore();
+        } catch (IOException e) {
+            journal.journal.close();
+            throw e;
+        }
+        journal.writer.start();
+        journal.subscription = segmenter.subscribe(journal::append);
+        return journal;
+    }
+
+    private void restore() throws IOException {
+        long s = System.currentTimeMillis();
+        Path checkpoint = dir.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+                checkHeader(in.readInt(), in.readInt(), CHECKPOINT_MAGIC, checkpoint);
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    DictChange change = readChange(in);
+                    state.put(change.getWord(), change);
+                }
+            }
+        }
+
+        int records = 0;
+        long validEnd = HEADER_SIZE;
+        if (journal.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(JOURNAL_MAGIC).putInt(VERSION);
+            header.flip();
+            journal.truncate(0);
+            journal.write(header, 0);
+            journal.force(true);
+        } else {
+            journal.position(0);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(journal)));
+            checkHeader(in.readInt(), in.readInt(), JOURNAL_MAGIC, dir.resolve(JOURNAL_FILE));
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0 || length > journal.size() - validEnd) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                long count = readVarLong(record);
+                for (long i = 0; i < count; i++) {
+                    DictChange change = readChange(record);
+                    state.remove(change.getWord());
+                    state.put(change.getWord(), change);
+                }
+                validEnd += 8 + payload.length;
+                records++;
+            }
+            if (validEnd < journal.size()) {
+                log.warn("discard {} bytes of incomplete journal records in {}", journal.size() - validEnd, dir);
+                journal.truncate(validEnd);
+                journal.force(true);
+            }
+        }
+        journal.position(validEnd);
+
+        if (!state.isEmpty()) {
+            segmenter.replayChanges(new ArrayList<>(state.values()));
+        }
+        restoredWords = state.size();
+        log.debug("dict journal {} restored, words:{}, records:{}, time elapsed:{} ms",
+                dir, state.size(), records, System.currentTimeMillis() - s);
+    }
+
+    private void append(List<Pair<String>> changes) {
+        synchronized (lock) {
+            received++;
+        }
+        pending.add(changes);
+    }
+
+    private void write() {
+        List<List<Pair<String>>> batches = new ArrayList<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        while (running || !pending.isEmpty()) {
+            try {
+                List<Pair<String>> first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batches.add(first);
+                // 将已经到达的变更一起写入，只做一次fsync
+                pending.drainTo(batches);
+                buffer.reset();
+                for (List<Pair<String>> batch : batches) {
+                    encode(batch, buffer);
+                }
+                synchronized (lock) {
+                    if (failure == null) {
+                        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                        while (bytes.hasRemaining()) {
+                            journal.write(bytes);
+                        }
+                        journal.force(false);
+                        for (List<Pair<String>> batch : batches) {
+                            for (Pair<String> change : batch) {
+                                DictChange dictChange = DictChange.of(change, segmenter.getWordDictionary());
+                                state.remove(dictChange.getWord());
+                                state.put(dictChange.getWord(), dictChange);
+                            }
+                        }
+                    }
+                    durable += batches.size();
+                    lock.notifyAll();
+                }
+                batches.clear();
+                if (checkpointBytes > 0 && journal.size() >= checkpointBytes) {
+                    checkpoint();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.error("failed to write dict journal " + dir, e);
+                synchronized (lock) {
+                    failure = e;
+                    durable += batches.size();
+                    lock.notifyAll();
+                }
+                batches.clear();
+            }
+        }
+    }
+
+    private void encode(List<Pair<String>> changes, ByteArrayOutputStream buffer) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        writeVarLong(out, changes.size());
+        for (Pair<String> change : changes) {
+            writeChange(out, DictChange.of(change, segmenter.getWordDictionary()));
+        }
+        out.flush();
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeInt(bytes.length);
+        record.writeInt((int) crc.getValue());
+        record.write(bytes);
+        record.flush();
+    }
+
+    /**
+     * 等待在此之前收到的所有变更写入磁盘
+     */
+    public void sync() throws IOException {
+        synchronized (lock) {
+            long target = received;
+            while (durable < target) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while syncing dict journal");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * 将已写入日志的变更合并到快照文件中，并清空日志
+     */
+    public void checkpoint() throws IOException {
+        synchronized (lock) {
+            long s = System.currentTimeMillis();
+            Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(state.size());
+                for (DictChange change : state.values()) {
+                    writeChange(out, change);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // 快照中的每个词都是最终频率，即使清空日志前崩溃，重放旧日志也会得到同样的结果
+            journal.truncate(HEADER_SIZE);
+            journal.position(HEADER_SIZE);
+            journal.force(true);
+            log.debug("dict journal {} checkpointed, words:{}, time elapsed:{} ms",
+                    dir, state.size(), System.currentTimeMillis() - s);
+        }
+    }
+
+    /**
+     * @return 日志文件当前的大小（字节）
+     */
+    public long getJournalSize() throws IOException {
+        return journal.size();
+    }
+
+    /**
+     * @return 打开日志时恢复的词数
+     */
+    public int getRestoredWords() {
+        return restoredWords;
+    }
+
+    /**
+     * 停止记录变更，等待已收到的变更写入磁盘后关闭日志
+     */
+    @Override
+    public void close() throws IOException {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static void writeChange(DataOutput out, DictChange change) throws IOException {
+        out.writeUTF(change.getWord());
+        writeVarLong(out, change.getActualFreq());
+        if (change.isRemoval()) {
+            out.writeBoolean(change.isForceSplit());
+        } else {
+            out.writeDouble(change.getNormalizedFreq());
+        }
+    }
+
+    private static DictChange readChange(DataInput in) throws IOException {
+        String word = in.readUTF();
+        long actualFreq = readVarLong(in);
+        return actualFreq > 0 ? DictChange.put(word, actualFreq, in.readDouble()) : DictChange.remove(word, in.readBoolean());
+    }
+
+    private static void checkHeader(int magic, int version, int expectedMagic, Path path) throws IOException {
+        if (magic != expectedMagic) {
+            throw new IOException(path + " is not a dict journal file");
+        }
+        if (version != VERSION) {
+            throw new IOException("unsupported dict journal version " + version + " in " + path);
+        }
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in dict journal");
+    }
+}
@@ -28,6 +28,11 @@ class DictSegment implements Comparable<DictSegment> {
     private int storeSize = 0;
     // 当前DictSegment状态 ,默认 0 , 1表示从根节点到当前节点的路径表示一个词
     private int nodeState = 0;
+    // 从根节点到当前节点的路径所表示的词，分词结果直接引用该字符串，避免重复创建
+    private String word;
+    // 前缀补全的候选词缓存，以及该节点最近一次失效时词典的修改序号，见CompletionCache
+    private volatile CompletionCache.Candidates completions;
+    private volatile long completionsInvalidated;
 
 
     DictSegment(Character nodeChar) {
@@ -51,6 +56,123 @@ class DictSegment implements Comparable<DictSegment> {
     }
 
 
+    /*
+     * 判断从根节点到当前节点的路径是否表示一个词
+     */
+    boolean isWord() {
+        return this.nodeState == 1;
+    }
+
+
+    /*
+     * 获得从根节点到当前节点的路径所表示的词
+     */
+    String getWord() {
+        return word;
+    }
+
+
+    /*
+     * 以下方法仅用于统计词典的内存占用
+     */
+    DictSegment[] peekChildrenArray() {
+        return childrenArray;
+    }
+
+
+    Map<Character, DictSegment> peekChildrenMap() {
+        return childrenMap;
+    }
+
+
+    static int getCharMapSize() {
+        return charMap.size();
+    }
+
+
+    /*
+     * 获得所有子节点的快照，与词典的更新互斥
+     */
+    synchronized DictSegment[] getChildren() {
+        if (this.childrenArray != null) {
+            return Arrays.copyOf(this.childrenArray, this.storeSize);
+        }
+        else if (this.childrenMap != null) {
+            return this.childrenMap.values().toArray(new DictSegment[0]);
+        }
+        return new DictSegment[0];
+    }
+
+
+    /*
+     * 以下方法用于维护前缀补全的缓存
+     */
+    CompletionCache.Candidates getCompletions() {
+        return completions;
+    }
+
+
+    void setCompletions(CompletionCache.Candidates completions) {
+        this.completions = completions;
+    }
+
+
+    long getCompletionsInvalidated() {
+        return completionsInvalidated;
+    }
+
+
+    void invalidateCompletions(long stamp) {
+        // 只会增大，并发失效时保留较大的序号
+        synchronized (this) {
+            if (stamp > this.completionsInvalidated) {
+                this.completionsInvalidated = stamp;
+            }
+        }
+    }
+
+
+    /**
+     * 查找当前节点下对应keyChar的子节点
+     *
+     * @param keyChar
+     * @return 子节点，不存在时返回null
+     */
+    DictSegment getChild(char keyChar) {
+        // 引用实例变量为本地变量，避免查询时遇到更新的同步问题
+        DictSegment[] segmentArray = this.childrenArray;
+        Map<Character, DictSegment> segmentMap = this.childrenMap;
+
+        if (segmentArray != null) {
+            // 数组已按字符排序，直接比较字符进行二分查找，避免创建临时节点
+            int low = 0;
+            int high = Math.min(this.storeSize, segmentArray.length) - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                DictSegment segment = segmentArray[mid];
+                if (segment == null) {
+                    return null;
+                }
+                char midChar = segment.nodeChar;
+                if (midChar < keyChar) {
+                    low = mid + 1;
+                }
+                else if (midChar > keyChar) {
+                    high = mid - 1;
+                }
+                else {
+                    return segment;
+                }
+            }
+            return null;
+        }
+        else if (segmentMap != null) {
+            return segmentMap.get(keyChar);
+        }
+        return null;
+    }
+
+
     /**
      * 匹配词段
      * 
@@ -150,12 +272,13 @@ class DictSegment implements Comparable<DictSegment> {
 
 
     /**
-     * 加载填充词典片段
+     * 加载填充词典片段，词尾节点将保存该词
      * 
-     * @param charArray
+     * @param word
      */
-    void fillSegment(char[] charArray) {
-        this.fillSegment(charArray, 0, charArray.length, 1);
+    void fillSegment(String word) {
+        char[] charArray = word.toCharArray();
+        this.fillSegment(charArray, 0, charArray.length, 1, word);
     }
 
 
@@ -165,7 +288,7 @@ class DictSegment implements Comparable<DictSegment> {
      * @param charArray
      */
     void disableSegment(char[] charArray) {
-        this.fillSegment(charArray, 0, charArray.length, 0);
+        this.fillSegment(charArray, 0, charArray.length, 0, null);
     }
 
 
@@ -176,8 +299,9 @@ class DictSegment implements Comparable<DictSegment> {
      * @param begin
      * @param length
      * @param enabled
+     * @param word
      */
-    private synchronized void fillSegment(char[] charArray, int begin, int length, int enabled) {
+    private synchronized void fillSegment(char[] charArray, int begin, int length, int enabled, String word) {
         // 获取字典表中的汉字对象
         Character beginChar = new Character(charArray[begin]);
         Character keyChar = charMap.get(beginChar);
@@ -193,11 +317,14 @@ class DictSegment implements Comparable<DictSegment> {
             // 处理keyChar对应的segment
             if (length > 1) {
                 // 词元还没有完全加入词典树
-                ds.fillSegment(charArray, begin + 1, length - 1, enabled);
+                ds.fillSegment(charArray, begin + 1, length - 1, enabled, word);
             }
             else if (length == 1) {
                 // 已经是词元的最后一个char,设置当前节点状态为enabled，
                 // enabled=1表明一个完整的词，enabled=0表示从词典中屏蔽当前词
+                if (word != null) {
+                    ds.word = word;
+                }
                 ds.nodeState = enabled;
             }
         }
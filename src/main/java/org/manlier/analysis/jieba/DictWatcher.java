@@ -0,0 +1,252 @@
+package org.manlier.analysis.jieba;
+
+import org.manlier.analysis.jieba.dao.FileDictSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static org.manlier.analysis.jieba.WordDictionary.USER_DICT_SUFFIX;
+
+/**
+ * 用户字典目录监视器，基于WatchService监听目录下后缀名为.dict的文件，
+ * 文件变更后与上一次读取的内容做比较，只将新增、删除及频率发生变化的词应用到词典中，
+ * 并通过JiebaSegmenter的变更通知发送出去。
+ * <p>
+ * 短时间内的多次修改会被合并为一次更新，更新在后台线程中进行，不会阻塞分词
+ */
+public class DictWatcher implements Closeable {
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final JiebaSegmenter segmenter;
+    private final Charset charset;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    // 监听键与目录的对应关系
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    // 每个文件最近一次读取到的内容
+    private final Map<Path, Map<String, Double>> snapshots = new ConcurrentHashMap<>();
+    // 被监视的文件覆盖之前词典中原有的实际频率，只在后台线程中访问
+    private final Map<String, Double> originalFreqs = new HashMap<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public DictWatcher(JiebaSegmenter segmenter) throws IOException {
+        this(segmenter, DEFAULT_DEBOUNCE_MILLIS, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param segmenter      变更将应用到该分词器所使用的词典
+     * @param debounceMillis 合并修改的时间窗口，窗口内没有新的修改时才进行更新
+     * @param charset        字典文件编码
+     */
+    public DictWatcher(JiebaSegmenter segmenter, long debounceMillis, Charset charset) throws IOException {
+        this.segmenter = segmenter;
+        this.debounceMillis = debounceMillis;
+        this.charset = charset;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.worker = new Thread(this::watch, "jieba-dict-watcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 监听一个用户字典目录。目录下现有的字典文件将被视为已经载入词典（如通过FileDictSource），
+     * 之后的修改才会被应用
+     *
+     * @param dictDir 字典目录
+     */
+    public void register(Path dictDir) throws IOException {
+        Path dir = dictDir.toAbsolutePath();
+        if (!Files.isDirectory(dir)) {
+            throw new IllegalArgumentException(dir + " is not a directory");
+        }
+        for (Path file : listDictFiles(dir)) {
+            snapshots.put(file, readEntries(file));
+        }
+        WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        watchedDirs.put(key, dir);
+        log.debug("watching user dict dir {}", dir);
+    }
+
+    private void watch() {
+        Set<Path> pending = new LinkedHashSet<>();
+        while (running) {
+            try {
+                // 没有待处理的修改时一直等待，否则等待一个窗口期，期间没有新的修改则开始更新
+                WatchKey key = pending.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    reload(pending);
+                    pending.clear();
+                } else {
+                    collect(key, pending);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (RuntimeException e) {
+                log.error("failed to reload user dict", e);
+                pending.clear();
+            }
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> pending) {
+        Path dir = watchedDirs.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // 丢失了部分事件，重新检查整个目录
+                try {
+                    pending.addAll(listDictFiles(dir));
+                } catch (IOException e) {
+                    log.error("failed to list " + dir, e);
+                }
+                for (Path file : snapshots.keySet()) {
+                    if (file.startsWith(dir)) {
+                        pending.add(file);
+                    }
+                }
+            } else {
+                Path name = (Path) event.context();
+                if (name.toString().endsWith(USER_DICT_SUFFIX)) {
+                    pending.add(dir.resolve(name));
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    private void reload(Set<Path> files) {
+        long s = System.currentTimeMillis();
+        // 先读取所有文件，任何一个文件读取失败都不会留下只更新了一半的快照
+        Map<Path, Map<String, Double>> currents = new LinkedHashMap<>();
+        for (Path file : files) {
+            try {
+                currents.put(file, Files.exists(file) ? readEntries(file) : Collections.emptyMap());
+            } catch (IOException | RuntimeException e) {
+                // 保留原有的快照，文件下次被修改时重新读取
+                log.error("failed to read user dict " + file, e);
+            }
+        }
+        WordDictionary wordDict = segmenter.getWordDictionary();
+        // 先应用删除再应用新增，词语从一个文件移到另一个文件时以新增为准
+        Set<String> removed = new LinkedHashSet<>();
+        Map<String, Pair<String>> updated = new LinkedHashMap<>();
+        for (Map.Entry<Path, Map<String, Double>> file : currents.entrySet()) {
+            Map<String, Double> current = file.getValue();
+            Map<String, Double> previous = snapshots.getOrDefault(file.getKey(), Collections.emptyMap());
+            for (Map.Entry<String, Double> entry : current.entrySet()) {
+                String word = entry.getKey();
+                if (!entry.getValue().equals(previous.get(word))) {
+                    if (!originalFreqs.containsKey(word) && !isDefined(word) && wordDict.containsWord(word)) {
+                        // 记下被监视的文件覆盖之前的频率，所有文件都不再定义该词时恢复
+                        originalFreqs.put(word, actualFreq(wordDict, word));
+                    }
+                    updated.put(word, new Pair<>(word, entry.getValue()));
+                }
+            }
+            for (String word : previous.keySet()) {
+                if (!current.containsKey(word)) {
+                    removed.add(word);
+                }
+            }
+        }
+        for (Map.Entry<Path, Map<String, Double>> file : currents.entrySet()) {
+            if (file.getValue().isEmpty()) {
+                snapshots.remove(file.getKey());
+            } else {
+                snapshots.put(file.getKey(), file.getValue());
+            }
+        }
+        removed.removeAll(updated.keySet());
+
+        List<Pair<String>> changes = new ArrayList<>(removed.size());
+        for (String word : removed) {
+            // 其他文件仍定义该词时使用其频率，否则恢复原有的频率，都没有时才移除
+            Double freq = null;
+            for (Map<String, Double> snapshot : snapshots.values()) {
+                if ((freq = snapshot.get(word)) != null) {
+                    break;
+                }
+            }
+            if (freq == null) {
+                freq = originalFreqs.remove(word);
+            }
+            changes.add(new Pair<>(word, freq != null ? freq : 0));
+        }
+        if (!changes.isEmpty()) {
+            segmenter.applyChanges(changes);
+        }
+        // 与WordDictionary.loadUserDict一致，文件中显式给出频率0的词被移除并强制切分；
+        // 从文件中删除的词只是移除，两者分别通知
+        if (!updated.isEmpty()) {
+            segmenter.applyChanges(new ArrayList<>(updated.values()), true);
+        }
+        log.debug("user dict reloaded, files:{}, removed:{}, updated:{}, time elapsed:{} ms",
+                currents.size(), removed.size(), updated.size(), System.currentTimeMillis() - s);
+    }
+
+    /**
+     * @return 是否有被监视的文件定义了该词
+     */
+    private boolean isDefined(String word) {
+        for (Map<String, Double> snapshot : snapshots.values()) {
+            if (snapshot.containsKey(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double actualFreq(WordDictionary wordDict, String word) {
+        return Math.round(Math.exp(wordDict.getFreq(word, Double.NEGATIVE_INFINITY)) * wordDict.getTotal());
+    }
+
+    private Map<String, Double> readEntries(Path file) throws IOException {
+        Map<String, Double> entries = new HashMap<>();
+        new FileDictSource(file).loadDict(charset, tokens -> {
+            String word = WordDictionary.normalizeWord(tokens[0]);
+            if (word != null) {
+                // 与WordDictionary.loadUserDict一致，默认频率为3
+                entries.put(word, tokens.length >= 2 ? Double.valueOf(tokens[1]) : 3d);
+            }
+        });
+        return entries;
+    }
+
+    private List<Path> listDictFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir
+                , String.format(Locale.getDefault(), "*%s", USER_DICT_SUFFIX))) {
+            for (Path path : stream) {
+                files.add(path.toAbsolutePath());
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        worker.interrupt();
+    }
+}
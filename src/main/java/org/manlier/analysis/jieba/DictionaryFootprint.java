@@ -0,0 +1,333 @@
+package org.manlier.analysis.jieba;
+
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 词典内存占用分析。
+ * <p>
+ * 遍历词频表、Trie树及公用字符表，统计各类节点的数量、子节点数与深度的分布，
+ * 并按64位JVM开启压缩指针时的对象布局估算各部分占用的字节数（对象头12字节，引用4字节，按8字节对齐）。
+ * 估算值不包含JVM的内部开销，也无法感知各个集合实际扩容的情况，只适合用于比较与跟踪增长趋势。
+ * <p>
+ * 分析时会遍历整个词典，词典较大时耗时可达数百毫秒，不应在分词的路径上调用
+ */
+public class DictionaryFootprint {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int REFERENCE = 4;
+    private static final int ARRAY_HEADER = 16;
+    // DictSegment：5个引用（childrenMap、childrenArray、nodeChar、word、completions）、2个int及1个long
+    static final long SEGMENT_BYTES = align(OBJECT_HEADER + 5 * REFERENCE + 2 * 4 + 8);
+    // CompletionCache.Candidates：2个引用（words、scores）及1个long，候选词与Trie节点共用字符串
+    static final long CANDIDATES_BYTES = align(OBJECT_HEADER + 2 * REFERENCE + 8);
+    private static final long HASH_MAP_BYTES = 48;
+    private static final long HASH_MAP_NODE_BYTES = 32;
+    private static final long CONCURRENT_HASH_MAP_BYTES = 64;
+    private static final long BOXED_BYTES = 16;
+    private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version").startsWith("1.");
+
+    /**
+     * 子节点的存储方式
+     */
+    public enum Storage {
+        // 没有子节点
+        LEAF,
+        // 已创建数组但没有子节点（如删除不存在的词时创建的数组）
+        EMPTY_ARRAY,
+        // 使用数组存储子节点
+        ARRAY,
+        // 使用HashMap存储子节点
+        MAP
+    }
+
+    private final EnumMap<Storage, Long> nodes = new EnumMap<>(Storage.class);
+    private final SortedMap<Integer, Long> fanOut = new TreeMap<>();
+    private final SortedMap<Integer, Long> depths = new TreeMap<>();
+    private long trieNodes;
+    private long trieWords;
+    private int maxDepth;
+    private long freqEntries;
+    private int charMapEntries;
+    private long wordChars;
+
+    private long trieNodeBytes;
+    private long childArrayBytes;
+    private long childMapBytes;
+    private long completionBytes;
+    private long freqBytes;
+    private long wordBytes;
+    private long unsharedWordBytes;
+    private long charMapBytes;
+    private long elapsedMillis;
+
+    private DictionaryFootprint() {
+        for (Storage storage : Storage.values()) {
+            nodes.put(storage, 0L);
+        }
+    }
+
+    /**
+     * 分析词典的内存占用，对于覆盖层词典只统计覆盖层自身
+     *
+     * @param dict 词典
+     * @return 分析结果
+     */
+    public static DictionaryFootprint of(WordDictionary dict) {
+        long s = System.currentTimeMillis();
+        DictionaryFootprint footprint = new DictionaryFootprint();
+        // 词频表的键与Trie节点上的词通常是同一个字符串对象，只计算一次
+        Set<String> keys = Collections.newSetFromMap(new IdentityHashMap<>());
+        footprint.measureFreqs(dict.freqs, keys);
+        footprint.measureTrie(dict.getTrie(), keys);
+        footprint.charMapEntries = DictSegment.getCharMapSize();
+        footprint.charMapBytes = HASH_MAP_BYTES + tableBytes(footprint.charMapEntries, 16, 0.95f)
+                + footprint.charMapEntries * (HASH_MAP_NODE_BYTES + BOXED_BYTES);
+        footprint.elapsedMillis = System.currentTimeMillis() - s;
+        return footprint;
+    }
+
+    private void measureFreqs(Map<String, Double> freqs, Set<String> keys) {
+        long entries = 0;
+        for (String key : freqs.keySet()) {
+            keys.add(key);
+            wordBytes += stringBytes(key);
+            wordChars += key.length();
+            entries++;
+        }
+        freqEntries = entries;
+        freqBytes = CONCURRENT_HASH_MAP_BYTES + tableBytes(entries, 16, 0.75f)
+                + entries * (HASH_MAP_NODE_BYTES + BOXED_BYTES);
+    }
+
+    private void measureTrie(DictSegment root, Set<String> keys) {
+        Deque<DictSegment> stack = new ArrayDeque<>();
+        Deque<Integer> levels = new ArrayDeque<>();
+        stack.push(root);
+        levels.push(0);
+        while (!stack.isEmpty()) {
+            DictSegment node = stack.pop();
+            int depth = levels.pop();
+            trieNodes++;
+            trieNodeBytes += SEGMENT_BYTES;
+            depths.merge(depth, 1L, Long::sum);
+            maxDepth = Math.max(maxDepth, depth);
+            if (node.isWord()) {
+                trieWords++;
+                String word = node.getWord();
+                if (word != null && !keys.contains(word)) {
+                    unsharedWordBytes += stringBytes(word);
+                }
+            }
+
+            DictSegment[] array = node.peekChildrenArray();
+            CompletionCache.Candidates completions = node.getCompletions();
+            if (completions != null) {
+                completionBytes += CANDIDATES_BYTES + align(ARRAY_HEADER + completions.words.length * REFERENCE)
+                        + align(ARRAY_HEADER + completions.scores.length * 8);
+            }
+
+            Map<Character, DictSegment> map = node.peekChildrenMap();
+            int children = 0;
+            Storage storage;
+            if (map != null) {
+                storage = Storage.MAP;
+                childMapBytes += HASH_MAP_BYTES + tableBytes(map.size(), 8, 0.8f) + map.size() * HASH_MAP_NODE_BYTES;
+                for (DictSegment child : map.values()) {
+                    stack.push(child);
+                    levels.push(depth + 1);
+                    children++;
+                }
+            } else if (array != null) {
+                childArrayBytes += align(ARRAY_HEADER + array.length * REFERENCE);
+                for (DictSegment child : array) {
+                    if (child != null) {
+                        stack.push(child);
+                        levels.push(depth + 1);
+                        children++;
+                    }
+                }
+                storage = children == 0 ? Storage.EMPTY_ARRAY : Storage.ARRAY;
+            } else {
+                storage = Storage.LEAF;
+            }
+            nodes.merge(storage, 1L, Long::sum);
+            fanOut.merge(children, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * 估算HashMap的table所占的字节数
+     */
+    private static long tableBytes(long size, int initialCapacity, float loadFactor) {
+        long capacity = Integer.highestOneBit(Math.max(initialCapacity - 1, 1)) << 1;
+        while (size > capacity * loadFactor) {
+            capacity <<= 1;
+        }
+        return align(ARRAY_HEADER + capacity * REFERENCE);
+    }
+
+    private static long stringBytes(String s) {
+        boolean latin1 = COMPACT_STRINGS;
+        if (latin1) {
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) > 0xFF) {
+                    latin1 = false;
+                    break;
+                }
+            }
+        }
+        // String对象本身24字节，加上存储字符的数组
+        return 24 + align(ARRAY_HEADER + (long) s.length() * (latin1 ? 1 : 2));
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    public long getNodeCount(Storage storage) {
+        return nodes.get(storage);
+    }
+
+    public long getTrieNodes() {
+        return trieNodes;
+    }
+
+    public long getTrieWords() {
+        return trieWords;
+    }
+
+    public long getFreqEntries() {
+        return freqEntries;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return 子节点数的分布，键为子节点数，值为节点数
+     */
+    public SortedMap<Integer, Long> getFanOutHistogram() {
+        return Collections.unmodifiableSortedMap(fanOut);
+    }
+
+    /**
+     * @return 节点深度的分布，根节点深度为0
+     */
+    public SortedMap<Integer, Long> getDepthHistogram() {
+        return Collections.unmodifiableSortedMap(depths);
+    }
+
+    /**
+     * @return 估算的词典总占用字节数
+     */
+    public long getEstimatedBytes() {
+        return trieNodeBytes + childArrayBytes + childMapBytes + completionBytes + freqBytes + wordBytes + unsharedWordBytes + charMapBytes;
+    }
+
+    /**
+     * 以指标的形式输出统计结果，便于接入监控系统跟踪词典的增长
+     *
+     * @return 指标名与值，按名称排序
+     */
+    public SortedMap<String, Long> toMetrics() {
+        SortedMap<String, Long> metrics = new TreeMap<>();
+        for (Storage storage : Storage.values()) {
+            metrics.put("jieba.dict.trie.nodes." + storage.name().toLowerCase(Locale.ROOT), nodes.get(storage));
+        }
+        metrics.put("jieba.dict.trie.nodes", trieNodes);
+        metrics.put("jieba.dict.trie.words", trieWords);
+        metrics.put("jieba.dict.trie.max_depth", (long) maxDepth);
+        metrics.put("jieba.dict.freqs.entries", freqEntries);
+        metrics.put("jieba.dict.char_map.entries", (long) charMapEntries);
+        metrics.put("jieba.dict.bytes.trie_nodes", trieNodeBytes);
+        metrics.put("jieba.dict.bytes.child_arrays", childArrayBytes);
+        metrics.put("jieba.dict.bytes.child_maps", childMapBytes);
+        metrics.put("jieba.dict.bytes.completions", completionBytes);
+        metrics.put("jieba.dict.bytes.freqs", freqBytes);
+        metrics.put("jieba.dict.bytes.words", wordBytes + unsharedWordBytes);
+        metrics.put("jieba.dict.bytes.char_map", charMapBytes);
+        metrics.put("jieba.dict.bytes.total", getEstimatedBytes());
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("dictionary footprint (analyzed in %d ms)%n", elapsedMillis));
+        sb.append(String.format("  freqs:     %,d entries, %,d chars%n", freqEntries, wordChars));
+        sb.append(String.format("  trie:      %,d nodes, %,d words, max depth %d%n", trieNodes, trieWords, maxDepth));
+        for (Storage storage : Storage.values()) {
+            long count = nodes.get(storage);
+            sb.append(String.format("    %-12s %,12d  %5.1f%%%n", storage.name().toLowerCase(Locale.ROOT), count,
+                    trieNodes == 0 ? 0d : count * 100d / trieNodes));
+        }
+        sb.append(String.format("  char map:  %,d entries%n", charMapEntries));
+        sb.append("  estimated bytes:\n");
+        appendBytes(sb, "trie nodes", trieNodeBytes);
+        appendBytes(sb, "child arrays", childArrayBytes);
+        appendBytes(sb, "child maps", childMapBytes);
+        appendBytes(sb, "completions", completionBytes);
+        appendBytes(sb, "freqs", freqBytes);
+        appendBytes(sb, "words", wordBytes + unsharedWordBytes);
+        appendBytes(sb, "char map", charMapBytes);
+        appendBytes(sb, "total", getEstimatedBytes());
+        sb.append("  fan-out histogram (children: nodes):\n");
+        appendHistogram(sb, fanOut);
+        sb.append("  depth histogram (depth: nodes):\n");
+        appendHistogram(sb, depths);
+        return sb.toString();
+    }
+
+    private void appendBytes(StringBuilder sb, String name, long bytes) {
+        long total = getEstimatedBytes();
+        sb.append(String.format("    %-12s %,14d  %5.1f%%%n", name, bytes, total == 0 ? 0d : bytes * 100d / total));
+    }
+
+    /**
+     * 较大的键按2的幂合并为区间输出
+     */
+    private static void appendHistogram(StringBuilder sb, SortedMap<Integer, Long> histogram) {
+        SortedMap<String, Long> buckets = new TreeMap<>(Comparator.comparingInt(DictionaryFootprint::bucketStart));
+        for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+            buckets.merge(bucketName(entry.getKey()), entry.getValue(), Long::sum);
+        }
+        for (Map.Entry<String, Long> entry : buckets.entrySet()) {
+            sb.append(String.format("    %-12s %,14d%n", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static String bucketName(int key) {
+        if (key < 8) {
+            return String.valueOf(key);
+        }
+        int low = Integer.highestOneBit(key);
+        return low + "-" + (low * 2 - 1);
+    }
+
+    private static int bucketStart(String name) {
+        int dash = name.indexOf('-');
+        return Integer.parseInt(dash < 0 ? name : name.substring(0, dash));
+    }
+
+    /**
+     * 载入词典并输出内存占用分析
+     * <p>
+     * 用法：DictionaryFootprint [用户字典目录...]
+     */
+    public static void main(String[] args) throws IOException {
+        WordDictionary dict = WordDictionary.getInstance();
+        for (String dir : args) {
+            dict.loadUserDict(new FileDictSource(Paths.get(dir)));
+        }
+        DictionaryFootprint footprint = of(dict);
+        System.out.print(footprint);
+        for (Map.Entry<String, Long> metric : footprint.toMetrics().entrySet()) {
+            System.out.println(metric.getKey() + " " + metric.getValue());
+        }
+    }
+}
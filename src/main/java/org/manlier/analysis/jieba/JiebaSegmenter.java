@@ -1,29 +1,71 @@
 package org.manlier.analysis.jieba;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.manlier.analysis.jieba.dao.DictSource;
 import org.manlier.analysis.jieba.viterbi.FinalSeg;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Consumer;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.processors.FlowableProcessor;
 import io.reactivex.processors.PublishProcessor;
 import org.reactivestreams.Subscriber;
 
 
 public class JiebaSegmenter {
-    private static WordDictionary wordDict = WordDictionary.getInstance();
     private static FinalSeg finalSeg = FinalSeg.getInstance();
-    private PublishProcessor<List<Pair<String>>> processor;
+    private static final String WINDOW_SIZE_CONFIG = "jieba.windowSize";
+    // 找不到安全切分点时，语块最多可增长到窗口大小的倍数
+    static final int MAX_WINDOW_FACTOR = 4;
+    // 带预算分词且未设置窗口大小时使用的窗口大小，使长语块中途也能检查预算
+    static final int BUDGET_WINDOW_SIZE = 256;
+    private final WordDictionary wordDict;
+    private FlowableProcessor<List<Pair<String>>> processor;
+    // 分窗口处理长语块时的窗口大小，0表示不分窗口
+    private int windowSize = Integer.getInteger(WINDOW_SIZE_CONFIG, 0);
+    private final DegradationStats degradationStats = new DegradationStats();
+    private final MaxMatcher maxMatcher;
+    private static final String SLOW_LOG_CONFIG = "jieba.slowLogMillis";
+    // 慢分词日志，为null时不记录
+    private volatile SlowLog slowLog;
+    // 词元过滤规则，为null时不过滤
+    private volatile TokenFilter tokenFilter;
 
     public enum SegMode {
         INDEX,
-        SEARCH
+        SEARCH,
+        // 双向最大匹配，不计算最大概率路径，不使用HMM，速度快但准确率较低
+        FAST
     }
 
+    /**
+     * 使用全局的词典创建分词器
+     */
     public JiebaSegmenter() {
-        this.processor = PublishProcessor.create();
+        this(WordDictionary.getInstance());
+    }
+
+    /**
+     * 创建与指定词典绑定的分词器，如某个租户的覆盖层词典
+     *
+     * @param wordDict 词典
+     */
+    public JiebaSegmenter(WordDictionary wordDict) {
+        this.wordDict = wordDict;
+        this.maxMatcher = new MaxMatcher(wordDict);
+        Long slowLogMillis = Long.getLong(SLOW_LOG_CONFIG);
+        if (slowLogMillis != null) {
+            this.slowLog = SlowLog.ofMillis(slowLogMillis);
+        }
+        // 词典可能同时被多个线程（如词典监视器）修改，通知需要串行化
+        this.processor = PublishProcessor.<List<Pair<String>>>create().toSerialized();
+    }
+
+    public WordDictionary getWordDictionary() {
+        return wordDict;
     }
 
     /**
@@ -45,6 +87,30 @@ public class JiebaSegmenter {
         processor.subscribe(subscriber);
     }
 
+    /**
+     * 注册一个异步的订阅者，变更按投递方式合并后在独立的线程上通知，不会阻塞修改词典的线程
+     *
+     * @param delivery 投递方式
+     * @param consumer 消费者
+     * @return Disposable对象，可用于取消监听
+     */
+    public Disposable subscribe(ChangeDelivery delivery, Consumer<List<Pair<String>>> consumer) {
+        return delivery.subscribe(processor, consumer, RxJavaPlugins::onError);
+    }
+
+    /**
+     * 注册一个异步的订阅者
+     *
+     * @param delivery 投递方式
+     * @param consumer 消费者
+     * @param onError  接收错误，如使用{@link ChangeDelivery.Overflow#ERROR}时缓冲区溢出
+     * @return Disposable对象，可用于取消监听
+     */
+    public Disposable subscribe(ChangeDelivery delivery, Consumer<List<Pair<String>>> consumer,
+                                Consumer<? super Throwable> onError) {
+        return delivery.subscribe(processor, consumer, onError);
+    }
+
     /**
      * 若要将某几个分割开的词语分为一整个词，可通过该方法获得建议的词频
      *
@@ -53,27 +119,11 @@ public class JiebaSegmenter {
      * @return 建议的该词应分配的词频
      */
     public long suggestFreq(boolean tune, String segment) {
-        double freq = 1.0d;
-        List<String> segs = sentenceProcessWithNoHMM(segment);
-        for (String seg : segs) {
-            freq *= Math.pow(Math.E, wordDict.freqs.getOrDefault(seg, Math.log(1.0d / wordDict.total)));
-        }
-
-        // 原先segment在字典中所占的比例
-        double segmentPercent = Math.pow(Math.E, wordDict.freqs.getOrDefault(segment, Math.log(0d)));
-
-        // 要将segment分出来，要满足 P(segment) = max{P(segment}, p(seg1)*p(seg2), p(seg1)*p(seg2)*p(seg3)}
-        freq = Math.max(freq + 1.0d / wordDict.total
-                , segmentPercent);
-
-        // 得到将segment分出来的频率
-        long actualFreq = (long) (freq * wordDict.total);
-
-
+        TuneResult result = suggest(TuneRequest.join(segment), wordDict.getTotal());
         if (tune) {
-            addWord(segment, actualFreq, Math.log(freq));
+            addWord(segment, result.getNewFreq(), result.normalizedFreq);
         }
-        return actualFreq;
+        return result.getNewFreq();
     }
 
     /**
@@ -86,25 +136,87 @@ public class JiebaSegmenter {
      * @return 所建议的词频
      */
     public long suggestFreq(boolean tune, String... segments) {
-        double percent = 1.0d;
-        String words = String.join("", segments);
-        for (String seg : segments) {
-            percent *= Math.pow(Math.E, wordDict.freqs.getOrDefault(seg, Math.log(1 / wordDict.total)));
+        TuneRequest request = TuneRequest.split(segments);
+        TuneResult result = suggest(request, wordDict.getTotal());
+        if (tune) {
+            addWord(request.getWord(), result.getNewFreq(), result.normalizedFreq);
         }
+        return result.getNewFreq();
+    }
 
-        // words 在词典中所占的比例
-        double wordsPercent = Math.pow(Math.E, wordDict.freqs.getOrDefault(words, Math.log(0d)));
-
-        // 要将words进行分割，应满足 P(words) = min{ P(words), P(seg1)*P(seg2), P(seg1)*P(seg2)*P(seg3),...}
-        percent = Math.min(percent, wordsPercent);
-        // 得到实际频率
-        long actualFreq = (long) (percent * wordDict.total);
+    /**
+     * 批量获得建议的词频。
+     * <p>
+     * 所有请求基于同一份词典快照并行计算，彼此之间互不影响（与逐个调用suggestFreq不同，
+     * 前面的调整不会改变后面请求所看到的频率总和）；若tune为true，所有结果作为一次变更应用到词典中，
+     * 订阅者只会收到一次通知。同一个词出现多次时，以最后一个请求的结果为准
+     *
+     * @param tune     是否将变更同步到词典中
+     * @param requests 调整请求
+     * @return 每个请求调整前后的频率，顺序与请求一致
+     */
+    public List<TuneResult> suggestFreq(boolean tune, Collection<TuneRequest> requests) {
+        // 所有修改词典的操作都持有词典的锁，计算与应用期间看到的是同一份词典
+        return wordDict.exclusively(() -> {
+            double total = wordDict.getTotal();
+            List<TuneResult> results = requests.parallelStream()
+                    .map(request -> suggest(request, total))
+                    .collect(Collectors.toList());
+            if (tune) {
+                List<Pair<String>> changeList = new ArrayList<>(results.size());
+                for (TuneResult result : results) {
+                    String word = result.getWord();
+                    long actualFreq = result.getNewFreq();
+                    if (actualFreq == 0) {
+                        wordDict.addForceSplit(word);
+                        wordDict.removeWord(word);
+                        changeList.add(DictChange.remove(word, true));
+                    } else {
+                        wordDict.putWord(word, actualFreq, result.normalizedFreq);
+                        changeList.add(DictChange.put(word, actualFreq, result.normalizedFreq));
+                    }
+                }
+                if (changeList.size() != 0) {
+                    this.processor.onNext(changeList);
+                }
+            }
+            return results;
+        });
+    }
 
+    /**
+     * 计算一个请求所建议的词频
+     *
+     * @param request 调整请求
+     * @param total   词典的频率总和
+     * @return 调整结果
+     */
+    private TuneResult suggest(TuneRequest request, double total) {
+        String word = request.getWord();
+        double wordFreq = wordDict.getFreq(word, Double.NEGATIVE_INFINITY);
+        // word 原先在字典中所占的比例
+        double wordPercent = Math.exp(wordFreq);
+        long oldFreq = (long) (wordPercent * total);
+        double minFreq = Math.log(1.0d / total);
 
-        if (tune) {
-            addWord(words, actualFreq, Math.log(percent));
+        double percent = 1.0d;
+        if (request.isSplit()) {
+            for (String seg : request.segments()) {
+                percent *= Math.exp(wordDict.getFreq(seg, minFreq));
+            }
+            // 要将words进行分割，应满足 P(words) = min{ P(words), P(seg1)*P(seg2), P(seg1)*P(seg2)*P(seg3),...}
+            percent = Math.min(percent, wordPercent);
+        } else {
+            for (String seg : sentenceProcessWithNoHMM(word, null, null)) {
+                percent *= Math.exp(wordDict.getFreq(seg, minFreq));
+            }
+            // 要将segment分出来，要满足 P(segment) = max{P(segment}, p(seg1)*p(seg2), p(seg1)*p(seg2)*p(seg3)}
+            percent = Math.max(percent + 1.0d / total, wordPercent);
         }
-        return actualFreq;
+        // 得到实际频率
+        long actualFreq = (long) (percent * total);
+        String key = WordDictionary.normalizeWord(word);
+        return new TuneResult(request, key != null ? key : word, oldFreq, actualFreq, Math.log(percent));
     }
 
     /**
@@ -116,27 +228,20 @@ public class JiebaSegmenter {
      * @param normalizeFreq 规格化后的频率
      */
     private void addWord(String word, long actualFreq, double normalizeFreq) {
-        wordDict.total += actualFreq;
-        if (wordDict.freqs.containsKey(word)) {
-            wordDict.freqs.replace(word, normalizeFreq);
-        } else {
-            wordDict.freqs.put(word, normalizeFreq);
-            wordDict.addWord(word);
+        String key = WordDictionary.normalizeWord(word);
+        if (key == null) {
+            return;
         }
-
-        List<Pair<String>> changeList = new ArrayList<>();
-        changeList.add(new Pair<>(word, actualFreq));
-
+        DictChange change;
         if (actualFreq == 0d) {
-            finalSeg.addForceSplit(word);
-            wordDict.freqs.remove(word);
-            wordDict.delWord(word);
-        }
-
-        if (changeList.size() != 0) {
-            this.processor.onNext(changeList);
+            wordDict.addForceSplit(key);
+            wordDict.removeWord(key);
+            change = DictChange.remove(key, true);
+        } else {
+            wordDict.putWord(key, actualFreq, normalizeFreq);
+            change = DictChange.put(key, actualFreq, normalizeFreq);
         }
-
+        this.processor.onNext(Collections.singletonList(change));
     }
 
     /**
@@ -146,7 +251,7 @@ public class JiebaSegmenter {
      * @param actualFreq 频率
      */
     public void addWord(String word, long actualFreq) {
-        this.addWord(word, actualFreq, Math.log(actualFreq / wordDict.total));
+        this.addWord(word, actualFreq, wordDict.normalizeFreq(actualFreq));
     }
 
 
@@ -156,7 +261,7 @@ public class JiebaSegmenter {
      * @param word 词
      */
     public void addWord(String word) {
-        finalSeg.delForceSplit(word);
+        wordDict.delForceSplit(word);
         suggestFreq(true, word);
     }
 
@@ -169,61 +274,129 @@ public class JiebaSegmenter {
         addWord(word, 0);
     }
 
-    public void loadUserDict(DictSource dictSource) throws IOException {
-        List<Pair<String>> changeList = wordDict.loadUserDict(dictSource);
+    /**
+     * 批量应用词典变更，所有变更只产生一次通知
+     * 频率大于0表示添加该词或更新它的频率，频率为0表示将该词从词典中移除
+     * 注意：与delWord不同，移除的词不会被强制切分
+     *
+     * @param changes 变更列表，key为词语，freq为实际频率
+     */
+    public void applyChanges(List<Pair<String>> changes) {
+        applyChanges(changes, false);
+    }
+
+    /**
+     * 批量应用词典变更，所有变更只产生一次通知
+     *
+     * @param changes    变更列表，key为词语，freq为实际频率，为0表示移除该词
+     * @param forceSplit 是否强制切分被移除的词，与delWord的行为一致
+     */
+    public void applyChanges(List<Pair<String>> changes, boolean forceSplit) {
+        List<Pair<String>> changeList = new ArrayList<>(changes.size());
+        // 规格化与写入之间频率总和不被其他修改改变，批量调整也不会看到只应用了一部分的变更
+        synchronized (wordDict) {
+            for (Pair<String> change : changes) {
+                String word = WordDictionary.normalizeWord(change.key);
+                if (word == null) {
+                    continue;
+                }
+                long actualFreq = change.freq.longValue();
+                if (actualFreq > 0) {
+                    double normalizedFreq = wordDict.normalizeFreq(actualFreq);
+                    wordDict.putWord(word, actualFreq, normalizedFreq);
+                    changeList.add(DictChange.put(word, actualFreq, normalizedFreq));
+                } else {
+                    if (forceSplit) {
+                        wordDict.addForceSplit(word);
+                    }
+                    wordDict.removeWord(word);
+                    changeList.add(DictChange.remove(word, forceSplit));
+                }
+            }
+        }
         if (changeList.size() != 0) {
             this.processor.onNext(changeList);
         }
     }
 
     /**
-     * 根据Trie词典来构建有向无环图
+     * 精确地重放另一个分词器发出的变更（如变更日志及复制），使用变更中记录的规格化频率及强制切分标记，
+     * 重放后的词典与发出变更的词典分词结果相同。不是{@link DictChange}的变更与applyChanges(changes)相同
      *
-     * @param sentence 句子
-     * @return 有向无环图
+     * @param changes 变更列表
      */
-    private Map<Integer, List<Integer>> createDAG(String sentence) {
-        Map<Integer, List<Integer>> dag = new HashMap<>();
-        // 获得Trie
-        DictSegment trie = wordDict.getTrie();
-        char[] chars = sentence.toCharArray();
-        int N = chars.length;
-        int i = 0, j = 0;
-        while (i < N) {
-            // 尝试从尾部开始，词长度不断增长地匹配字典中的词
-            Hit hit = trie.match(chars, i, j - i + 1);
-            if (hit.isPrefix() || hit.isMatch()) {
-                if (hit.isMatch()) {
-                    if (!dag.containsKey(i)) {
-                        List<Integer> value = new ArrayList<Integer>();
-                        // 在有向无环图中加入一个点，相当于记下线段首部
-                        dag.put(i, value);
-                        // 将线段的尾部记下来
-                        value.add(j);
-                    } else
-                        dag.get(i).add(j);
+    public void replayChanges(List<? extends Pair<String>> changes) {
+        List<Pair<String>> changeList = new ArrayList<>(changes.size());
+        synchronized (wordDict) {
+            for (Pair<String> change : changes) {
+                DictChange dictChange;
+                if (change instanceof DictChange) {
+                    dictChange = (DictChange) change;
+                } else {
+                    String word = WordDictionary.normalizeWord(change.key);
+                    if (word == null) {
+                        continue;
+                    }
+                    long actualFreq = change.freq.longValue();
+                    dictChange = actualFreq > 0 ? DictChange.put(word, actualFreq, wordDict.normalizeFreq(actualFreq))
+                            : DictChange.remove(word, false);
                 }
-                // 如果只是前缀而没有完全匹配，则词长度向后加一
-                // 如果匹配到，则词长度向后加一，碰到结尾则重新初始化
-                j += 1;
-                if (j >= N) {
-                    i += 1;
-                    j = i;
+                if (dictChange.isRemoval()) {
+                    if (dictChange.isForceSplit()) {
+                        wordDict.addForceSplit(dictChange.getWord());
+                    }
+                    wordDict.removeWord(dictChange.getWord());
+                } else {
+                    wordDict.putWord(dictChange.getWord(), dictChange.getActualFreq(), dictChange.getNormalizedFreq());
                 }
+                changeList.add(dictChange);
             }
-            // 没有匹配成功，则为无法组词的单字，放到while循环外统一处理
-            else {
-                i += 1;
-                j = i;
+        }
+        if (changeList.size() != 0) {
+            this.processor.onNext(changeList);
+        }
+    }
+
+    public void loadUserDict(DictSource dictSource) throws IOException {
+        List<Pair<String>> loaded = wordDict.loadUserDict(dictSource);
+        if (loaded.size() != 0) {
+            List<Pair<String>> changeList = new ArrayList<>(loaded.size());
+            for (Pair<String> change : loaded) {
+                changeList.add(DictChange.put(change.key, change.freq.longValue(),
+                        wordDict.getFreq(change.key, Double.NEGATIVE_INFINITY)));
             }
+            this.processor.onNext(changeList);
         }
-        // 把未被匹配的单字加入有向无环图
-        for (i = 0; i < N; ++i) {
-            if (!dag.containsKey(i)) {
-                List<Integer> value = new ArrayList<Integer>();
-                value.add(i);
-                dag.put(i, value);
+    }
+
+    /**
+     * 根据Trie词典来构建有向无环图
+     *
+     * @param sentence 句子
+     * @param runs     与词典无关的片段，见{@link #findRuns(String)}，为null时不跳过任何位置
+     * @return 有向无环图，不包含与词典无关的片段中的位置
+     */
+    private Map<Integer, List<Hit>> createDAG(String sentence, int[] runs) {
+        Map<Integer, List<Hit>> dag = new HashMap<>();
+        char[] chars = sentence.toCharArray();
+        int N = chars.length;
+        for (int i = 0; i < N; ++i) {
+            if (runs != null && runs[i] > 0) {
+                i = runs[i] - 1;
+                continue;
+            }
+            // 从i开始沿Trie向后匹配，记下所有词的尾部及对应的词典节点
+            List<Hit> value = new ArrayList<Hit>();
+            wordDict.matchAll(chars, i, N, value);
+            // 未被匹配的单字自成一词
+            if (value.isEmpty()) {
+                Hit hit = new Hit();
+                hit.setBegin(i);
+                hit.setEnd(i);
+                value.add(hit);
             }
+            // 在有向无环图中加入一个点，相当于记下线段首部
+            dag.put(i, value);
         }
         return dag;
     }
@@ -233,21 +406,52 @@ public class JiebaSegmenter {
      *
      * @param sentence 句子
      * @param dag      DAG图
-     * @return 路由表
+     * @param runs     与词典无关的片段，为null时没有
+     * @return 路由表，与词典无关的片段只在起点处有一项，其key为null
      */
-    private Map<Integer, Pair<Integer>> calc(String sentence, Map<Integer, List<Integer>> dag) {
+    private Map<Integer, Pair<Hit>> calc(String sentence, Map<Integer, List<Hit>> dag, int[] runs) {
         int N = sentence.length();
-        HashMap<Integer, Pair<Integer>> route = new HashMap<Integer, Pair<Integer>>();
-        route.put(N, new Pair<>(0, 0.0));
+        HashMap<Integer, Pair<Hit>> route = new HashMap<Integer, Pair<Hit>>();
+        route.put(N, new Pair<>(null, 0.0));
+        // 片段中的单字的频率，按字符缓存
+        double[] singleFreqs = null;
         for (int i = N - 1; i > -1; i--) {
-            Pair<Integer> candidate = null;
-            for (Integer x : dag.get(i)) {
-                double freq = wordDict.getFreq(sentence.substring(i, x + 1)) + route.get(x + 1).freq;
+            if (runs != null && !dag.containsKey(i)) {
+                // 片段中只有单字，按与逐字计算相同的顺序累加频率，保证片段之前的路由不变
+                if (singleFreqs == null) {
+                    singleFreqs = new double[128];
+                    Arrays.fill(singleFreqs, Double.NaN);
+                }
+                double freq = route.get(i + 1).freq;
+                while (true) {
+                    char ch = sentence.charAt(i);
+                    if (ch >= singleFreqs.length) {
+                        freq = wordDict.getFreq(String.valueOf(ch)) + freq;
+                    } else {
+                        if (Double.isNaN(singleFreqs[ch])) {
+                            singleFreqs[ch] = wordDict.getFreq(String.valueOf(ch));
+                        }
+                        freq = singleFreqs[ch] + freq;
+                    }
+                    if (runs[i] > 0) {
+                        break;
+                    }
+                    i--;
+                }
+                route.put(i, new Pair<>(null, freq));
+                continue;
+            }
+            Pair<Hit> candidate = null;
+            for (Hit hit : dag.get(i)) {
+                // 词典中的词直接使用词典节点上保存的词查询频率，无需截取子串
+                DictSegment ds = hit.getMatchedDictSegment();
+                double wordFreq = ds != null ? wordDict.getFreq(ds.getWord()) : wordDict.getFreq(sentence.substring(i, hit.getEnd() + 1));
+                double freq = wordFreq + route.get(hit.getEnd() + 1).freq;
                 if (null == candidate) {
-                    candidate = new Pair<>(x, freq);
+                    candidate = new Pair<>(hit, freq);
                 } else if (candidate.freq < freq) {
                     candidate.freq = freq;
-                    candidate.key = x;
+                    candidate.key = hit;
                 }
             }
             route.put(i, candidate);
@@ -255,40 +459,77 @@ public class JiebaSegmenter {
         return route;
     }
 
-    private List<SegToken> _process(List<String> tokenList, SegMode mode, int offset) {
-        List<SegToken> tokens = new ArrayList<>();
+    /**
+     * 判断在语句的位置p处切开分词是否与整体分词的结果相同。
+     * 调用者保证没有词典中的词越过语句的首尾及p，此时所有路径都经过p，p两侧的路径与语句之外的内容无关；
+     * 只要p两侧的路径不都是单字（连续的单字会一起交给HMM或合并为英文数字串），在p处切开就不影响结果
+     *
+     * @param sentence 规格化后的语句
+     * @param p        切分点
+     * @return 是否可以在p处切开
+     */
+    boolean isStableCut(String sentence, int p) {
+        Map<Integer, Pair<Hit>> route = calc(sentence, createDAG(sentence, null), null);
+        int x = 0;
+        int left = 0;
+        while (x < p) {
+            int y = route.get(x).key.getEnd() + 1;
+            left = y - x;
+            x = y;
+        }
+        return left > 1 || route.get(p).key.getEnd() + 1 - p > 1;
+    }
 
+    /**
+     * 获得路由中的词，词典中的词直接返回词典所保存的字符串，只有未登录词才会创建新的字符串
+     *
+     * @param sentence 句子
+     * @param hit      路由中的一段
+     * @return 词
+     */
+    private String wordOf(String sentence, Hit hit) {
+        DictSegment ds = hit.getMatchedDictSegment();
+        return ds != null ? ds.getWord() : sentence.substring(hit.getBegin(), hit.getEnd() + 1);
+    }
+
+    private void _process(List<String> tokenList, SegMode mode, int offset, TokenSink sink) {
         // SEARCH模式下，只处理一次句子，不对长的词句再次分解
         if (mode == SegMode.SEARCH) {
             for (String token : tokenList) {
-                tokens.add(new SegToken(token, offset, offset += token.length()));
+                if (TokenFilter.isGap(token)) {
+                    offset += token.length();
+                    continue;
+                }
+                sink.accept(token, offset, offset += token.length());
             }
         } else {
             // INDEX模式下，对长的词句不仅将其自身加入token，并且将其中的长度为2和3的词也加入token中
             for (String token : tokenList) {
+                if (TokenFilter.isGap(token)) {
+                    offset += token.length();
+                    continue;
+                }
                 if (token.length() > 2) {
                     String gram2;
                     int j = 0;
                     for (; j < token.length() - 1; ++j) {
-                        gram2 = token.substring(j, j + 2);
-                        if (wordDict.containsWord(gram2))
-                            tokens.add(new SegToken(gram2, offset + j, offset + j + 2));
+                        gram2 = wordDict.getWord(token, j, j + 2);
+                        if (gram2 != null)
+                            sink.accept(gram2, offset + j, offset + j + 2);
                     }
                 }
                 if (token.length() > 3) {
                     String gram3;
                     int j = 0;
                     for (; j < token.length() - 2; ++j) {
-                        gram3 = token.substring(j, j + 3);
-                        if (wordDict.containsWord(gram3))
-                            tokens.add(new SegToken(gram3, offset + j, offset + j + 3));
+                        gram3 = wordDict.getWord(token, j, j + 3);
+                        if (gram3 != null)
+                            sink.accept(gram3, offset + j, offset + j + 3);
                     }
                 }
-                tokens.add(new SegToken(token, offset, offset += token.length()));
+                sink.accept(token, offset, offset += token.length());
             }
         }
-
-        return tokens;
     }
 
     /**
@@ -311,75 +552,519 @@ public class JiebaSegmenter {
      * @return 词元集合
      */
     public List<SegToken> process(String paragraph, SegMode mode, boolean HMM) {
-        if (!HMM) {
-            return processWithNoHMM(paragraph, mode);
-        }
-        List<String> tokenList;
         List<SegToken> tokens = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
-        int offset = 0;
+        process(paragraph, mode, HMM, (word, start, end) -> tokens.add(new SegToken(word, start, end)));
+        return tokens;
+    }
+
+    /**
+     * 分词，以列式结构返回结果，不为每个词元创建对象
+     *
+     * @param paragraph 句子
+     * @param mode      分词模式
+     * @param HMM       是否开启HMM新词发现
+     * @param withTypes 是否记录词元的类型
+     * @return 分词结果
+     */
+    public SegResult processColumnar(String paragraph, SegMode mode, boolean HMM, boolean withTypes) {
+        SegResult.Builder builder = new SegResult.Builder(paragraph, withTypes);
+        process(paragraph, mode, HMM, (word, start, end) -> builder.add(start, end));
+        return builder.build();
+    }
+
+    /**
+     * 分词，以列式结构返回结果，不记录词元的类型
+     *
+     * @param paragraph 句子
+     * @param mode      分词模式
+     * @param HMM       是否开启HMM新词发现
+     * @return 分词结果
+     */
+    public SegResult processColumnar(String paragraph, SegMode mode, boolean HMM) {
+        return processColumnar(paragraph, mode, HMM, false);
+    }
+
+    /**
+     * 接收分词产生的词元
+     */
+    public interface TokenSink {
+        void accept(String word, int startOffset, int endOffset);
+    }
+
+    /**
+     * 分词，将词元依次交给sink，不创建词元对象。
+     * 词典中的词直接使用词典所保存的字符串
+     *
+     * @param paragraph 句子
+     * @param mode      分词模式
+     * @param HMM       是否开启HMM新词发现
+     * @param sink      用于接收词元
+     */
+    public void process(String paragraph, SegMode mode, boolean HMM, TokenSink sink) {
+        process(paragraph, mode, HMM, null, sink);
+    }
+
+    /**
+     * 在预算内分词，预算用尽后余下的文本依次降级为不使用HMM及正向最大匹配，
+     * 分词结束后可以通过预算了解是否发生了降级
+     *
+     * @param paragraph 句子
+     * @param mode      分词模式
+     * @param HMM       是否开启HMM新词发现
+     * @param budget    预算，每次分词使用一个新的预算
+     * @return 词元集合
+     */
+    public List<SegToken> process(String paragraph, SegMode mode, boolean HMM, SegBudget budget) {
+        List<SegToken> tokens = new ArrayList<>();
+        process(paragraph, mode, HMM, budget, (word, start, end) -> tokens.add(new SegToken(word, start, end)));
+        return tokens;
+    }
+
+    /**
+     * 在预算内分词，将词元依次交给sink。
+     * <p>
+     * 每个语块开始处理前检查预算；未设置窗口大小时以{@value #BUDGET_WINDOW_SIZE}个字符为窗口处理长语块，
+     * 使没有标点的长文本中途也能降级。因此即使未发生降级，长度达到窗口的{@value #MAX_WINDOW_FACTOR}倍
+     * 仍找不到安全切分点的语块也会被强制切分，结果可能与不带预算的分词不同（见{@link #setWindowSize(int)}）
+     *
+     * @param paragraph 句子
+     * @param mode      分词模式
+     * @param HMM       是否开启HMM新词发现
+     * @param budget    预算，每次分词使用一个新的预算，为null时不限制
+     * @param sink      用于接收词元
+     */
+    public void process(String paragraph, SegMode mode, boolean HMM, SegBudget budget, TokenSink sink) {
+        SlowLog slow = this.slowLog;
+        long start = slow != null ? System.nanoTime() : 0;
+        TokenFilter filter = this.tokenFilter;
+        if (mode == SegMode.FAST) {
+            processFast(paragraph, budget, filter, sink);
+        } else {
+            processDAG(paragraph, mode, HMM, windowOf(budget != null), budget, filter, sink, null);
+        }
+        if (budget != null) {
+            degradationStats.record(budget);
+        }
+        if (slow != null) {
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= slow.getThresholdNanos()) {
+                boolean budgeted = budget != null;
+                slow.submit(() -> profile(paragraph, mode, HMM, budgeted, elapsed, slow.getSampleChars()));
+            }
+        }
+    }
+
+    /**
+     * 设置慢分词日志。开启后每次分词只多读取两次时钟，超过阈值的输入在后台重新分词以统计各阶段的耗时。
+     * 也可以通过系统属性{@value #SLOW_LOG_CONFIG}设置阈值（毫秒）在创建分词器时开启
+     *
+     * @param slowLog 慢分词日志，为null时关闭
+     */
+    public void setSlowLog(SlowLog slowLog) {
+        this.slowLog = slowLog;
+    }
+
+    public SlowLog getSlowLog() {
+        return slowLog;
+    }
+
+    /**
+     * 设置词元过滤规则，对之后的所有分词生效（{@link #sentenceProcess(String, boolean)}除外）。
+     * 被丢弃的词元不会交给sink，也不会创建词元对象或截取字符串，保留的词元的偏移量不变
+     *
+     * @param tokenFilter 过滤规则，为null时不过滤
+     */
+    public void setTokenFilter(TokenFilter tokenFilter) {
+        this.tokenFilter = tokenFilter;
+    }
+
+    public TokenFilter getTokenFilter() {
+        return tokenFilter;
+    }
+
+    /**
+     * 慢分词日志重新分词时各阶段的耗时
+     */
+    private static final class Stages {
+        long dagNanos;
+        long routeNanos;
+        long viterbiNanos;
+        int oovFragments;
+
+        /**
+         * @return 统计时为当前时间，否则为0，不统计时不读取时钟
+         */
+        static long now(Stages stages) {
+            return stages != null ? System.nanoTime() : 0;
+        }
+
+        /**
+         * 记录一次构建DAG（含查找与词典无关的片段）及计算最优路径的耗时
+         */
+        void record(long start, long dagDone, long routeDone) {
+            dagNanos += dagDone - start;
+            routeNanos += routeDone - dagDone;
+        }
+    }
+
+    /**
+     * 沿与原分词相同的路径（相同的窗口大小，但不限预算）重新对段落分词，统计各阶段的耗时。
+     * HMM不使用缓存，统计的是切分未登录片段的实际耗时
+     */
+    SlowLog.Record profile(String paragraph, SegMode mode, boolean HMM, boolean budgeted, long elapsedNanos,
+                           int sampleChars) {
+        int longestRun = 0;
+        int run = 0;
         for (int i = 0; i < paragraph.length(); ++i) {
-            char ch = CharacterUtil.regularize(paragraph.charAt(i));
-            // 如果找到的是中文字符，加入处理语块中
-            if (CharacterUtil.ccFind(ch))
+            run = CharacterUtil.ccFind(CharacterUtil.regularize(paragraph.charAt(i))) ? run + 1 : 0;
+            longestRun = Math.max(longestRun, run);
+        }
+        TokenSink discard = (word, start, end) -> {
+        };
+        Stages stages = new Stages();
+        if (mode == SegMode.FAST) {
+            long t0 = System.nanoTime();
+            processFast(paragraph, null, null, discard);
+            stages.dagNanos = System.nanoTime() - t0;
+        } else {
+            processDAG(paragraph, mode, HMM, windowOf(budgeted), null, tokenFilter, discard, stages);
+        }
+        return new SlowLog.Record(paragraph, sampleChars, mode, HMM, elapsedNanos,
+                stages.dagNanos, stages.routeNanos, stages.viterbiNanos, longestRun, stages.oovFragments);
+    }
+
+    /**
+     * 直接对UTF-8编码的字节分词，不把整段文本解码为字符串。
+     * <p>
+     * 逐个解码buf[position, limit)中的码点，只有当前语块的字符被保存下来用于构建DAG，
+     * 标点符号及其它不参与分词的字符直接作为词元输出。读取时只使用绝对位置，不改变缓冲区的position，
+     * 直接缓冲区及内存映射的缓冲区不会被复制到堆中。
+     * <p>
+     * 字节偏移量为在缓冲区中的绝对位置；字符偏移量为解码后的字符串中的位置（从position开始计算）。
+     * 非法的字节序列作为U+FFFD输出，辅助平面的字符作为一个词元输出（字符串分词时为两个词元）
+     *
+     * @param buf         UTF-8编码的文本
+     * @param mode        分词模式
+     * @param HMM         是否开启HMM新词发现
+     * @param charOffsets 为true时输出字符偏移量，否则输出字节偏移量
+     * @param sink        用于接收词元
+     */
+    public void process(ByteBuffer buf, SegMode mode, boolean HMM, boolean charOffsets, TokenSink sink) {
+        TokenFilter filter = this.tokenFilter;
+        Utf8.Offsets offsets = new Utf8.Offsets(filter != null ? filter.wrap(sink) : sink, charOffsets);
+        StringBuilder sb = new StringBuilder();
+        int window = mode == SegMode.FAST ? 0 : windowSize;
+        int flushThreshold = window;
+        // 语块中已提交的字符数
+        int committed = 0;
+        // 已解码的字符数
+        int chars = 0;
+        int limit = buf.limit();
+        int i = buf.position();
+        while (i < limit) {
+            int decoded = Utf8.decode(buf, i, limit);
+            int cp = Utf8.codePoint(decoded);
+            int next = i + Utf8.length(decoded);
+            char ch = cp < Character.MIN_SUPPLEMENTARY_CODE_POINT ? CharacterUtil.regularize((char) cp) : 0;
+            if (CharacterUtil.ccFind(ch)) {
+                if (sb.length() == 0) {
+                    offsets.reset(chars);
+                }
                 sb.append(ch);
-                // 遇到标点符号或尾部，开始处理语块
-            else {
+                offsets.add(i);
+                if (window > 0 && sb.length() >= flushThreshold) {
+                    offsets.add(next);
+                    int n = flushWindow(sb, committed, window, mode, HMM, null, null, offsets, null);
+                    offsets.removeLast();
+                    if (n > 0) {
+                        committed += n;
+                        offsets.commit(committed);
+                    }
+                    flushThreshold = sb.length() + window;
+                }
+                chars++;
+            } else {
                 if (sb.length() > 0) {
-                    tokenList = sentenceProcess(sb.toString());
-                    tokens.addAll(_process(tokenList, mode, offset));
-
-                    sb = new StringBuilder();
-                    offset = i;
+                    offsets.add(i);
+                    processUtf8Block(sb.toString(), mode, HMM, committed, offsets);
+                    sb.setLength(0);
+                    committed = 0;
+                    flushThreshold = window;
                 }
-                // 将标点符号也加入token中
-                tokens.add(new SegToken(paragraph.substring(i, i + 1), offset, ++offset));
+                int length = Character.charCount(cp);
+                // 基本平面的字符在创建字符串之前过滤，辅助平面的字符很少出现，创建字符串后再过滤
+                String word = length == 1 ? null : new String(Character.toChars(cp));
+                if (filter == null || (word == null ? filter.accept((char) cp) : filter.accept(word))) {
+                    if (word == null) {
+                        word = String.valueOf((char) cp);
+                    }
+                    if (charOffsets) {
+                        sink.accept(word, chars, chars + length);
+                    } else {
+                        sink.accept(word, i, next);
+                    }
+                }
+                chars += length;
             }
+            i = next;
         }
-        // 若有剩余未处理的中文字符
         if (sb.length() > 0) {
-            tokenList = sentenceProcess(sb.toString());
-            tokens.addAll(_process(tokenList, mode, offset));
+            offsets.add(limit);
+            processUtf8Block(sb.toString(), mode, HMM, committed, offsets);
         }
-
-        return tokens;
     }
 
     /**
-     * 分词，默认不开启HMM新词发现
+     * 对UTF-8编码的字节数组中的一段分词，字节偏移量为在数组中的下标
      *
-     * @param paragraph 句子
-     * @param mode      分词模式
-     * @return 词元集合
+     * @see #process(ByteBuffer, SegMode, boolean, boolean, TokenSink)
      */
-    private List<SegToken> processWithNoHMM(String paragraph, SegMode mode) {
-        List<String> tokenList;
-        List<SegToken> tokens = new ArrayList<>();
+    public void process(byte[] utf8, int offset, int length, SegMode mode, boolean HMM, boolean charOffsets,
+                        TokenSink sink) {
+        process(ByteBuffer.wrap(utf8, offset, length), mode, HMM, charOffsets, sink);
+    }
+
+    private void processUtf8Block(String sentence, SegMode mode, boolean HMM, int offset, TokenSink sink) {
+        if (mode == SegMode.FAST) {
+            maxMatcher.cut(sentence, 0, sentence.length(), true, sink);
+        } else {
+            processBlock(sentence, mode, HMM, offset, null, null, sink, null);
+        }
+    }
+
+    /**
+     * @param budgeted 是否带预算分词
+     * @return 处理长语块时使用的窗口大小，0表示不分窗口
+     */
+    private int windowOf(boolean budgeted) {
+        return budgeted && windowSize == 0 ? BUDGET_WINDOW_SIZE : windowSize;
+    }
+
+    private void processDAG(String paragraph, SegMode mode, boolean HMM, int window, SegBudget budget,
+                            TokenFilter filter, TokenSink sink, Stages stages) {
+        // 语块中的词元在交给sink前过滤，语块之外的单个字符在截取字符串前过滤
+        TokenSink blockSink = filter != null ? filter.wrap(sink) : sink;
         StringBuilder sb = new StringBuilder();
         int offset = 0;
+        // 语块达到该长度时尝试提交已确定的部分
+        int flushThreshold = window;
         for (int i = 0; i < paragraph.length(); ++i) {
             char ch = CharacterUtil.regularize(paragraph.charAt(i));
-            if (CharacterUtil.ccFind(ch))
+            // 如果找到的是中文字符，加入处理语块中
+            if (CharacterUtil.ccFind(ch)) {
                 sb.append(ch);
+                if (window > 0 && sb.length() >= flushThreshold) {
+                    offset += flushWindow(sb, offset, window, mode, HMM, budget, filter, blockSink, stages);
+                    flushThreshold = sb.length() + window;
+                }
+            }
+            // 遇到标点符号或尾部，开始处理语块
             else {
                 if (sb.length() > 0) {
-                    tokenList = sentenceProcessWithNoHMM(sb.toString());
-                    tokens.addAll(_process(tokenList, mode, offset));
+                    processBlock(sb.toString(), mode, HMM, offset, budget, filter, blockSink, stages);
+
                     sb = new StringBuilder();
                     offset = i;
+                    flushThreshold = window;
+                }
+                // 将标点符号也加入token中
+                if (filter == null || filter.accept(paragraph.charAt(i))) {
+                    sink.accept(paragraph.substring(i, i + 1), offset, offset + 1);
                 }
-                if (wordDict.containsWord(paragraph.substring(i, i + 1)))
-                    tokens.add(new SegToken(paragraph.substring(i, i + 1), offset, ++offset));
-                else
-                    tokens.add(new SegToken(paragraph.substring(i, i + 1), offset, ++offset));
+                offset++;
             }
         }
+        // 若有剩余未处理的中文字符
         if (sb.length() > 0) {
-            tokenList = sentenceProcessWithNoHMM(sb.toString());
-            tokens.addAll(_process(tokenList, mode, offset));
+            processBlock(sb.toString(), mode, HMM, offset, budget, filter, blockSink, stages);
         }
+    }
 
-        return tokens;
+    /**
+     * FAST模式，在规格化后的段落上直接对每个语块做双向最大匹配，不复制语块，不分窗口。
+     * 预算用尽后只做正向最大匹配
+     */
+    private void processFast(String paragraph, SegBudget budget, TokenFilter filter, TokenSink sink) {
+        TokenSink blockSink = filter != null ? filter.wrap(sink) : sink;
+        String text = regularize(paragraph);
+        int blockStart = -1;
+        for (int i = 0; i < text.length(); ++i) {
+            if (CharacterUtil.ccFind(text.charAt(i))) {
+                if (blockStart < 0) {
+                    blockStart = i;
+                }
+            } else {
+                if (blockStart >= 0) {
+                    matchBlock(text, blockStart, i, budget, blockSink);
+                    blockStart = -1;
+                }
+                if (filter == null || filter.accept(paragraph.charAt(i))) {
+                    sink.accept(paragraph.substring(i, i + 1), i, i + 1);
+                }
+            }
+        }
+        if (blockStart >= 0) {
+            matchBlock(text, blockStart, text.length(), budget, blockSink);
+        }
+    }
+
+    private void matchBlock(String text, int begin, int end, SegBudget budget, TokenSink sink) {
+        SegBudget.Level level = budget != null ? budget.check() : SegBudget.Level.FULL;
+        maxMatcher.cut(text, begin, end, level != SegBudget.Level.MAX_MATCH, sink);
+        if (budget != null) {
+            budget.consume(level, end - begin);
+        }
+    }
+
+    /**
+     * 规格化段落中的每个字符，没有需要转换的字符时直接返回原段落
+     */
+    private static String regularize(String paragraph) {
+        char[] chars = null;
+        for (int i = 0; i < paragraph.length(); i++) {
+            char ch = paragraph.charAt(i);
+            char regularized = CharacterUtil.regularize(ch);
+            if (regularized != ch && chars == null) {
+                chars = paragraph.toCharArray();
+            }
+            if (chars != null) {
+                chars[i] = regularized;
+            }
+        }
+        return chars != null ? new String(chars) : paragraph;
+    }
+
+    /**
+     * 处理一个完整的语块，有预算时按预算选择策略
+     */
+    private void processBlock(String sentence, SegMode mode, boolean HMM, int offset, SegBudget budget,
+                              TokenFilter filter, TokenSink sink, Stages stages) {
+        List<String> tokenList;
+        if (budget == null) {
+            tokenList = sentenceProcess(sentence, HMM, filter, stages);
+        } else {
+            SegBudget.Level level = budget.check();
+            if (level == SegBudget.Level.MAX_MATCH) {
+                List<String> tokens = new ArrayList<>();
+                maxMatcher.cut(sentence, 0, sentence.length(), false, (word, start, end) -> tokens.add(word));
+                tokenList = tokens;
+            } else {
+                tokenList = sentenceProcess(sentence, HMM && level == SegBudget.Level.FULL, filter, null);
+            }
+            budget.consume(level, sentence.length());
+        }
+        _process(tokenList, mode, offset, sink);
+    }
+
+    /**
+     * @return 带预算的分词的降级统计
+     */
+    public DegradationStats getDegradationStats() {
+        return degradationStats;
+    }
+
+    /**
+     * 设置分窗口处理长语块时的窗口大小。
+     * <p>
+     * 语块（连续的、不含标点的字符）的长度每增加一个窗口，就在已缓存的语块上寻找一个安全切分点：
+     * 在该点之前开始的词都不会越过该点，且该点距语块末尾不少于词典中最长的词的长度，
+     * 此时该点之前的最优路径与之后的内容无关，可以先行提交，剩余部分留在下一个窗口中继续处理。
+     * 存在安全切分点时，结果与不分窗口时相同；若语块长度达到窗口的{@value #MAX_WINDOW_FACTOR}倍
+     * 仍找不到安全切分点，则在当前路径上强制切分。
+     *
+     * @param windowSize 窗口大小（字符数），不大于0时不分窗口
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(0, windowSize);
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * 在语块中找到安全切分点，对其之前的部分进行分词，并将其从语块中移除
+     *
+     * @param sb     语块
+     * @param offset 语块在段落中的偏移量
+     * @param window 窗口大小
+     * @param mode   分词模式
+     * @param HMM    是否开启HMM新词发现
+     * @param budget 预算，为null时不限制
+     * @param filter 词元过滤规则，为null时不过滤
+     * @param sink   用于接收词元
+     * @param stages 各阶段的耗时，为null时不统计
+     * @return 已提交的字符数
+     */
+    private int flushWindow(StringBuilder sb, int offset, int window, SegMode mode, boolean HMM, SegBudget budget,
+                            TokenFilter filter, TokenSink sink, Stages stages) {
+        SegBudget.Level level = budget != null ? budget.check() : SegBudget.Level.FULL;
+        // 正向最大匹配没有需要限制的中间状态，留到语块结束时一次处理
+        if (level == SegBudget.Level.MAX_MATCH) {
+            return 0;
+        }
+        HMM = HMM && level == SegBudget.Level.FULL;
+        String sentence = sb.toString();
+        int N = sentence.length();
+        // 切分点之后至少要保留一个最长词的长度，保证在切分点之前开始的词都已出现在DAG中
+        int limit = N - Math.max(wordDict.getMaxWordLength(), 1) + 1;
+        if (limit <= 0) {
+            return 0;
+        }
+        long t0 = Stages.now(stages);
+        Map<Integer, List<Hit>> dag = createDAG(sentence, null);
+        long t1 = Stages.now(stages);
+        Map<Integer, Pair<Hit>> route = calc(sentence, dag, null);
+        if (stages != null) {
+            stages.record(t0, t1, System.nanoTime());
+        }
+
+        // 寻找最靠后的、没有词越过的位置，所有路径都必然经过该位置
+        int safe = 0;
+        int reach = 0;
+        for (int p = 1; p <= limit; p++) {
+            for (Hit hit : dag.get(p - 1)) {
+                reach = Math.max(reach, hit.getEnd() + 1);
+            }
+            if (reach <= p) {
+                safe = p;
+            }
+        }
+        boolean force = N >= window * MAX_WINDOW_FACTOR;
+        int target = safe > 0 || !force ? safe : limit;
+
+        // 沿路径前进，只在多字词之后提交，避免切断连续的单字（它们需要一起交给HMM或合并为英文数字串）
+        int commit = 0;
+        int x = 0;
+        while (x < target) {
+            int y = route.get(x).key.getEnd() + 1;
+            if (y > target) {
+                break;
+            }
+            if (y - x > 1) {
+                commit = y;
+            }
+            x = y;
+        }
+        if (force) {
+            commit = x;
+        }
+        if (commit == 0) {
+            return 0;
+        }
+
+        List<String> tokenList = new ArrayList<>();
+        if (HMM) {
+            cutRoute(sentence, route, null, commit, tokenList, filter, stages);
+        } else {
+            cutRouteWithNoHMM(sentence, route, null, commit, tokenList, filter);
+        }
+        _process(tokenList, mode, offset, sink);
+        sb.delete(0, commit);
+        if (budget != null) {
+            budget.consume(level, commit);
+        }
+        return commit;
     }
 
     /**
@@ -400,90 +1085,300 @@ public class JiebaSegmenter {
      * @return 分好的词序列
      */
     public List<String> sentenceProcess(String sentence, boolean HMM) {
+        return sentenceProcess(sentence, HMM, null, null);
+    }
+
+    /**
+     * @param filter 词元过滤规则，为null时不过滤；按类型丢弃的词以占位符代替（见{@link TokenFilter#isGap(String)}）
+     * @param stages 各阶段的耗时，为null时不统计
+     */
+    private List<String> sentenceProcess(String sentence, boolean HMM, TokenFilter filter, Stages stages) {
         if (!HMM) {
-            return sentenceProcessWithNoHMM(sentence);
+            return sentenceProcessWithNoHMM(sentence, filter, stages);
         }
         List<String> tokens = new ArrayList<>();
+        long t0 = Stages.now(stages);
+        int[] runs = findRuns(sentence);
+        if (runs != null && runs[0] == sentence.length()) {
+            // 整个语块都与词典无关
+            if (stages != null) {
+                long t1 = System.nanoTime();
+                stages.record(t0, t1, t1);
+            }
+            processBuf(tokens, sentence, 0, sentence.length(), null, filter, stages);
+            return tokens;
+        }
+        Map<Integer, List<Hit>> dag = createDAG(sentence, runs);
+        long t1 = Stages.now(stages);
+        Map<Integer, Pair<Hit>> route = calc(sentence, dag, runs);
+        if (stages != null) {
+            stages.record(t0, t1, System.nanoTime());
+        }
+        cutRoute(sentence, route, runs, sentence.length(), tokens, filter, stages);
+        return tokens;
+    }
+
+    /**
+     * 找出语块中与词典无关的片段：由英文、数字及连接符组成的最长片段，且词典中没有词在片段中开始或越过片段的起点。
+     * 这些片段在最优路径上都是单字，不必逐字构建DAG，直接交给{@link CharacterUtil#splitAlphanumeric}切分。
+     * 可能与之重叠的词（如"c++"、"k8s"、"卡拉ok"）存在时，片段仍按词典逐字处理
+     *
+     * @param sentence 规格化后的语块
+     * @return 片段的起点处为片段的终点，其他位置为0；没有这样的片段时返回null
+     */
+    private int[] findRuns(String sentence) {
+        int[] runs = null;
         int N = sentence.length();
-        Map<Integer, List<Integer>> dag = createDAG(sentence);
-        Map<Integer, Pair<Integer>> route = calc(sentence, dag);
+        int maxWordLength = wordDict.getMaxWordLength();
+        int i = 0;
+        while (i < N) {
+            if (CharacterUtil.isChineseLetter(sentence.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < N && !CharacterUtil.isChineseLetter(sentence.charAt(i))) {
+                i++;
+            }
+            boolean free = true;
+            for (int j = Math.max(0, start - maxWordLength + 1); j < i && free; j++) {
+                // 字典树的根节点没有该字符时，不会有词从这里开始
+                if (!wordDict.mayStartWord(sentence.charAt(j))) {
+                    continue;
+                }
+                String word = wordDict.matchLongest(sentence, j, N);
+                free = word == null || (j < start && j + word.length() <= start);
+            }
+            if (free) {
+                if (runs == null) {
+                    runs = new int[N];
+                }
+                runs[start] = i;
+            }
+        }
+        return runs;
+    }
 
+    /**
+     * 沿最优路径从句首切分到end，连续的单字交由processBuf处理
+     *
+     * @param sentence 句子
+     * @param route    最优路径
+     * @param runs     与词典无关的片段，为null时没有
+     * @param N        结束位置（不包含），必须位于路径上
+     * @param tokens   分词结果
+     * @param filter   词元过滤规则，为null时不过滤
+     * @param stages   各阶段的耗时，为null时不统计
+     */
+    private void cutRoute(String sentence, Map<Integer, Pair<Hit>> route, int[] runs, int N, List<String> tokens,
+                          TokenFilter filter, Stages stages) {
         int x = 0;
         int y;
-        String buf;
-        StringBuilder sb = new StringBuilder();
+        // 连续单字的起始位置
+        int bufStart = -1;
+        Hit single = null;
         while (x < N) {
-            y = route.get(x).key + 1;
-            String lWord = sentence.substring(x, y);
-            if (y - x == 1)
-                sb.append(lWord);
-            else {
-                if (sb.length() > 0) {
-                    buf = sb.toString();
-                    sb = new StringBuilder();
-                    processBuf(tokens, buf);
+            if (runs != null && runs[x] > 0) {
+                // 片段中都是单字，与前后的单字一起处理
+                if (bufStart < 0) {
+                    bufStart = x;
                 }
-                tokens.add(lWord);
+                single = null;
+                x = runs[x];
+                continue;
+            }
+            Hit hit = route.get(x).key;
+            y = hit.getEnd() + 1;
+            if (y - x == 1) {
+                if (bufStart < 0) {
+                    bufStart = x;
+                }
+                single = hit;
+            } else {
+                if (bufStart >= 0) {
+                    processBuf(tokens, sentence, bufStart, x, single, filter, stages);
+                    bufStart = -1;
+                }
+                tokens.add(wordOf(sentence, hit));
             }
             x = y;
         }
-        buf = sb.toString();
-        if (buf.length() > 0) {
-            processBuf(tokens, buf);
+        if (bufStart >= 0) {
+            processBuf(tokens, sentence, bufStart, N, single, filter, stages);
         }
-        return tokens;
     }
 
-    private void processBuf(List<String> tokens, String buf) {
-        if (buf.length() == 1) {
-            tokens.add(buf);
+    /**
+     * 处理连续的单字，若其组成了词典中的词则作为一个词，否则交由HMM切分
+     *
+     * @param tokens   分词结果
+     * @param sentence 句子
+     * @param begin    开始位置
+     * @param end      结束位置（不包含）
+     * @param last     最后一个单字在路由中的一段，为null时最后一个单字位于与词典无关的片段中
+     * @param filter   词元过滤规则，为null时不过滤
+     * @param stages   各阶段的耗时，为null时不统计
+     */
+    private void processBuf(List<String> tokens, String sentence, int begin, int end, Hit last, TokenFilter filter,
+                            Stages stages) {
+        if (end - begin == 1) {
+            DictSegment ds = last != null ? last.getMatchedDictSegment() : null;
+            tokens.add(ds != null ? ds.getWord() : substring(filter, sentence, begin, end));
         } else {
-            if (wordDict.containsWord(buf)) {
-                tokens.add(buf);
+            String word = wordDict.getWord(sentence, begin, end);
+            if (word != null) {
+                tokens.add(word);
+            } else if (!hasChinese(sentence, begin, end)) {
+                // 没有中文时HMM只会按英文数字切分（强制切分词只作用于其中的中文），不必截取子串及查询缓存
+                CharacterUtil.splitAlphanumeric(sentence, begin, end, tokens, filter);
+            } else if (filter != null && filter.dropsNonChinese()) {
+                // HMM只切分其中的中文，其余部分按英文数字切分，被丢弃的部分不截取子串
+                int i = begin;
+                while (i < end) {
+                    boolean chinese = CharacterUtil.isChineseLetter(sentence.charAt(i));
+                    int j = i + 1;
+                    while (j < end && CharacterUtil.isChineseLetter(sentence.charAt(j)) == chinese) {
+                        j++;
+                    }
+                    if (chinese) {
+                        cutHMM(sentence, i, j, tokens, stages);
+                    } else {
+                        CharacterUtil.splitAlphanumeric(sentence, i, j, tokens, filter);
+                    }
+                    i = j;
+                }
             } else {
-                finalSeg.cut(buf, tokens);
+                cutHMM(sentence, begin, end, tokens, stages);
             }
         }
     }
 
+    private void cutHMM(String sentence, int begin, int end, List<String> tokens, Stages stages) {
+        if (stages == null) {
+            finalSeg.cut(sentence.substring(begin, end), tokens, wordDict.getForceSplitWords());
+        } else {
+            // 不使用缓存，统计的是HMM的实际耗时
+            long t0 = System.nanoTime();
+            finalSeg.cutWithoutCache(sentence.substring(begin, end), tokens, wordDict.getForceSplitWords());
+            stages.viterbiNanos += System.nanoTime() - t0;
+            stages.oovFragments++;
+        }
+    }
+
+    /**
+     * 截取语块中不在词典中的词，按类型被丢弃的词以占位符代替
+     */
+    private static String substring(TokenFilter filter, String sentence, int begin, int end) {
+        return filter != null ? filter.substring(sentence, begin, end) : sentence.substring(begin, end);
+    }
+
+    private static boolean hasChinese(String sentence, int begin, int end) {
+        for (int i = begin; i < end; i++) {
+            if (CharacterUtil.isChineseLetter(sentence.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 分词，默认不开启HMM新词发现
      *
      * @param sentence 句子
+     * @param filter   词元过滤规则，为null时不过滤
+     * @param stages   各阶段的耗时，为null时不统计
      * @return 分好的词序列
      */
-    private List<String> sentenceProcessWithNoHMM(String sentence) {
+    private List<String> sentenceProcessWithNoHMM(String sentence, TokenFilter filter, Stages stages) {
         List<String> tokens = new ArrayList<>();
-        int N = sentence.length();
-        Map<Integer, List<Integer>> dag = createDAG(sentence);
-        Map<Integer, Pair<Integer>> route = calc(sentence, dag);
+        long t0 = Stages.now(stages);
+        int[] runs = findRuns(sentence);
+        if (runs != null && runs[0] == sentence.length()) {
+            if (stages != null) {
+                long t1 = System.nanoTime();
+                stages.record(t0, t1, t1);
+            }
+            cutRunWithNoHMM(sentence, 0, sentence.length(), tokens, filter);
+            return tokens;
+        }
+        Map<Integer, List<Hit>> dag = createDAG(sentence, runs);
+        long t1 = Stages.now(stages);
+        Map<Integer, Pair<Hit>> route = calc(sentence, dag, runs);
+        if (stages != null) {
+            stages.record(t0, t1, System.nanoTime());
+        }
+        cutRouteWithNoHMM(sentence, route, runs, sentence.length(), tokens, filter);
+        return tokens;
+    }
+
+    /**
+     * 沿最优路径从句首切分到end，连续的单个英文字母或数字合并为一个词
+     *
+     * @param sentence 句子
+     * @param route    最优路径
+     * @param runs     与词典无关的片段，为null时没有
+     * @param N        结束位置（不包含），必须位于路径上
+     * @param tokens   分词结果
+     * @param filter   词元过滤规则，为null时不过滤
+     */
+    private void cutRouteWithNoHMM(String sentence, Map<Integer, Pair<Hit>> route, int[] runs, int N,
+                                   List<String> tokens, TokenFilter filter) {
         int x = 0;
         int y;
-        String buf;
-        StringBuilder sb = new StringBuilder();
+        // 连续的单个英文字母或数字的起始位置
+        int bufStart = -1;
         while (x < N) {
-            y = route.get(x).key + 1;
-            String lWord = sentence.substring(x, y);
-
-            if (Pattern.compile("[a-zA-Z0-9]").matcher(lWord).find() && lWord.length() == 1) {
-                sb.append(lWord);
-                x = y;
+            if (runs != null && runs[x] > 0) {
+                // 片段的前后都是中文，不会与其他单字合并
+                x = cutRunWithNoHMM(sentence, x, runs[x], tokens, filter);
+                continue;
+            }
+            Hit hit = route.get(x).key;
+            y = hit.getEnd() + 1;
+            char ch = sentence.charAt(x);
+            if (y - x == 1 && (CharacterUtil.isEnglishLetter(ch) || CharacterUtil.isDigit(ch))) {
+                if (bufStart < 0) {
+                    bufStart = x;
+                }
             } else {
-                if (sb.length() > 0) {
-                    tokens.add(sb.toString());
-                    sb.setLength(0);
+                if (bufStart >= 0) {
+                    tokens.add(wordOrSubstring(sentence, bufStart, x, filter));
+                    bufStart = -1;
                 }
-                tokens.add(lWord);
-                x = y;
+                tokens.add(wordOf(sentence, hit));
             }
+            x = y;
+        }
 
+        if (bufStart >= 0) {
+            tokens.add(wordOrSubstring(sentence, bufStart, N, filter));
         }
+    }
 
-        buf = sb.toString();
-        if (buf.length() > 0) {
-            tokens.add(sb.toString());
-            sb.setLength(0);
+    /**
+     * 切分与词典无关的片段，连续的英文字母或数字合并为一个词，其他字符各为一个词
+     *
+     * @param filter 词元过滤规则，为null时不过滤
+     * @return 片段的终点
+     */
+    private static int cutRunWithNoHMM(String sentence, int begin, int end, List<String> tokens, TokenFilter filter) {
+        int i = begin;
+        while (i < end) {
+            int j = i;
+            while (j < end && (CharacterUtil.isEnglishLetter(sentence.charAt(j)) || CharacterUtil.isDigit(sentence.charAt(j)))) {
+                j++;
+            }
+            if (j == i) {
+                j++;
+            }
+            tokens.add(substring(filter, sentence, i, j));
+            i = j;
         }
-        return tokens;
+        return end;
+    }
+
+    private String wordOrSubstring(String sentence, int begin, int end, TokenFilter filter) {
+        String word = wordDict.getWord(sentence, begin, end);
+        return word != null ? word : substring(filter, sentence, begin, end);
     }
 }
@@ -0,0 +1,151 @@
+package org.manlier.analysis.jieba;
+
+import java.util.Arrays;
+
+/**
+ * 基于词典树的最大匹配分词，用于FAST模式及预算用尽后的降级处理。
+ * <p>
+ * 正向最大匹配从左到右每次取以当前位置开始的最长的词；逆向最大匹配从右到左每次取以当前位置结尾的最长的词。
+ * 双向最大匹配同时计算两者，选择词数较少的结果，词数相同时选择单字较少的结果，仍相同时选择逆向的结果。
+ * <p>
+ * 双向匹配时只从每个位置沿词典树匹配一次，同时记下以该位置开始的最长的词及以每个位置结尾的最长的词，
+ * 两个方向的匹配都只需在这两个数组上跳转。不构建DAG，也不计算最大概率路径，
+ * 数组由每个线程复用，分词时不分配中间结构。与不开启HMM时相同，连续的单个英文字母或数字合并为一个词
+ */
+final class MaxMatcher {
+
+    private final WordDictionary wordDict;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    MaxMatcher(WordDictionary wordDict) {
+        this.wordDict = wordDict;
+    }
+
+    /**
+     * 对text[begin, end)分词
+     *
+     * @param text          规格化后的文本
+     * @param begin         开始位置
+     * @param end           结束位置（不包含）
+     * @param bidirectional 是否使用双向最大匹配，否则只使用正向最大匹配
+     * @param sink          接收词元，偏移量为在text中的位置
+     */
+    void cut(String text, int begin, int end, boolean bidirectional, JiebaSegmenter.TokenSink sink) {
+        if (!bidirectional) {
+            forward(text, begin, end, sink);
+            return;
+        }
+        int n = end - begin;
+        Scratch s = scratch.get();
+        s.ensureCapacity(n, wordDict.getMaxWordLength());
+        // 下标均相对于begin：longestEnd[i]为以i开始的最长的词的结束位置，
+        // longestStart[j]为以j结尾的最长的词的开始位置，next[i]为逆向匹配中以i开始的词的结束位置
+        int[] longestEnd = s.longestEnd;
+        int[] longestStart = s.longestStart;
+        int[] next = s.next;
+        int[] ends = s.ends;
+        for (int j = 1; j <= n; j++) {
+            longestStart[j] = j - 1;
+        }
+        for (int i = 0; i < n; i++) {
+            longestEnd[i] = i + 1;
+            int count = wordDict.matchEnds(text, begin + i, end, ends);
+            for (int k = 0; k < count; k++) {
+                int j = ends[k] - begin;
+                longestEnd[i] = j;
+                // i从小到大，最先记下的就是最长的词
+                if (longestStart[j] > i) {
+                    longestStart[j] = i;
+                }
+            }
+        }
+
+        int forwardCount = 0;
+        int forwardSingles = 0;
+        for (int i = 0; i < n; i = longestEnd[i]) {
+            forwardCount++;
+            if (longestEnd[i] - i == 1) {
+                forwardSingles++;
+            }
+        }
+        int backwardCount = 0;
+        int backwardSingles = 0;
+        for (int j = n; j > 0; j = longestStart[j]) {
+            next[longestStart[j]] = j;
+            backwardCount++;
+            if (j - longestStart[j] == 1) {
+                backwardSingles++;
+            }
+        }
+        int[] chosen = forwardCount < backwardCount
+                || (forwardCount == backwardCount && forwardSingles < backwardSingles) ? longestEnd : next;
+
+        int bufStart = -1;
+        for (int i = 0; i < n; i = chosen[i]) {
+            int x = begin + i;
+            int y = begin + chosen[i];
+            bufStart = emit(text, x, y, wordDict.getWord(text, x, y), bufStart, sink);
+        }
+        flush(text, bufStart, end, sink);
+    }
+
+    /**
+     * 正向最大匹配，逐个词向后匹配，不需要额外的数组
+     */
+    private void forward(String text, int begin, int end, JiebaSegmenter.TokenSink sink) {
+        int bufStart = -1;
+        int x = begin;
+        while (x < end) {
+            String word = wordDict.matchLongest(text, x, end);
+            int y = word != null ? x + word.length() : x + 1;
+            bufStart = emit(text, x, y, word, bufStart, sink);
+            x = y;
+        }
+        flush(text, bufStart, end, sink);
+    }
+
+    /**
+     * 输出text[x, y)，连续的单个英文字母或数字先缓存起来
+     *
+     * @param word 词典中保存的词，不在词典中时为null
+     * @return 缓存的英文字母或数字的起始位置，没有时为-1
+     */
+    private int emit(String text, int x, int y, String word, int bufStart, JiebaSegmenter.TokenSink sink) {
+        char ch = text.charAt(x);
+        if (y - x == 1 && (CharacterUtil.isEnglishLetter(ch) || CharacterUtil.isDigit(ch))) {
+            return bufStart < 0 ? x : bufStart;
+        }
+        flush(text, bufStart, x, sink);
+        sink.accept(word != null ? word : text.substring(x, y), x, y);
+        return -1;
+    }
+
+    private void flush(String text, int bufStart, int end, JiebaSegmenter.TokenSink sink) {
+        if (bufStart >= 0) {
+            String word = wordDict.getWord(text, bufStart, end);
+            sink.accept(word != null ? word : text.substring(bufStart, end), bufStart, end);
+        }
+    }
+
+    /**
+     * 每个线程复用的数组
+     */
+    private static final class Scratch {
+        int[] longestEnd = new int[0];
+        int[] longestStart = new int[0];
+        int[] next = new int[0];
+        int[] ends = new int[0];
+
+        void ensureCapacity(int length, int maxWordLength) {
+            if (longestStart.length < length + 1) {
+                int capacity = Math.max(length + 1, longestStart.length * 2);
+                longestEnd = Arrays.copyOf(longestEnd, capacity);
+                longestStart = Arrays.copyOf(longestStart, capacity);
+                next = Arrays.copyOf(next, capacity);
+            }
+            if (ends.length < maxWordLength) {
+                ends = new int[maxWordLength];
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.manlier.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 覆盖层词典，叠加在一个共享的基础词典之上，
+ * 只记录自身新增、删除及修改了频率的词，适用于多租户场景下每个租户拥有少量自定义词的情况。
+ * <p>
+ * 覆盖层不会修改基础词典，基础词典的变更对所有覆盖层可见
+ */
+public class OverlayDictionary extends WordDictionary {
+
+    private final WordDictionary base;
+    // 从基础词典中移除的词
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+    // 仅对当前覆盖层生效的强制切分词
+    private final Set<String> forceSplitWords = ConcurrentHashMap.newKeySet();
+
+    OverlayDictionary(WordDictionary base) {
+        super(base.isUseDefaultDict());
+        if (base instanceof OverlayDictionary) {
+            throw new IllegalArgumentException("不支持在覆盖层之上再创建覆盖层");
+        }
+        this.base = base;
+    }
+
+    public WordDictionary getBase() {
+        return base;
+    }
+
+    @Override
+    public WordDictionary newOverlay() {
+        return base.newOverlay();
+    }
+
+    /**
+     * 同时持有基础词典的锁，操作期间基础词典中的频率也不会被修改
+     */
+    @Override
+    public <T> T exclusively(Supplier<T> action) {
+        synchronized (base) {
+            return super.exclusively(action);
+        }
+    }
+
+    @Override
+    public String addWord(String word) {
+        String key = super.addWord(word);
+        if (key != null) {
+            removed.remove(key);
+        }
+        return key;
+    }
+
+    @Override
+    public String delWord(String word) {
+        String key = super.delWord(word);
+        if (key != null && base.containsWord(key)) {
+            removed.add(key);
+        }
+        return key;
+    }
+
+    @Override
+    public void resetDict() {
+        super.resetDict();
+        removed.clear();
+        forceSplitWords.clear();
+    }
+
+    @Override
+    public void addForceSplit(String word) {
+        forceSplitWords.add(word);
+    }
+
+    @Override
+    public void delForceSplit(String word) {
+        forceSplitWords.remove(word);
+    }
+
+    @Override
+    public Set<String> getForceSplitWords() {
+        return forceSplitWords;
+    }
+
+    @Override
+    public void matchAll(char[] chars, int begin, int end, List<Hit> hits) {
+        DictSegment own = getTrie();
+        DictSegment shared = base.getTrie();
+        boolean checkRemoved = !removed.isEmpty();
+        // 同时沿覆盖层与基础词典的Trie向后匹配
+        for (int j = begin; j < end && (own != null || shared != null); j++) {
+            if (own != null) {
+                own = own.getChild(chars[j]);
+            }
+            if (shared != null) {
+                shared = shared.getChild(chars[j]);
+            }
+            if (own != null && own.isWord()) {
+                hits.add(newHit(begin, j, own));
+            } else if (shared != null && shared.isWord()
+                    && !(checkRemoved && removed.contains(shared.getWord()))) {
+                hits.add(newHit(begin, j, shared));
+            }
+        }
+    }
+
+    @Override
+    public int matchEnds(CharSequence text, int begin, int end, int[] ends) {
+        DictSegment own = getTrie();
+        DictSegment shared = base.getTrie();
+        boolean checkRemoved = !removed.isEmpty();
+        int count = 0;
+        for (int j = begin; j < end && (own != null || shared != null) && count < ends.length; j++) {
+            char ch = text.charAt(j);
+            if (own != null) {
+                own = own.getChild(ch);
+            }
+            if (shared != null) {
+                shared = shared.getChild(ch);
+            }
+            if ((own != null && own.isWord()) || (shared != null && shared.isWord()
+                    && !(checkRemoved && removed.contains(shared.getWord())))) {
+                ends[count++] = j + 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean mayStartWord(char ch) {
+        return super.mayStartWord(ch) || base.mayStartWord(ch);
+    }
+
+    @Override
+    public String matchLongest(CharSequence text, int begin, int end) {
+        DictSegment own = getTrie();
+        DictSegment shared = base.getTrie();
+        boolean checkRemoved = !removed.isEmpty();
+        String word = null;
+        for (int j = begin; j < end && (own != null || shared != null); j++) {
+            char ch = text.charAt(j);
+            if (own != null) {
+                own = own.getChild(ch);
+            }
+            if (shared != null) {
+                shared = shared.getChild(ch);
+            }
+            if (own != null && own.isWord()) {
+                word = own.getWord();
+            } else if (shared != null && shared.isWord()
+                    && !(checkRemoved && removed.contains(shared.getWord()))) {
+                word = shared.getWord();
+            }
+        }
+        return word;
+    }
+
+    @Override
+    public String getWord(CharSequence text, int begin, int end) {
+        String word = super.getWord(text, begin, end);
+        if (word != null) {
+            return word;
+        }
+        word = base.getWord(text, begin, end);
+        return word != null && !removed.contains(word) ? word : null;
+    }
+
+    @Override
+    public List<Pair<String>> complete(String prefix, int topK) {
+        String key = normalizeWord(prefix);
+        if (key == null || topK <= 0) {
+            return Collections.emptyList();
+        }
+        List<Pair<String>> merged = new ArrayList<>(super.complete(key, topK));
+        // 基础词典中被移除或在覆盖层中修改了频率的词将被跳过，剩下的不足topK个时加倍取出的数目，
+        // 直到剩下topK个或基础词典中已没有更多的词，不必遍历覆盖层中所有修改过的词
+        int fetch = topK;
+        while (true) {
+            List<Pair<String>> candidates = base.complete(key, fetch);
+            List<Pair<String>> survivors = new ArrayList<>(candidates.size());
+            for (Pair<String> candidate : candidates) {
+                if (!freqs.containsKey(candidate.key) && !removed.contains(candidate.key)) {
+                    survivors.add(candidate);
+                }
+            }
+            if (survivors.size() >= topK || candidates.size() < fetch || fetch == Integer.MAX_VALUE) {
+                merged.addAll(survivors);
+                break;
+            }
+            fetch = (int) Math.min(2L * fetch, Integer.MAX_VALUE);
+        }
+        merged.sort(CompletionCache.ORDER);
+        return merged.size() > topK ? new ArrayList<>(merged.subList(0, topK)) : merged;
+    }
+
+    @Override
+    public void forEachWord(Consumer<String> action) {
+        super.forEachWord(action);
+        base.forEachWord(word -> {
+            if (!freqs.containsKey(word) && !removed.contains(word)) {
+                action.accept(word);
+            }
+        });
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        return freqs.containsKey(word) || (!removed.contains(word) && base.containsWord(word));
+    }
+
+    @Override
+    public Double getFreq(String key) {
+        Double freq = freqs.get(key);
+        if (freq != null) {
+            return freq;
+        }
+        if (!removed.contains(key) && base.containsWord(key)) {
+            return base.getFreq(key);
+        }
+        return getMinFreq();
+    }
+
+    @Override
+    public double getFreq(String key, double defaultValue) {
+        Double freq = freqs.get(key);
+        if (freq != null) {
+            return freq;
+        }
+        if (removed.contains(key)) {
+            return defaultValue;
+        }
+        return base.getFreq(key, defaultValue);
+    }
+
+    @Override
+    public double getTotal() {
+        return base.getTotal() + total;
+    }
+
+    @Override
+    public int getMaxWordLength() {
+        return Math.max(base.getMaxWordLength(), super.getMaxWordLength());
+    }
+
+    @Override
+    protected double getMinFreq() {
+        return Math.min(base.getMinFreq(), super.getMinFreq());
+    }
+}
@@ -0,0 +1,149 @@
+package org.manlier.analysis.jieba;
+
+/**
+ * 一次分词的预算，用于有延迟要求的场景。
+ * <p>
+ * 预算可以是时间（从创建预算时开始计时，包含排队等待的时间），也可以是工作量（已处理的字符数）。
+ * 每个语块开始处理前检查已用的预算：超过第一个阈值后余下的文本不再使用HMM，超过第二个阈值后改用正向最大匹配。
+ * 降级只会逐级加深，不会恢复。分词结束后可以通过{@link #getLevel()}及{@link #getChars(Level)}了解降级的情况。
+ * <p>
+ * 预算记录了一次分词的状态，不能在多次分词或多个线程之间共享
+ */
+public final class SegBudget {
+
+    /**
+     * 分词的策略，按开销从高到低排列
+     */
+    public enum Level {
+        // 完整的DAG、最大概率路径及HMM新词发现（若开启）
+        FULL,
+        // 不使用HMM
+        NO_HMM,
+        // 正向最大匹配，不计算最大概率路径
+        MAX_MATCH
+    }
+
+    private final boolean timed;
+    private final long noHmmAfter;
+    private final long maxMatchAfter;
+    private final long start;
+    // 已处理的字符数
+    private long used;
+    private Level level = Level.FULL;
+    // 各策略处理的字符数
+    private final long[] chars = new long[Level.values().length];
+
+    private SegBudget(boolean timed, long noHmmAfter, long maxMatchAfter) {
+        if (noHmmAfter < 0 || maxMatchAfter < noHmmAfter) {
+            throw new IllegalArgumentException("invalid budget: " + noHmmAfter + ", " + maxMatchAfter);
+        }
+        this.timed = timed;
+        this.noHmmAfter = noHmmAfter;
+        this.maxMatchAfter = maxMatchAfter;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * 时间预算，用去一半后不再使用HMM，用完后改用正向最大匹配
+     *
+     * @param nanos 纳秒数
+     * @return 预算
+     */
+    public static SegBudget ofNanos(long nanos) {
+        return ofNanos(nanos / 2, nanos);
+    }
+
+    /**
+     * 时间预算
+     *
+     * @param noHmmAfter    经过该时间（纳秒）后不再使用HMM
+     * @param maxMatchAfter 经过该时间（纳秒）后改用正向最大匹配
+     * @return 预算
+     */
+    public static SegBudget ofNanos(long noHmmAfter, long maxMatchAfter) {
+        return new SegBudget(true, noHmmAfter, maxMatchAfter);
+    }
+
+    public static SegBudget ofMillis(long millis) {
+        return ofNanos(millis * 1000000L);
+    }
+
+    /**
+     * 工作量预算，处理一半的字符后不再使用HMM，处理完后改用正向最大匹配
+     *
+     * @param chars 字符数
+     * @return 预算
+     */
+    public static SegBudget ofWork(long chars) {
+        return ofWork(chars / 2, chars);
+    }
+
+    /**
+     * 工作量预算
+     *
+     * @param noHmmAfter    处理该数目的字符后不再使用HMM
+     * @param maxMatchAfter 处理该数目的字符后改用正向最大匹配
+     * @return 预算
+     */
+    public static SegBudget ofWork(long noHmmAfter, long maxMatchAfter) {
+        return new SegBudget(false, noHmmAfter, maxMatchAfter);
+    }
+
+    /**
+     * 根据已用的预算确定接下来使用的策略
+     */
+    Level check() {
+        if (level == Level.MAX_MATCH) {
+            return level;
+        }
+        long spent = timed ? System.nanoTime() - start : used;
+        if (spent >= maxMatchAfter) {
+            level = Level.MAX_MATCH;
+        } else if (spent >= noHmmAfter && level == Level.FULL) {
+            level = Level.NO_HMM;
+        }
+        return level;
+    }
+
+    /**
+     * 记录以某个策略处理的字符数
+     */
+    void consume(Level level, int length) {
+        used += length;
+        chars[level.ordinal()] += length;
+    }
+
+    /**
+     * @return 最后使用的策略，未发生降级时为FULL
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @return 是否发生了降级
+     */
+    public boolean isDegraded() {
+        return level != Level.FULL;
+    }
+
+    /**
+     * @return 以某个策略处理的字符数（不包括标点符号）
+     */
+    public long getChars(Level level) {
+        return chars[level.ordinal()];
+    }
+
+    /**
+     * @return 从创建预算开始经过的纳秒数
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - start;
+    }
+
+    @Override
+    public String toString() {
+        return "SegBudget [" + (timed ? "nanos" : "chars") + "=" + noHmmAfter + "/" + maxMatchAfter
+                + ", level=" + level + ", full=" + chars[0] + ", noHmm=" + chars[1] + ", maxMatch=" + chars[2] + "]";
+    }
+}
@@ -0,0 +1,393 @@
+package org.manlier.analysis.jieba;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 列式存储的分词结果。
+ * <p>
+ * 原文只保存一次，词元以起止偏移量数组表示，可选地附带一列词元类型。
+ * 词元的文本在需要时才从原文中截取，与{@link JiebaSegmenter#process(String, JiebaSegmenter.SegMode, boolean)}
+ * 返回的词一致（中文、英文及数字按全角转半角、大写转小写规整，标点符号保持原样）。
+ * <p>
+ * 序列化格式：byte 标志位（最低位表示是否包含类型列），varint 原文的UTF-8字节数，原文，varint 词元数，
+ * 之后每个词元为 zigzag varint(start - 上一个start)、varint(end - start)，最后是类型列，每个词元一个字节。
+ * INDEX模式下子词的起始位置可能小于前一个词元，因此起始位置的差值使用zigzag编码
+ */
+public final class SegResult {
+
+    public static final byte TYPE_CHINESE = 0;
+    public static final byte TYPE_ALPHANUMERIC = 1;
+    public static final byte TYPE_NUMBER = 2;
+    public static final byte TYPE_WHITESPACE = 3;
+    public static final byte TYPE_PUNCTUATION = 4;
+
+    private static final int FLAG_TYPES = 1;
+    // 规整后为'.'的字符，只在字符类型表中使用
+    private static final byte TYPE_DOT = 5;
+    // 每个字符规整后的类型，判断词元类型时逐字查表
+    private static final byte[] CHAR_TYPES = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            char ch = regularize((char) i);
+            byte type;
+            if (CharacterUtil.isChineseLetter(ch)) {
+                type = TYPE_CHINESE;
+            } else if (CharacterUtil.isEnglishLetter(ch)) {
+                type = TYPE_ALPHANUMERIC;
+            } else if (CharacterUtil.isDigit(ch)) {
+                type = TYPE_NUMBER;
+            } else if (ch == '.') {
+                type = TYPE_DOT;
+            } else if (Character.isWhitespace(ch) || Character.isSpaceChar(ch)) {
+                type = TYPE_WHITESPACE;
+            } else {
+                type = TYPE_PUNCTUATION;
+            }
+            CHAR_TYPES[i] = type;
+        }
+    }
+
+    private final String text;
+    private final int size;
+    private final int[] starts;
+    private final int[] ends;
+    // 为null时表示不包含类型列
+    private final byte[] types;
+
+    private SegResult(String text, int size, int[] starts, int[] ends, byte[] types) {
+        this.text = text;
+        this.size = size;
+        this.starts = starts;
+        this.ends = ends;
+        this.types = types;
+    }
+
+    /**
+     * 将已有的分词结果转换为列式结构
+     *
+     * @param text      原文
+     * @param tokens    对原文分词得到的词元
+     * @param withTypes 是否记录词元的类型
+     * @return 分词结果
+     */
+    public static SegResult of(String text, List<SegToken> tokens, boolean withTypes) {
+        Builder builder = new Builder(text, withTypes, tokens.size());
+        for (SegToken token : tokens) {
+            builder.add(token.startOffset, token.endOffset);
+        }
+        return builder.build();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return 词元数
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStartOffset(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int getEndOffset(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    /**
+     * 从原文中截取词元的文本，每次调用都会创建新的字符串
+     *
+     * @param index 词元的下标
+     * @return 词元的文本
+     */
+    public String getWord(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        int end = ends[index];
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (regularize(ch) != ch) {
+                char[] chars = new char[end - start];
+                for (int j = start; j < end; j++) {
+                    chars[j - start] = regularize(text.charAt(j));
+                }
+                return new String(chars);
+            }
+        }
+        return text.substring(start, end);
+    }
+
+    public boolean hasTypes() {
+        return types != null;
+    }
+
+    /**
+     * @param index 词元的下标
+     * @return 词元的类型，取值为TYPE_*常量
+     * @throws IllegalStateException 未记录词元的类型
+     */
+    public byte getType(int index) {
+        if (types == null) {
+            throw new IllegalStateException("token types are not recorded");
+        }
+        checkIndex(index);
+        return types[index];
+    }
+
+    /**
+     * 以词元列表的形式访问分词结果，列表中的词元在访问时才会创建，且不会被缓存
+     *
+     * @return 只读的词元列表
+     */
+    public List<SegToken> asTokens() {
+        return new TokenList();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    /**
+     * 与分词时对字符的规整一致：只有规整后属于中文、英文、数字或连接符的字符才会被规整
+     */
+    private static char regularize(char ch) {
+        char regularized = CharacterUtil.regularize(ch);
+        return CharacterUtil.ccFind(regularized) ? regularized : ch;
+    }
+
+    /**
+     * 判断原文中一个字符的类型
+     */
+    static byte typeOf(char ch) {
+        byte type = CHAR_TYPES[ch];
+        return type == TYPE_DOT ? TYPE_PUNCTUATION : type;
+    }
+
+    /**
+     * 判断原文中一段文本的类型
+     */
+    static byte typeOf(String text, int start, int end) {
+        boolean digits = true;
+        boolean alphanumeric = false;
+        boolean whitespace = true;
+        for (int i = start; i < end; i++) {
+            switch (CHAR_TYPES[text.charAt(i)]) {
+                case TYPE_CHINESE:
+                    return TYPE_CHINESE;
+                case TYPE_ALPHANUMERIC:
+                    alphanumeric = true;
+                    digits = false;
+                    whitespace = false;
+                    break;
+                case TYPE_NUMBER:
+                    alphanumeric = true;
+                    whitespace = false;
+                    break;
+                case TYPE_DOT:
+                    // 小数点不能出现在数字的开头
+                    digits &= i != start;
+                    whitespace = false;
+                    break;
+                case TYPE_WHITESPACE:
+                    digits = false;
+                    break;
+                default:
+                    digits = false;
+                    whitespace = false;
+            }
+        }
+        if (alphanumeric) {
+            return digits ? TYPE_NUMBER : TYPE_ALPHANUMERIC;
+        }
+        return whitespace ? TYPE_WHITESPACE : TYPE_PUNCTUATION;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(types != null ? FLAG_TYPES : 0);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+        writeVarInt(out, size);
+        int prevStart = 0;
+        for (int i = 0; i < size; i++) {
+            int delta = starts[i] - prevStart;
+            writeVarInt(out, (delta << 1) ^ (delta >> 31));
+            writeVarInt(out, ends[i] - starts[i]);
+            prevStart = starts[i];
+        }
+        if (types != null) {
+            out.write(types, 0, size);
+        }
+    }
+
+    public static SegResult readFrom(DataInput in) throws IOException {
+        int flags = in.readByte();
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int size = readVarInt(in);
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        int prevStart = 0;
+        for (int i = 0; i < size; i++) {
+            int zigzag = readVarInt(in);
+            starts[i] = prevStart + ((zigzag >>> 1) ^ -(zigzag & 1));
+            ends[i] = starts[i] + readVarInt(in);
+            prevStart = starts[i];
+            if (starts[i] < 0 || ends[i] > text.length() || ends[i] < starts[i]) {
+                throw new IOException("token offsets out of text range: [" + starts[i] + ", " + ends[i] + ")");
+            }
+        }
+        byte[] types = null;
+        if ((flags & FLAG_TYPES) != 0) {
+            types = new byte[size];
+            in.readFully(types);
+        }
+        return new SegResult(text, size, starts, ends, types);
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() * 3 + size * 3 + 8);
+        try {
+            writeTo(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static SegResult fromBytes(byte[] bytes) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in segment result");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SegResult)) {
+            return false;
+        }
+        SegResult that = (SegResult) o;
+        if (size != that.size || !text.equals(that.text) || (types == null) != (that.types == null)) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (starts[i] != that.starts[i] || ends[i] != that.ends[i] || (types != null && types[i] != that.types[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = text.hashCode();
+        for (int i = 0; i < size; i++) {
+            h = 31 * (31 * h + starts[i]) + ends[i];
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return asTokens().toString();
+    }
+
+    private class TokenList extends AbstractList<SegToken> implements RandomAccess {
+
+        @Override
+        public SegToken get(int index) {
+            return new SegToken(getWord(index), getStartOffset(index), getEndOffset(index));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * 逐个追加词元以构建分词结果
+     */
+    static class Builder {
+        private final String text;
+        private int size;
+        private int[] starts;
+        private int[] ends;
+        private byte[] types;
+
+        Builder(String text, boolean withTypes) {
+            // 多数词元为1到3个字
+            this(text, withTypes, Math.max(text.length() / 2, 4));
+        }
+
+        Builder(String text, boolean withTypes, int capacity) {
+            this.text = text;
+            this.starts = new int[Math.max(capacity, 1)];
+            this.ends = new int[starts.length];
+            this.types = withTypes ? new byte[starts.length] : null;
+        }
+
+        void add(int start, int end) {
+            if (size == starts.length) {
+                int capacity = size + (size >> 1) + 1;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                if (types != null) {
+                    types = Arrays.copyOf(types, capacity);
+                }
+            }
+            starts[size] = start;
+            ends[size] = end;
+            if (types != null) {
+                types[size] = typeOf(text, start, end);
+            }
+            size++;
+        }
+
+        SegResult build() {
+            return new SegResult(text, size, starts, ends, types);
+        }
+    }
+}
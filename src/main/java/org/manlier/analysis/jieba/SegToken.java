@@ -1,6 +1,10 @@
 package org.manlier.analysis.jieba;
 
-public class SegToken {
+import java.io.Serializable;
+
+public class SegToken implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public String word;
 
     public int startOffset;
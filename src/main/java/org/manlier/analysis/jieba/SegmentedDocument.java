@@ -0,0 +1,389 @@
+package org.manlier.analysis.jieba;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 保存一篇文档及其分词结果，文档被编辑后只对受影响的区域重新分词，适用于编辑器等逐字修改文档的场景。
+ * <p>
+ * 受影响的区域从编辑处向两侧扩展到最近的安全切分点：标点符号等语块的边界，
+ * 或者语块中没有词越过、两侧的路径不都是单字的位置（见{@link JiebaSegmenter#setWindowSize(int)}中的安全切分点）。
+ * 在安全切分点处切开分词与整体分词的结果相同，因此编辑后的结果与对整篇文档重新分词一致。
+ * FAST模式及分词器设置了窗口大小时只在语块的边界处切开。
+ * <p>
+ * 文档及词元都保存在间隙缓冲区中，间隙位于最近一次编辑处；间隙之后的词元以相对于文档末尾的偏移量保存，
+ * 编辑时无需逐个修改其后词元的偏移量。编辑的耗时只与受影响的区域及两次编辑之间的距离有关，与文档的长度无关。
+ * <p>
+ * 词典发生变化后已有的分词结果不会自动更新，可以调用{@link #resegment()}重新分词。非线程安全
+ */
+public class SegmentedDocument {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final JiebaSegmenter segmenter;
+    private final SegMode mode;
+    private final boolean HMM;
+
+    // 文档为chars[0, gapStart)与chars[gapEnd, chars.length)相连
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    // 词元为[0, tokenGapStart)与[tokenGapEnd, words.length)相连，间隙之后的偏移量为相对于文档末尾的偏移量
+    private String[] words;
+    private int[] starts;
+    private int[] ends;
+    private int tokenGapStart;
+    private int tokenGapEnd;
+
+    // 以规格化后的字符访问文档，用于在词典中查找
+    private final CharSequence regularized = new CharSequence() {
+        @Override
+        public int length() {
+            return SegmentedDocument.this.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return CharacterUtil.regularize(SegmentedDocument.this.charAt(index));
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            char[] sub = new char[end - start];
+            for (int i = start; i < end; i++) {
+                sub[i - start] = charAt(i);
+            }
+            return new String(sub);
+        }
+    };
+
+    /**
+     * @param segmenter 分词器
+     * @param text      文档
+     * @param mode      分词模式
+     * @param HMM       是否开启HMM新词发现
+     */
+    public SegmentedDocument(JiebaSegmenter segmenter, String text, SegMode mode, boolean HMM) {
+        this.segmenter = segmenter;
+        this.mode = mode;
+        this.HMM = HMM;
+        this.chars = new char[text.length() + MIN_CAPACITY];
+        text.getChars(0, text.length(), chars, 0);
+        this.gapStart = text.length();
+        this.gapEnd = chars.length;
+        this.words = new String[Math.max(text.length() / 2, MIN_CAPACITY)];
+        this.starts = new int[words.length];
+        this.ends = new int[words.length];
+        this.tokenGapEnd = words.length;
+        segment(0, text.length());
+    }
+
+    /**
+     * 编辑文档，并对受影响的区域重新分词
+     *
+     * @param offset   编辑的位置
+     * @param removed  删除的字符数
+     * @param inserted 插入的文本
+     * @return 重新分词的字符数
+     */
+    public int edit(int offset, int removed, String inserted) {
+        int oldLength = length();
+        if (offset < 0 || removed < 0 || offset + removed > oldLength) {
+            throw new IndexOutOfBoundsException("edit [" + offset + ", " + (offset + removed) + ") out of document length "
+                    + oldLength);
+        }
+        replaceText(offset, removed, inserted);
+        int begin = expandLeft(offset);
+        int end = expandRight(offset + inserted.length());
+        // 删除旧文档中[begin, end)内的词元
+        int oldEnd = end - inserted.length() + removed;
+        moveTokenGap(begin, oldLength);
+        while (tokenGapEnd < words.length && starts[tokenGapEnd] + oldLength < oldEnd) {
+            words[tokenGapEnd++] = null;
+        }
+        segment(begin, end);
+        return end - begin;
+    }
+
+    /**
+     * 对整篇文档重新分词，如在词典发生变化后
+     */
+    public void resegment() {
+        Arrays.fill(words, null);
+        tokenGapStart = 0;
+        tokenGapEnd = words.length;
+        segment(0, length());
+    }
+
+    /**
+     * @return 文档的长度
+     */
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    public char charAt(int index) {
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    public String getText() {
+        return substring(0, length());
+    }
+
+    /**
+     * @return 词元数
+     */
+    public int size() {
+        return words.length - (tokenGapEnd - tokenGapStart);
+    }
+
+    public String getWord(int index) {
+        return words[tokenIndex(index)];
+    }
+
+    public int getStartOffset(int index) {
+        return index < tokenGapStart ? starts[index] : starts[tokenIndex(index)] + length();
+    }
+
+    public int getEndOffset(int index) {
+        return index < tokenGapStart ? ends[index] : ends[tokenIndex(index)] + length();
+    }
+
+    /**
+     * @return 按分词顺序排列的词元，与{@link JiebaSegmenter#process(String, SegMode, boolean)}对整篇文档分词的结果相同
+     */
+    public List<SegToken> getTokens() {
+        List<SegToken> tokens = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            tokens.add(new SegToken(getWord(i), getStartOffset(i), getEndOffset(i)));
+        }
+        return tokens;
+    }
+
+    private int tokenIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+        }
+        return index < tokenGapStart ? index : index + tokenGapEnd - tokenGapStart;
+    }
+
+    /**
+     * 对[begin, end)分词，词元插入到间隙处
+     */
+    private void segment(int begin, int end) {
+        if (begin == end) {
+            return;
+        }
+        segmenter.process(substring(begin, end), mode, HMM, (word, start, stop) -> {
+            if (tokenGapStart == tokenGapEnd) {
+                growTokens();
+            }
+            words[tokenGapStart] = word;
+            starts[tokenGapStart] = start + begin;
+            ends[tokenGapStart] = stop + begin;
+            tokenGapStart++;
+        });
+    }
+
+    /**
+     * 从offset向左寻找受影响的区域的起点，只查看offset之前（未被修改）的文本。
+     * 从offset开始向左逐步扩展已查看的语块，遇到安全切分点或语块的边界时停止，耗时与语块的长度无关
+     */
+    private int expandLeft(int offset) {
+        if (!splitsBlocks()) {
+            return blockStart(offset, 0);
+        }
+        int maxWordLength = Math.max(segmenter.getWordDictionary().getMaxWordLength(), 1);
+        int[] wordEnds = new int[maxWordLength];
+        // 从右向左依次找到r、p、q三个没有词越过的位置，q与r之间的路径与其他内容无关，据此判断p是否为安全切分点
+        int r = -1;
+        int p = -1;
+        // [block, offset)为已查看的语块，判断x是否被词越过只需查看到x - maxWordLength + 1
+        int block = offset;
+        // 越过x的词最多延伸到x + maxWordLength - 1，从这里开始查找可以保证只用到offset之前的文本
+        for (int x = offset - maxWordLength + 1; ; x--) {
+            block = blockStart(block, x - maxWordLength + 1);
+            if (x < block) {
+                return block;
+            }
+            if (x > block && crosses(x, block, offset, wordEnds)) {
+                continue;
+            }
+            if (r < 0) {
+                r = x;
+            } else if (p < 0) {
+                p = x;
+            } else if (segmenter.isStableCut(regularized.subSequence(x, r).toString(), p - x)) {
+                return p;
+            } else {
+                r = p;
+                p = x;
+            }
+        }
+    }
+
+    /**
+     * 从offset向右寻找受影响的区域的终点，只查看offset之后（未被修改）的文本
+     */
+    private int expandRight(int offset) {
+        if (!splitsBlocks()) {
+            return blockEnd(offset, length());
+        }
+        int maxWordLength = Math.max(segmenter.getWordDictionary().getMaxWordLength(), 1);
+        int[] wordEnds = new int[maxWordLength];
+        // 从左向右依次找到q、p、r三个没有词越过的位置
+        int q = -1;
+        int p = -1;
+        // [offset, block)为已查看的语块，判断x是否被词越过只需查看到x + maxWordLength - 1
+        int block = offset;
+        // 越过x的词最早从x - maxWordLength + 1开始，从这里开始查找可以保证只用到offset之后的文本
+        for (int x = offset + maxWordLength - 1; ; x++) {
+            block = blockEnd(block, x + maxWordLength - 1);
+            if (x > block) {
+                return block;
+            }
+            if (x < block && crosses(x, offset, block, wordEnds)) {
+                continue;
+            }
+            if (q < 0) {
+                q = x;
+            } else if (p < 0) {
+                p = x;
+            } else if (segmenter.isStableCut(regularized.subSequence(q, x).toString(), p - q)) {
+                return p;
+            } else {
+                q = p;
+                p = x;
+            }
+        }
+    }
+
+    /**
+     * 从from向左扩展语块，到语块的起点或bound为止
+     */
+    private int blockStart(int from, int bound) {
+        while (from > bound && from > 0 && CharacterUtil.ccFind(regularized.charAt(from - 1))) {
+            from--;
+        }
+        return from;
+    }
+
+    /**
+     * 从from向右扩展语块，到语块的终点或bound为止
+     */
+    private int blockEnd(int from, int bound) {
+        int length = length();
+        while (from < bound && from < length && CharacterUtil.ccFind(regularized.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * FAST模式下的最大匹配及分窗口处理都依赖于语块的起点，只能在语块的边界处切开
+     */
+    private boolean splitsBlocks() {
+        return mode != SegMode.FAST && segmenter.getWindowSize() == 0;
+    }
+
+    /**
+     * 判断是否有[begin, end)内的词越过位置p
+     *
+     * @param wordEnds 长度为词典中最长的词的长度
+     */
+    private boolean crosses(int p, int begin, int end, int[] wordEnds) {
+        WordDictionary wordDict = segmenter.getWordDictionary();
+        for (int i = Math.max(begin, p - wordEnds.length + 1); i < p; i++) {
+            int count = wordDict.matchEnds(regularized, i, end, wordEnds);
+            if (count > 0 && wordEnds[count - 1] > p) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void replaceText(int offset, int removed, String inserted) {
+        moveTextGap(offset);
+        gapEnd += removed;
+        if (gapEnd - gapStart < inserted.length()) {
+            int length = length();
+            char[] grown = new char[Math.max(chars.length * 2, length + inserted.length() + MIN_CAPACITY)];
+            System.arraycopy(chars, 0, grown, 0, gapStart);
+            int tail = chars.length - gapEnd;
+            System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+            gapEnd = grown.length - tail;
+            chars = grown;
+        }
+        inserted.getChars(0, inserted.length(), chars, gapStart);
+        gapStart += inserted.length();
+    }
+
+    private void moveTextGap(int offset) {
+        if (offset < gapStart) {
+            int n = gapStart - offset;
+            System.arraycopy(chars, offset, chars, gapEnd - n, n);
+            gapStart -= n;
+            gapEnd -= n;
+        } else if (offset > gapStart) {
+            int n = offset - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+
+    private String substring(int begin, int end) {
+        char[] sub = new char[end - begin];
+        for (int i = begin; i < end; i++) {
+            sub[i - begin] = charAt(i);
+        }
+        return new String(sub);
+    }
+
+    /**
+     * 移动词元的间隙，使间隙之前恰好是起始位置小于offset的词元。
+     * offset为安全切分点，INDEX模式下的子词与其所在的词位于offset的同一侧。
+     * 间隙可能为空，此时词元原地换算偏移量
+     *
+     * @param offset 位置
+     * @param length 文档（修改前）的长度，用于换算间隙之后的偏移量
+     */
+    private void moveTokenGap(int offset, int length) {
+        while (tokenGapStart > 0 && starts[tokenGapStart - 1] >= offset) {
+            tokenGapStart--;
+            tokenGapEnd--;
+            words[tokenGapEnd] = words[tokenGapStart];
+            starts[tokenGapEnd] = starts[tokenGapStart] - length;
+            ends[tokenGapEnd] = ends[tokenGapStart] - length;
+        }
+        while (tokenGapEnd < words.length && starts[tokenGapEnd] + length < offset) {
+            words[tokenGapStart] = words[tokenGapEnd];
+            starts[tokenGapStart] = starts[tokenGapEnd] + length;
+            ends[tokenGapStart] = ends[tokenGapEnd] + length;
+            tokenGapStart++;
+            tokenGapEnd++;
+        }
+    }
+
+    private void growTokens() {
+        int capacity = words.length * 2;
+        int tail = words.length - tokenGapEnd;
+        String[] grownWords = new String[capacity];
+        int[] grownStarts = new int[capacity];
+        int[] grownEnds = new int[capacity];
+        System.arraycopy(words, 0, grownWords, 0, tokenGapStart);
+        System.arraycopy(starts, 0, grownStarts, 0, tokenGapStart);
+        System.arraycopy(ends, 0, grownEnds, 0, tokenGapStart);
+        System.arraycopy(words, tokenGapEnd, grownWords, capacity - tail, tail);
+        System.arraycopy(starts, tokenGapEnd, grownStarts, capacity - tail, tail);
+        System.arraycopy(ends, tokenGapEnd, grownEnds, capacity - tail, tail);
+        words = grownWords;
+        starts = grownStarts;
+        ends = grownEnds;
+        tokenGapEnd = capacity - tail;
+    }
+}
@@ -0,0 +1,274 @@
+package org.manlier.analysis.jieba;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 慢分词日志，记录耗时超过阈值的输入，用于分析偶发的高延迟。
+ * <p>
+ * 分词时只记录总耗时；超过阈值的输入交给后台线程以同样的参数重新分词一次，
+ * 分别统计构建DAG、计算最优路径及HMM（Viterbi）的耗时，以及最长的语块和交给HMM的未登录片段数。
+ * 重新分词与原分词经过相同的路径（相同的窗口大小，但不限预算），HMM不使用缓存，以反映未命中缓存时的实际耗时。
+ * 重新分词不在调用者的线程上进行，不会进一步增加慢请求的延迟；后台队列已满时丢弃新的慢输入。
+ * 记录保存在有界的环形缓冲区中，同时以WARN级别输出到日志。
+ * <p>
+ * 若重新分词的各阶段耗时之和远小于原耗时，说明慢的原因在输入之外（如GC停顿、CPU争用）
+ */
+public class SlowLog implements Closeable {
+
+    private static final int DEFAULT_CAPACITY = 128;
+    private static final int DEFAULT_SAMPLE_CHARS = 64;
+    private static final int QUEUE_SIZE = 16;
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final long thresholdNanos;
+    private final int sampleChars;
+    private final Record[] ring;
+    // 已记录的总数，ring[count % ring.length]为下一个写入的位置
+    private long count;
+    private final ThreadPoolExecutor profiler;
+
+    /**
+     * @param thresholdNanos 阈值（纳秒），分词耗时不小于该值的输入被记录
+     * @param capacity       环形缓冲区保存的记录数
+     * @param sampleChars    记录中保存的输入的前缀长度，为0时只保存输入的散列值
+     */
+    public SlowLog(long thresholdNanos, int capacity, int sampleChars) {
+        if (thresholdNanos < 0 || capacity <= 0 || sampleChars < 0) {
+            throw new IllegalArgumentException("invalid slow log: " + thresholdNanos + ", " + capacity + ", " + sampleChars);
+        }
+        this.thresholdNanos = thresholdNanos;
+        this.sampleChars = sampleChars;
+        this.ring = new Record[capacity];
+        this.profiler = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, "jieba-slow-log");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * 以默认的容量及前缀长度创建慢分词日志
+     *
+     * @param thresholdMillis 阈值（毫秒）
+     * @return 慢分词日志
+     */
+    public static SlowLog ofMillis(long thresholdMillis) {
+        return new SlowLog(TimeUnit.MILLISECONDS.toNanos(thresholdMillis), DEFAULT_CAPACITY, DEFAULT_SAMPLE_CHARS);
+    }
+
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    int getSampleChars() {
+        return sampleChars;
+    }
+
+    /**
+     * 在后台线程上生成并保存一条记录
+     */
+    void submit(Supplier<Record> replay) {
+        profiler.execute(() -> {
+            try {
+                add(replay.get());
+            } catch (RuntimeException e) {
+                log.error("failed to profile slow input", e);
+            }
+        });
+    }
+
+    void add(Record record) {
+        synchronized (ring) {
+            ring[(int) (count % ring.length)] = record;
+            count++;
+        }
+        log.warn("{}", record);
+    }
+
+    /**
+     * @return 环形缓冲区中的记录，从旧到新排列
+     */
+    public List<Record> getRecords() {
+        synchronized (ring) {
+            int size = (int) Math.min(count, ring.length);
+            List<Record> records = new ArrayList<>(size);
+            for (long i = count - size; i < count; i++) {
+                records.add(ring[(int) (i % ring.length)]);
+            }
+            return records;
+        }
+    }
+
+    /**
+     * @return 累计记录的慢输入数，包括已被覆盖的记录
+     */
+    public long getCount() {
+        synchronized (ring) {
+            return count;
+        }
+    }
+
+    public void clear() {
+        synchronized (ring) {
+            count = 0;
+            Arrays.fill(ring, null);
+        }
+    }
+
+    /**
+     * 等待后台线程处理完已提交的慢输入，主要用于测试
+     */
+    void awaitIdle() throws Exception {
+        // 只有一个后台线程，按提交的顺序执行
+        profiler.submit(() -> {
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        profiler.shutdownNow();
+    }
+
+    /**
+     * 64位FNV-1a散列，用于在不保存全文的情况下识别重复出现的输入
+     */
+    static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * 一次慢分词的记录，各阶段的耗时来自在后台重新分词
+     */
+    public static final class Record {
+        private final long timestamp;
+        private final int length;
+        private final String sample;
+        private final long hash;
+        private final JiebaSegmenter.SegMode mode;
+        private final boolean HMM;
+        private final long elapsedNanos;
+        private final long dagNanos;
+        private final long routeNanos;
+        private final long viterbiNanos;
+        private final int longestRun;
+        private final int oovFragments;
+
+        Record(String paragraph, int sampleChars, JiebaSegmenter.SegMode mode, boolean HMM, long elapsedNanos,
+               long dagNanos, long routeNanos, long viterbiNanos, int longestRun, int oovFragments) {
+            this.timestamp = System.currentTimeMillis();
+            this.length = paragraph.length();
+            this.sample = paragraph.length() <= sampleChars ? paragraph : paragraph.substring(0, sampleChars);
+            this.hash = hash(paragraph);
+            this.mode = mode;
+            this.HMM = HMM;
+            this.elapsedNanos = elapsedNanos;
+            this.dagNanos = dagNanos;
+            this.routeNanos = routeNanos;
+            this.viterbiNanos = viterbiNanos;
+            this.longestRun = longestRun;
+            this.oovFragments = oovFragments;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return 输入的字符数
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return 输入的前缀
+         */
+        public String getSample() {
+            return sample;
+        }
+
+        /**
+         * @return 输入全文的散列值
+         */
+        public long getHash() {
+            return hash;
+        }
+
+        public JiebaSegmenter.SegMode getMode() {
+            return mode;
+        }
+
+        public boolean isHMM() {
+            return HMM;
+        }
+
+        /**
+         * @return 原分词的耗时
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return 构建DAG（含查找与词典无关的片段）的耗时，FAST模式下为最大匹配的耗时
+         */
+        public long getDagNanos() {
+            return dagNanos;
+        }
+
+        /**
+         * @return 计算最优路径的耗时
+         */
+        public long getRouteNanos() {
+            return routeNanos;
+        }
+
+        /**
+         * @return HMM切分未登录片段的耗时（不使用HMM缓存）
+         */
+        public long getViterbiNanos() {
+            return viterbiNanos;
+        }
+
+        /**
+         * @return 最长的语块（连续的、不含标点的字符）的长度
+         */
+        public int getLongestRun() {
+            return longestRun;
+        }
+
+        /**
+         * @return 最优路径上由连续单字组成、不在词典中、交由HMM切分的片段数，未开启HMM时为0
+         */
+        public int getOovFragments() {
+            return oovFragments;
+        }
+
+        @Override
+        public String toString() {
+            return "slow segmentation [length=" + length + ", hash=" + Long.toHexString(hash)
+                    + ", mode=" + mode + ", HMM=" + HMM
+                    + ", elapsed=" + elapsedNanos / 1000 + "us, dag=" + dagNanos / 1000
+                    + "us, route=" + routeNanos / 1000 + "us, viterbi=" + viterbiNanos / 1000
+                    + "us, longestRun=" + longestRun + ", oovFragments=" + oovFragments
+                    + ", sample=" + sample + "]";
+        }
+    }
+}
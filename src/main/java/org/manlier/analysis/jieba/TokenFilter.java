@@ -0,0 +1,253 @@
+package org.manlier.analysis.jieba;
+
+import org.manlier.analysis.jieba.dao.DictSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 分词时过滤词元的规则，按类型（{@link SegResult}的TYPE_*常量）或停用词丢弃词元。
+ * <p>
+ * 词元的类型逐字查表判断，与{@link SegResult#getType(int)}一致；停用词保存在开放寻址的数组中。
+ * 过滤在词元交给{@link JiebaSegmenter.TokenSink}之前进行，被丢弃的标点符号及空白不会截取字符串，
+ * 语块中不在词典中、按类型被丢弃的数字及英文数字串在切分时即以占位符代替，也不会截取字符串，
+ * 均不会创建词元对象，保留的词元的偏移量不受影响。
+ * 过滤规则不可变，每次修改都返回新的对象，可以被多个分词器共享
+ */
+public final class TokenFilter {
+
+    private static final TokenFilter NONE = new TokenFilter(0, StopWords.EMPTY);
+    // 语块中按类型被丢弃的词在分词结果中以相同长度的占位符代替，使之后的词元偏移量不变。
+    // 占位符按引用识别，更长的词仍截取字符串，在交给sink前丢弃
+    private static final String[] GAPS = new String[65];
+
+    static {
+        for (int i = 1; i < GAPS.length; i++) {
+            GAPS[i] = new String(new char[i]);
+        }
+    }
+
+    // 以(1 << type)为位的被丢弃的类型
+    private final int droppedTypes;
+    private final StopWords stopWords;
+
+    private TokenFilter(int droppedTypes, StopWords stopWords) {
+        this.droppedTypes = droppedTypes;
+        this.stopWords = stopWords;
+    }
+
+    /**
+     * @return 不过滤任何词元的规则
+     */
+    public static TokenFilter create() {
+        return NONE;
+    }
+
+    /**
+     * 丢弃指定类型的词元，如标点符号、空白及数字
+     *
+     * @param types 词元的类型，取值为{@link SegResult}的TYPE_*常量
+     * @return 新的过滤规则
+     */
+    public TokenFilter withoutTypes(byte... types) {
+        int dropped = droppedTypes;
+        for (byte type : types) {
+            if (type < SegResult.TYPE_CHINESE || type > SegResult.TYPE_PUNCTUATION) {
+                throw new IllegalArgumentException("unknown token type: " + type);
+            }
+            dropped |= 1 << type;
+        }
+        return new TokenFilter(dropped, stopWords);
+    }
+
+    /**
+     * 丢弃停用词，与已有的停用词合并。停用词与分词结果中的词一样按小写比较
+     *
+     * @param words 停用词
+     * @return 新的过滤规则
+     */
+    public TokenFilter withStopWords(Collection<String> words) {
+        List<String> merged = new ArrayList<>(stopWords.size() + words.size());
+        stopWords.addTo(merged);
+        for (String word : words) {
+            String key = WordDictionary.normalizeWord(word);
+            if (key != null) {
+                merged.add(key);
+            }
+        }
+        return new TokenFilter(droppedTypes, new StopWords(merged));
+    }
+
+    /**
+     * 从字典源载入停用词，每行第一列为停用词，与已有的停用词合并
+     *
+     * @param source 字典源
+     * @return 新的过滤规则
+     * @throws IOException 读取失败
+     */
+    public TokenFilter withStopWords(DictSource source) throws IOException {
+        List<String> words = new ArrayList<>();
+        source.loadDict(tokens -> {
+            if (tokens.length >= 1) {
+                words.add(tokens[0]);
+            }
+        });
+        return withStopWords(words);
+    }
+
+    public boolean isDropped(byte type) {
+        return (droppedTypes & (1 << type)) != 0;
+    }
+
+    public boolean isStopWord(String word) {
+        return stopWords.contains(word);
+    }
+
+    /**
+     * @return 停用词数
+     */
+    public int getStopWordCount() {
+        return stopWords.size();
+    }
+
+    /**
+     * @param word 分词产生的词
+     * @return 是否保留该词
+     */
+    public boolean accept(String word) {
+        return (droppedTypes == 0 || !isDropped(SegResult.typeOf(word, 0, word.length())))
+                && (stopWords.size() == 0 || !stopWords.contains(word));
+    }
+
+    /**
+     * 判断语块之外的单个字符（标点符号或空白）是否保留，不创建字符串
+     *
+     * @param ch 原文中的字符
+     * @return 是否保留该字符
+     */
+    boolean accept(char ch) {
+        return (droppedTypes == 0 || !isDropped(SegResult.typeOf(ch)))
+                && (stopWords.size() == 0 || !stopWords.contains(ch));
+    }
+
+    /**
+     * @return 是否丢弃中文之外的某种类型
+     */
+    boolean dropsNonChinese() {
+        return (droppedTypes & ~(1 << SegResult.TYPE_CHINESE)) != 0;
+    }
+
+    /**
+     * 截取语块中不在词典中的词。只查字符类型表判断类型，被丢弃时返回占位符，不截取字符串
+     *
+     * @param text  语块
+     * @param begin 开始位置
+     * @param end   结束位置（不包含）
+     * @return 词或占位符
+     */
+    String substring(String text, int begin, int end) {
+        if (droppedTypes != 0 && end - begin < GAPS.length && isDropped(SegResult.typeOf(text, begin, end))) {
+            return GAPS[end - begin];
+        }
+        return text.substring(begin, end);
+    }
+
+    /**
+     * @return 是否为{@link #substring(String, int, int)}返回的占位符
+     */
+    static boolean isGap(String token) {
+        int n = token.length();
+        return n < GAPS.length && GAPS[n] == token;
+    }
+
+    /**
+     * @return 只把保留的词元交给sink的TokenSink
+     */
+    JiebaSegmenter.TokenSink wrap(JiebaSegmenter.TokenSink sink) {
+        return (word, start, end) -> {
+            if (accept(word)) {
+                sink.accept(word, start, end);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "TokenFilter[droppedTypes=" + Integer.toBinaryString(droppedTypes)
+                + ", stopWords=" + stopWords.size() + "]";
+    }
+
+    /**
+     * 以开放寻址法保存的停用词集合，创建后不再修改。
+     * 散列值与String#hashCode一致，可以直接查找单个字符而不创建字符串
+     */
+    private static final class StopWords {
+
+        static final StopWords EMPTY = new StopWords(new ArrayList<>());
+
+        private final String[] keys;
+        private final int mask;
+        private final int size;
+
+        StopWords(List<String> words) {
+            // 装载因子不超过0.5
+            int capacity = Integer.highestOneBit(Math.max(words.size(), 1) * 2 - 1) << 1;
+            keys = new String[capacity];
+            mask = capacity - 1;
+            int n = 0;
+            for (String word : words) {
+                int slot = slot(word);
+                if (keys[slot] == null) {
+                    keys[slot] = word;
+                    n++;
+                }
+            }
+            size = n;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(String word) {
+            return keys[slot(word)] != null;
+        }
+
+        boolean contains(char ch) {
+            // 单个字符的散列值即为其本身
+            int slot = (ch ^ (ch >>> 16)) & mask;
+            String key;
+            while ((key = keys[slot]) != null) {
+                if (key.length() == 1 && key.charAt(0) == ch) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        void addTo(List<String> words) {
+            for (String key : keys) {
+                if (key != null) {
+                    words.add(key);
+                }
+            }
+        }
+
+        /**
+         * @return 该词所在的槽位，不存在时为应插入的空槽位
+         */
+        private int slot(String word) {
+            // 词典中的词的散列值已缓存在字符串中
+            int h = word.hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            String key;
+            while ((key = keys[slot]) != null && !key.equals(word)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.manlier.analysis.jieba;
+
+import java.util.Arrays;
+
+/**
+ * 一次词频调整请求，可以是将几个分开的词合并为一个词，也可以是将一个词拆分为几个词
+ */
+public class TuneRequest {
+
+    private final String[] segments;
+    private final boolean split;
+
+    private TuneRequest(String[] segments, boolean split) {
+        this.segments = segments;
+        this.split = split;
+    }
+
+    /**
+     * 使word能作为一个整词被分出来
+     *
+     * @param word 词语
+     * @return 调整请求
+     */
+    public static TuneRequest join(String word) {
+        return new TuneRequest(new String[]{word}, false);
+    }
+
+    /**
+     * 使几个片段组成的词被拆分开，如split("台", "中")
+     *
+     * @param segments 片段
+     * @return 调整请求
+     */
+    public static TuneRequest split(String... segments) {
+        return new TuneRequest(segments.clone(), true);
+    }
+
+    public boolean isSplit() {
+        return split;
+    }
+
+    public String[] getSegments() {
+        return segments.clone();
+    }
+
+    String[] segments() {
+        return segments;
+    }
+
+    /**
+     * @return 被调整的词，即所有片段连接后的字符串
+     */
+    public String getWord() {
+        return segments.length == 1 ? segments[0] : String.join("", segments);
+    }
+
+    @Override
+    public String toString() {
+        return "TuneRequest [" + (split ? "split" : "join") + "=" + Arrays.toString(segments) + "]";
+    }
+}
@@ -0,0 +1,49 @@
+package org.manlier.analysis.jieba;
+
+/**
+ * 一次词频调整的结果，记录调整前后词的实际频率
+ */
+public class TuneResult {
+
+    private final TuneRequest request;
+    private final String word;
+    private final long oldFreq;
+    private final long newFreq;
+    // 规格化后的频率（对数概率），仅在应用到词典时使用
+    final double normalizedFreq;
+
+    TuneResult(TuneRequest request, String word, long oldFreq, long newFreq, double normalizedFreq) {
+        this.request = request;
+        this.word = word;
+        this.oldFreq = oldFreq;
+        this.newFreq = newFreq;
+        this.normalizedFreq = normalizedFreq;
+    }
+
+    public TuneRequest getRequest() {
+        return request;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * @return 调整前的频率，词不在词典中时为0
+     */
+    public long getOldFreq() {
+        return oldFreq;
+    }
+
+    /**
+     * @return 建议的频率，为0时该词将从词典中移除并强制切分
+     */
+    public long getNewFreq() {
+        return newFreq;
+    }
+
+    @Override
+    public String toString() {
+        return "TuneResult [word=" + word + ", oldFreq=" + oldFreq + ", newFreq=" + newFreq + "]";
+    }
+}
@@ -0,0 +1,145 @@
+package org.manlier.analysis.jieba;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 直接在UTF-8字节上分词时使用的解码及偏移量换算。
+ * <p>
+ * 只使用ByteBuffer的绝对位置读取，不改变缓冲区的position，也不把直接缓冲区或内存映射的缓冲区复制到堆中
+ */
+final class Utf8 {
+
+    static final int REPLACEMENT = 0xFFFD;
+    private static final int LENGTH_SHIFT = 21;
+    private static final int CODE_POINT_MASK = (1 << LENGTH_SHIFT) - 1;
+
+    private Utf8() {
+    }
+
+    /**
+     * 解码buf[index, limit)开头的一个码点。
+     * 非法的字节序列按其最长的合法前缀（至少一个字节）解码为一个U+FFFD，即Unicode建议的做法；
+     * 与String的构造函数不同，UTF-8编码的代理区字符按每个字节各一个U+FFFD处理
+     *
+     * @return 码点及其字节数，分别由{@link #codePoint(int)}与{@link #length(int)}取出
+     */
+    static int decode(ByteBuffer buf, int index, int limit) {
+        int b0 = buf.get(index) & 0xFF;
+        if (b0 < 0x80) {
+            return 1 << LENGTH_SHIFT | b0;
+        }
+        int length;
+        int cp;
+        // 第二个字节的合法范围，排除过长编码、代理区及超出U+10FFFF的码点
+        int min = 0x80;
+        int max = 0xBF;
+        if (b0 >= 0xC2 && b0 <= 0xDF) {
+            length = 2;
+            cp = b0 & 0x1F;
+        } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+            length = 3;
+            cp = b0 & 0x0F;
+            if (b0 == 0xE0) {
+                min = 0xA0;
+            } else if (b0 == 0xED) {
+                max = 0x9F;
+            }
+        } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+            length = 4;
+            cp = b0 & 0x07;
+            if (b0 == 0xF0) {
+                min = 0x90;
+            } else if (b0 == 0xF4) {
+                max = 0x8F;
+            }
+        } else {
+            return 1 << LENGTH_SHIFT | REPLACEMENT;
+        }
+        for (int k = 1; k < length; k++) {
+            if (index + k >= limit) {
+                return k << LENGTH_SHIFT | REPLACEMENT;
+            }
+            int b = buf.get(index + k) & 0xFF;
+            if (b < min || b > max) {
+                return k << LENGTH_SHIFT | REPLACEMENT;
+            }
+            min = 0x80;
+            max = 0xBF;
+            cp = cp << 6 | (b & 0x3F);
+        }
+        return length << LENGTH_SHIFT | cp;
+    }
+
+    static int codePoint(int decoded) {
+        return decoded & CODE_POINT_MASK;
+    }
+
+    static int length(int decoded) {
+        return decoded >>> LENGTH_SHIFT;
+    }
+
+    /**
+     * 将语块内的字符偏移量换算为输入中的字节偏移量或字符偏移量，再交给调用者的sink
+     */
+    static final class Offsets implements JiebaSegmenter.TokenSink {
+        private final JiebaSegmenter.TokenSink sink;
+        private final boolean charOffsets;
+        // 语块中尚未提交的每个字符的起始字节偏移量，最后一个元素为语块末尾
+        private int[] bytes = new int[64];
+        private int size;
+        // bytes[0]对应的字符在语块中的下标
+        private int base;
+        // 语块的第一个字符在输入中的字符偏移量
+        private int charStart;
+
+        Offsets(JiebaSegmenter.TokenSink sink, boolean charOffsets) {
+            this.sink = sink;
+            this.charOffsets = charOffsets;
+        }
+
+        /**
+         * 开始一个新的语块
+         */
+        void reset(int charStart) {
+            this.size = 0;
+            this.base = 0;
+            this.charStart = charStart;
+        }
+
+        /**
+         * 记录语块中下一个字符（或语块末尾）的起始字节偏移量
+         */
+        void add(int byteOffset) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = byteOffset;
+        }
+
+        /**
+         * 移除语块末尾的记录，以便继续追加字符
+         */
+        void removeLast() {
+            size--;
+        }
+
+        /**
+         * 语块的前n个字符已提交
+         */
+        void commit(int n) {
+            System.arraycopy(bytes, n - base, bytes, 0, size - (n - base));
+            size -= n - base;
+            base = n;
+        }
+
+        @Override
+        public void accept(String word, int startOffset, int endOffset) {
+            if (charOffsets) {
+                sink.accept(word, charStart + startOffset, charStart + endOffset);
+            } else {
+                sink.accept(word, bytes[startOffset - base], bytes[endOffset - base]);
+            }
+        }
+    }
+}
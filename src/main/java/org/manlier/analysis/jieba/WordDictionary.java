@@ -13,6 +13,9 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 
 public class WordDictionary {
@@ -28,12 +31,16 @@ public class WordDictionary {
 
     public static String USER_DICT_SUFFIX = ".dict";        //  用户字典后缀
 
-    public final Map<String, Double> freqs = new HashMap<>();   //  记录单词频率
+    public final Map<String, Double> freqs = new ConcurrentHashMap<>();   //  记录单词频率，允许分词与词典更新并发进行
     private Double minFreq = Double.MAX_VALUE;  // 单词所能达到的最大频率
-    public Double total = 0.0;                 // 所有单词的频率之和
+    public volatile Double total = 0.0;        // 所有单词的频率之和，通过addTotal原子地修改
     private DictSegment _dict = new DictSegment((char) 0);
     ;
+    private volatile int maxWordLength = 1;     // 词典中最长的词的长度，删除词时不会减小
     private boolean useDefaultDict = true;      // 是否使用默认字典
+    // 前缀补全的缓存，按规格化频率排列
+    private final CompletionCache completionCache = new CompletionCache(
+            word -> freqs.getOrDefault(word, Double.NEGATIVE_INFINITY), CompletionCache.DEFAULT_CACHE_SIZE);
 
 
     private WordDictionary() {
@@ -43,6 +50,15 @@ public class WordDictionary {
         }
     }
 
+    /**
+     * 用于创建非单例的词典，不读取配置，也不载入默认字典
+     *
+     * @param useDefaultDict 是否使用默认字典
+     */
+    protected WordDictionary(boolean useDefaultDict) {
+        this.useDefaultDict = useDefaultDict;
+    }
+
     private void loadConfig() {
         String config = System.getenv(CONFIG_NAME);
         if (config == null) {
@@ -70,6 +86,17 @@ public class WordDictionary {
     }
 
 
+    /**
+     * 以当前词典为共享的基础词典创建一个覆盖层词典，
+     * 覆盖层只记录自身新增、删除及修改了频率的词，不会修改当前词典
+     *
+     * @return 覆盖层词典
+     */
+    public WordDictionary newOverlay() {
+        return new OverlayDictionary(this);
+    }
+
+
     /**
      * for ES to initialize the user dictionary.
      *
@@ -86,8 +113,10 @@ public class WordDictionary {
     public void resetDict() {
         _dict = new DictSegment((char) 0);
         freqs.clear();
-        total = 0d;
+        setTotal(0d);
         minFreq = Double.MAX_VALUE;
+        maxWordLength = 1;
+        completionCache.invalidateAll();
     }
 
     public boolean isUseDefaultDict() {
@@ -103,7 +132,7 @@ public class WordDictionary {
             long s = System.currentTimeMillis();
             final int[] count = {0};
             MAIN_DICT.loadDict(tokens -> {
-                if (tokens.length >= 2) {
+                if (tokens.length >= 2 && normalizeWord(tokens[0]) != null) {
                     String word = tokens[0];
                     double freq = Double.valueOf(tokens[1]);
                     if (freq != 0d) {
@@ -112,12 +141,13 @@ public class WordDictionary {
                         freqs.put(word, freq);
                         count[0] += 1;
                     } else {
-                        FinalSeg.getInstance().addForceSplit(word);
+                        addForceSplit(word);
                     }
                 }
             });
             // normalize
             normalizeFreqs(freqs);
+            completionCache.invalidateAll();
             log.debug("main dict load finished, total {}, time elapsed {} ms", count[0], System.currentTimeMillis() - s);
         } catch (IOException e) {
             log.error(MAIN_DICT + "load failure!", e);
@@ -125,22 +155,38 @@ public class WordDictionary {
     }
 
 
-    public String addWord(String word) {
+    /**
+     * 将词语规格化为字典中使用的键（去除首尾空白并转为小写）
+     *
+     * @param word 词语
+     * @return 规格化后的键，若词语为空则返回null
+     */
+    public static String normalizeWord(String word) {
         if (null != word && !"".equals(word.trim())) {
-            String key = word.trim().toLowerCase(Locale.getDefault());
-            _dict.fillSegment(key.toCharArray());
-            return key;
+            return word.trim().toLowerCase(Locale.getDefault());
         } else
             return null;
     }
 
-    public String delWord(String word) {
-        if (null != word && !"".equals(word.trim())) {
-            String key = word.trim().toLowerCase(Locale.getDefault());
+    public synchronized String addWord(String word) {
+        String key = normalizeWord(word);
+        if (key != null) {
+            _dict.fillSegment(key);
+            if (key.length() > maxWordLength) {
+                maxWordLength = key.length();
+            }
+            completionCache.invalidate(_dict, key);
+        }
+        return key;
+    }
+
+    public synchronized String delWord(String word) {
+        String key = normalizeWord(word);
+        if (key != null) {
             _dict.disableSegment(key.toCharArray());
-            return key;
-        } else
-            return null;
+            completionCache.invalidate(_dict, key);
+        }
+        return key;
     }
 
     public List<Pair<String>> loadUserDict(DictSource userDict, Charset charset) throws IOException {
@@ -148,33 +194,153 @@ public class WordDictionary {
         long s = System.currentTimeMillis();
         List<Pair<String>> changeList = new LinkedList<>();
         Map<String, Double> toBeMergefreqs = new HashMap<>();
-        synchronized (WordDictionary.class) {
+        // 只与同一词典的其他批量修改互斥，不同租户的词典可以同时载入
+        synchronized (this) {
             userDict.loadDict(charset, tokens -> {
                 // Ignore empty line
-                if (tokens.length >= 1) {
+                if (tokens.length >= 1 && normalizeWord(tokens[0]) != null) {
                     String word = tokens[0];
                     // Default frequency
                     double freq = 3;
                     if (tokens.length >= 2)
                         freq = Double.valueOf(tokens[1]);
                     if (freq != 0d) {
-                        total += freq;
+                        addTotal(freq);
                         word = addWord(word);
                         toBeMergefreqs.put(word, freq);
                         changeList.add(new Pair<>(word, freq));
                         count[0]++;
                     } else {
-                        FinalSeg.getInstance().addForceSplit(word);
+                        addForceSplit(word);
                     }
                 }
             });
             normalizeFreqs(toBeMergefreqs);
             freqs.putAll(toBeMergefreqs);
+            // 词加入词典树时频率尚未更新，需要再次失效
+            for (String word : toBeMergefreqs.keySet()) {
+                completionCache.invalidate(_dict, word);
+            }
             log.debug("user dict {} load finished, tot words:{}, time elapsed:{} ms", userDict, count[0], System.currentTimeMillis() - s);
             return changeList;
         }
     }
 
+    /**
+     * 添加一个词并设置它的频率，若词已存在则更新它的频率
+     *
+     * @param word           词
+     * @param actualFreq     实际频率，将累加到频率总和中
+     * @param normalizedFreq 规格化后的频率
+     * @return 规格化后的键，若词语为空则返回null
+     */
+    public synchronized String putWord(String word, double actualFreq, double normalizedFreq) {
+        String key = addWord(word);
+        if (key != null) {
+            addTotal(actualFreq);
+            freqs.put(key, normalizedFreq);
+            completionCache.invalidate(_dict, key);
+        }
+        return key;
+    }
+
+    /**
+     * 在持有词典的锁时执行操作。所有修改词及频率的方法都持有同一个锁，
+     * 操作期间读取到的频率及频率总和不会被其他线程修改
+     *
+     * @param action 操作
+     * @param <T>    操作的结果类型
+     * @return 操作的结果
+     */
+    public <T> T exclusively(Supplier<T> action) {
+        synchronized (this) {
+            return action.get();
+        }
+    }
+
+    /**
+     * 将实际频率规格化，与载入用户字典时相同：该词的频率计入频率总和后所占比例的对数
+     *
+     * @param actualFreq 实际频率
+     * @return 规格化后的频率
+     */
+    public double normalizeFreq(double actualFreq) {
+        return Math.log(actualFreq / (getTotal() + actualFreq));
+    }
+
+    /**
+     * 以新的实际频率替换词典中已有词的频率，并重新计算频率总和及规格化后的频率，用于根据语料重新估计词频。
+     * 不在词典中的词被忽略，未给出新频率的词保留原来的实际频率；不会通知订阅者
+     *
+     * @param actualFreqs 词及其实际频率
+     */
+    public void updateActualFreqs(Map<String, ? extends Number> actualFreqs) {
+        synchronized (this) {
+            double oldTotal = getTotal();
+            Map<String, Double> actual = new HashMap<>(freqs.size() * 4 / 3 + 1);
+            freqs.forEach((word, freq) -> actual.put(word, Math.exp(freq) * oldTotal));
+            actualFreqs.forEach((word, freq) -> actual.replace(word, freq.doubleValue()));
+            double sum = 0d;
+            for (double freq : actual.values()) {
+                sum += freq;
+            }
+            setTotal(sum);
+            minFreq = Double.MAX_VALUE;
+            normalizeFreqs(actual);
+            freqs.putAll(actual);
+            completionCache.invalidateAll();
+        }
+    }
+
+    /**
+     * 将实际频率累加到频率总和中，可能被多个线程（如词典监视器与调整词频）同时调用
+     *
+     * @param actualFreq 实际频率
+     */
+    private synchronized void addTotal(double actualFreq) {
+        total = total + actualFreq;
+    }
+
+    private synchronized void setTotal(double sum) {
+        total = sum;
+    }
+
+    /**
+     * 从词典中移除一个词及其频率
+     *
+     * @param word 词
+     * @return 规格化后的键，若词语为空则返回null
+     */
+    public synchronized String removeWord(String word) {
+        String key = delWord(word);
+        if (key != null) {
+            freqs.remove(key);
+        }
+        return key;
+    }
+
+    /**
+     * 强制HMM将该词切分为单字
+     *
+     * @param word 词
+     */
+    public void addForceSplit(String word) {
+        FinalSeg.getInstance().addForceSplit(word);
+    }
+
+    public void delForceSplit(String word) {
+        FinalSeg.getInstance().delForceSplit(word);
+    }
+
+    /**
+     * 除FinalSeg中全局的强制切分词以外，当前词典额外需要强制切分的词
+     *
+     * @return 额外的强制切分词
+     */
+    public Set<String> getForceSplitWords() {
+        return Collections.emptySet();
+    }
+
     public List<Pair<String>> loadUserDict(DictSource userDict) throws IOException {
         return this.loadUserDict(userDict, StandardCharsets.UTF_8);
     }
@@ -182,7 +348,7 @@ public class WordDictionary {
     private void normalizeFreqs(Map<String, Double> freqs) {
         freqs.entrySet().parallelStream()
                 .forEach(entry -> {
-                    double value = Math.log(entry.getValue() / total);
+                    double value = Math.log(entry.getValue() / getTotal());
                     entry.setValue(value);
                     minFreq = Math.min(value, minFreq);
                 });
@@ -198,6 +364,154 @@ public class WordDictionary {
         return this._dict;
     }
 
+    /**
+     * 获得词典中最长的词的长度，词被删除后该值不会减小，因此只可能偏大
+     *
+     * @return 最长的词的长度
+     */
+    public int getMaxWordLength() {
+        return maxWordLength;
+    }
+
+
+    /**
+     * 查找句子中以begin开始的所有词，按从短到长的顺序加入hits，
+     * 每个Hit记录词尾的位置（包含）及词尾所在的词典节点
+     *
+     * @param chars 句子
+     * @param begin 开始位置
+     * @param end   句子结束位置（不包含）
+     * @param hits  用于存放匹配到的词
+     */
+    public void matchAll(char[] chars, int begin, int end, List<Hit> hits) {
+        DictSegment ds = _dict;
+        for (int j = begin; j < end; j++) {
+            ds = ds.getChild(chars[j]);
+            if (ds == null) {
+                break;
+            }
+            if (ds.isWord()) {
+                hits.add(newHit(begin, j, ds));
+            }
+        }
+    }
+
+    /**
+     * 判断是否可能有词以ch开始，只查询字典树的根节点。被移除的词在字典树中的节点仍然保留，
+     * 因此返回true时不一定有这样的词，返回false时一定没有
+     *
+     * @param ch 规格化后的字符
+     * @return 是否可能有词以ch开始
+     */
+    public boolean mayStartWord(char ch) {
+        return _dict.getChild(ch) != null;
+    }
+
+    /**
+     * 查找text中以begin开始的最长的词
+     *
+     * @param text  文本
+     * @param begin 开始位置
+     * @param end   结束位置（不包含）
+     * @return 字典中保存的词，不存在时返回null
+     */
+    public String matchLongest(CharSequence text, int begin, int end) {
+        DictSegment ds = _dict;
+        String word = null;
+        for (int j = begin; j < end; j++) {
+            ds = ds.getChild(text.charAt(j));
+            if (ds == null) {
+                break;
+            }
+            if (ds.isWord()) {
+                word = ds.getWord();
+            }
+        }
+        return word;
+    }
+
+    /**
+     * 查找text中以begin开始的所有词，按从短到长的顺序将词的结束位置（不包含）写入ends，
+     * 与matchAll相同但不创建Hit
+     *
+     * @param text  文本
+     * @param begin 开始位置
+     * @param end   结束位置（不包含）
+     * @param ends  用于存放词的结束位置，长度不小于最长的词的长度时可以存放所有的词
+     * @return 词的数目
+     */
+    public int matchEnds(CharSequence text, int begin, int end, int[] ends) {
+        DictSegment ds = _dict;
+        int count = 0;
+        for (int j = begin; j < end && count < ends.length; j++) {
+            ds = ds.getChild(text.charAt(j));
+            if (ds == null) {
+                break;
+            }
+            if (ds.isWord()) {
+                ends[count++] = j + 1;
+            }
+        }
+        return count;
+    }
+
+    static Hit newHit(int begin, int end, DictSegment ds) {
+        Hit hit = new Hit();
+        hit.setBegin(begin);
+        hit.setEnd(end);
+        hit.setMatch();
+        hit.setMatchedDictSegment(ds);
+        return hit;
+    }
+
+    /**
+     * 查找字典中与text[begin, end)相同的词
+     *
+     * @param text  文本
+     * @param begin 开始位置
+     * @param end   结束位置（不包含）
+     * @return 字典中保存的词，不存在时返回null
+     */
+    public String getWord(CharSequence text, int begin, int end) {
+        DictSegment ds = lookup(_dict, text, begin, end);
+        return ds != null && ds.isWord() ? ds.getWord() : null;
+    }
+
+    static DictSegment lookup(DictSegment ds, CharSequence text, int begin, int end) {
+        for (int j = begin; j < end && ds != null; j++) {
+            ds = ds.getChild(text.charAt(j));
+        }
+        return ds;
+    }
+
+
+    /**
+     * 获得以prefix开始的词中频率最高的topK个，用于搜索框的输入提示。
+     * <p>
+     * 词典树的每个节点缓存了以其为前缀的频率最高的若干个词（默认10个，由系统属性jieba.completionCacheSize指定），
+     * topK不超过该数目时直接返回缓存的结果，否则遍历前缀下的整棵子树。缓存在首次查询时计算，
+     * 词被添加、删除或修改频率时只有该词路径上的缓存失效
+     *
+     * @param prefix 前缀，将被规格化
+     * @param topK   返回的词数
+     * @return 词及其规格化频率，按频率从高到低排列，频率相同时按词排列
+     */
+    public List<Pair<String>> complete(String prefix, int topK) {
+        String key = normalizeWord(prefix);
+        if (key == null || topK <= 0) {
+            return Collections.emptyList();
+        }
+        return completionCache.complete(lookup(_dict, key, 0, key.length()), topK);
+    }
+
+    /**
+     * 遍历词典中所有的词，对于覆盖层词典包括基础词典中未被移除的词
+     *
+     * @param action 对每个词执行的操作
+     */
+    public void forEachWord(Consumer<String> action) {
+        freqs.keySet().forEach(action);
+    }
 
     public boolean containsWord(String word) {
         return freqs.containsKey(word);
@@ -210,4 +524,29 @@ public class WordDictionary {
         else
             return minFreq;
     }
+
+
+    /**
+     * 获得词的规格化频率
+     *
+     * @param key          词
+     * @param defaultValue 词不存在时返回的值
+     * @return 规格化频率
+     */
+    public double getFreq(String key, double defaultValue) {
+        return freqs.getOrDefault(key, defaultValue);
+    }
+
+
+    /**
+     * @return 所有单词的频率之和
+     */
+    public double getTotal() {
+        return total;
+    }
+
+
+    protected double getMinFreq() {
+        return minFreq;
+    }
 }
@@ -0,0 +1,392 @@
+package org.manlier.analysis.jieba.corpus;
+
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.WordDictionary;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 对语料文件离线分词。
+ * <p>
+ * 每个文件按行（或句末的标点）边界分为若干段，各段以内存映射的方式读取，由多个线程并行地直接在UTF-8字节上分词，
+ * 结果按段在文件中的顺序写出，与单线程分词的输出完全相同。同时处理的段数有上限，内存占用不随语料大小增长。
+ * <p>
+ * 输出格式：
+ * <ul>
+ * <li>TEXT：每个输入行输出一行，词之间以空格分隔，空白字符不输出</li>
+ * <li>JSONL：每个输入行输出一个JSON对象，包含文件名、该行在文件中的字节偏移量及词的数组；
+ * 按句末的标点分段时，跨越两段的行输出为两个对象</li>
+ * <li>OFFSETS：每个输入行输出一行，每个词元为“开始,结束”，是在文件中的字节偏移量，以空格分隔</li>
+ * </ul>
+ */
+public class CorpusSegmenter {
+
+    public enum Format {
+        TEXT,
+        JSONL,
+        OFFSETS
+    }
+
+    // 每段的目标字节数，段越小输出越早开始、占用的内存越少，但调度的开销越大
+    static final long SPLIT_BYTES = 4L << 20;
+    // 为了并行而增加段数时，每段不小于该字节数（或每段的目标字节数，取较小者），小文件不必切成许多段
+    static final long MIN_SPLIT_BYTES = 64L << 10;
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final JiebaSegmenter segmenter;
+    private final SegMode mode;
+    private final boolean HMM;
+    private final Format format;
+    private final int threads;
+    private boolean sentences;
+    private long splitBytes = SPLIT_BYTES;
+    private volatile long bytes;
+    private volatile long tokens;
+
+    /**
+     * @param segmenter 分词器
+     * @param mode      分词模式
+     * @param HMM       是否开启HMM新词发现
+     * @param format    输出格式
+     * @param threads   并行分词的线程数
+     */
+    public CorpusSegmenter(JiebaSegmenter segmenter, SegMode mode, boolean HMM, Format format, int threads) {
+        this.segmenter = segmenter;
+        this.mode = mode;
+        this.HMM = HMM;
+        this.format = format;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * 设置是否也在句末的标点之后分段，只有一行或行很长的文件需要开启才能并行处理
+     */
+    public void setSplitOnSentences(boolean sentences) {
+        this.sentences = sentences;
+    }
+
+    /**
+     * 设置每段的目标字节数
+     */
+    public void setSplitBytes(long splitBytes) {
+        this.splitBytes = Math.max(1, splitBytes);
+    }
+
+    /**
+     * 对语料分词，依次写出每个文件的结果
+     *
+     * @param inputs 语料文件，UTF-8编码
+     * @param output 输出
+     * @throws IOException 读取或写入失败
+     */
+    public void segment(List<Path> inputs, WritableByteChannel output) throws IOException {
+        List<CorpusSplit> splits = new ArrayList<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        long minSplitBytes = Math.min(MIN_SPLIT_BYTES, splitBytes);
+        for (Path input : inputs) {
+            long size = Files.size(input);
+            long count = Math.min(Math.max(threads * 4L, size / splitBytes + 1), Math.max(1, size / minSplitBytes));
+            splits.addAll(CorpusSplit.split(input, (int) Math.min(Integer.MAX_VALUE, count), sentences));
+            sizes.put(input, size);
+            total += size;
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "jieba-corpus-segmenter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 已提交但尚未写出的段，按顺序写出；数目有上限，使较慢的段不会导致后面的结果无限堆积
+        Deque<Future<Result>> pending = new ArrayDeque<>();
+        int maxPending = threads * 2;
+        long s = System.currentTimeMillis();
+        long lastReport = s;
+        long written = 0;
+        long tokenCount = 0;
+        try {
+            Iterator<CorpusSplit> it = splits.iterator();
+            while (it.hasNext() || !pending.isEmpty()) {
+                while (it.hasNext() && pending.size() < maxPending) {
+                    CorpusSplit split = it.next();
+                    boolean last = split.getEnd() == sizes.get(split.getPath());
+                    pending.add(executor.submit(() -> segment(split, last)));
+                }
+                Result result = pending.poll().get();
+                ByteBuffer buffer = ByteBuffer.wrap(result.bytes);
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                written += result.length;
+                tokenCount += result.tokens;
+                bytes = written;
+                tokens = tokenCount;
+                long now = System.currentTimeMillis();
+                if (now - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                    lastReport = now;
+                    log.info("{}% segmented, {} MB of {} MB, {} MB/s", written * 100 / Math.max(1, total),
+                            String.format("%.1f", written / 1048576d), String.format("%.1f", total / 1048576d),
+                            String.format("%.2f", throughput(written, now - s)));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while segmenting corpus", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("failed to segment corpus", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.currentTimeMillis() - s;
+        log.info("{} files segmented, {} MB, tokens:{}, time elapsed:{} ms, {} MB/s", inputs.size(),
+                String.format("%.1f", written / 1048576d), tokenCount, elapsed, String.format("%.2f", throughput(written, elapsed)));
+    }
+
+    private static double throughput(long bytes, long millis) {
+        return bytes / 1048576d / (Math.max(1, millis) / 1000d);
+    }
+
+    private static final class Result {
+        final byte[] bytes;
+        // 输入的字节数
+        final long length;
+        final long tokens;
+
+        Result(byte[] bytes, long length, long tokens) {
+            this.bytes = bytes;
+            this.length = length;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 对一段分词，直接在映射的缓冲区上逐行处理，不解码为字符串
+     *
+     * @param split 语料的一段
+     * @param last  是否为文件的最后一段，其最后一行即使没有换行符也已结束
+     */
+    private Result segment(CorpusSplit split, boolean last) throws IOException {
+        ByteBuffer buffer = split.map();
+        ByteBuffer line = buffer.duplicate();
+        // 中文的每个字占3个字节，输出的字符数通常不超过输入字节数的一半
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE / 2, split.getLength() / 2 + 16));
+        String file = format == Format.JSONL ? jsonString(split.getPath().toString()) : null;
+        long base = split.getStart();
+        long[] tokenCount = {0};
+        boolean[] first = {true};
+        JiebaSegmenter.TokenSink sink = (word, start, end) -> {
+            tokenCount[0]++;
+            switch (format) {
+                case TEXT:
+                    if (!word.trim().isEmpty()) {
+                        if (!first[0]) {
+                            sb.append(' ');
+                        }
+                        sb.append(word);
+                        first[0] = false;
+                    }
+                    break;
+                case JSONL:
+                    if (!first[0]) {
+                        sb.append(',');
+                    }
+                    sb.append(jsonString(word));
+                    first[0] = false;
+                    break;
+                default:
+                    if (!first[0]) {
+                        sb.append(' ');
+                    }
+                    sb.append(base + start).append(',').append(base + end);
+                    first[0] = false;
+                    break;
+            }
+        };
+
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            boolean terminated = lineEnd < limit;
+            // 文件的最后一行可能没有换行符，同样输出换行，不与下一个文件的第一行相连
+            boolean lineComplete = terminated || last;
+            int textEnd = lineEnd;
+            if (terminated && textEnd > lineStart && buffer.get(textEnd - 1) == '\r') {
+                textEnd--;
+            }
+            if (format == Format.JSONL) {
+                sb.append("{\"file\":").append(file).append(",\"offset\":").append(base + lineStart).append(",\"tokens\":[");
+            }
+            line.position(0);
+            line.limit(textEnd);
+            line.position(lineStart);
+            first[0] = true;
+            segmenter.process(line, mode, HMM, false, sink);
+            if (format == Format.JSONL) {
+                sb.append("]}\n");
+            } else if (lineComplete) {
+                sb.append('\n');
+            } else if (!first[0]) {
+                // 该行在下一段中继续
+                sb.append(' ');
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new Result(sb.toString().getBytes(StandardCharsets.UTF_8), split.getLength(), tokenCount[0]);
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * @return 已处理的输入字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return 已输出的词元数（TEXT格式中不输出的空白字符也计算在内）
+     */
+    public long getTokens() {
+        return tokens;
+    }
+
+    /**
+     * 列出语料文件，目录中的普通文件按路径排序
+     */
+    static List<Path> listInputs(Path input) throws IOException {
+        if (!Files.isDirectory(input)) {
+            return Collections.singletonList(input);
+        }
+        try (Stream<Path> paths = Files.walk(input)) {
+            return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 用法：CorpusSegmenter [选项] 输入文件或目录 输出文件（-表示标准输出）
+     * <p>
+     * 选项：-mode search|index|fast，-nohmm，-format text|jsonl|offsets，-threads 线程数，
+     * -split line|sentence，-dict 用户字典目录（可重复）
+     */
+    public static void main(String[] args) throws IOException {
+        SegMode mode = SegMode.SEARCH;
+        boolean hmm = true;
+        Format format = Format.TEXT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean sentences = false;
+        List<Path> dicts = new ArrayList<>();
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-mode":
+                    mode = SegMode.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "-nohmm":
+                    hmm = false;
+                    break;
+                case "-format":
+                    format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-split":
+                    sentences = "sentence".equals(args[++i]);
+                    break;
+                case "-dict":
+                    dicts.add(Paths.get(args[++i]));
+                    break;
+                default:
+                    positional.add(args[i]);
+            }
+        }
+        if (positional.size() != 2) {
+            System.err.println("usage: CorpusSegmenter [-mode search|index|fast] [-nohmm] [-format text|jsonl|offsets]"
+                    + " [-threads n] [-split line|sentence] [-dict userDictDir]... <input file or dir> <output file or ->");
+            System.exit(1);
+        }
+        WordDictionary dict = WordDictionary.getInstance();
+        for (Path path : dicts) {
+            dict.loadUserDict(new FileDictSource(path));
+        }
+        CorpusSegmenter corpusSegmenter = new CorpusSegmenter(new JiebaSegmenter(dict), mode, hmm, format, threads);
+        corpusSegmenter.setSplitOnSentences(sentences);
+        List<Path> inputs = listInputs(Paths.get(positional.get(0)));
+        String output = positional.get(1);
+        long s = System.currentTimeMillis();
+        if ("-".equals(output)) {
+            corpusSegmenter.segment(inputs, Channels.newChannel(System.out));
+            System.out.flush();
+        } else {
+            try (FileChannel channel = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                corpusSegmenter.segment(inputs, channel);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - s;
+        System.err.println(String.format("%d files, %.1f MB, %d tokens, time elapsed %d ms, %.2f MB/s",
+                inputs.size(), corpusSegmenter.getBytes() / 1048576d, corpusSegmenter.getTokens(), elapsed,
+                throughput(corpusSegmenter.getBytes(), elapsed)));
+    }
+}
@@ -0,0 +1,199 @@
+package org.manlier.analysis.jieba.corpus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 语料文件中以行边界对齐的一段，供多个线程并行处理同一个文件。
+ * <p>
+ * 语料为UTF-8编码的文本文件，每行一篇文档。每一段单独以内存映射的方式读取，
+ * 不经过堆内的缓冲区；单个映射不能超过2GB，因此大文件会被分成更多的段
+ */
+public final class CorpusSplit {
+
+    // 每段的最大字节数
+    static final long MAX_SPLIT_BYTES = 1L << 30;
+
+    private final Path path;
+    private final int index;
+    private final long start;
+    private final long end;
+
+    private CorpusSplit(Path path, int index, long start, long end) {
+        this.path = path;
+        this.index = index;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 将语料文件分为若干段，每段都从一行的开头开始，到一行的末尾结束
+     *
+     * @param path  语料文件
+     * @param count 期望的段数，文件较小或行较长时实际段数可能更少，文件超过{@value #MAX_SPLIT_BYTES}字节时可能更多
+     * @return 按在文件中的位置排列的段
+     * @throws IOException 读取失败
+     */
+    public static List<CorpusSplit> split(Path path, int count) throws IOException {
+        return split(path, count, false);
+    }
+
+    /**
+     * 将语料文件分为若干段
+     *
+     * @param path      语料文件
+     * @param count     期望的段数
+     * @param sentences 为true时也可以在句末的标点（。！？）之后分段，使只有一行或行很长的文件也能分为多段；
+     *                  标点及换行总是结束一个语块，因此分段的位置不影响分词结果
+     * @return 按在文件中的位置排列的段
+     * @throws IOException 读取失败
+     */
+    public static List<CorpusSplit> split(Path path, int count, boolean sentences) throws IOException {
+        List<CorpusSplit> splits = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int n = (int) Math.max(Math.max(count, 1), (size + MAX_SPLIT_BYTES - 1) / MAX_SPLIT_BYTES);
+            long start = 0;
+            for (int i = 1; i <= n && start < size; i++) {
+                long end = i == n ? size : nextBoundary(channel, Math.max(size / n * i, start), sentences);
+                if (end > start) {
+                    if (end - start > Integer.MAX_VALUE) {
+                        throw new IOException("line too long in " + path + " at offset " + start);
+                    }
+                    splits.add(new CorpusSplit(path, splits.size(), start, end));
+                    start = end;
+                }
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * @return position之后第一个换行符（或句末的标点）的下一个位置，没有时返回文件大小
+     */
+    private static long nextBoundary(FileChannel channel, long position, boolean sentences) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long size = channel.size();
+        long pos = position;
+        // 最近读到的三个字节，用于识别跨越缓冲区边界的多字节标点
+        int last = 0;
+        while (pos < size) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    return pos + i + 1;
+                }
+                last = (last << 8 | (b & 0xFF)) & 0xFFFFFF;
+                if (sentences && isSentenceEnd(last)) {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * @return 三个字节是否为UTF-8编码的句号、全角感叹号或全角问号
+     */
+    private static boolean isSentenceEnd(int bytes) {
+        return bytes == 0xE38082 || bytes == 0xEFBC81 || bytes == 0xEFBC9F;
+    }
+
+    /**
+     * 依次读取该段中的每一行，不包含行尾的换行符。
+     * 按句末的标点分段时，跨越两段的行分别作为两行读取
+     *
+     * @param consumer 接收每一行
+     * @throws IOException 读取失败
+     */
+    public void forEachLine(Consumer<String> consumer) throws IOException {
+        MappedByteBuffer buffer = map();
+        byte[] line = new byte[1024];
+        int length = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                consumer.accept(decode(line, length));
+                length = 0;
+            } else {
+                if (length == line.length) {
+                    byte[] grown = new byte[line.length * 2];
+                    System.arraycopy(line, 0, grown, 0, length);
+                    line = grown;
+                }
+                line[length++] = b;
+            }
+        }
+        if (length > 0) {
+            consumer.accept(decode(line, length));
+        }
+    }
+
+    /**
+     * 以内存映射的方式读取该段，映射在关闭文件后仍然有效。
+     * 文件开头的BOM被跳过，缓冲区中的下标加上{@link #getStart()}即为在文件中的偏移量
+     *
+     * @return 只读的缓冲区，position为该段第一个字符的位置
+     * @throws IOException 读取失败
+     */
+    public MappedByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            // 跳过文件开头的BOM
+            if (start == 0 && buffer.remaining() >= 3
+                    && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+                buffer.position(3);
+            }
+            return buffer;
+        }
+    }
+
+    private static String decode(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return 该段在所有段中的序号，从0开始
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start;
+    }
+
+    @Override
+    public String toString() {
+        return "CorpusSplit [" + path + ", " + index + ", " + start + "-" + end + "]";
+    }
+}
@@ -0,0 +1,261 @@
+package org.manlier.analysis.jieba.corpus;
+
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.WordDictionary;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 根据语料重新估计词典中词的频率。
+ * <p>
+ * 语料按行边界分段后由多个线程并行分词（不开启HMM），每个线程以词的编号为下标在自己的数组中计数，
+ * 全部完成后再合并，线程之间不共享任何可变状态。词的新频率为其在语料中被切分出的次数加1，
+ * 保证语料中没有出现的词仍保留在词典中。
+ * <p>
+ * 可以迭代多次：每次迭代后用新的频率更新词典，再以更新后的词典重新分词计数，
+ * 使切分结果与频率逐步趋于一致。迭代会修改分词器所使用的词典，应使用单独的词典实例或在离线环境中运行
+ */
+public class FrequencyEstimator {
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final JiebaSegmenter segmenter;
+    private final int threads;
+    // 最近一次计数中切分出的词元数，以及其中不在词典中的词元数
+    private volatile long tokens;
+    private volatile long unknownTokens;
+
+    /**
+     * @param segmenter 分词器，其词典中的词将被重新估计频率
+     * @param threads   并行分词的线程数
+     */
+    public FrequencyEstimator(JiebaSegmenter segmenter, int threads) {
+        this.segmenter = segmenter;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * 对语料分词并重新估计词频
+     *
+     * @param corpus     语料文件，UTF-8编码，每行一篇文档
+     * @param iterations 迭代次数，大于1时每次迭代之间会更新词典
+     * @return 词典中所有词的新频率，按词排序
+     * @throws IOException 读取失败
+     */
+    public Map<String, Long> estimate(Path corpus, int iterations) throws IOException {
+        // 段数多于线程数，使各线程的工作量更均衡
+        List<CorpusSplit> splits = CorpusSplit.split(corpus, threads * 4);
+        long bytes = Files.size(corpus);
+        Map<String, Long> freqs = null;
+        for (int i = 0; i < Math.max(1, iterations); i++) {
+            if (freqs != null) {
+                segmenter.getWordDictionary().updateActualFreqs(freqs);
+            }
+            long s = System.currentTimeMillis();
+            freqs = count(splits);
+            long elapsed = Math.max(1, System.currentTimeMillis() - s);
+            log.info("iteration {} finished, tokens:{}, unknown tokens:{}, time elapsed:{} ms, {} MB/s",
+                    i + 1, tokens, unknownTokens, elapsed, String.format("%.2f", bytes / 1048576d / (elapsed / 1000d)));
+        }
+        return freqs;
+    }
+
+    /**
+     * 对语料的各段并行分词，统计词典中每个词被切分出的次数
+     *
+     * @param splits 语料的各段
+     * @return 词典中所有词的新频率（次数加1），按词排序
+     * @throws IOException 读取失败
+     */
+    public Map<String, Long> count(List<CorpusSplit> splits) throws IOException {
+        // 覆盖层词典的freqs只包含覆盖层自身的词，需通过词典遍历所有的词
+        List<String> words = new ArrayList<>();
+        segmenter.getWordDictionary().forEachWord(words::add);
+        WordIds ids = new WordIds(words);
+        AtomicInteger next = new AtomicInteger();
+        long[][] counts = new long[threads][];
+        long[] unknown = new long[threads];
+        Exception[] error = new Exception[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                long[] local = new long[ids.size()];
+                long[] localUnknown = {0};
+                JiebaSegmenter.TokenSink sink = (word, start, end) -> {
+                    int id = ids.get(word);
+                    if (id >= 0) {
+                        local[id]++;
+                    } else {
+                        localUnknown[0]++;
+                    }
+                };
+                try {
+                    int index;
+                    while ((index = next.getAndIncrement()) < splits.size()) {
+                        splits.get(index).forEachLine(line -> segmenter.process(line, SegMode.SEARCH, false, sink));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    synchronized (error) {
+                        error[0] = e;
+                    }
+                    // 使其他线程尽快结束
+                    next.set(splits.size());
+                }
+                counts[worker] = local;
+                unknown[worker] = localUnknown[0];
+            }, "jieba-frequency-estimator-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while counting words", e);
+            }
+        }
+        if (error[0] instanceof IOException) {
+            throw (IOException) error[0];
+        } else if (error[0] != null) {
+            throw new IOException("failed to count words", error[0]);
+        }
+
+        long total = 0;
+        long totalUnknown = 0;
+        Map<String, Long> freqs = new TreeMap<>();
+        for (int id = 0; id < ids.size(); id++) {
+            long count = 0;
+            for (long[] local : counts) {
+                count += local[id];
+            }
+            total += count;
+            freqs.put(ids.word(id), count + 1);
+        }
+        for (long u : unknown) {
+            totalUnknown += u;
+        }
+        tokens = total + totalUnknown;
+        unknownTokens = totalUnknown;
+        return freqs;
+    }
+
+    /**
+     * 以词典格式写出词频，每行为“词 频率”
+     *
+     * @param freqs  词频
+     * @param output 输出文件
+     * @throws IOException 写入失败
+     */
+    public static void write(Map<String, Long> freqs, Path output) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : freqs.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(' ');
+                writer.write(Long.toString(entry.getValue()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @return 最近一次计数中切分出的词元数
+     */
+    public long getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return 最近一次计数中不在词典中的词元数（标点符号、未登录的单字等）
+     */
+    public long getUnknownTokens() {
+        return unknownTokens;
+    }
+
+    /**
+     * 为词典中的词分配连续的编号，以开放寻址法查找。
+     * 词典中的词在分词时直接使用词典所保存的字符串，因此查找时先比较引用
+     */
+    static class WordIds {
+        private final String[] words;
+        private final String[] keys;
+        private final int[] values;
+        private final int mask;
+
+        WordIds(Collection<String> dictWords) {
+            words = dictWords.toArray(new String[0]);
+            int capacity = Integer.highestOneBit(Math.max(words.length * 2, 16) - 1) << 1;
+            keys = new String[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            for (int id = 0; id < words.length; id++) {
+                int slot = slot(words[id]);
+                keys[slot] = words[id];
+                values[slot] = id;
+            }
+        }
+
+        private int slot(String word) {
+            int h = word.hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            String key;
+            while ((key = keys[slot]) != null && key != word && !key.equals(word)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * @return 词的编号，不在词典中时返回-1
+         */
+        int get(String word) {
+            int slot = slot(word);
+            return keys[slot] != null ? values[slot] : -1;
+        }
+
+        String word(int id) {
+            return words[id];
+        }
+
+        int size() {
+            return words.length;
+        }
+    }
+
+    /**
+     * 用法：FrequencyEstimator 语料文件 输出文件 [迭代次数] [线程数] [用户字典目录...]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: FrequencyEstimator <corpus> <output> [iterations] [threads] [userDictDir...]");
+            System.exit(1);
+        }
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        WordDictionary dict = WordDictionary.getInstance();
+        for (int i = 4; i < args.length; i++) {
+            dict.loadUserDict(new FileDictSource(Paths.get(args[i])));
+        }
+        FrequencyEstimator estimator = new FrequencyEstimator(new JiebaSegmenter(dict), threads);
+        long s = System.currentTimeMillis();
+        Map<String, Long> freqs = estimator.estimate(Paths.get(args[0]), iterations);
+        write(freqs, Paths.get(args[1]));
+        System.out.println(String.format("%d words written to %s, tokens %d, unknown tokens %d, time elapsed %d ms",
+                freqs.size(), args[1], estimator.getTokens(), estimator.getUnknownTokens(), System.currentTimeMillis() - s));
+    }
+}
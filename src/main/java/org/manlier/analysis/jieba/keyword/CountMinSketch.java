@@ -0,0 +1,105 @@
+package org.manlier.analysis.jieba.keyword;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count-Min Sketch，以固定的内存近似统计词的出现次数，可被多个线程同时更新。
+ * <p>
+ * 估计值不会小于真实值；以1 - confidence的概率，估计值超过真实值的部分不大于 epsilon × 总次数。
+ * 占用的内存为 width × depth 个long，与统计的词数无关
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counters;
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * @param width 每行的计数器个数
+     * @param depth 行数，即哈希函数的个数
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("width and depth must be positive: " + width + ", " + depth);
+        }
+        if ((long) width * depth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("width * depth exceeds the maximum array size: " + width + " * " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    /**
+     * 按误差要求创建
+     *
+     * @param epsilon    相对于总次数的误差上限，如0.0001
+     * @param confidence 估计值满足误差上限的概率，如0.99
+     * @return Count-Min Sketch
+     */
+    public static CountMinSketch withError(double epsilon, double confidence) {
+        if (epsilon <= 0 || confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("epsilon must be positive and confidence in (0, 1)");
+        }
+        int width = (int) Math.ceil(Math.E / epsilon);
+        int depth = (int) Math.ceil(Math.log(1 / (1 - confidence)));
+        return new CountMinSketch(width, Math.max(depth, 1));
+    }
+
+    public void add(String word) {
+        add(word, 1);
+    }
+
+    public void add(String word, long count) {
+        int h1 = mix(word.hashCode());
+        int h2 = mix(h1 ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < depth; i++) {
+            counters.addAndGet(i * width + index(h1 + i * h2), count);
+        }
+        total.add(count);
+    }
+
+    /**
+     * @param word 词
+     * @return 词出现次数的估计值
+     */
+    public long estimate(String word) {
+        int h1 = mix(word.hashCode());
+        int h2 = mix(h1 ^ 0x5bd1e995) | 1;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.get(i * width + index(h1 + i * h2)));
+        }
+        return min;
+    }
+
+    /**
+     * @return 所有词的出现次数之和
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private int index(int hash) {
+        return (hash & Integer.MAX_VALUE) % width;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,125 @@
+package org.manlier.analysis.jieba.keyword;
+
+import org.manlier.analysis.jieba.WordDictionary;
+import org.manlier.analysis.jieba.dao.DictSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 只读的逆文档频率表。
+ * <p>
+ * 文件格式与词典相同，每行一个词及其IDF值，以空格或制表符分隔，如jieba的idf.txt。
+ * 表中没有的词使用所有IDF值的中位数。
+ * 以开放寻址法存放，IDF值保存在double数组中，查询时不创建任何对象
+ */
+public class IdfTable {
+
+    private static final Logger log = LoggerFactory.getLogger(IdfTable.class.getSimpleName());
+
+    private final String[] keys;
+    private final double[] values;
+    private final int mask;
+    private final int size;
+    private final double median;
+
+    private IdfTable(List<String> words, List<Double> idfs) {
+        int capacity = Integer.highestOneBit(Math.max(words.size() * 2, 16) - 1) << 1;
+        keys = new String[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        int count = 0;
+        for (int i = 0; i < words.size(); i++) {
+            int slot = slot(words.get(i));
+            if (keys[slot] == null) {
+                count++;
+            }
+            keys[slot] = words.get(i);
+            values[slot] = idfs.get(i);
+        }
+        size = count;
+        double[] sorted = new double[idfs.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = idfs.get(i);
+        }
+        Arrays.sort(sorted);
+        median = sorted.length == 0 ? 0d : sorted[sorted.length / 2];
+    }
+
+    /**
+     * 从字典源载入IDF表，忽略没有IDF值的行
+     *
+     * @param source 字典源
+     * @return IDF表
+     * @throws IOException 读取失败
+     */
+    public static IdfTable load(DictSource source) throws IOException {
+        long s = System.currentTimeMillis();
+        List<String> words = new ArrayList<>();
+        List<Double> idfs = new ArrayList<>();
+        source.loadDict(tokens -> {
+            if (tokens.length >= 2) {
+                String word = WordDictionary.normalizeWord(tokens[0]);
+                if (word != null) {
+                    words.add(word);
+                    idfs.add(Double.valueOf(tokens[1]));
+                }
+            }
+        });
+        IdfTable table = new IdfTable(words, idfs);
+        log.debug("idf table {} load finished, tot words:{}, time elapsed:{} ms", source, table.size, System.currentTimeMillis() - s);
+        return table;
+    }
+
+    /**
+     * @return 不包含任何词的IDF表，所有词的IDF都为0
+     */
+    public static IdfTable empty() {
+        return new IdfTable(new ArrayList<>(), new ArrayList<>());
+    }
+
+    private int slot(String word) {
+        int h = word.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        String key;
+        while ((key = keys[slot]) != null && !key.equals(word)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public boolean contains(String word) {
+        return keys[slot(word)] != null;
+    }
+
+    /**
+     * @param word 词
+     * @return 词的IDF，表中没有该词时返回中位数
+     */
+    public double get(String word) {
+        int slot = slot(word);
+        return keys[slot] != null ? values[slot] : median;
+    }
+
+    /**
+     * @param word         词
+     * @param defaultValue 表中没有该词时返回的值
+     * @return 词的IDF
+     */
+    public double get(String word, double defaultValue) {
+        int slot = slot(word);
+        return keys[slot] != null ? values[slot] : defaultValue;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,40 @@
+package org.manlier.analysis.jieba.keyword;
+
+/**
+ * 关键词及其权重
+ */
+public class Keyword {
+
+    private final String word;
+    private final double weight;
+    private final int count;
+
+    Keyword(String word, double weight, int count) {
+        this.word = word;
+        this.weight = weight;
+        this.count = count;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * @return TF-IDF权重
+     */
+    public double getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return 词在文档中出现的次数
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + word + ", " + weight + "]";
+    }
+}
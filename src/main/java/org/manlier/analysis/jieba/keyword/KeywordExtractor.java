@@ -0,0 +1,222 @@
+package org.manlier.analysis.jieba.keyword;
+
+import org.manlier.analysis.jieba.CharacterUtil;
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.WordDictionary;
+import org.manlier.analysis.jieba.dao.DictSource;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于TF-IDF的关键词提取，直接在分词产生的词元上统计词频，不创建词元列表。
+ * <p>
+ * 每篇文档的词频以开放寻址的数组统计，只对前K个关键词排序。
+ * 可选地以{@link CountMinSketch}统计语料中的文档频率，提取关键词的同时更新，内存占用固定，可被多个线程同时使用。
+ * 词的IDF按以下顺序确定：
+ * <ol>
+ * <li>IDF表中有该词时使用表中的值</li>
+ * <li>统计文档频率时使用 ln((N + 1) / (df + 1)) + 1，N为已处理的文档数，df为包含该词的文档数的估计值</li>
+ * <li>否则使用IDF表的中位数</li>
+ * </ol>
+ */
+public class KeywordExtractor {
+
+    private final JiebaSegmenter segmenter;
+    private final IdfTable idfTable;
+    // 为null时不统计文档频率
+    private final CountMinSketch documentFrequency;
+    private final LongAdder documents = new LongAdder();
+    private final ThreadLocal<TermCounter> counters = ThreadLocal.withInitial(TermCounter::new);
+    private volatile Set<String> stopWords = Collections.emptySet();
+    private volatile int minWordLength = 2;
+
+    public KeywordExtractor(JiebaSegmenter segmenter, IdfTable idfTable) {
+        this(segmenter, idfTable, null);
+    }
+
+    /**
+     * @param segmenter         分词器
+     * @param idfTable          IDF表
+     * @param documentFrequency 用于统计语料文档频率，为null时不统计
+     */
+    public KeywordExtractor(JiebaSegmenter segmenter, IdfTable idfTable, CountMinSketch documentFrequency) {
+        this.segmenter = segmenter;
+        this.idfTable = idfTable;
+        this.documentFrequency = documentFrequency;
+    }
+
+    /**
+     * 载入停用词，每行第一列为停用词，与已载入的停用词合并
+     *
+     * @param source 字典源
+     * @throws IOException 读取失败
+     */
+    public void loadStopWords(DictSource source) throws IOException {
+        Set<String> words = new HashSet<>(stopWords);
+        source.loadDict(tokens -> {
+            String word = tokens.length >= 1 ? WordDictionary.normalizeWord(tokens[0]) : null;
+            if (word != null) {
+                words.add(word);
+            }
+        });
+        stopWords = words;
+    }
+
+    /**
+     * @param minWordLength 参与统计的词的最小长度，默认为2
+     */
+    public void setMinWordLength(int minWordLength) {
+        this.minWordLength = Math.max(1, minWordLength);
+    }
+
+    /**
+     * 提取文档中权重最高的关键词，统计文档频率时会将该文档计入语料，即使其中没有符合条件的词
+     *
+     * @param text 文档
+     * @param topK 关键词个数
+     * @return 按权重从高到低排列的关键词
+     */
+    public List<Keyword> extract(String text, int topK) {
+        TermCounter counter = counters.get();
+        try {
+            Set<String> stopWords = this.stopWords;
+            int minWordLength = this.minWordLength;
+            int[] terms = {0};
+            segmenter.process(text, SegMode.SEARCH, true, (word, start, end) -> {
+                if (word.length() >= minWordLength && isWord(word) && !stopWords.contains(word)) {
+                    counter.add(word);
+                    terms[0]++;
+                }
+            });
+            // 先计入语料，文档数N包含没有任何词的文档
+            long n = 0;
+            if (documentFrequency != null) {
+                documents.increment();
+                for (int i = 0; i < counter.size(); i++) {
+                    documentFrequency.add(counter.word(i));
+                }
+                n = documents.sum();
+            }
+            if (counter.size() == 0 || topK <= 0) {
+                return Collections.emptyList();
+            }
+            return top(counter, terms[0], n, Math.min(topK, counter.size()));
+        } finally {
+            counter.clear();
+        }
+    }
+
+    /**
+     * 以最小堆保留权重最高的k个词
+     */
+    private List<Keyword> top(TermCounter counter, int terms, long n, int k) {
+        int[] heap = new int[k];
+        double[] weights = new double[k];
+        int size = 0;
+        for (int i = 0; i < counter.size(); i++) {
+            double weight = counter.count(i) * idf(counter.word(i), n) / terms;
+            if (size < k) {
+                heap[size] = i;
+                weights[size] = weight;
+                siftUp(counter, heap, weights, size++);
+            } else if (less(counter, weights[0], heap[0], weight, i)) {
+                heap[0] = i;
+                weights[0] = weight;
+                siftDown(counter, heap, weights, size);
+            }
+        }
+        Keyword[] keywords = new Keyword[size];
+        // 依次取出堆顶，从后往前填充
+        while (size > 0) {
+            keywords[size - 1] = new Keyword(counter.word(heap[0]), weights[0], counter.count(heap[0]));
+            size--;
+            heap[0] = heap[size];
+            weights[0] = weights[size];
+            siftDown(counter, heap, weights, size);
+        }
+        return Arrays.asList(keywords);
+    }
+
+    /**
+     * 权重相同时按词的字典序排列，保证结果稳定
+     */
+    private static boolean less(TermCounter counter, double w1, int i1, double w2, int i2) {
+        if (w1 != w2) {
+            return w1 < w2;
+        }
+        return counter.word(i1).compareTo(counter.word(i2)) > 0;
+    }
+
+    private static void siftUp(TermCounter counter, int[] heap, double[] weights, int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!less(counter, weights[pos], heap[pos], weights[parent], heap[parent])) {
+                break;
+            }
+            swap(heap, weights, pos, parent);
+            pos = parent;
+        }
+    }
+
+    private static void siftDown(TermCounter counter, int[] heap, double[] weights, int size) {
+        int pos = 0;
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && less(counter, weights[child + 1], heap[child + 1], weights[child], heap[child])) {
+                child++;
+            }
+            if (!less(counter, weights[child], heap[child], weights[pos], heap[pos])) {
+                break;
+            }
+            swap(heap, weights, pos, child);
+            pos = child;
+        }
+    }
+
+    private static void swap(int[] heap, double[] weights, int i, int j) {
+        int h = heap[i];
+        heap[i] = heap[j];
+        heap[j] = h;
+        double w = weights[i];
+        weights[i] = weights[j];
+        weights[j] = w;
+    }
+
+    private double idf(String word, long n) {
+        if (idfTable.contains(word)) {
+            return idfTable.get(word);
+        }
+        if (documentFrequency != null && n > 0) {
+            return Math.log((n + 1d) / (documentFrequency.estimate(word) + 1d)) + 1;
+        }
+        return idfTable.getMedian();
+    }
+
+    /**
+     * 获得词的IDF，统计文档频率时使用已处理的文档
+     *
+     * @param word 词
+     * @return IDF
+     */
+    public double idf(String word) {
+        return idf(word, documentFrequency != null ? documents.sum() : 0);
+    }
+
+    /**
+     * @return 已计入语料的文档数
+     */
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    private static boolean isWord(String word) {
+        char ch = word.charAt(0);
+        return CharacterUtil.isChineseLetter(ch) || CharacterUtil.isEnglishLetter(ch) || CharacterUtil.isDigit(ch);
+    }
+}
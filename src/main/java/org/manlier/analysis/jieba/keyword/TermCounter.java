@@ -0,0 +1,104 @@
+package org.manlier.analysis.jieba.keyword;
+
+/**
+ * 以开放寻址法统计一篇文档中各个词的出现次数，计数保存在int数组中，不创建Entry及Integer对象。
+ * 清空后可以重复使用，非线程安全
+ */
+class TermCounter {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private String[] keys;
+    private int[] counts;
+    // 已使用的槽位下标，按词首次出现的顺序
+    private int[] used;
+    private int size;
+    private int mask;
+
+    TermCounter() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        counts = new int[capacity];
+        used = new int[capacity / 2];
+        mask = capacity - 1;
+    }
+
+    void add(String word) {
+        int slot = slot(word);
+        if (keys[slot] == null) {
+            if (size >= used.length) {
+                grow();
+                slot = slot(word);
+            }
+            keys[slot] = word;
+            used[size++] = slot;
+        }
+        counts[slot]++;
+    }
+
+    private int slot(String word) {
+        int h = word.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        String key;
+        while ((key = keys[slot]) != null && !key.equals(word)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int[] oldUsed = used;
+        int oldSize = size;
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldSize; i++) {
+            String word = oldKeys[oldUsed[i]];
+            int slot = slot(word);
+            keys[slot] = word;
+            counts[slot] = oldCounts[oldUsed[i]];
+            used[size++] = slot;
+        }
+    }
+
+    /**
+     * @return 不同的词的个数
+     */
+    int size() {
+        return size;
+    }
+
+    String word(int index) {
+        return keys[used[index]];
+    }
+
+    int count(int index) {
+        return counts[used[index]];
+    }
+
+    void clear() {
+        // 文档很大时扩容后的数组不再保留，避免一直占用内存
+        if (keys.length > MIN_CAPACITY * 64) {
+            allocate(MIN_CAPACITY);
+        } else {
+            for (int i = 0; i < size; i++) {
+                keys[used[i]] = null;
+                counts[used[i]] = 0;
+            }
+        }
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            sb.append(i > 0 ? ", " : "").append(word(i)).append('=').append(count(i));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,116 @@
+package org.manlier.analysis.jieba.replication;
+
+import org.manlier.analysis.jieba.DictChange;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 带版本号的词典增量。
+ * <p>
+ * 普通增量的版本号由领导者连续分配，跟随者只能按版本号顺序应用；
+ * 快照包含截至某个版本所有被修改过的词的最终频率，应用后跟随者直接到达该版本；
+ * 心跳不包含变更，只用于告知跟随者领导者当前的版本。
+ * 每个变更都是词的最终频率（0表示移除）及领导者应用时的规格化频率与强制切分标记，
+ * 跟随者按原样重放，因此重复应用同一个增量不会改变结果，跟随者的词典与领导者分词结果相同
+ */
+public class Delta {
+
+    static final byte NORMAL = 0;
+    static final byte SNAPSHOT = 1;
+    static final byte HEARTBEAT = 2;
+
+    private final long version;
+    private final byte type;
+    // 领导者创建该增量的时间（毫秒）
+    private final long createdAt;
+    private final List<DictChange> changes;
+
+    Delta(long version, byte type, long createdAt, List<DictChange> changes) {
+        this.version = version;
+        this.type = type;
+        this.createdAt = createdAt;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isSnapshot() {
+        return type == SNAPSHOT;
+    }
+
+    public boolean isHeartbeat() {
+        return type == HEARTBEAT;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<DictChange> getChanges() {
+        return changes;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        writeVarLong(out, version);
+        out.writeByte(type);
+        out.writeLong(createdAt);
+        writeVarLong(out, changes.size());
+        for (DictChange change : changes) {
+            out.writeUTF(change.getWord());
+            writeVarLong(out, change.getActualFreq());
+            if (change.isRemoval()) {
+                out.writeBoolean(change.isForceSplit());
+            } else {
+                out.writeDouble(change.getNormalizedFreq());
+            }
+        }
+    }
+
+    static Delta readFrom(DataInput in) throws IOException {
+        long version = readVarLong(in);
+        byte type = in.readByte();
+        long createdAt = in.readLong();
+        int count = (int) readVarLong(in);
+        List<DictChange> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String word = in.readUTF();
+            long actualFreq = readVarLong(in);
+            changes.add(actualFreq > 0 ? DictChange.put(word, actualFreq, in.readDouble())
+                    : DictChange.remove(word, in.readBoolean()));
+        }
+        return new Delta(version, type, createdAt, changes);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in delta");
+    }
+
+    @Override
+    public String toString() {
+        String name = type == SNAPSHOT ? "snapshot" : type == HEARTBEAT ? "heartbeat" : "delta";
+        return "Delta [" + name + ", version=" + version + ", changes=" + changes.size() + "]";
+    }
+}
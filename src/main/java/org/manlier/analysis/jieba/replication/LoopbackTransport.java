@@ -0,0 +1,83 @@
+package org.manlier.analysis.jieba.replication;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的传输层，用于测试及在同一个进程中复制多个词典。
+ * 每个跟随者拥有独立的投递线程，增量按广播顺序投递
+ */
+public class LoopbackTransport implements Transport {
+
+    private final List<LoopbackConnection> connections = new CopyOnWriteArrayList<>();
+    private volatile SyncHandler handler;
+
+    @Override
+    public Publisher bind(SyncHandler handler) {
+        if (this.handler != null) {
+            throw new IllegalStateException("loopback transport is already bound");
+        }
+        this.handler = handler;
+        return new Publisher() {
+            @Override
+            public void broadcast(Delta delta) {
+                for (LoopbackConnection connection : connections) {
+                    connection.deliver(delta);
+                }
+            }
+
+            @Override
+            public void close() {
+                LoopbackTransport.this.handler = null;
+            }
+        };
+    }
+
+    @Override
+    public Connection connect(Consumer<Delta> listener) {
+        LoopbackConnection connection = new LoopbackConnection(listener);
+        connections.add(connection);
+        return connection;
+    }
+
+    private class LoopbackConnection implements Connection {
+        private final Consumer<Delta> listener;
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "jieba-loopback-transport");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        LoopbackConnection(Consumer<Delta> listener) {
+            this.listener = listener;
+        }
+
+        void deliver(Delta delta) {
+            try {
+                executor.execute(() -> listener.accept(delta));
+            } catch (RejectedExecutionException e) {
+                // 广播遍历的是连接的快照，连接可能在此期间被关闭，不影响投递给其他连接
+            }
+        }
+
+        @Override
+        public List<Delta> sync(long afterVersion) throws IOException {
+            SyncHandler current = handler;
+            if (current == null) {
+                throw new IOException("no leader bound to loopback transport");
+            }
+            return current.sync(afterVersion);
+        }
+
+        @Override
+        public void close() {
+            connections.remove(this);
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.manlier.analysis.jieba.replication;
+
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 词典复制的跟随者，将领导者广播的增量按版本号顺序应用到本地分词器的词典中。
+ * <p>
+ * 已应用过的版本会被忽略，因此重复收到同一个增量不会产生影响；
+ * 发现版本号不连续时（增量被传输层丢弃或刚刚连接），向领导者请求缺失的增量或快照，
+ * 只有同步到的增量能补齐缺口时才会前进，同步失败时保持原有版本，由下一个心跳或增量再次触发同步。
+ * 增量在独立的线程中应用，不会阻塞传输层
+ */
+public class ReplicationFollower implements Closeable {
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final JiebaSegmenter segmenter;
+    private final BlockingQueue<Delta> received = new LinkedBlockingQueue<>();
+    private final Transport.Connection connection;
+    private final Thread applier;
+    private volatile boolean running = true;
+    private volatile long version;
+    private volatile long lastLagMillis;
+    private volatile long appliedDeltas;
+    private volatile long snapshots;
+
+    public ReplicationFollower(JiebaSegmenter segmenter, Transport transport) throws IOException {
+        this.segmenter = segmenter;
+        this.connection = transport.connect(received::add);
+        this.applier = new Thread(this::run, "jieba-replication-follower");
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    private void run() {
+        // 连接后先同步一次，补齐连接之前的变更
+        catchUp();
+        while (running) {
+            try {
+                Delta delta = received.poll(100, TimeUnit.MILLISECONDS);
+                if (delta != null) {
+                    handle(delta);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void handle(Delta delta) {
+        if (delta.getVersion() <= version) {
+            return;
+        }
+        if (!delta.isHeartbeat() && delta.getVersion() == version + 1) {
+            apply(delta);
+            return;
+        }
+        // 心跳的版本更新或增量不连续，说明丢失了中间的增量，只能通过同步补齐，
+        // 收到的心跳或增量本身不会被应用，否则同步失败时版本会越过未应用的增量
+        catchUp();
+    }
+
+    private void catchUp() {
+        List<Delta> deltas;
+        try {
+            deltas = connection.sync(version);
+        } catch (IOException e) {
+            log.error("failed to sync with replication leader", e);
+            return;
+        }
+        for (Delta delta : deltas) {
+            if (delta.isSnapshot() ? delta.getVersion() > version : delta.getVersion() == version + 1) {
+                apply(delta);
+            } else if (delta.getVersion() > version) {
+                log.warn("sync response skips from version {} to {}, wait for the next sync", version, delta.getVersion());
+                return;
+            }
+        }
+    }
+
+    private void apply(Delta delta) {
+        if (!delta.getChanges().isEmpty()) {
+            segmenter.replayChanges(delta.getChanges());
+        }
+        version = delta.getVersion();
+        lastLagMillis = System.currentTimeMillis() - delta.getCreatedAt();
+        if (delta.isSnapshot()) {
+            snapshots++;
+            log.debug("snapshot of version {} applied, words:{}", version, delta.getChanges().size());
+        } else {
+            appliedDeltas++;
+        }
+    }
+
+    /**
+     * @return 已应用的版本号
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return 最近应用的增量从领导者创建到在本地应用所经过的时间（毫秒），跨主机时受时钟偏差影响
+     */
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getAppliedDeltas() {
+        return appliedDeltas;
+    }
+
+    public long getSnapshots() {
+        return snapshots;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        applier.interrupt();
+        connection.close();
+    }
+}
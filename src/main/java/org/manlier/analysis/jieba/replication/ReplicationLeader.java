@@ -0,0 +1,169 @@
+package org.manlier.analysis.jieba.replication;
+
+import io.reactivex.disposables.Disposable;
+import org.manlier.analysis.jieba.DictChange;
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 词典复制的领导者，将分词器的变更合并为带版本号的增量广播给跟随者。
+ * <p>
+ * 一个时间窗口内的变更合并为一个增量，同一个词只保留最后的频率。
+ * 领导者保留最近的若干个增量，落后不多的跟随者可以补齐缺失的增量，
+ * 落后太多的跟随者将收到一个快照，其中包含所有被修改过的词的最终频率。
+ * 没有变更时定期广播心跳，跟随者借此发现自己丢失了最新的增量。
+ * <p>
+ * 版本号只在同一个领导者实例内有效，领导者重启后跟随者需要重新创建
+ */
+public class ReplicationLeader implements Closeable {
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    private static final long DEFAULT_WINDOW_MILLIS = 10;
+    private static final int DEFAULT_HISTORY_SIZE = 1024;
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final int maxBatchSize;
+    private final long windowMillis;
+    // 最近的增量，按版本号循环存放
+    private final Delta[] history;
+    // 所有被修改过的词的最终变更，用于生成快照
+    private final Map<String, DictChange> state = new LinkedHashMap<>();
+    private final JiebaSegmenter segmenter;
+    private final BlockingQueue<List<Pair<String>>> pending = new LinkedBlockingQueue<>();
+    private final Transport.Publisher publisher;
+    private final Disposable subscription;
+    private final Thread batcher;
+    private volatile boolean running = true;
+    private long version;
+
+    public ReplicationLeader(JiebaSegmenter segmenter, Transport transport) throws IOException {
+        this(segmenter, transport, DEFAULT_MAX_BATCH_SIZE, DEFAULT_WINDOW_MILLIS, DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * @param segmenter    分词器，其词典的变更将被复制
+     * @param transport    传输层
+     * @param maxBatchSize 一个增量最多包含的变更数
+     * @param windowMillis 合并变更的时间窗口
+     * @param historySize  保留的增量个数
+     */
+    public ReplicationLeader(JiebaSegmenter segmenter, Transport transport,
+                             int maxBatchSize, long windowMillis, int historySize) throws IOException {
+        this.segmenter = segmenter;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.history = new Delta[historySize];
+        this.publisher = transport.bind(this::sync);
+        this.batcher = new Thread(this::batch, "jieba-replication-leader");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+        this.subscription = segmenter.subscribe(pending::add);
+    }
+
+    private void batch() {
+        List<List<Pair<String>>> received = new ArrayList<>();
+        Map<String, DictChange> changes = new LinkedHashMap<>();
+        while (running) {
+            try {
+                List<Pair<String>> first = pending.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    heartbeat();
+                    continue;
+                }
+                received.add(first);
+                int size = first.size();
+                long deadline = System.currentTimeMillis() + windowMillis;
+                // 在时间窗口内继续收集变更，直到达到批量上限
+                while (size < maxBatchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    List<Pair<String>> next = wait > 0 ? pending.poll(wait, TimeUnit.MILLISECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    received.add(next);
+                    size += next.size();
+                }
+                for (List<Pair<String>> list : received) {
+                    for (Pair<String> change : list) {
+                        DictChange dictChange = DictChange.of(change, segmenter.getWordDictionary());
+                        changes.remove(dictChange.getWord());
+                        changes.put(dictChange.getWord(), dictChange);
+                    }
+                }
+                publish(changes);
+                received.clear();
+                changes.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("failed to publish dictionary delta", e);
+                received.clear();
+                changes.clear();
+            }
+        }
+    }
+
+    private synchronized void publish(Map<String, DictChange> changes) {
+        List<DictChange> list = new ArrayList<>(changes.values());
+        for (DictChange change : list) {
+            state.remove(change.getWord());
+            state.put(change.getWord(), change);
+        }
+        Delta delta = new Delta(++version, Delta.NORMAL, System.currentTimeMillis(), list);
+        history[(int) (version % history.length)] = delta;
+        publisher.broadcast(delta);
+    }
+
+    private synchronized void heartbeat() {
+        publisher.broadcast(new Delta(version, Delta.HEARTBEAT, System.currentTimeMillis(), Collections.emptyList()));
+    }
+
+    /**
+     * 获得afterVersion之后的所有增量，若其中一部分已不在保留的增量中，则返回一个快照
+     *
+     * @param afterVersion 跟随者已应用的版本
+     * @return 增量列表
+     */
+    synchronized List<Delta> sync(long afterVersion) {
+        if (afterVersion >= version) {
+            return Collections.emptyList();
+        }
+        if (afterVersion >= 0 && version - afterVersion <= history.length) {
+            List<Delta> deltas = new ArrayList<>((int) (version - afterVersion));
+            for (long v = afterVersion + 1; v <= version; v++) {
+                deltas.add(history[(int) (v % history.length)]);
+            }
+            return deltas;
+        }
+        List<DictChange> changes = new ArrayList<>(state.values());
+        log.debug("follower at version {} is too far behind, send snapshot of version {}", afterVersion, version);
+        return Collections.singletonList(new Delta(version, Delta.SNAPSHOT, System.currentTimeMillis(), changes));
+    }
+
+    /**
+     * @return 最新的版本号
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void close() throws IOException {
+        subscription.dispose();
+        running = false;
+        batcher.interrupt();
+        publisher.close();
+    }
+}
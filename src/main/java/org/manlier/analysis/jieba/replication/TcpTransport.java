@@ -0,0 +1,342 @@
+package org.manlier.analysis.jieba.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * 基于TCP的传输层，领导者监听一个端口，每个跟随者使用一条长连接。
+ * <p>
+ * 每个跟随者有一个有界的发送队列，队列满时新的增量将被丢弃，跟随者随后会通过同步请求补齐，
+ * 因此较慢的跟随者不会阻塞领导者及其他跟随者。
+ * <p>
+ * 帧格式：byte 类型，int 内容长度，内容。增量帧的内容为一个增量；同步请求帧的内容为long 请求编号、
+ * long 已应用的版本；同步响应帧的内容为long 对应的请求编号、int 增量数及各个增量。
+ * 跟随者根据请求编号丢弃已超时的请求迟到的响应
+ */
+public class TcpTransport implements Transport {
+
+    private static final byte DELTA = 1;
+    private static final byte SYNC_REQUEST = 2;
+    private static final byte SYNC_RESPONSE = 3;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final long SYNC_TIMEOUT_MILLIS = 30000;
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final String host;
+    private final int port;
+    private final int queueCapacity;
+    private volatile int localPort = -1;
+
+    public TcpTransport(String host, int port) {
+        this(host, port, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param host          领导者的地址，领导者一侧为监听的地址
+     * @param port          端口，领导者一侧为0时使用随机端口，可通过getLocalPort获得
+     * @param queueCapacity 每个跟随者的发送队列容量
+     */
+    public TcpTransport(String host, int port, int queueCapacity) {
+        this.host = host;
+        this.port = port;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return 领导者实际监听的端口，尚未bind时为-1
+     */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    @Override
+    public Publisher bind(SyncHandler handler) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(host, port));
+        localPort = serverSocket.getLocalPort();
+        List<Peer> peers = new CopyOnWriteArrayList<>();
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    peers.add(new Peer(socket, handler, peers));
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        log.error("failed to accept follower", e);
+                    }
+                }
+            }
+        }, "jieba-replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.debug("replication leader listening on {}:{}", host, localPort);
+
+        return new Publisher() {
+            @Override
+            public void broadcast(Delta delta) {
+                if (peers.isEmpty()) {
+                    return;
+                }
+                byte[] frame;
+                try {
+                    frame = frame(DELTA, delta::writeTo);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (Peer peer : peers) {
+                    peer.send(frame);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                serverSocket.close();
+                for (Peer peer : peers) {
+                    peer.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Connection connect(Consumer<Delta> listener) throws IOException {
+        Socket socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        return new FollowerConnection(socket, listener);
+    }
+
+    private interface Body {
+        void writeTo(DataOutput out) throws IOException;
+    }
+
+    private static byte[] frame(byte type, Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeInt(0);
+        body.writeTo(out);
+        out.flush();
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - 5;
+        frame[1] = (byte) (length >>> 24);
+        frame[2] = (byte) (length >>> 16);
+        frame[3] = (byte) (length >>> 8);
+        frame[4] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * 领导者一侧与一个跟随者的连接
+     */
+    private class Peer implements Closeable {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final List<Peer> peers;
+        private volatile boolean closed;
+
+        Peer(Socket socket, SyncHandler handler, List<Peer> peers) throws IOException {
+            this.socket = socket;
+            this.peers = peers;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Thread reader = new Thread(() -> read(handler), "jieba-replication-peer-reader");
+            reader.setDaemon(true);
+            reader.start();
+            Thread writer = new Thread(this::write, "jieba-replication-peer-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        void send(byte[] frame) {
+            if (!queue.offer(frame)) {
+                log.debug("send queue of follower {} is full, delta dropped", socket.getRemoteSocketAddress());
+            }
+        }
+
+        private void read(SyncHandler handler) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (!closed) {
+                    byte type = in.readByte();
+                    in.readInt();
+                    if (type != SYNC_REQUEST) {
+                        throw new IOException("unexpected frame type " + type);
+                    }
+                    long requestId = in.readLong();
+                    List<Delta> deltas = handler.sync(in.readLong());
+                    byte[] response = frame(SYNC_RESPONSE, out -> {
+                        out.writeLong(requestId);
+                        out.writeInt(deltas.size());
+                        for (Delta delta : deltas) {
+                            delta.writeTo(out);
+                        }
+                    });
+                    // 同步响应不能被丢弃，直接写出
+                    writeFrame(response);
+                }
+            } catch (EOFException | SocketException e) {
+                log.debug("follower {} disconnected", socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                log.error("failed to serve follower " + socket.getRemoteSocketAddress(), e);
+            } finally {
+                close();
+            }
+        }
+
+        private void write() {
+            List<byte[]> frames = new ArrayList<>();
+            try {
+                while (!closed) {
+                    byte[] frame = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (frame == null) {
+                        continue;
+                    }
+                    frames.add(frame);
+                    queue.drainTo(frames);
+                    synchronized (out) {
+                        for (byte[] f : frames) {
+                            out.write(f);
+                        }
+                        out.flush();
+                    }
+                    frames.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.debug("failed to send to follower {}", socket.getRemoteSocketAddress());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void writeFrame(byte[] frame) throws IOException {
+            synchronized (out) {
+                out.write(frame);
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            peers.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class SyncResponse {
+        final long requestId;
+        final List<Delta> deltas;
+
+        SyncResponse(long requestId, List<Delta> deltas) {
+            this.requestId = requestId;
+            this.deltas = deltas;
+        }
+    }
+
+    /**
+     * 跟随者一侧与领导者的连接
+     */
+    private class FollowerConnection implements Connection {
+        private final Socket socket;
+        private final DataOutputStream out;
+        // 同一时刻只有一个同步请求，之前超时的请求的响应可能迟到
+        private final BlockingQueue<SyncResponse> responses = new LinkedBlockingQueue<>();
+        private long lastRequestId;
+        private volatile boolean closed;
+
+        FollowerConnection(Socket socket, Consumer<Delta> listener) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Thread reader = new Thread(() -> read(listener), "jieba-replication-follower-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void read(Consumer<Delta> listener) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (!closed) {
+                    byte type = in.readByte();
+                    in.readInt();
+                    if (type == DELTA) {
+                        listener.accept(Delta.readFrom(in));
+                    } else if (type == SYNC_RESPONSE) {
+                        long requestId = in.readLong();
+                        int count = in.readInt();
+                        List<Delta> deltas = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            deltas.add(Delta.readFrom(in));
+                        }
+                        responses.put(new SyncResponse(requestId, deltas));
+                    } else {
+                        throw new IOException("unexpected frame type " + type);
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                if (!closed) {
+                    log.warn("connection to replication leader {}:{} lost", host, port);
+                }
+            } catch (IOException e) {
+                log.error("failed to read from replication leader " + host + ":" + port, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public synchronized List<Delta> sync(long afterVersion) throws IOException {
+            long requestId = ++lastRequestId;
+            byte[] request = frame(SYNC_REQUEST, out -> {
+                out.writeLong(requestId);
+                out.writeLong(afterVersion);
+            });
+            out.write(request);
+            out.flush();
+            long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+            try {
+                while (true) {
+                    long wait = deadline - System.currentTimeMillis();
+                    SyncResponse response = wait > 0 ? responses.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (response == null) {
+                        throw new IOException("sync with replication leader " + host + ":" + port + " timed out");
+                    }
+                    // 之前超时的请求迟到的响应基于更早的版本，丢弃
+                    if (response.requestId == requestId) {
+                        return response.deltas;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while syncing with replication leader");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            socket.close();
+        }
+    }
+}
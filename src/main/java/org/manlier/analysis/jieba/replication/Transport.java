@@ -0,0 +1,54 @@
+package org.manlier.analysis.jieba.replication;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 领导者与跟随者之间的传输层。
+ * <p>
+ * 领导者通过bind开始服务，将增量广播给所有已连接的跟随者；跟随者通过connect连接领导者，
+ * 接收广播的增量，并可以主动请求同步缺失的增量。
+ * 传输层允许丢弃发给较慢的跟随者的增量，跟随者发现版本号不连续时会自行同步
+ */
+public interface Transport {
+
+    /**
+     * 领导者一侧：开始服务
+     *
+     * @param handler 处理跟随者的同步请求
+     * @return 用于广播增量的发布者
+     */
+    Publisher bind(SyncHandler handler) throws IOException;
+
+    /**
+     * 跟随者一侧：连接领导者
+     *
+     * @param listener 接收广播的增量，可能在传输层的线程中被调用，不应阻塞
+     * @return 与领导者的连接
+     */
+    Connection connect(Consumer<Delta> listener) throws IOException;
+
+    /**
+     * 处理跟随者的同步请求
+     */
+    interface SyncHandler {
+        /**
+         * @param afterVersion 跟随者已应用的版本
+         * @return 该版本之后的所有增量，或一个快照
+         */
+        List<Delta> sync(long afterVersion);
+    }
+
+    interface Publisher extends Closeable {
+        void broadcast(Delta delta);
+    }
+
+    interface Connection extends Closeable {
+        /**
+         * 请求同步afterVersion之后的增量
+         */
+        List<Delta> sync(long afterVersion) throws IOException;
+    }
+}
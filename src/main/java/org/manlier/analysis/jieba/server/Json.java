@@ -0,0 +1,123 @@
+package org.manlier.analysis.jieba.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务端使用的最简JSON处理，只支持字符串数组的解析及整数数组的输出
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * 解析JSON字符串数组，如 ["文档一", "文档二"]
+     *
+     * @param text JSON文本
+     * @return 字符串列表
+     * @throws IllegalArgumentException 格式错误时抛出
+     */
+    static List<String> parseStringArray(String text) {
+        List<String> values = new ArrayList<>();
+        int i = skipWhitespace(text, 0);
+        i = expect(text, i, '[');
+        i = skipWhitespace(text, i);
+        if (i < text.length() && text.charAt(i) == ']') {
+            return values;
+        }
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            i = skipWhitespace(text, i);
+            i = expect(text, i, '"');
+            sb.setLength(0);
+            while (true) {
+                if (i >= text.length()) {
+                    throw new IllegalArgumentException("unterminated string");
+                }
+                char ch = text.charAt(i++);
+                if (ch == '"') {
+                    break;
+                }
+                if (ch != '\\') {
+                    sb.append(ch);
+                    continue;
+                }
+                if (i >= text.length()) {
+                    throw new IllegalArgumentException("unterminated escape");
+                }
+                char escaped = text.charAt(i++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(escaped);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 > text.length()) {
+                            throw new IllegalArgumentException("bad unicode escape");
+                        }
+                        sb.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                        i += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad escape \\" + escaped);
+                }
+            }
+            values.add(sb.toString());
+            i = skipWhitespace(text, i);
+            if (i < text.length() && text.charAt(i) == ',') {
+                i++;
+                continue;
+            }
+            i = expect(text, i, ']');
+            if (skipWhitespace(text, i) != text.length()) {
+                throw new IllegalArgumentException("trailing characters after array");
+            }
+            return values;
+        }
+    }
+
+    /**
+     * 以扁平的整数数组输出一个文档的词元偏移量，如 [0,2,2,3]
+     */
+    static void appendOffsets(StringBuilder sb, int[] offsets, int length) {
+        sb.append('[');
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(offsets[i]);
+        }
+        sb.append(']');
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int expect(String text, int i, char ch) {
+        if (i >= text.length() || text.charAt(i) != ch) {
+            throw new IllegalArgumentException("expected '" + ch + "' at " + i);
+        }
+        return i + 1;
+    }
+}
@@ -0,0 +1,454 @@
+package org.manlier.analysis.jieba.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于JDK内置HttpServer的分词服务，不依赖其他第三方库。
+ * <p>
+ * 请求：POST /segment?mode=search|index|fast&amp;hmm=true|false&amp;format=json|binary
+ * <ul>
+ * <li>Content-Type为application/json时，请求体为字符串数组，每个字符串为一个文档</li>
+ * <li>其他情况下整个请求体（UTF-8）为一个文档</li>
+ * </ul>
+ * 响应只包含词元的偏移量，调用方可根据原文截取词语：
+ * <ul>
+ * <li>json（默认）：每个文档一个扁平的整数数组 [start0,end0,start1,end1,...]，外层为数组</li>
+ * <li>binary：每个文档依次写出 varint 词元数，以及每个词元的 zigzag varint(start - 上一个start)、varint(end - start)。
+ * INDEX及SEARCH模式下子词的起始位置可能小于前一个词元，因此起始位置的差值使用zigzag编码</li>
+ * </ul>
+ * 各个请求的文档进入同一个有界队列，分词线程每次从队列中取出多个文档（可能来自不同的请求）一起处理，
+ * 最后一个文档处理完的线程负责写出响应。队列已满时立即返回503，不会无限堆积请求；
+ * 文档数超过队列容量的请求永远无法被接受，直接返回413，调用方应拆分后重新发送。
+ * <p>
+ * 内置HttpServer默认未开启TCP_NODELAY，小响应会因Nagle算法与延迟确认多等待约40ms，
+ * 需要时可以在启动JVM时指定 -Dsun.net.httpserver.nodelay=true，服务本身不修改该全局属性。
+ */
+public class SegmentServer implements Closeable {
+
+    public static final String PATH = "/segment";
+    private static final int DEFAULT_PORT = 8300;
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    private static final int MAX_REQUEST_BYTES = 8 << 20;
+
+    private Logger log = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    private final JiebaSegmenter segmenter;
+    private final HttpServer server;
+    private final ExecutorService ioExecutor;
+    private final Thread[] workers;
+    private final int maxBatchSize;
+    // 队列中的文档数受permits限制
+    private final int queueCapacity;
+    private final Semaphore permits;
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running = true;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public SegmentServer(JiebaSegmenter segmenter, InetSocketAddress address) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.segmenter = segmenter;
+        this.maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        this.permits = new Semaphore(DEFAULT_QUEUE_CAPACITY);
+        this.ioExecutor = newIoExecutor(Math.max(2, cores / 2));
+        this.workers = new Thread[cores];
+        this.server = createServer(address);
+    }
+
+    /**
+     * @param segmenter     分词器
+     * @param address       监听地址
+     * @param ioThreads     读取请求的线程数
+     * @param workerThreads 分词线程数
+     * @param queueCapacity 等待分词的文档数上限，超过时拒绝请求
+     * @param maxBatchSize  分词线程一次最多处理的文档数
+     */
+    public SegmentServer(JiebaSegmenter segmenter, InetSocketAddress address, int ioThreads,
+                         int workerThreads, int queueCapacity, int maxBatchSize) throws IOException {
+        this.segmenter = segmenter;
+        this.maxBatchSize = maxBatchSize;
+        this.queueCapacity = queueCapacity;
+        this.permits = new Semaphore(queueCapacity);
+        this.ioExecutor = newIoExecutor(ioThreads);
+        this.workers = new Thread[workerThreads];
+        this.server = createServer(address);
+    }
+
+    private static ExecutorService newIoExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "jieba-server-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private HttpServer createServer(InetSocketAddress address) throws IOException {
+        HttpServer httpServer = HttpServer.create(address, 0);
+        httpServer.createContext(PATH, this::handle);
+        httpServer.setExecutor(ioExecutor);
+        return httpServer;
+    }
+
+    public void start() {
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "jieba-server-worker-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        server.start();
+        log.info("segment server listening on {}", getAddress());
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "only POST is supported");
+                return;
+            }
+            Request request = parseRequest(exchange);
+            if (request == null) {
+                return;
+            }
+            int n = request.docs.size();
+            if (n == 0) {
+                request.respond();
+                return;
+            }
+            if (n > queueCapacity) {
+                // 重试也不会成功，不返回Retry-After
+                sendError(exchange, 413, "request has " + n + " documents, more than the queue capacity "
+                        + queueCapacity + "; split it into smaller requests");
+                return;
+            }
+            if (!permits.tryAcquire(n)) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "server is overloaded");
+                return;
+            }
+            accepted.increment();
+            for (int i = 0; i < n; i++) {
+                queue.add(new Task(request, i));
+            }
+        } catch (RuntimeException e) {
+            log.error("failed to handle segment request", e);
+            sendError(exchange, 500, e.toString());
+        }
+    }
+
+    private Request parseRequest(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI());
+        SegMode mode;
+        try {
+            mode = SegMode.valueOf(params.getOrDefault("mode", "search").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "unknown mode " + params.get("mode"));
+            return null;
+        }
+        boolean hmm = !"false".equalsIgnoreCase(params.get("hmm"));
+        String format = params.getOrDefault("format", "json");
+        if (!"json".equals(format) && !"binary".equals(format)) {
+            sendError(exchange, 400, "unknown format " + format);
+            return null;
+        }
+
+        byte[] body = readBody(exchange.getRequestBody());
+        if (body == null) {
+            sendError(exchange, 413, "request body is larger than " + MAX_REQUEST_BYTES + " bytes");
+            return null;
+        }
+        String text = new String(body, StandardCharsets.UTF_8);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        List<String> docs;
+        boolean batch = contentType != null && contentType.startsWith("application/json");
+        if (batch) {
+            try {
+                docs = Json.parseStringArray(text);
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, "bad json: " + e.getMessage());
+                return null;
+            }
+        } else {
+            docs = Collections.singletonList(text);
+        }
+        return new Request(exchange, docs, mode, hmm, "binary".equals(format));
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > MAX_REQUEST_BYTES) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+
+    private void work() {
+        List<Task> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Task first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 一次取出已经到达的多个文档，减少线程切换
+                queue.drainTo(batch, maxBatchSize - 1);
+                permits.release(batch.size());
+                batches.increment();
+                documents.add(batch.size());
+                for (Task task : batch) {
+                    task.run();
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * @return 接受的请求数
+     */
+    public long getAcceptedRequests() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return 因队列已满被拒绝的请求数
+     */
+    public long getRejectedRequests() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return 分词线程平均每次处理的文档数
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0d : (double) documents.sum() / count;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        running = false;
+        for (Thread worker : workers) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+        ioExecutor.shutdown();
+    }
+
+    /**
+     * 一个HTTP请求，包含一个或多个文档
+     */
+    private class Request {
+        final HttpExchange exchange;
+        final List<String> docs;
+        final SegMode mode;
+        final boolean hmm;
+        final boolean binary;
+        // 每个文档的词元偏移量 [start0, end0, start1, end1, ...]
+        final Offsets[] offsets;
+        final AtomicInteger remaining;
+
+        Request(HttpExchange exchange, List<String> docs, SegMode mode, boolean hmm, boolean binary) {
+            this.exchange = exchange;
+            this.docs = docs;
+            this.mode = mode;
+            this.hmm = hmm;
+            this.binary = binary;
+            this.offsets = new Offsets[docs.size()];
+            this.remaining = new AtomicInteger(docs.size());
+        }
+
+        void segment(int index) {
+            // 偏移量直接由sink写入数组，不创建词元对象
+            Offsets result = new Offsets();
+            segmenter.process(docs.get(index), mode, hmm, result);
+            offsets[index] = result;
+            if (remaining.decrementAndGet() == 0) {
+                respond();
+            }
+        }
+
+        void respond() {
+            try {
+                byte[] bytes;
+                if (binary) {
+                    bytes = encodeBinary();
+                    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                } else {
+                    bytes = encodeJson();
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                }
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            } catch (IOException e) {
+                log.debug("failed to send segment response", e);
+                exchange.close();
+            }
+        }
+
+        private byte[] encodeJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append('[');
+            for (int i = 0; i < offsets.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                Json.appendOffsets(sb, offsets[i].values, offsets[i].size);
+            }
+            sb.append(']');
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private byte[] encodeBinary() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (Offsets doc : offsets) {
+                int[] values = doc.values;
+                writeVarInt(out, doc.size / 2);
+                int prevStart = 0;
+                for (int i = 0; i < doc.size; i += 2) {
+                    int delta = values[i] - prevStart;
+                    writeVarInt(out, (delta << 1) ^ (delta >> 31));
+                    writeVarInt(out, values[i + 1] - values[i]);
+                    prevStart = values[i];
+                }
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 一个文档的词元偏移量，由分词器依次写入
+     */
+    private static class Offsets implements JiebaSegmenter.TokenSink {
+        int[] values = new int[32];
+        int size;
+
+        @Override
+        public void accept(String word, int startOffset, int endOffset) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = startOffset;
+            values[size++] = endOffset;
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * 队列中的一个文档
+     */
+    private class Task {
+        final Request request;
+        final int index;
+
+        Task(Request request, int index) {
+            this.request = request;
+            this.index = index;
+        }
+
+        void run() {
+            try {
+                request.segment(index);
+            } catch (RuntimeException e) {
+                log.error("failed to segment document", e);
+                if (request.remaining.getAndSet(-1) > 0) {
+                    try {
+                        sendError(request.exchange, 500, e.toString());
+                    } catch (IOException ignored) {
+                        request.exchange.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 启动分词服务
+     * <p>
+     * 用法：SegmentServer [端口] [用户字典目录]
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        JiebaSegmenter segmenter = new JiebaSegmenter();
+        if (args.length > 1) {
+            segmenter.loadUserDict(new FileDictSource(Paths.get(args[1])));
+        }
+        SegmentServer server = new SegmentServer(segmenter, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+    }
+}
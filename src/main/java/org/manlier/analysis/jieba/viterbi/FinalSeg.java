@@ -1,16 +1,12 @@
 package org.manlier.analysis.jieba.viterbi;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.manlier.analysis.jieba.CharacterUtil;
-import org.manlier.analysis.jieba.Pair;
-import org.manlier.analysis.jieba.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,18 +14,28 @@ import org.slf4j.LoggerFactory;
 public class FinalSeg {
     private static FinalSeg singleInstance;
     private static final String PROB_EMIT = "/prob_emit.txt";
-    private static final Set<String> FORCE_SPLIT_WORDS = new HashSet<>();
-    private static char[] states = new char[]{'B', 'M', 'E', 'S'};
-    private static Map<Character, Map<Character, Double>> emit;
-    private static Map<Character, Double> start;
-    private static Map<Character, Map<Character, Double>> trans;
-    private static Map<Character, char[]> prevStatus;
-    private static Double MIN_FLOAT = -3.14e100;
+    private static final Set<String> FORCE_SPLIT_WORDS = ConcurrentHashMap.newKeySet();
+    private static final String CACHE_CONFIG_NAME = "jieba.hmmCacheSize";
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final String MODEL_CONFIG_NAME = "jieba.hmmModel";
+    private static final String PROB_EMIT_BIN = "/prob_emit.bin";
+    // 每个状态之前可能的状态，B之前只可能是E或S，以下类推
+    private static final int[][] prevStatus = new int[][]{
+            {HmmModel.E, HmmModel.S},   // B
+            {HmmModel.M, HmmModel.B},   // M
+            {HmmModel.B, HmmModel.M},   // E
+            {HmmModel.S, HmmModel.E}    // S
+    };
+    private static HmmModel model;
+    // 未登录词片段的切分结果缓存，为null时不使用缓存
+    private final HmmCache cache;
     private Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
 
 
     private FinalSeg() {
         loadModel();
+        int cacheSize = Integer.getInteger(CACHE_CONFIG_NAME, DEFAULT_CACHE_SIZE);
+        this.cache = cacheSize > 0 ? new HmmCache(cacheSize) : null;
     }
 
 
@@ -41,78 +47,118 @@ public class FinalSeg {
     }
 
 
+    /**
+     * 载入HMM模型，优先使用通过jieba.hmmModel指定的二进制模型文件（内存映射），
+     * 其次是classpath中的prob_emit.bin，最后是文本格式的prob_emit.txt
+     */
     private void loadModel() {
-        // HMM隐马尔科夫模型创建
         long s = System.currentTimeMillis();
-        prevStatus = new HashMap<>();
-        // 定义状态转移关系
-        prevStatus.put('B', new char[]{'E', 'S'});  // 表示B之前只可能是End或Single，以下类推
-        prevStatus.put('M', new char[]{'M', 'B'});
-        prevStatus.put('S', new char[]{'S', 'E'});
-        prevStatus.put('E', new char[]{'B', 'M'});
-
-        start = new HashMap<>();
-        start.put('B', -0.26268660809250016);   //  概率为0.7689828525554734
-        start.put('E', -3.14e+100);             //  概率为0
-        start.put('M', -3.14e+100);             //  概率为0
-        start.put('S', -1.4652633398537678);    //  概率为0.2310171474445266
-
-        // 转移矩阵
-        trans = new HashMap<>();
-        Map<Character, Double> transB = new HashMap<>();
-        transB.put('E', -0.510825623765990);
-        transB.put('M', -0.916290731874155);
-        trans.put('B', transB);                 // B只可能向E跟M转移，以下类推
-        Map<Character, Double> transE = new HashMap<>();
-        transE.put('B', -0.5897149736854513);
-        transE.put('S', -0.8085250474669937);
-        trans.put('E', transE);
-        Map<Character, Double> transM = new HashMap<>();
-        transM.put('E', -0.33344856811948514);
-        transM.put('M', -1.2603623820268226);
-        trans.put('M', transM);
-        Map<Character, Double> transS = new HashMap<>();
-        transS.put('B', -0.7211965654669841);
-        transS.put('S', -0.6658631448798212);
-        trans.put('S', transS);
-
-        InputStream is = this.getClass().getResourceAsStream(PROB_EMIT);
+        String modelPath = System.getProperty(MODEL_CONFIG_NAME);
         try {
-            BufferedReader br = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-            emit = new HashMap<Character, Map<Character, Double>>();
-            Map<Character, Double> values = null;
-            while (br.ready()) {
-                String line = br.readLine();
-                String[] tokens = line.split("\t");
-                if (tokens.length == 1) {
-                    values = new HashMap<Character, Double>();
-                    emit.put(tokens[0].charAt(0), values);
+            if (modelPath != null) {
+                model = HmmModel.map(Paths.get(modelPath));
+            } else {
+                InputStream bin = this.getClass().getResourceAsStream(PROB_EMIT_BIN);
+                if (bin != null) {
+                    try (InputStream is = bin) {
+                        model = HmmModel.read(is);
+                    }
                 } else {
-                    values.put(tokens[0].charAt(0), Double.valueOf(tokens[1]));
+                    try (InputStream is = this.getClass().getResourceAsStream(PROB_EMIT)) {
+                        model = HmmModel.parseText(is);
+                    }
                 }
             }
         } catch (IOException e) {
-            logger.error(PROB_EMIT + "{}: load model failure!", e);
-        } finally {
-            try {
-                if (null != is)
-                    is.close();
-            } catch (IOException e) {
-                logger.error(PROB_EMIT + "{}: load close failure!", e);
-            }
+            logger.error("{}: load model failure!", modelPath != null ? modelPath : PROB_EMIT, e);
         }
         logger.debug("model load finished, time elapsed {} ms.", System.currentTimeMillis() - s);
     }
 
     public void addForceSplit(String word) {
-        FORCE_SPLIT_WORDS.add(word);
+        if (FORCE_SPLIT_WORDS.add(word) && cache != null) {
+            cache.invalidate();
+        }
     }
 
     public void delForceSplit(String word) {
-        FORCE_SPLIT_WORDS.remove(word);
+        if (FORCE_SPLIT_WORDS.remove(word) && cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * @return 是否设置了全局的强制切分词
+     */
+    public static boolean hasForceSplitWords() {
+        return !FORCE_SPLIT_WORDS.isEmpty();
+    }
+
+    /**
+     * 获得切分结果缓存，可用于查看命中率等统计信息
+     *
+     * @return 缓存，未启用时返回null
+     */
+    public HmmCache getCache() {
+        return cache;
     }
 
     public void cut(String sentence, List<String> tokens) {
+        cut(sentence, tokens, Collections.emptySet());
+    }
+
+    /**
+     * 使用HMM对句子进行切分
+     *
+     * @param sentence        句子
+     * @param tokens          用于存放切分结果
+     * @param forceSplitWords 除全局的强制切分词之外，额外需要强制切分的词
+     */
+    public void cut(String sentence, List<String> tokens, Set<String> forceSplitWords) {
+        if (cache == null || sentence.length() > HmmCache.MAX_FRAGMENT_LENGTH) {
+            doCut(sentence, tokens, forceSplitWords);
+            return;
+        }
+        long generation = cache.generation();
+        byte[] ends = cache.get(sentence);
+        if (ends == null) {
+            // 缓存中只保存应用了全局强制切分词后的结果
+            List<String> subTokens = new ArrayList<>();
+            doCut(sentence, subTokens, Collections.emptySet());
+            ends = new byte[subTokens.size()];
+            int end = 0;
+            for (int i = 0; i < ends.length; i++) {
+                end += subTokens.get(i).length();
+                ends[i] = (byte) end;
+            }
+            cache.put(sentence, ends, generation);
+            filterSplitWords(tokens, subTokens, forceSplitWords);
+        } else {
+            int begin = 0;
+            for (byte end : ends) {
+                String token = sentence.substring(begin, end);
+                if (forceSplitWords.isEmpty() || !forceSplitWords.contains(token)) {
+                    tokens.add(token);
+                } else {
+                    splitToChars(tokens, token);
+                }
+                begin = end;
+            }
+        }
+    }
+
+    /**
+     * 不使用缓存，使用HMM对句子进行切分，用于统计HMM的实际耗时
+     *
+     * @param sentence        句子
+     * @param tokens          用于存放切分结果
+     * @param forceSplitWords 除全局的强制切分词之外，额外需要强制切分的词
+     */
+    public void cutWithoutCache(String sentence, List<String> tokens, Set<String> forceSplitWords) {
+        doCut(sentence, tokens, forceSplitWords);
+    }
+
+    private void doCut(String sentence, List<String> tokens, Set<String> forceSplitWords) {
         StringBuilder chinese = new StringBuilder();
         StringBuilder other = new StringBuilder();
         for (int i = 0; i < sentence.length(); ++i) {
@@ -126,7 +172,7 @@ public class FinalSeg {
             } else {
                 if (chinese.length() > 0) {
                     List<String> subTokens = viterbi(chinese.toString());
-                    filterSplitWords(tokens, subTokens);
+                    filterSplitWords(tokens, subTokens, forceSplitWords);
                     chinese = new StringBuilder();
                 }
                 other.append(ch);
@@ -135,110 +181,99 @@ public class FinalSeg {
         }
         if (chinese.length() > 0) {
             List<String> subTokens = viterbi(chinese.toString());
-            filterSplitWords(tokens, subTokens);
+            filterSplitWords(tokens, subTokens, forceSplitWords);
         } else {
             processOtherUnknownWords(other.toString(), tokens);
         }
     }
 
-    private void filterSplitWords(List<String> tokens, List<String> subTokens) {
+    private void filterSplitWords(List<String> tokens, List<String> subTokens, Set<String> forceSplitWords) {
         subTokens.forEach(token -> {
-            if (!FORCE_SPLIT_WORDS.contains(token))
+            if (!FORCE_SPLIT_WORDS.contains(token) && !forceSplitWords.contains(token))
                 tokens.add(token);
             else {
-                for (char c : token.toCharArray()) {
-                    tokens.add(String.valueOf(c));
-                }
+                splitToChars(tokens, token);
             }
         });
     }
 
+    private void splitToChars(List<String> tokens, String token) {
+        for (char c : token.toCharArray()) {
+            tokens.add(String.valueOf(c));
+        }
+    }
+
 
     public List<String> viterbi(String sentence) {
+        return viterbi(model, sentence);
+    }
+
+    /**
+     * 使用指定的模型计算句子的最优状态序列并切分
+     */
+    static List<String> viterbi(HmmModel model, String sentence) {
         List<String> tokens = new ArrayList<>();
-        Vector<Map<Character, Double>> v = new Vector<Map<Character, Double>>();
-        Map<Character, Node> path = new HashMap<Character, Node>();
-
-        v.add(new HashMap<Character, Double>());
-        for (char state : states) {
-            Double emP = emit.get(state).get(sentence.charAt(0));
-            if (null == emP)
-                emP = MIN_FLOAT;
-            v.get(0).put(state, start.get(state) + emP);
-            path.put(state, new Node(state, null));
+        int N = sentence.length();
+        int stateCount = HmmModel.STATE_COUNT;
+        double[] v = new double[stateCount];
+        double[] vv = new double[stateCount];
+        // path[i * stateCount + y] 表示第i个字处于状态y时，第i-1个字的最优状态
+        byte[] path = new byte[N * stateCount];
+
+        char ch = sentence.charAt(0);
+        for (int state = 0; state < stateCount; state++) {
+            v[state] = model.start(state) + model.emit(state, ch);
         }
 
-        for (int i = 1; i < sentence.length(); ++i) {
-            Map<Character, Double> vv = new HashMap<Character, Double>();
-            v.add(vv);
-            Map<Character, Node> newPath = new HashMap<Character, Node>();
-            for (char y : states) {
-                Double emp = emit.get(y).get(sentence.charAt(i));
-                if (emp == null)
-                    emp = MIN_FLOAT;
-                Pair<Character> candidate = null;
-                for (char y0 : prevStatus.get(y)) {
-                    Double tranp = trans.get(y0).get(y);
-                    if (null == tranp)
-                        tranp = MIN_FLOAT;
-                    tranp += (emp + v.get(i - 1).get(y0));
-                    if (null == candidate)
-                        candidate = new Pair<Character>(y0, tranp);
-                    else if (candidate.freq <= tranp) {
-                        candidate.freq = tranp;
-                        candidate.key = y0;
+        for (int i = 1; i < N; ++i) {
+            ch = sentence.charAt(i);
+            for (int y = 0; y < stateCount; y++) {
+                double emp = model.emit(y, ch);
+                int bestState = -1;
+                double bestProb = 0;
+                for (int y0 : prevStatus[y]) {
+                    double tranp = model.trans(y0, y) + (emp + v[y0]);
+                    if (bestState < 0 || bestProb <= tranp) {
+                        bestProb = tranp;
+                        bestState = y0;
                     }
                 }
-                vv.put(y, candidate.freq);
-                newPath.put(y, new Node(y, path.get(candidate.key)));
+                vv[y] = bestProb;
+                path[i * stateCount + y] = (byte) bestState;
             }
-            path = newPath;
+            double[] tmp = v;
+            v = vv;
+            vv = tmp;
         }
-        double probE = v.get(sentence.length() - 1).get('E');
-        double probS = v.get(sentence.length() - 1).get('S');
-        Vector<Character> posList = new Vector<Character>(sentence.length());
-        Node win;
-        if (probE < probS)
-            win = path.get('S');
-        else
-            win = path.get('E');
-
-        while (win != null) {
-            posList.add(win.value);
-            win = win.parent;
+
+        // 回溯得到每个字的状态
+        byte[] posList = new byte[N];
+        int win = v[HmmModel.E] < v[HmmModel.S] ? HmmModel.S : HmmModel.E;
+        for (int i = N - 1; i >= 0; i--) {
+            posList[i] = (byte) win;
+            win = path[i * stateCount + win];
         }
-        Collections.reverse(posList);
 
         int begin = 0, next = 0;
-        for (int i = 0; i < sentence.length(); ++i) {
-            char pos = posList.get(i);
-            if (pos == 'B')
+        for (int i = 0; i < N; ++i) {
+            int pos = posList[i];
+            if (pos == HmmModel.B)
                 begin = i;
-            else if (pos == 'E') {
+            else if (pos == HmmModel.E) {
                 tokens.add(sentence.substring(begin, i + 1));
                 next = i + 1;
-            } else if (pos == 'S') {
+            } else if (pos == HmmModel.S) {
                 tokens.add(sentence.substring(i, i + 1));
                 next = i + 1;
             }
         }
-        if (next < sentence.length())
+        if (next < N)
             tokens.add(sentence.substring(next));
         return tokens;
     }
 
 
     private void processOtherUnknownWords(String other, List<String> tokens) {
-        Matcher mat = CharacterUtil.reSkip.matcher(other);
-        int offset = 0;
-        while (mat.find()) {
-            if (mat.start() > offset) {
-                tokens.add(other.substring(offset, mat.start()));
-            }
-            tokens.add(mat.group());
-            offset = mat.end();
-        }
-        if (offset < other.length())
-            tokens.add(other.substring(offset));
+        CharacterUtil.splitAlphanumeric(other, 0, other.length(), tokens);
     }
 }
@@ -0,0 +1,158 @@
+package org.manlier.analysis.jieba.viterbi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 未登录词片段的HMM切分结果缓存。
+ * <p>
+ * 缓存以片段为键，以各个词的结束位置为值（byte数组），容量有限，
+ * 按片段分段加锁，每段内部按LRU淘汰。强制切分词发生变化时整个缓存失效。
+ */
+public class HmmCache {
+
+    // 可缓存的片段最大长度，结束位置使用byte存储
+    public static final int MAX_FRAGMENT_LENGTH = 64;
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+    private final int capacity;
+    // 每次失效后加一，防止失效前开始计算的结果在失效后写入缓存
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity 最多缓存的片段数
+     */
+    public HmmCache(int capacity) {
+        this.capacity = capacity;
+        this.segments = new Segment[SEGMENT_COUNT];
+        int segmentCapacity = Math.max(1, (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * 获得片段的切分结果
+     *
+     * @param fragment 片段
+     * @return 各个词的结束位置（不包含），未缓存时返回null
+     */
+    byte[] get(String fragment) {
+        Segment segment = segmentFor(fragment);
+        byte[] ends;
+        synchronized (segment) {
+            ends = segment.get(fragment);
+        }
+        if (ends != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return ends;
+    }
+
+    /**
+     * 缓存片段的切分结果，若期间缓存已失效则忽略
+     *
+     * @param fragment          片段
+     * @param ends              各个词的结束位置
+     * @param expectedGeneration 开始计算时的版本
+     */
+    void put(String fragment, byte[] ends, long expectedGeneration) {
+        Segment segment = segmentFor(fragment);
+        synchronized (segment) {
+            if (generation.get() == expectedGeneration) {
+                segment.put(fragment, ends);
+            }
+        }
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * 使所有缓存失效
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment segmentFor(String fragment) {
+        int h = fragment.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return 命中率，没有任何请求时为0
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0d : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return "HmmCache [size=" + size() + ", capacity=" + capacity + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", hitRate=" + getHitRate() + "]";
+    }
+
+    private class Segment extends LinkedHashMap<String, byte[]> {
+        private static final long serialVersionUID = 1L;
+        private final int segmentCapacity;
+
+        Segment(int segmentCapacity) {
+            super(16, 0.75f, true);
+            this.segmentCapacity = segmentCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            if (size() > segmentCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.manlier.analysis.jieba.viterbi;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 紧凑的HMM模型，状态依次为B、M、E、S。
+ * <p>
+ * 发射概率按字符编号存储在连续的数组中，通过一张以字符为下标的索引表找到字符编号，
+ * 查询一次发射概率只需两次数组访问。模型可以由文本格式的prob_emit.txt转换而来，
+ * 也可以保存为二进制格式，二进制格式的模型支持内存映射载入，无需复制到堆中。
+ * <p>
+ * 二进制格式（大端序）：
+ * <pre>
+ * int    魔数 'JHMM'
+ * int    版本号
+ * int    状态数（4）
+ * int    字符数 n
+ * double[4]       初始概率
+ * double[4 * 4]   转移概率，trans[from * 4 + to]
+ * char[65536]     索引表，0表示该字符未出现，否则为字符编号 + 1
+ * double[4 * n]   发射概率，emit[state * n + 字符编号]
+ * </pre>
+ */
+public class HmmModel {
+
+    public static final int B = 0;
+    public static final int M = 1;
+    public static final int E = 2;
+    public static final int S = 3;
+    public static final int STATE_COUNT = 4;
+    public static final double MIN_FLOAT = -3.14e100;
+
+    private static final int MAGIC = 0x4A484D4D;
+    private static final int VERSION = 1;
+    private static final int INDEX_SIZE = 65536;
+    private static final int HEADER_SIZE = 4 * 4 + STATE_COUNT * 8 + STATE_COUNT * STATE_COUNT * 8;
+    private static final String STATE_NAMES = "BMES";
+
+    // 初始概率
+    private final double[] start;
+    // 转移概率
+    private final double[] trans;
+    // 字符索引表
+    private final CharBuffer index;
+    // 发射概率
+    private final DoubleBuffer emit;
+    // 字符数
+    private final int size;
+
+    private HmmModel(double[] start, double[] trans, CharBuffer index, DoubleBuffer emit, int size) {
+        this.start = start;
+        this.trans = trans;
+        this.index = index;
+        this.emit = emit;
+        this.size = size;
+    }
+
+    public double start(int state) {
+        return start[state];
+    }
+
+    public double trans(int from, int to) {
+        return trans[from * STATE_COUNT + to];
+    }
+
+    /**
+     * 获得状态state下观察到字符ch的概率
+     *
+     * @param state 状态
+     * @param ch    字符
+     * @return 对数概率，字符未出现时为MIN_FLOAT
+     */
+    public double emit(int state, char ch) {
+        int column = index.get(ch);
+        return column == 0 ? MIN_FLOAT : emit.get(state * size + column - 1);
+    }
+
+    /**
+     * @return 模型中出现的字符数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 从文本格式的发射概率中创建模型，初始概率与转移概率使用jieba的默认值
+     *
+     * @param emitStream prob_emit.txt的输入流
+     * @return 模型
+     */
+    public static HmmModel parseText(InputStream emitStream) throws IOException {
+        Map<Character, double[]> values = new LinkedHashMap<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(emitStream, StandardCharsets.UTF_8))) {
+            int state = -1;
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] tokens = line.split("\t");
+                if (tokens.length == 1) {
+                    state = STATE_NAMES.indexOf(tokens[0].charAt(0));
+                    if (state < 0) {
+                        throw new IOException("unknown state: " + tokens[0]);
+                    }
+                } else {
+                    double[] probs = values.computeIfAbsent(tokens[0].charAt(0), k -> newEmptyEmit());
+                    probs[state] = Double.valueOf(tokens[1]);
+                }
+            }
+        }
+
+        int n = values.size();
+        char[] index = new char[INDEX_SIZE];
+        double[] emit = new double[STATE_COUNT * n];
+        int column = 0;
+        for (Map.Entry<Character, double[]> entry : values.entrySet()) {
+            index[entry.getKey()] = (char) (column + 1);
+            for (int state = 0; state < STATE_COUNT; state++) {
+                emit[state * n + column] = entry.getValue()[state];
+            }
+            column++;
+        }
+        return new HmmModel(defaultStart(), defaultTrans(), CharBuffer.wrap(index), DoubleBuffer.wrap(emit), n);
+    }
+
+    /**
+     * 从输入流中读取二进制格式的模型
+     */
+    public static HmmModel read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        int n = checkHeader(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        double[] start = new double[STATE_COUNT];
+        for (int i = 0; i < start.length; i++) {
+            start[i] = in.readDouble();
+        }
+        double[] trans = new double[STATE_COUNT * STATE_COUNT];
+        for (int i = 0; i < trans.length; i++) {
+            trans[i] = in.readDouble();
+        }
+        char[] index = new char[INDEX_SIZE];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = in.readChar();
+        }
+        double[] emit = new double[STATE_COUNT * n];
+        for (int i = 0; i < emit.length; i++) {
+            emit[i] = in.readDouble();
+        }
+        return new HmmModel(start, trans, CharBuffer.wrap(index), DoubleBuffer.wrap(emit), n);
+    }
+
+    /**
+     * 以内存映射的方式载入二进制格式的模型，索引表与发射概率直接从映射的内存中读取
+     */
+    public static HmmModel map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int n = checkHeader(buffer.getInt(0), buffer.getInt(4), buffer.getInt(8), buffer.getInt(12));
+            long expected = HEADER_SIZE + INDEX_SIZE * 2L + STATE_COUNT * 8L * n;
+            if (channel.size() != expected) {
+                throw new IOException("corrupted hmm model " + path + ", expected " + expected + " bytes");
+            }
+            double[] start = new double[STATE_COUNT];
+            slice(buffer, 16, STATE_COUNT * 8).asDoubleBuffer().get(start);
+            double[] trans = new double[STATE_COUNT * STATE_COUNT];
+            slice(buffer, 16 + STATE_COUNT * 8, STATE_COUNT * STATE_COUNT * 8).asDoubleBuffer().get(trans);
+            CharBuffer index = slice(buffer, HEADER_SIZE, INDEX_SIZE * 2).asCharBuffer();
+            DoubleBuffer emit = slice(buffer, HEADER_SIZE + INDEX_SIZE * 2, STATE_COUNT * 8 * n).asDoubleBuffer();
+            return new HmmModel(start, trans, index, emit, n);
+        }
+    }
+
+    /**
+     * 将模型以二进制格式写出
+     */
+    public void write(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(STATE_COUNT);
+        out.writeInt(size);
+        for (double value : start) {
+            out.writeDouble(value);
+        }
+        for (double value : trans) {
+            out.writeDouble(value);
+        }
+        for (int i = 0; i < INDEX_SIZE; i++) {
+            out.writeChar(index.get(i));
+        }
+        for (int i = 0; i < STATE_COUNT * size; i++) {
+            out.writeDouble(emit.get(i));
+        }
+        out.flush();
+    }
+
+    private static int checkHeader(int magic, int version, int stateCount, int size) throws IOException {
+        if (magic != MAGIC) {
+            throw new IOException("not a hmm model");
+        }
+        if (version != VERSION) {
+            throw new IOException("unsupported hmm model version " + version);
+        }
+        if (stateCount != STATE_COUNT) {
+            throw new IOException("unsupported hmm state count " + stateCount);
+        }
+        return size;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    private static double[] newEmptyEmit() {
+        double[] probs = new double[STATE_COUNT];
+        for (int i = 0; i < STATE_COUNT; i++) {
+            probs[i] = MIN_FLOAT;
+        }
+        return probs;
+    }
+
+    private static double[] defaultStart() {
+        double[] start = new double[STATE_COUNT];
+        start[B] = -0.26268660809250016;   //  概率为0.7689828525554734
+        start[E] = -3.14e+100;             //  概率为0
+        start[M] = -3.14e+100;             //  概率为0
+        start[S] = -1.4652633398537678;    //  概率为0.2310171474445266
+        return start;
+    }
+
+    private static double[] defaultTrans() {
+        double[] trans = new double[STATE_COUNT * STATE_COUNT];
+        for (int i = 0; i < trans.length; i++) {
+            trans[i] = MIN_FLOAT;
+        }
+        // B只可能向E跟M转移，以下类推
+        trans[B * STATE_COUNT + E] = -0.510825623765990;
+        trans[B * STATE_COUNT + M] = -0.916290731874155;
+        trans[E * STATE_COUNT + B] = -0.5897149736854513;
+        trans[E * STATE_COUNT + S] = -0.8085250474669937;
+        trans[M * STATE_COUNT + E] = -0.33344856811948514;
+        trans[M * STATE_COUNT + M] = -1.2603623820268226;
+        trans[S * STATE_COUNT + B] = -0.7211965654669841;
+        trans[S * STATE_COUNT + S] = -0.6658631448798212;
+        return trans;
+    }
+
+    /**
+     * 将文本格式的发射概率转换为二进制格式的模型
+     * <p>
+     * 用法：HmmModel &lt;prob_emit.txt&gt; &lt;prob_emit.bin&gt;
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: HmmModel <prob_emit.txt> <prob_emit.bin>");
+            System.exit(1);
+        }
+        HmmModel model;
+        try (InputStream is = Files.newInputStream(Paths.get(args[0]))) {
+            model = parseText(is);
+        }
+        try (OutputStream os = Files.newOutputStream(Paths.get(args[1]))) {
+            model.write(os);
+        }
+        System.out.println("hmm model converted, chars: " + model.size() + ", bytes: " + Files.size(Paths.get(args[1])));
+    }
+}
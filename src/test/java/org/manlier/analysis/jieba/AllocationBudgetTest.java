@@ -0,0 +1,186 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+import org.manlier.analysis.jieba.viterbi.FinalSeg;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 分词热点路径的内存分配预算。
+ * <p>
+ * 在固定的语料上预热后，以ThreadMXBean统计当前线程分配的字节数，换算为每个输入字符及每个词元分配的字节数，
+ * 超过预算时测试失败。预算的单位为每个字符分配的字节数，可以通过系统属性覆盖，如：
+ * <pre>
+ * mvn test -Dtest=AllocationBudgetTest -DargLine="-Djieba.allocBudget.process.search.hmm=400"
+ * </pre>
+ * 预热与测量的轮数分别由jieba.allocBudget.warmup及jieba.allocBudget.rounds指定
+ */
+@RunWith(JUnit4.class)
+public class AllocationBudgetTest {
+
+    private static final String BUDGET_PREFIX = "jieba.allocBudget.";
+    private static final int WARMUP_ROUNDS = Integer.getInteger(BUDGET_PREFIX + "warmup", 300);
+    private static final int ROUNDS = Integer.getInteger(BUDGET_PREFIX + "rounds", 50);
+    // 默认预算（每个字符分配的字节数），约为当前实现测量值的1.5倍
+    private static final Map<String, Long> DEFAULT_BUDGETS = new HashMap<>();
+
+    static {
+        DEFAULT_BUDGETS.put("process.index.hmm", 700L);
+        DEFAULT_BUDGETS.put("process.index.nohmm", 700L);
+        DEFAULT_BUDGETS.put("process.search.hmm", 700L);
+        DEFAULT_BUDGETS.put("process.search.nohmm", 700L);
+        DEFAULT_BUDGETS.put("process.fast.hmm", 200L);
+        DEFAULT_BUDGETS.put("process.fast.nohmm", 200L);
+        DEFAULT_BUDGETS.put("sentenceProcess.hmm", 650L);
+        DEFAULT_BUDGETS.put("sentenceProcess.nohmm", 650L);
+        DEFAULT_BUDGETS.put("finalSeg.cut", 90L);
+        DEFAULT_BUDGETS.put("finalSeg.viterbi", 110L);
+    }
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+    private long chars;
+    // 避免分词结果被JIT优化掉
+    private long sink;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        // 不支持按线程统计分配的JVM上跳过
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+        chars = 0;
+        for (String line : lines) {
+            chars += line.length();
+        }
+    }
+
+    @Test
+    public void testProcess() {
+        List<String> violations = new ArrayList<>();
+        for (SegMode mode : SegMode.values()) {
+            for (boolean hmm : new boolean[]{true, false}) {
+                String name = "process." + mode.name().toLowerCase(Locale.ROOT) + (hmm ? ".hmm" : ".nohmm");
+                check(name, chars, () -> {
+                    long tokens = 0;
+                    for (String line : lines) {
+                        tokens += segmenter.process(line, mode, hmm).size();
+                    }
+                    return tokens;
+                }, violations);
+            }
+        }
+        Assert.assertTrue(String.join("\n", violations), violations.isEmpty());
+    }
+
+    @Test
+    public void testSentenceProcess() {
+        List<String> violations = new ArrayList<>();
+        for (boolean hmm : new boolean[]{true, false}) {
+            check("sentenceProcess" + (hmm ? ".hmm" : ".nohmm"), chars, () -> {
+                long tokens = 0;
+                for (String line : lines) {
+                    tokens += segmenter.sentenceProcess(line, hmm).size();
+                }
+                return tokens;
+            }, violations);
+        }
+        Assert.assertTrue(String.join("\n", violations), violations.isEmpty());
+    }
+
+    @Test
+    public void testFinalSeg() {
+        FinalSeg finalSeg = FinalSeg.getInstance();
+        List<String> violations = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        // 预热后缓存已命中，测量的是稳定状态下的开销
+        check("finalSeg.cut", chars, () -> {
+            tokens.clear();
+            for (String line : lines) {
+                finalSeg.cut(line, tokens);
+            }
+            return tokens.size();
+        }, violations);
+        // 不经过缓存的维特比算法
+        List<String> chinese = new ArrayList<>();
+        for (String line : lines) {
+            StringBuilder sb = new StringBuilder();
+            for (char ch : line.toCharArray()) {
+                if (CharacterUtil.isChineseLetter(ch)) {
+                    sb.append(ch);
+                } else if (sb.length() > 0) {
+                    chinese.add(sb.toString());
+                    sb.setLength(0);
+                }
+            }
+            if (sb.length() > 0) {
+                chinese.add(sb.toString());
+            }
+        }
+        long chineseChars = 0;
+        for (String sentence : chinese) {
+            chineseChars += sentence.length();
+        }
+        check("finalSeg.viterbi", chineseChars, () -> {
+            long count = 0;
+            for (String sentence : chinese) {
+                count += finalSeg.viterbi(sentence).size();
+            }
+            return count;
+        }, violations);
+        Assert.assertTrue(String.join("\n", violations), violations.isEmpty());
+    }
+
+    private interface Workload {
+        /**
+         * @return 产生的词元数
+         */
+        long run();
+    }
+
+    private void check(String name, long inputChars, Workload workload, List<String> violations) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += workload.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long tokens = 0;
+        long before = threadBean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ROUNDS; i++) {
+            tokens += workload.run();
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(thread) - before;
+        sink += tokens;
+
+        double perChar = (double) allocated / (inputChars * ROUNDS);
+        double perToken = tokens == 0 ? 0d : (double) allocated / tokens;
+        long budget = Long.getLong(BUDGET_PREFIX + name, DEFAULT_BUDGETS.get(name));
+        System.out.println(String.format("%-22s %10.1f bytes/char %10.1f bytes/token   budget %d bytes/char",
+                name, perChar, perToken, budget));
+        if (perChar > budget) {
+            violations.add(String.format("%s allocated %.1f bytes/char, budget %d (%s%s)",
+                    name, perChar, budget, BUDGET_PREFIX, name));
+        }
+    }
+}
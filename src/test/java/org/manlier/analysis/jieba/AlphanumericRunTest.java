@@ -0,0 +1,157 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+@RunWith(JUnit4.class)
+public class AlphanumericRunTest {
+
+    private JiebaSegmenter segmenter;
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+    }
+
+    /**
+     * 原先用正则表达式逐个查找的切分方式
+     */
+    private static List<String> splitByRegex(String other) {
+        List<String> tokens = new ArrayList<>();
+        Matcher mat = CharacterUtil.reSkip.matcher(other);
+        int offset = 0;
+        while (mat.find()) {
+            if (mat.start() > offset) {
+                tokens.add(other.substring(offset, mat.start()));
+            }
+            tokens.add(mat.group());
+            offset = mat.end();
+        }
+        if (offset < other.length()) {
+            tokens.add(other.substring(offset));
+        }
+        return tokens;
+    }
+
+    private static String randomText(Random random, String alphabet, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        int n = random.nextInt(maxLength + 1);
+        for (int i = 0; i < n; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSplitMatchesRegex() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            String text = randomText(random, "aZ09.5+#&_- ,", 24);
+            List<String> tokens = new ArrayList<>();
+            CharacterUtil.splitAlphanumeric(text, 0, text.length(), tokens);
+            Assert.assertEquals(text, splitByRegex(text), tokens);
+        }
+        List<String> tokens = new ArrayList<>();
+        String text = "(v1.2.3-beta, 3.14.15 ..5 5.. C++)";
+        CharacterUtil.splitAlphanumeric(text, 1, text.length() - 1, tokens);
+        System.out.println(tokens);
+        Assert.assertEquals(splitByRegex(text.substring(1, text.length() - 1)), tokens);
+    }
+
+    /**
+     * 不含中文的语块与按正则表达式切分的结果相同
+     */
+    @Test
+    public void testEnglishBlocks() {
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            String block = randomText(random, "abcXYZ0129.+#&_-", 20);
+            if (block.isEmpty() || WordDictionary.getInstance().matchLongest(block, 0, block.length()) != null) {
+                continue;
+            }
+            List<String> expected = splitByRegex(block);
+            List<String> tokens = segmenter.sentenceProcess(block, true);
+            Assert.assertEquals(block, expected, tokens);
+        }
+    }
+
+    /**
+     * 词典中包含英文数字的词仍按词典切分
+     */
+    @Test
+    public void testMixedDictWords() {
+        String text = "他用iphone看utf-8编码的文档，又用UTF-8写了abc 3.14";
+        for (boolean HMM : new boolean[]{true, false}) {
+            List<String> words = new ArrayList<>();
+            for (SegToken token : segmenter.process(text, SegMode.SEARCH, HMM)) {
+                words.add(token.word);
+            }
+            System.out.println(words);
+            Assert.assertTrue(words.contains("iphone"));
+            Assert.assertTrue(words.contains("utf-8"));
+            Assert.assertTrue(words.contains("abc"));
+        }
+    }
+
+    /**
+     * 只有字典树的根节点有该字符时才可能有词从这里开始，覆盖层同时查询基础词典
+     */
+    @Test
+    public void testMayStartWord() {
+        WordDictionary dict = WordDictionary.getInstance();
+        Assert.assertTrue(dict.mayStartWord('i'));
+        Assert.assertFalse(dict.mayStartWord('\u0001'));
+        WordDictionary overlay = dict.newOverlay();
+        Assert.assertTrue(overlay.mayStartWord('i'));
+        Assert.assertFalse(overlay.mayStartWord('\u0001'));
+        Assert.assertFalse(overlay.mayStartWord('ꙮ'));
+        overlay.addWord("ꙮx");
+        Assert.assertTrue(overlay.mayStartWord('ꙮ'));
+        Assert.assertFalse(dict.mayStartWord('ꙮ'));
+
+        // 以该字符开始的词使其后的英文数字串仍按词典逐字处理
+        JiebaSegmenter overlaySegmenter = new JiebaSegmenter(overlay);
+        Assert.assertEquals(Arrays.asList("ꙮx", "yz"), overlaySegmenter.sentenceProcess("ꙮxyz", false));
+    }
+
+    /**
+     * 英文为主的文本的吞吐量
+     */
+    @Test
+    public void testThroughput() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            sb.append("Visit https://example.com/path_v2.0?id=").append(i)
+                    .append(" for the C++ and C# docs of release v1.2.").append(i)
+                    .append("-beta, which needs 3.5GB of RAM and runs at 60fps。");
+        }
+        String text = sb.toString();
+        List<SegToken> expected = segmenter.process(text, SegMode.SEARCH, true);
+        int rounds = 100;
+        double best = 0;
+        for (int pass = 0; pass < 5; pass++) {
+            long s = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                Assert.assertEquals(expected.size(), segmenter.process(text, SegMode.SEARCH, true).size());
+            }
+            best = Math.max(best, rounds * text.length() / ((System.nanoTime() - s) / 1e9) / 1e6);
+        }
+        System.out.println(String.format("english text: %.2f M chars/s", best));
+    }
+}
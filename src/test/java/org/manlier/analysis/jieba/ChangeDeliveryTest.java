@@ -0,0 +1,244 @@
+package org.manlier.analysis.jieba;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.schedulers.Schedulers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.ChangeDelivery.Overflow;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(JUnit4.class)
+public class ChangeDeliveryTest {
+
+    private JiebaSegmenter segmenter;
+
+    @Before
+    public void setUp() {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary dict = new WordDictionary(false);
+        dict.putWord("研究", 10, Math.log(10));
+        segmenter = new JiebaSegmenter(dict);
+    }
+
+    private void change(String word, long freq) {
+        segmenter.applyChanges(Collections.singletonList(new Pair<>(word, freq)));
+    }
+
+    private static void await(List<?> events, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (events.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testCoalesce() throws InterruptedException {
+        List<List<Pair<String>>> events = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Disposable disposable = segmenter.subscribe(ChangeDelivery.of(200, 1000), changes -> {
+            threads.add(Thread.currentThread().getName());
+            events.add(changes);
+        });
+        for (int i = 1; i <= 100; i++) {
+            change("研究", i);
+            change("生命", i * 2);
+        }
+        change("研究", 0);
+        await(events, 1);
+        Thread.sleep(300);
+        disposable.dispose();
+        System.out.println(events);
+
+        // 一个窗口内对同一个词的多次修改合并为一个变更，保留最后的频率
+        Map<String, Long> state = new HashMap<>();
+        int changes = 0;
+        for (List<Pair<String>> event : events) {
+            for (Pair<String> change : event) {
+                state.put(change.key, change.freq.longValue());
+                changes++;
+            }
+        }
+        Assert.assertTrue(events.size() <= 2);
+        Assert.assertTrue(changes <= 4);
+        Assert.assertEquals(Long.valueOf(0), state.get("研究"));
+        Assert.assertEquals(Long.valueOf(200), state.get("生命"));
+        Assert.assertTrue(threads.get(0).startsWith("jieba-dict-changes-"));
+    }
+
+    /**
+     * 没有变更时不会唤醒投递线程，时间窗口从第一个变更开始计时
+     */
+    @Test
+    public void testIdleSubscriber() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger wakeups = new AtomicInteger();
+        Executor counting = command -> {
+            wakeups.incrementAndGet();
+            executor.execute(command);
+        };
+        List<List<Pair<String>>> events = new CopyOnWriteArrayList<>();
+        Disposable disposable = segmenter.subscribe(ChangeDelivery.create().withScheduler(Schedulers.from(counting)),
+                events::add);
+        // 订阅时可能调度一次，之后空闲期间不再唤醒
+        Thread.sleep(50);
+        int subscribed = wakeups.get();
+        Thread.sleep(300);
+        Assert.assertEquals(subscribed, wakeups.get());
+        change("词", 10);
+        await(events, 1);
+        disposable.dispose();
+        executor.shutdown();
+        System.out.println("wakeups: " + wakeups.get());
+        Assert.assertEquals(1, events.size());
+        Assert.assertTrue(wakeups.get() - subscribed <= 3);
+    }
+
+    @Test
+    public void testMaxChanges() throws InterruptedException {
+        List<List<Pair<String>>> events = new CopyOnWriteArrayList<>();
+        Disposable disposable = segmenter.subscribe(ChangeDelivery.of(60000, 3), events::add);
+        for (int i = 0; i < 7; i++) {
+            change("词" + i, 10);
+        }
+        // 达到数目上限后立即投递，不等待时间窗口结束
+        await(events, 2);
+        disposable.dispose();
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("[[词0, 词1, 词2], [词3, 词4, 词5]]", keys(events));
+
+        // 同一次修改中的重复的词在没有时间窗口时也会合并
+        List<List<Pair<String>>> immediate = new CopyOnWriteArrayList<>();
+        disposable = segmenter.subscribe(ChangeDelivery.of(0, 1), immediate::add);
+        segmenter.applyChanges(Arrays.asList(new Pair<>("甲", 1), new Pair<>("乙", 1), new Pair<>("甲", 2)));
+        await(immediate, 1);
+        disposable.dispose();
+        Assert.assertEquals("[[乙, 甲]]", keys(immediate));
+        Assert.assertEquals(2, immediate.get(0).get(1).freq.longValue());
+    }
+
+    private static String keys(List<List<Pair<String>>> events) {
+        List<List<String>> keys = new ArrayList<>();
+        for (List<Pair<String>> event : events) {
+            List<String> list = new ArrayList<>();
+            for (Pair<String> change : event) {
+                list.add(change.key);
+            }
+            keys.add(list);
+        }
+        return keys.toString();
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotBlockUpdates() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<Pair<String>>> events = new CopyOnWriteArrayList<>();
+        Disposable disposable = segmenter.subscribe(ChangeDelivery.of(0, 1000), changes -> {
+            blocked.countDown();
+            release.await();
+            events.add(changes);
+        });
+        change("词0", 10);
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        // 订阅者阻塞时修改词典的线程照常返回
+        for (int i = 1; i < 10; i++) {
+            change("词" + i, 10);
+        }
+        Assert.assertEquals(1, release.getCount());
+        Assert.assertTrue(events.isEmpty());
+        release.countDown();
+        await(events, 10);
+        disposable.dispose();
+        Assert.assertEquals(10, events.size());
+    }
+
+    /**
+     * 一次修改中的变更远多于缓冲区能容纳的通知数时，较慢的订阅者也能收到全部变更
+     */
+    @Test
+    public void testBulkLoad() throws InterruptedException {
+        int maxChanges = 10;
+        int size = 16 * maxChanges * 5;
+        List<Pair<String>> bulk = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            bulk.add(new Pair<>("批量" + i, 10));
+        }
+        AtomicInteger received = new AtomicInteger();
+        List<List<Pair<String>>> events = new CopyOnWriteArrayList<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Disposable disposable = segmenter.subscribe(ChangeDelivery.of(50, maxChanges), changes -> {
+            Thread.sleep(5);
+            received.addAndGet(changes.size());
+            events.add(changes);
+        }, error::set);
+        segmenter.applyChanges(bulk);
+        change("批量" + size, 10);
+        await(events, 2);
+        disposable.dispose();
+        System.out.println(size + 1 + " changes in " + events.size() + " notifications, error: " + error.get());
+        Assert.assertNull(error.get());
+        Assert.assertEquals(size + 1, received.get());
+        Assert.assertEquals(2, events.size());
+    }
+
+    /**
+     * 订阅者阻塞时连续修改词典，检查缓冲区满后各策略的行为
+     */
+    private List<List<Pair<String>>> fallBehind(Overflow overflow, AtomicReference<Throwable> error)
+            throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<Pair<String>>> events = new CopyOnWriteArrayList<>();
+        Disposable disposable = segmenter.subscribe(ChangeDelivery.of(0, 1000).withOverflow(overflow, 4),
+                changes -> {
+                    blocked.countDown();
+                    release.await();
+                    events.add(changes);
+                }, error::set);
+        change("词0", 10);
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 20; i++) {
+            change("词" + i, 10);
+        }
+        release.countDown();
+        Thread.sleep(200);
+        disposable.dispose();
+        System.out.println(overflow + ": " + keys(events) + ", error: " + error.get());
+        return events;
+    }
+
+    @Test
+    public void testOverflow() throws InterruptedException {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        // 只保留最新的通知
+        List<List<Pair<String>>> events = fallBehind(Overflow.LATEST, error);
+        Assert.assertTrue(events.size() < 20);
+        // 缓冲区保留最新的4次通知
+        Assert.assertTrue(keys(events).endsWith("[词16], [词17], [词18], [词19]]"));
+        Assert.assertNull(error.get());
+
+        // 不丢弃任何通知
+        events = fallBehind(Overflow.BUFFER, error);
+        Assert.assertEquals(20, events.size());
+        Assert.assertNull(error.get());
+
+        // 缓冲区溢出后结束订阅
+        events = fallBehind(Overflow.ERROR, error);
+        Assert.assertTrue(error.get() instanceof MissingBackpressureException);
+        Assert.assertTrue(events.size() < 20);
+    }
+}
@@ -0,0 +1,208 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+@RunWith(JUnit4.class)
+public class CompletionCacheTest {
+
+    @Before
+    public void setUp() {
+        System.setProperty("jieba.defaultDict", "false");
+    }
+
+    private static List<String> words(List<Pair<String>> completions) {
+        List<String> words = new ArrayList<>();
+        for (Pair<String> completion : completions) {
+            words.add(completion.key);
+        }
+        return words;
+    }
+
+    /**
+     * 遍历所有的词得到的结果
+     */
+    private static List<String> bruteForce(WordDictionary dict, String prefix, int topK) {
+        List<Pair<String>> all = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : dict.freqs.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                all.add(new Pair<>(entry.getKey(), entry.getValue()));
+            }
+        }
+        all.sort(CompletionCache.ORDER);
+        return words(all.subList(0, Math.min(topK, all.size())));
+    }
+
+    @Test
+    public void testComplete() {
+        WordDictionary dict = new WordDictionary(false);
+        dict.putWord("中国", 100, Math.log(100));
+        dict.putWord("中国人", 50, Math.log(50));
+        dict.putWord("中间", 80, Math.log(80));
+        dict.putWord("中", 10, Math.log(10));
+        dict.putWord("中华", 50, Math.log(50));
+        dict.putWord("美国", 90, Math.log(90));
+
+        Assert.assertEquals(Arrays.asList("中国", "中间", "中华"), words(dict.complete("中", 3)));
+        Assert.assertEquals(Arrays.asList("中国", "中间", "中华", "中国人", "中"), words(dict.complete("中", 20)));
+        Assert.assertEquals(Arrays.asList("中国", "中国人"), words(dict.complete(" 中国", 5)));
+        Assert.assertEquals(Math.log(100), dict.complete("中国", 1).get(0).freq, 1e-9);
+        Assert.assertTrue(dict.complete("日", 5).isEmpty());
+        Assert.assertTrue(dict.complete("", 5).isEmpty());
+        Assert.assertTrue(dict.complete("中", 0).isEmpty());
+
+        // 添加、删除及修改频率后只有路径上的缓存失效
+        dict.putWord("中心", 200, Math.log(200));
+        Assert.assertEquals(Arrays.asList("中心", "中国", "中间"), words(dict.complete("中", 3)));
+        dict.removeWord("中国");
+        Assert.assertEquals(Arrays.asList("中心", "中间", "中华"), words(dict.complete("中", 3)));
+        Assert.assertEquals(Arrays.asList("中国人"), words(dict.complete("中国", 3)));
+        dict.putWord("中华", 1000, Math.log(1000));
+        Assert.assertEquals(Arrays.asList("中华", "中心", "中间"), words(dict.complete("中", 3)));
+        Assert.assertEquals(Arrays.asList("美国"), words(dict.complete("美", 3)));
+
+        // 重新估计词频后所有缓存失效
+        Map<String, Long> actual = new HashMap<>();
+        for (String word : Arrays.asList("中国人", "中间", "中华", "中心", "美国")) {
+            actual.put(word, 10L);
+        }
+        actual.put("中", 5000L);
+        dict.updateActualFreqs(actual);
+        Assert.assertEquals("中", dict.complete("中", 1).get(0).key);
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        WordDictionary dict = new WordDictionary(false);
+        Random random = new Random(41);
+        String chars = "天地玄黄宇宙洪荒";
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                sb.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            vocabulary.add(sb.toString());
+        }
+        for (int round = 0; round < 2000; round++) {
+            String word = vocabulary.get(random.nextInt(vocabulary.size()));
+            if (random.nextInt(4) == 0) {
+                dict.removeWord(word);
+            } else {
+                int freq = 1 + random.nextInt(1000);
+                dict.putWord(word, freq, Math.log(freq));
+            }
+            if (round % 10 == 0) {
+                String prefix = vocabulary.get(random.nextInt(vocabulary.size())).substring(0, 1);
+                for (int topK : new int[]{1, 5, 10, 30}) {
+                    Assert.assertEquals(bruteForce(dict, prefix, topK), words(dict.complete(prefix, topK)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOverlay() {
+        WordDictionary base = new WordDictionary(false);
+        base.putWord("中国", 100, Math.log(100));
+        base.putWord("中间", 80, Math.log(80));
+        base.putWord("中华", 50, Math.log(50));
+        WordDictionary overlay = base.newOverlay();
+        overlay.putWord("中央", 90, Math.log(90));
+        overlay.putWord("中华", 200, Math.log(200));
+        overlay.removeWord("中国");
+        overlay.delWord("中国");
+
+        Assert.assertEquals(Arrays.asList("中华", "中央", "中间"), words(overlay.complete("中", 3)));
+        Assert.assertEquals(Arrays.asList("中华", "中央"), words(overlay.complete("中", 2)));
+        Assert.assertEquals(Arrays.asList("中国", "中间", "中华"), words(base.complete("中", 3)));
+    }
+
+    /**
+     * 基础词典中频率最高的词大多被覆盖层移除或修改时，逐步多取出基础词典中的词
+     */
+    @Test
+    public void testOverlayShadowedBase() {
+        WordDictionary base = new WordDictionary(false);
+        WordDictionary overlay = base.newOverlay();
+        Map<String, Double> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            String word = "前缀" + i;
+            base.putWord(word, 1000 - i, Math.log(1000 - i));
+            expected.put(word, Math.log(1000 - i));
+        }
+        // 移除前100个中的偶数个，将奇数个的频率调低
+        for (int i = 0; i < 100; i++) {
+            String word = "前缀" + i;
+            if (i % 2 == 0) {
+                overlay.delWord(word);
+                expected.remove(word);
+            } else {
+                overlay.putWord(word, 1, 0d);
+                expected.put(word, 0d);
+            }
+        }
+        List<Pair<String>> all = new ArrayList<>();
+        expected.forEach((word, freq) -> all.add(new Pair<>(word, freq)));
+        all.sort(CompletionCache.ORDER);
+        for (int topK : new int[]{1, 5, 10, 60, 150, 300}) {
+            Assert.assertEquals(words(all.subList(0, Math.min(topK, all.size()))), words(overlay.complete("前", topK)));
+        }
+    }
+
+    @Test
+    public void testLatency() throws IOException {
+        WordDictionary dict = WordDictionary.getInstance();
+        dict.loadUserDict(new FileDictSource(Paths.get("conf")));
+        // 从词典中随机选取1到3个字的前缀
+        List<String> words = new ArrayList<>(dict.freqs.keySet());
+        Collections.sort(words);
+        Random random = new Random(41);
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            prefixes.add(word.substring(0, Math.min(word.length(), 1 + i % 3)));
+        }
+
+        long[] cold = measure(dict, prefixes);
+        long[] warm = measure(dict, prefixes);
+        System.out.println(String.format("%,d words, %,d prefix queries, top 10", words.size(), prefixes.size()));
+        print("first pass", cold);
+        print("cached", warm);
+
+        for (int i = 0; i < 200; i++) {
+            String prefix = prefixes.get(i);
+            Assert.assertEquals(bruteForce(dict, prefix, 10), words(dict.complete(prefix, 10)));
+        }
+    }
+
+    private static long[] measure(WordDictionary dict, List<String> prefixes) {
+        long[] latencies = new long[prefixes.size()];
+        int sink = 0;
+        for (int i = 0; i < prefixes.size(); i++) {
+            long s = System.nanoTime();
+            sink += dict.complete(prefixes.get(i), 10).size();
+            latencies[i] = System.nanoTime() - s;
+        }
+        Assert.assertTrue(sink > 0);
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static void print(String name, long[] latencies) {
+        System.out.println(String.format("%-12s p50 %8.1f us   p99 %8.1f us   max %10.1f us", name,
+                latencies[latencies.length / 2] / 1000d,
+                latencies[(int) (latencies.length * 0.99)] / 1000d,
+                latencies[latencies.length - 1] / 1000d));
+    }
+}
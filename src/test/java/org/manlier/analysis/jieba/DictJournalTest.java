@@ -0,0 +1,122 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class DictJournalTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("jieba.defaultDict", "false");
+        dir = Files.createTempDirectory("journal");
+    }
+
+    private JiebaSegmenter newSegmenter() {
+        return new JiebaSegmenter(WordDictionary.getInstance().newOverlay());
+    }
+
+    @Test
+    public void testRestore() throws IOException {
+        JiebaSegmenter segmenter = newSegmenter();
+        try (DictJournal journal = DictJournal.open(segmenter, dir)) {
+            segmenter.addWord("日志词甲", 100);
+            segmenter.addWord("日志词乙", 200);
+            segmenter.delWord("日志词甲");
+            journal.sync();
+        }
+
+        JiebaSegmenter restored = newSegmenter();
+        try (DictJournal journal = DictJournal.open(restored, dir)) {
+            Assert.assertEquals(2, journal.getRestoredWords());
+            Assert.assertTrue(restored.getWordDictionary().containsWord("日志词乙"));
+            Assert.assertFalse(restored.getWordDictionary().containsWord("日志词甲"));
+            Assert.assertTrue(restored.getWordDictionary().getForceSplitWords().contains("日志词甲"));
+
+            restored.addWord("日志词丙", 300);
+            journal.sync();
+            journal.checkpoint();
+            Assert.assertEquals(8, journal.getJournalSize());
+            restored.addWord("日志词丁", 400);
+            journal.sync();
+        }
+
+        JiebaSegmenter fromCheckpoint = newSegmenter();
+        try (DictJournal journal = DictJournal.open(fromCheckpoint, dir)) {
+            Assert.assertEquals(4, journal.getRestoredWords());
+            Assert.assertTrue(fromCheckpoint.getWordDictionary().containsWord("日志词丙"));
+            Assert.assertTrue(fromCheckpoint.getWordDictionary().containsWord("日志词丁"));
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws IOException {
+        JiebaSegmenter segmenter = newSegmenter();
+        try (DictJournal journal = DictJournal.open(segmenter, dir)) {
+            segmenter.addWord("日志词戊", 100);
+            journal.sync();
+        }
+        Path file = dir.resolve(DictJournal.JOURNAL_FILE);
+        long size = Files.size(file);
+        // 模拟写入过程中崩溃留下的不完整记录
+        Files.write(file, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        JiebaSegmenter restored = newSegmenter();
+        try (DictJournal journal = DictJournal.open(restored, dir)) {
+            Assert.assertEquals(size, journal.getJournalSize());
+            Assert.assertTrue(restored.getWordDictionary().containsWord("日志词戊"));
+        }
+    }
+
+    /**
+     * 恢复时使用记录下来的规格化频率及强制切分标记，与恢复时词典的频率总和无关
+     */
+    @Test
+    public void testExactReplay() throws IOException {
+        JiebaSegmenter segmenter = newSegmenter();
+        try (DictJournal journal = DictJournal.open(segmenter, dir)) {
+            segmenter.addWord("日志词己", 100);
+            segmenter.applyChanges(Collections.singletonList(new Pair<>("日志词庚", 50)));
+            segmenter.applyChanges(Collections.singletonList(new Pair<>("日志词庚", 0)));
+            segmenter.delWord("日志词辛");
+            journal.sync();
+        }
+        double live = segmenter.getWordDictionary().getFreq("日志词己");
+
+        long checkpointed;
+        JiebaSegmenter restored = newSegmenter();
+        // 恢复前词典的频率总和已经不同
+        restored.addWord("日志无关词", 100000);
+        try (DictJournal journal = DictJournal.open(restored, dir)) {
+            WordDictionary dict = restored.getWordDictionary();
+            Assert.assertEquals(live, dict.getFreq("日志词己"), 0d);
+            Assert.assertFalse(dict.containsWord("日志词庚"));
+            Assert.assertFalse(dict.getForceSplitWords().contains("日志词庚"));
+            Assert.assertTrue(dict.getForceSplitWords().contains("日志词辛"));
+            journal.checkpoint();
+            checkpointed = journal.getJournalSize();
+        }
+
+        JiebaSegmenter fromCheckpoint = newSegmenter();
+        try (DictJournal journal = DictJournal.open(fromCheckpoint, dir)) {
+            // 三个词都从检查点恢复，日志中没有新的变更
+            Assert.assertEquals(3, journal.getRestoredWords());
+            Assert.assertEquals(checkpointed, journal.getJournalSize());
+            WordDictionary dict = fromCheckpoint.getWordDictionary();
+            Assert.assertEquals(live, dict.getFreq("日志词己"), 0d);
+            Assert.assertFalse(dict.getForceSplitWords().contains("日志词庚"));
+            Assert.assertTrue(dict.getForceSplitWords().contains("日志词辛"));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class DictWatcherTest {
+
+    private Path dir;
+    private DictWatcher watcher;
+    private JiebaSegmenter segmenter;
+    private BlockingQueue<List<Pair<String>>> changes = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("jieba.defaultDict", "false");
+        dir = Files.createTempDirectory("jieba-watch");
+        segmenter = new JiebaSegmenter();
+        segmenter.subscribe(changes::add);
+        watcher = new DictWatcher(segmenter, 100, StandardCharsets.UTF_8);
+        watcher.register(dir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        watcher.close();
+    }
+
+    @Test
+    public void testIncrementalReload() throws Exception {
+        Path file = dir.resolve("tenant.dict");
+        Files.write(file, Arrays.asList("热重载词甲 10", "热重载词乙 20"), StandardCharsets.UTF_8);
+        List<Pair<String>> added = changes.poll(30, TimeUnit.SECONDS);
+        Assert.assertNotNull(added);
+        Assert.assertEquals(2, added.size());
+        Assert.assertTrue(WordDictionary.getInstance().containsWord("热重载词甲"));
+
+        // 只有变化的词会被应用
+        Files.write(file, Arrays.asList("热重载词甲 10", "热重载词乙 30", "热重载词丙"), StandardCharsets.UTF_8);
+        List<Pair<String>> updated = changes.poll(30, TimeUnit.SECONDS);
+        Assert.assertNotNull(updated);
+        Assert.assertEquals(2, updated.size());
+
+        Files.delete(file);
+        List<Pair<String>> removed = changes.poll(30, TimeUnit.SECONDS);
+        Assert.assertNotNull(removed);
+        Assert.assertEquals(3, removed.size());
+        Assert.assertFalse(WordDictionary.getInstance().containsWord("热重载词甲"));
+    }
+
+    private static Map<String, Long> toMap(List<Pair<String>> changeList) {
+        Map<String, Long> map = new HashMap<>();
+        for (Pair<String> change : changeList) {
+            map.put(change.key, change.freq.longValue());
+        }
+        return map;
+    }
+
+    /**
+     * 从一个文件中删除的词，若其他文件或词典中原本定义了该词，则恢复其频率而不是将其移除
+     */
+    @Test
+    public void testRestoreRemainingFreq() throws Exception {
+        segmenter.applyChanges(Collections.singletonList(new Pair<>("监视原有词", 50)));
+        changes.clear();
+        Path first = dir.resolve("first.dict");
+        Path second = dir.resolve("second.dict");
+        Files.write(first, Arrays.asList("监视共有词 10", "监视原有词 20"), StandardCharsets.UTF_8);
+        Files.write(second, Collections.singletonList("监视共有词 40"), StandardCharsets.UTF_8);
+        Map<String, Long> applied = new HashMap<>();
+        List<Pair<String>> changeList;
+        while ((changeList = changes.poll(applied.isEmpty() ? 30 : 1, TimeUnit.SECONDS)) != null) {
+            applied.putAll(toMap(changeList));
+        }
+        Assert.assertEquals(Long.valueOf(20), applied.get("监视原有词"));
+
+        Files.delete(first);
+        changeList = changes.poll(30, TimeUnit.SECONDS);
+        Assert.assertNotNull(changeList);
+        System.out.println(changeList);
+        Map<String, Long> restored = toMap(changeList);
+        Assert.assertEquals(2, restored.size());
+        Assert.assertEquals(Long.valueOf(40), restored.get("监视共有词"));
+        Assert.assertEquals(Long.valueOf(50), restored.get("监视原有词"));
+        Assert.assertTrue(WordDictionary.getInstance().containsWord("监视原有词"));
+
+        Files.delete(second);
+        Assert.assertEquals(Long.valueOf(0), toMap(changes.poll(30, TimeUnit.SECONDS)).get("监视共有词"));
+        Assert.assertFalse(WordDictionary.getInstance().containsWord("监视共有词"));
+        Assert.assertTrue(WordDictionary.getInstance().containsWord("监视原有词"));
+    }
+
+    /**
+     * 与loadUserDict一致，显式给出频率0的词被强制切分；从文件中删除的词只是移除
+     */
+    @Test
+    public void testZeroFreq() throws Exception {
+        segmenter.applyChanges(Collections.singletonList(new Pair<>("监视切分词甲", 50)));
+        changes.clear();
+        Path file = dir.resolve("split.dict");
+        Files.write(file, Arrays.asList("监视切分词甲 0", "监视切分词乙 10"), StandardCharsets.UTF_8);
+        try {
+            Map<String, DictChange> applied = new HashMap<>();
+            while (applied.size() < 2) {
+                List<Pair<String>> changeList = changes.poll(30, TimeUnit.SECONDS);
+                Assert.assertNotNull(changeList);
+                changeList.forEach(change -> applied.put(change.key, (DictChange) change));
+            }
+            Assert.assertTrue(applied.get("监视切分词甲").isRemoval());
+            Assert.assertTrue(applied.get("监视切分词甲").isForceSplit());
+            Assert.assertFalse(WordDictionary.getInstance().containsWord("监视切分词甲"));
+
+            Files.write(file, Collections.singletonList("监视切分词甲 0"), StandardCharsets.UTF_8);
+            List<Pair<String>> changeList = changes.poll(30, TimeUnit.SECONDS);
+            Assert.assertNotNull(changeList);
+            System.out.println(changeList);
+            // 词典中原本没有该词，从文件中删除后移除
+            DictChange removed = (DictChange) changeList.get(0);
+            Assert.assertEquals("监视切分词乙", removed.getWord());
+            Assert.assertTrue(removed.isRemoval());
+            Assert.assertFalse(removed.isForceSplit());
+        } finally {
+            WordDictionary.getInstance().delForceSplit("监视切分词甲");
+        }
+    }
+
+    /**
+     * 格式错误的文件不会应用任何变更，也不会影响同一批次中的其他文件
+     */
+    @Test
+    public void testMalformedFile() throws Exception {
+        Path good = dir.resolve("good.dict");
+        Path bad = dir.resolve("bad.dict");
+        Files.write(bad, Arrays.asList("格式错误词甲 10", "格式错误词乙 abc"), StandardCharsets.UTF_8);
+        Files.write(good, Collections.singletonList("格式正确词 10"), StandardCharsets.UTF_8);
+        List<Pair<String>> applied = changes.poll(30, TimeUnit.SECONDS);
+        Assert.assertNotNull(applied);
+        Assert.assertTrue(WordDictionary.getInstance().containsWord("格式正确词"));
+        Assert.assertFalse(WordDictionary.getInstance().containsWord("格式错误词甲"));
+
+        // 修正后重新读取
+        Files.write(bad, Arrays.asList("格式错误词甲 10", "格式错误词乙 20"), StandardCharsets.UTF_8);
+        while (!WordDictionary.getInstance().containsWord("格式错误词乙")) {
+            Assert.assertNotNull(changes.poll(30, TimeUnit.SECONDS));
+        }
+        Assert.assertTrue(WordDictionary.getInstance().containsWord("格式错误词甲"));
+    }
+}
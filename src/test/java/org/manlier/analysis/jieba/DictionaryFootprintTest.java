@@ -0,0 +1,99 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class DictionaryFootprintTest {
+
+    @Before
+    public void setUp() {
+        System.setProperty("jieba.defaultDict", "false");
+    }
+
+    /**
+     * 按压缩指针下的布局计算类的实例字段占用的字节数
+     */
+    private static long instanceBytes(Class<?> type) {
+        long bytes = 12;
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            Class<?> t = field.getType();
+            if (t == long.class || t == double.class) {
+                bytes += 8;
+            } else if (t == short.class || t == char.class) {
+                bytes += 2;
+            } else if (t == byte.class || t == boolean.class) {
+                bytes += 1;
+            } else {
+                // int、float及引用
+                bytes += 4;
+            }
+        }
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * 节点或候选词的字段改变后估算值必须随之更新
+     */
+    @Test
+    public void testLayoutMatchesFields() {
+        Assert.assertEquals(instanceBytes(DictSegment.class), DictionaryFootprint.SEGMENT_BYTES);
+        Assert.assertEquals(instanceBytes(CompletionCache.Candidates.class), DictionaryFootprint.CANDIDATES_BYTES);
+    }
+
+    @Test
+    public void testCompletionBytes() {
+        WordDictionary overlay = WordDictionary.getInstance().newOverlay();
+        JiebaSegmenter segmenter = new JiebaSegmenter(overlay);
+        segmenter.addWord("补全", 10);
+        segmenter.addWord("补全缓存", 10);
+        segmenter.addWord("补丁", 10);
+
+        long before = DictionaryFootprint.of(overlay).toMetrics().get("jieba.dict.bytes.completions");
+        Assert.assertEquals(3, overlay.complete("补", 3).size());
+        DictionaryFootprint footprint = DictionaryFootprint.of(overlay);
+        System.out.print(footprint);
+        Assert.assertTrue(footprint.toMetrics().get("jieba.dict.bytes.completions") > before);
+    }
+
+    @Test
+    public void testOverlayFootprint() {
+        WordDictionary overlay = WordDictionary.getInstance().newOverlay();
+        JiebaSegmenter segmenter = new JiebaSegmenter(overlay);
+        // 根节点下有4个子节点，超过数组的容量后改用HashMap存储
+        segmenter.addWord("占用", 10);
+        segmenter.addWord("占用分析", 10);
+        segmenter.addWord("内存", 10);
+        segmenter.addWord("统计", 10);
+        segmenter.addWord("估算", 10);
+
+        DictionaryFootprint footprint = DictionaryFootprint.of(overlay);
+        System.out.print(footprint);
+
+        Assert.assertEquals(5, footprint.getFreqEntries());
+        Assert.assertEquals(5, footprint.getTrieWords());
+        // 根节点 + 占用分析4个 + 内存、统计、估算各2个
+        Assert.assertEquals(11, footprint.getTrieNodes());
+        Assert.assertEquals(4, footprint.getMaxDepth());
+        Assert.assertEquals(1, footprint.getNodeCount(DictionaryFootprint.Storage.MAP));
+        Assert.assertEquals(6, footprint.getNodeCount(DictionaryFootprint.Storage.ARRAY));
+        Assert.assertEquals(4, footprint.getNodeCount(DictionaryFootprint.Storage.LEAF));
+        Assert.assertEquals(Long.valueOf(4), footprint.getFanOutHistogram().get(0));
+        Assert.assertEquals(Long.valueOf(4), footprint.getDepthHistogram().get(1));
+
+        Map<String, Long> metrics = footprint.toMetrics();
+        Assert.assertEquals(Long.valueOf(11), metrics.get("jieba.dict.trie.nodes"));
+        Assert.assertEquals(Long.valueOf(footprint.getEstimatedBytes()), metrics.get("jieba.dict.bytes.total"));
+        Assert.assertTrue(footprint.getEstimatedBytes() > 0);
+    }
+}
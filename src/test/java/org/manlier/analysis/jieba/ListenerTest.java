@@ -5,8 +5,23 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import org.junit.Assert;
+
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RunWith(JUnit4.class)
 public class ListenerTest {
@@ -69,4 +84,77 @@ public class ListenerTest {
         strings = segmenter.sentenceProcess("美容");
         System.out.println(String.join("/", strings));
     }
+
+    @Test
+    public void testBatchTune() throws IOException {
+        JiebaSegmenter tenant = new JiebaSegmenter(WordDictionary.getInstance().newOverlay());
+        Path dict = Files.createTempFile("tune", ".dict");
+        Files.write(dict, Arrays.asList("中将 100", "中 5000", "将 3000", "觋 100", "骉 100", "美容 300"), StandardCharsets.UTF_8);
+        tenant.loadUserDict(new FileDictSource(dict));
+
+        List<TuneRequest> requests = Arrays.asList(TuneRequest.split("中", "将"), TuneRequest.join("觋骉"), TuneRequest.split("美", "容"));
+        List<Long> expected = new ArrayList<>();
+        expected.add(tenant.suggestFreq(false, "中", "将"));
+        expected.add(tenant.suggestFreq(false, "觋骉"));
+        expected.add(tenant.suggestFreq(false, "美", "容"));
+
+        List<List<Pair<String>>> events = new ArrayList<>();
+        tenant.subscribe(events::add);
+        List<TuneResult> results = tenant.suggestFreq(true, requests);
+        results.forEach(System.out::println);
+
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(3, events.get(0).size());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(expected.get(i).longValue(), results.get(i).getNewFreq());
+        }
+        Assert.assertEquals(100, results.get(0).getOldFreq(), 1);
+        Assert.assertEquals(0, results.get(1).getOldFreq());
+        Assert.assertEquals(results.get(1).normalizedFreq, tenant.getWordDictionary().getFreq("觋骉"), 1e-12);
+        Assert.assertEquals(Arrays.asList("中", "将", "觋骉"), tenant.sentenceProcess("中将觋骉", false));
+    }
+
+    /**
+     * 批量调整期间，基础词典的写入需要等待调整完成
+     */
+    @Test
+    public void testBatchExcludesWriters() throws Exception {
+        WordDictionary base = WordDictionary.getInstance();
+        WordDictionary tenant = base.newOverlay();
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> batch = executor.submit(() -> tenant.exclusively(() -> {
+                inside.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            inside.await();
+            AtomicReference<Thread> writerThread = new AtomicReference<>();
+            Future<?> writer = executor.submit(() -> {
+                writerThread.set(Thread.currentThread());
+                new JiebaSegmenter(base).addWord("批量期间词", 10);
+            });
+            // 等待写入线程阻塞在词典的锁上，此时批量调整仍持有锁
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (writerThread.get() == null || writerThread.get().getState() != Thread.State.BLOCKED) {
+                Assert.assertTrue(System.nanoTime() < deadline);
+                Assert.assertFalse(writer.isDone());
+                Thread.yield();
+            }
+            Assert.assertFalse(writer.isDone());
+            Assert.assertFalse(base.containsWord("批量期间词"));
+            release.countDown();
+            batch.get(10, TimeUnit.SECONDS);
+            writer.get(10, TimeUnit.SECONDS);
+            Assert.assertTrue(tenant.containsWord("批量期间词"));
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
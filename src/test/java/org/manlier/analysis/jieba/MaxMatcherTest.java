@@ -0,0 +1,159 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+@RunWith(JUnit4.class)
+public class MaxMatcherTest {
+
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+    }
+
+    private static String words(List<SegToken> tokens) {
+        List<String> words = new ArrayList<>();
+        for (SegToken token : tokens) {
+            words.add(token.word);
+        }
+        return words.toString();
+    }
+
+    private static JiebaSegmenter segmenter(String... words) {
+        WordDictionary dict = new WordDictionary(false);
+        for (String word : words) {
+            dict.putWord(word, 10, Math.log(10));
+        }
+        return new JiebaSegmenter(dict);
+    }
+
+    @Test
+    public void testBidirectional() {
+        JiebaSegmenter segmenter = segmenter("研究", "研究生", "生命", "起源", "结合", "合成", "成分", "分子",
+                "甲乙", "丙丁", "乙丙丁");
+        // 词数相同时选择单字较少的逆向结果
+        Assert.assertEquals("[研究, 生命, 起源]", words(segmenter.process("研究生命起源", SegMode.FAST)));
+        // 词数与单字数都相同时选择逆向结果
+        Assert.assertEquals("[结, 合成, 分子]", words(segmenter.process("结合成分子", SegMode.FAST)));
+        // 正向结果的单字较少
+        Assert.assertEquals("[甲乙, 丙丁]", words(segmenter.process("甲乙丙丁", SegMode.FAST)));
+        // 标点、空白及连续的英文字母或数字
+        Assert.assertEquals("[研究, ，, ibm, 研究生,  , 3, ., 14]",
+                words(segmenter.process("研究，IBM研究生 3.14", SegMode.FAST)));
+    }
+
+    @Test
+    public void testUserDict() {
+        JiebaSegmenter segmenter = segmenter("研究", "研究生", "生命", "起源");
+        Assert.assertEquals("[研究, 生命, 起源, 学]", words(segmenter.process("研究生命起源学", SegMode.FAST)));
+        segmenter.addWord("起源学");
+        Assert.assertEquals("[研究, 生命, 起源学]", words(segmenter.process("研究生命起源学", SegMode.FAST)));
+
+        // 覆盖层中删除的词不再匹配
+        JiebaSegmenter tenant = new JiebaSegmenter(segmenter.getWordDictionary().newOverlay());
+        tenant.applyChanges(Arrays.asList(new Pair<>("生命", 0), new Pair<>("命起", 10)));
+        Assert.assertEquals("[研究生, 命, 起源学]", words(tenant.process("研究生命起源学", SegMode.FAST)));
+    }
+
+    @Test
+    public void testOffsets() throws IOException {
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        JiebaSegmenter segmenter = new JiebaSegmenter();
+        List<String> texts = new ArrayList<>(lines);
+        texts.add("ＡＢＣ全角Ｄ３.１４，Hello World！\t");
+        for (String text : texts) {
+            List<SegToken> tokens = segmenter.process(text, SegMode.FAST);
+            int offset = 0;
+            for (SegToken token : tokens) {
+                Assert.assertEquals(offset, token.startOffset);
+                Assert.assertEquals(token.word.length(), token.endOffset - token.startOffset);
+                // 词元为规格化后的文本
+                for (int i = 0; i < token.word.length(); i++) {
+                    char ch = text.charAt(offset + i);
+                    char regularized = CharacterUtil.regularize(ch);
+                    Assert.assertTrue(token.word.charAt(i) == regularized || token.word.charAt(i) == ch);
+                }
+                offset = token.endOffset;
+            }
+            Assert.assertEquals(text.length(), offset);
+        }
+    }
+
+    /**
+     * 在相同的语料上对比FAST与SEARCH模式的吞吐量及切分结果的一致程度
+     */
+    @Test
+    public void testThroughputAndAgreement() throws IOException {
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        JiebaSegmenter segmenter = new JiebaSegmenter();
+        long chars = 0;
+        for (String line : lines) {
+            chars += line.length();
+        }
+
+        for (boolean hmm : new boolean[]{true, false}) {
+            long common = 0;
+            long searchTokens = 0;
+            long fastTokens = 0;
+            for (String line : lines) {
+                Set<Long> spans = new HashSet<>();
+                for (SegToken token : segmenter.process(line, SegMode.SEARCH, hmm)) {
+                    spans.add(((long) token.startOffset << 32) | token.endOffset);
+                    searchTokens++;
+                }
+                for (SegToken token : segmenter.process(line, SegMode.FAST, false)) {
+                    if (spans.contains(((long) token.startOffset << 32) | token.endOffset)) {
+                        common++;
+                    }
+                    fastTokens++;
+                }
+            }
+            double recall = (double) common / searchTokens;
+            double precision = (double) common / fastTokens;
+            System.out.println(String.format("agreement with SEARCH (HMM %s): %.1f%% of SEARCH tokens, %.1f%% of FAST tokens",
+                    hmm, recall * 100, precision * 100));
+            // HMM会合并连续的单字，FAST模式只与不开启HMM时比较
+            if (!hmm) {
+                Assert.assertTrue(recall > 0.8);
+            }
+        }
+
+        long[] sink = {0};
+        JiebaSegmenter.TokenSink counter = (word, start, end) -> sink[0]++;
+        int rounds = 300;
+        for (String name : new String[]{"SEARCH", "SEARCH no HMM", "FAST"}) {
+            SegMode mode = name.startsWith("SEARCH") ? SegMode.SEARCH : SegMode.FAST;
+            boolean hmm = name.equals("SEARCH");
+            for (int i = 0; i < rounds; i++) {
+                for (String line : lines) {
+                    segmenter.process(line, mode, hmm, counter);
+                }
+            }
+            long s = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                for (String line : lines) {
+                    segmenter.process(line, mode, hmm, counter);
+                }
+            }
+            double seconds = (System.nanoTime() - s) / 1e9;
+            System.out.println(String.format("%-14s %6.2f M chars/s", name, chars * rounds / seconds / 1e6));
+        }
+        Assert.assertTrue(sink[0] > 0);
+    }
+}
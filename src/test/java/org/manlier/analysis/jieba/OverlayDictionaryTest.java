@@ -0,0 +1,114 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class OverlayDictionaryTest {
+
+    private WordDictionary base;
+    private JiebaSegmenter baseSegmenter;
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("jieba.defaultDict", "false");
+        base = WordDictionary.getInstance();
+        baseSegmenter = new JiebaSegmenter(base);
+        Path dict = Files.createTempFile("overlay", ".dict");
+        Files.write(dict, Arrays.asList("覆盖层 1000", "词典 1000", "覆 1", "盖 1", "层 1", "典 1"), StandardCharsets.UTF_8);
+        baseSegmenter.loadUserDict(new FileDictSource(dict));
+    }
+
+    @Test
+    public void testOverlayIsolation() {
+        WordDictionary tenantA = base.newOverlay();
+        WordDictionary tenantB = base.newOverlay();
+        JiebaSegmenter segmenterA = new JiebaSegmenter(tenantA);
+        JiebaSegmenter segmenterB = new JiebaSegmenter(tenantB);
+
+        segmenterA.addWord("覆盖层词典", 1000);
+        segmenterB.delWord("词典");
+
+        List<String> baseTokens = baseSegmenter.sentenceProcess("覆盖层词典", false);
+        List<String> tokensA = segmenterA.sentenceProcess("覆盖层词典", false);
+        List<String> tokensB = segmenterB.sentenceProcess("覆盖层词典", false);
+        System.out.println(String.join("/", baseTokens));
+        System.out.println(String.join("/", tokensA));
+        System.out.println(String.join("/", tokensB));
+
+        Assert.assertTrue(tenantA.containsWord("覆盖层词典"));
+        Assert.assertFalse(base.containsWord("覆盖层词典"));
+        Assert.assertFalse(tenantB.containsWord("覆盖层词典"));
+        Assert.assertTrue(tokensA.contains("覆盖层词典"));
+
+        Assert.assertFalse(tenantB.containsWord("词典"));
+        Assert.assertTrue(base.containsWord("词典"));
+        Assert.assertTrue(tenantA.containsWord("词典"));
+        Assert.assertFalse(tokensB.contains("词典"));
+        Assert.assertTrue(baseTokens.contains("词典"));
+    }
+
+    @Test
+    public void testReweight() {
+        WordDictionary tenant = base.newOverlay();
+        JiebaSegmenter segmenter = new JiebaSegmenter(tenant);
+        segmenter.addWord("覆盖层", 1);
+        Assert.assertTrue(tenant.getFreq("覆盖层") < base.getFreq("覆盖层"));
+
+        segmenter.delWord("覆盖层");
+        Assert.assertFalse(tenant.containsWord("覆盖层"));
+        Assert.assertTrue(base.containsWord("覆盖层"));
+        Assert.assertTrue(tenant.getForceSplitWords().contains("覆盖层"));
+    }
+
+    /**
+     * 同一个词无论通过addWord还是applyChanges添加，权重都相同
+     */
+    @Test
+    public void testSameNormalization() {
+        WordDictionary tenantA = base.newOverlay();
+        WordDictionary tenantB = base.newOverlay();
+        new JiebaSegmenter(tenantA).addWord("规格化词", 500);
+        new JiebaSegmenter(tenantB).applyChanges(Collections.singletonList(new Pair<>("规格化词", 500)));
+        Assert.assertEquals(tenantA.getFreq("规格化词"), tenantB.getFreq("规格化词"), 1e-12);
+        Assert.assertEquals(Math.log(500 / tenantA.getTotal()), tenantA.getFreq("规格化词"), 1e-12);
+    }
+
+    /**
+     * 载入用户字典只锁定当前租户的词典，不会等待其他租户或基础词典
+     */
+    @Test
+    public void testPerDictionaryLock() throws Exception {
+        WordDictionary tenant = base.newOverlay();
+        Path dict = Files.createTempFile("tenant", ".dict");
+        Files.write(dict, Collections.singletonList("租户词 10"), StandardCharsets.UTF_8);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            synchronized (base) {
+                executor.submit(() -> {
+                    new JiebaSegmenter(tenant).loadUserDict(new FileDictSource(dict));
+                    return null;
+                }).get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(tenant.containsWord("租户词"));
+    }
+}
@@ -0,0 +1,184 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.SegBudget.Level;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SegBudgetTest {
+
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+    private String longRun;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            for (char ch : line.toCharArray()) {
+                if (CharacterUtil.ccFind(CharacterUtil.regularize(ch))) {
+                    sb.append(ch);
+                }
+            }
+        }
+        longRun = sb.toString();
+    }
+
+    /**
+     * 检查词元的偏移量首尾相接并覆盖整个句子
+     */
+    private static void assertCovers(String paragraph, List<SegToken> tokens) {
+        int offset = 0;
+        for (SegToken token : tokens) {
+            Assert.assertEquals(offset, token.startOffset);
+            Assert.assertEquals(token.endOffset - token.startOffset, token.word.length());
+            offset = token.endOffset;
+        }
+        Assert.assertEquals(paragraph.length(), offset);
+    }
+
+    @Test
+    public void testNotDegraded() {
+        for (SegMode mode : SegMode.values()) {
+            for (String line : lines) {
+                SegBudget budget = SegBudget.ofWork(Long.MAX_VALUE);
+                Assert.assertEquals(segmenter.process(line, mode, true).toString(),
+                        segmenter.process(line, mode, true, budget).toString());
+                Assert.assertFalse(budget.isDegraded());
+            }
+        }
+        // 长语块在窗口中处理，结果不变
+        SegBudget budget = SegBudget.ofMillis(60000);
+        Assert.assertEquals(segmenter.process(longRun, SegMode.SEARCH, true).toString(),
+                segmenter.process(longRun, SegMode.SEARCH, true, budget).toString());
+        Assert.assertEquals(longRun.length(), budget.getChars(Level.FULL));
+    }
+
+    /**
+     * 长语块中找不到安全切分点时，即使没有降级也会在窗口中强制切分，结果可能与不带预算时不同
+     */
+    @Test
+    public void testForcedCut() {
+        WordDictionary dict = new WordDictionary(false);
+        dict.putWord("甲", 1, Math.log(1e-6));
+        dict.putWord("乙", 1, Math.log(1e-6));
+        dict.putWord("甲乙", 10, Math.log(0.1));
+        dict.putWord("乙甲", 10, Math.log(0.099));
+        JiebaSegmenter segmenter = new JiebaSegmenter(dict);
+        // 每个位置都有词越过，整个语块的最优路径为 乙/甲乙/甲乙/...，前缀的最优路径则为 乙甲/乙甲/...
+        StringBuilder sb = new StringBuilder("乙");
+        for (int i = 0; i < JiebaSegmenter.BUDGET_WINDOW_SIZE * JiebaSegmenter.MAX_WINDOW_FACTOR; i++) {
+            sb.append("甲乙");
+        }
+        String text = sb.toString();
+        SegBudget budget = SegBudget.ofWork(Long.MAX_VALUE);
+        List<SegToken> budgeted = segmenter.process(text, SegMode.SEARCH, false, budget);
+        List<SegToken> unlimited = segmenter.process(text, SegMode.SEARCH, false);
+        Assert.assertFalse(budget.isDegraded());
+        assertCovers(text, budgeted);
+        Assert.assertEquals("乙", unlimited.get(0).word);
+        Assert.assertEquals("乙甲", budgeted.get(0).word);
+        Assert.assertFalse(unlimited.toString().equals(budgeted.toString()));
+    }
+
+    @Test
+    public void testMaxMatch() {
+        WordDictionary dict = new WordDictionary(false);
+        for (String word : new String[]{"来到", "来到了", "网易", "易杭", "研大", "大厦", "abc"}) {
+            dict.putWord(word, 10, Math.log(10));
+        }
+        SegBudget budget = SegBudget.ofWork(0);
+        List<SegToken> tokens = new JiebaSegmenter(dict)
+                .process("他来到了网易杭研大厦，abc123也来了", SegMode.SEARCH, true, budget);
+        System.out.println(tokens);
+        Assert.assertEquals(Level.MAX_MATCH, budget.getLevel());
+        List<String> words = new ArrayList<>();
+        for (SegToken token : tokens) {
+            words.add(token.word);
+        }
+        // 总是取最长的词，连续的单个英文字母或数字合并为一个词
+        Assert.assertEquals("[他, 来到了, 网易, 杭, 研大, 厦, ，, abc, 123, 也, 来, 了]", words.toString());
+        assertCovers("他来到了网易杭研大厦，abc123也来了", tokens);
+
+        for (String line : lines) {
+            for (SegMode mode : SegMode.values()) {
+                budget = SegBudget.ofNanos(0);
+                List<SegToken> degraded = segmenter.process(line, mode, true, budget);
+                if (mode == SegMode.SEARCH) {
+                    assertCovers(line, degraded);
+                }
+                Assert.assertEquals(0, budget.getChars(Level.FULL));
+                Assert.assertEquals(0, budget.getChars(Level.NO_HMM));
+            }
+        }
+    }
+
+    @Test
+    public void testLongRunDegradesMidway() {
+        SegBudget budget = SegBudget.ofWork(300, 700);
+        List<SegToken> tokens = segmenter.process(longRun, SegMode.SEARCH, true, budget);
+        System.out.println(budget);
+        assertCovers(longRun, tokens);
+        Assert.assertEquals(Level.MAX_MATCH, budget.getLevel());
+        // 每个窗口提交之前检查预算，超出的部分不超过一个窗口的若干倍
+        int slack = JiebaSegmenter.BUDGET_WINDOW_SIZE * JiebaSegmenter.MAX_WINDOW_FACTOR;
+        Assert.assertTrue(budget.getChars(Level.FULL) >= 300 && budget.getChars(Level.FULL) < 300 + slack);
+        Assert.assertTrue(budget.getChars(Level.NO_HMM) > 0);
+        Assert.assertTrue(budget.getChars(Level.FULL) + budget.getChars(Level.NO_HMM) < 700 + slack);
+        Assert.assertEquals(longRun.length(), budget.getChars(Level.FULL) + budget.getChars(Level.NO_HMM)
+                + budget.getChars(Level.MAX_MATCH));
+    }
+
+    @Test
+    public void testStats() {
+        JiebaSegmenter segmenter = new JiebaSegmenter();
+        // 只含标点符号的行不会检查预算，也不会降级
+        int textLines = 0;
+        for (String line : lines) {
+            for (char ch : line.toCharArray()) {
+                if (CharacterUtil.ccFind(CharacterUtil.regularize(ch))) {
+                    textLines++;
+                    break;
+                }
+            }
+        }
+        for (String line : lines) {
+            segmenter.process(line, SegMode.SEARCH, true, SegBudget.ofWork(Long.MAX_VALUE));
+            segmenter.process(line, SegMode.SEARCH, true, SegBudget.ofWork(0, Long.MAX_VALUE));
+            segmenter.process(line, SegMode.SEARCH, true, SegBudget.ofWork(0));
+        }
+        segmenter.process(lines.get(0), SegMode.SEARCH, true);
+        DegradationStats stats = segmenter.getDegradationStats();
+        System.out.println(stats);
+        System.out.println(stats.toMetrics());
+        Assert.assertEquals(lines.size() * 3, stats.getCalls());
+        Assert.assertEquals(lines.size() * 3 - textLines * 2, stats.getCalls(Level.FULL));
+        Assert.assertEquals(textLines, stats.getCalls(Level.NO_HMM));
+        Assert.assertEquals(textLines, stats.getCalls(Level.MAX_MATCH));
+        Assert.assertEquals(textLines * 2, stats.getDegradedCalls());
+        Assert.assertEquals(stats.getChars(Level.FULL), stats.getChars(Level.NO_HMM));
+        Assert.assertEquals(stats.getChars(Level.FULL), stats.getChars(Level.MAX_MATCH));
+        Assert.assertEquals(Long.valueOf(textLines * 2), stats.toMetrics().get("jieba.budget.calls.degraded"));
+        stats.reset();
+        Assert.assertEquals(0, stats.getCalls());
+    }
+}
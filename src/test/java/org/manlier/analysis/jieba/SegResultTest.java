@@ -0,0 +1,114 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SegResultTest {
+
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+        lines.add("ＡＢＣ全角Ｄ３.１４，Hello World！\t");
+    }
+
+    @Test
+    public void testSameAsProcess() throws IOException {
+        for (SegMode mode : SegMode.values()) {
+            for (boolean hmm : new boolean[]{true, false}) {
+                for (String line : lines) {
+                    List<SegToken> expected = segmenter.process(line, mode, hmm);
+                    SegResult result = segmenter.processColumnar(line, mode, hmm, true);
+                    Assert.assertEquals(expected.toString(), result.asTokens().toString());
+                    Assert.assertEquals(result, SegResult.of(line, expected, true));
+
+                    SegResult decoded = SegResult.fromBytes(result.toBytes());
+                    Assert.assertEquals(result, decoded);
+                    Assert.assertEquals(expected.toString(), decoded.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTypes() {
+        SegResult result = segmenter.processColumnar("我有3.14元 和 CPU。", SegMode.SEARCH, true, true);
+        System.out.println(result);
+        StringBuilder types = new StringBuilder();
+        for (int i = 0; i < result.size(); i++) {
+            types.append(result.getType(i));
+        }
+        // 我有/3.14/元/ /和/ /cpu/。
+        Assert.assertEquals("02030314", types.toString());
+        Assert.assertFalse(segmenter.processColumnar("我有", SegMode.SEARCH, true).hasTypes());
+    }
+
+    /**
+     * 对比列式结构与Java序列化词元列表的大小与耗时
+     */
+    @Test
+    public void testSerializationSize() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        String text = sb.toString();
+        List<SegToken> tokens = segmenter.process(text, SegMode.INDEX, true);
+        SegResult result = segmenter.processColumnar(text, SegMode.INDEX, true);
+        int textBytes = text.getBytes(StandardCharsets.UTF_8).length;
+
+        byte[] java = null;
+        byte[] columnar = null;
+        int rounds = 2000;
+        long javaNanos = 0;
+        long columnarNanos = 0;
+        for (int round = 0; round < 2; round++) {
+            // 第一轮用于预热
+            long s = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(new ArrayList<>(tokens));
+                }
+                java = bytes.toByteArray();
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(java))) {
+                    in.readObject();
+                }
+            }
+            javaNanos = System.nanoTime() - s;
+            s = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                columnar = result.toBytes();
+                SegResult.fromBytes(columnar);
+            }
+            columnarNanos = System.nanoTime() - s;
+        }
+        System.out.println(String.format("tokens %d, text %d bytes", tokens.size(), textBytes));
+        System.out.println(String.format("java serialization: %d bytes, %.1f bytes/token, %.1f us per round trip",
+                java.length, (double) java.length / tokens.size(), javaNanos / 1e3 / rounds));
+        System.out.println(String.format("columnar: %d bytes, %.1f bytes/token (%.1f excluding text), %.1f us per round trip",
+                columnar.length, (double) columnar.length / tokens.size(),
+                (double) (columnar.length - textBytes) / tokens.size(), columnarNanos / 1e3 / rounds));
+        Assert.assertTrue(columnar.length < java.length);
+    }
+}
@@ -0,0 +1,174 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class SegmentedDocumentTest {
+
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 随机编辑文档，每次编辑后与对整篇文档重新分词的结果比较
+     */
+    private void randomEdits(String text, SegMode mode, boolean HMM, int edits, long seed) {
+        Random random = new Random(seed);
+        SegmentedDocument document = new SegmentedDocument(segmenter, text, mode, HMM);
+        StringBuilder expected = new StringBuilder(text);
+        String alphabet = "我们的中华人民共和国北京大学生活abc123 .,，。-";
+        for (int i = 0; i < edits; i++) {
+            int offset = random.nextInt(expected.length() + 1);
+            int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(8, expected.length() - offset) + 1) : 0;
+            StringBuilder inserted = new StringBuilder();
+            int n = random.nextInt(4) == 0 ? random.nextInt(6) : 1;
+            for (int j = 0; j < n; j++) {
+                inserted.append(random.nextInt(3) == 0
+                        ? expected.charAt(random.nextInt(expected.length()))
+                        : alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            document.edit(offset, removed, inserted.toString());
+            expected.replace(offset, offset + removed, inserted.toString());
+            Assert.assertEquals(expected.toString(), document.getText());
+            Assert.assertEquals("edit " + i + " in " + mode + ", HMM=" + HMM,
+                    segmenter.process(expected.toString(), mode, HMM).toString(), document.getTokens().toString());
+        }
+    }
+
+    @Test
+    public void testMatchesFullSegmentation() {
+        String text = String.join("\n", lines.subList(0, 20));
+        for (SegMode mode : SegMode.values()) {
+            for (boolean HMM : new boolean[]{true, false}) {
+                randomEdits(text, mode, HMM, 300, mode.ordinal() * 2 + (HMM ? 1 : 0));
+            }
+        }
+    }
+
+    /**
+     * 没有标点符号的长语块中在路径上的安全切分点处切开
+     */
+    @Test
+    public void testLongBlock() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            for (char ch : line.toCharArray()) {
+                if (CharacterUtil.isChineseLetter(ch)) {
+                    sb.append(ch);
+                }
+            }
+        }
+        String text = sb.toString();
+        System.out.println("block length: " + text.length());
+        for (boolean HMM : new boolean[]{true, false}) {
+            randomEdits(text, SegMode.SEARCH, HMM, 200, HMM ? 7 : 8);
+        }
+
+        SegmentedDocument document = new SegmentedDocument(segmenter, text, SegMode.SEARCH, true);
+        int resegmented = document.edit(text.length() / 2, 0, "的");
+        System.out.println("resegmented " + resegmented + " of " + document.length() + " chars");
+        Assert.assertTrue(resegmented < 200);
+
+        // 分窗口处理时只在语块的边界处切开
+        segmenter.setWindowSize(64);
+        document = new SegmentedDocument(segmenter, text, SegMode.SEARCH, true);
+        Assert.assertEquals(document.length() + 1, document.edit(text.length() / 2, 0, "的"));
+        Assert.assertEquals(segmenter.process(document.getText(), SegMode.SEARCH, true).toString(),
+                document.getTokens().toString());
+    }
+
+    @Test
+    public void testEdgeCases() {
+        SegmentedDocument document = new SegmentedDocument(segmenter, "", SegMode.INDEX, true);
+        Assert.assertEquals(0, document.size());
+        document.edit(0, 0, "中华人民共和国，");
+        document.edit(document.length(), 0, "我爱北京天安门");
+        document.edit(0, 2, "");
+        Assert.assertEquals(segmenter.process("人民共和国，我爱北京天安门", SegMode.INDEX, true).toString(),
+                document.getTokens().toString());
+        document.edit(0, document.length(), "");
+        Assert.assertEquals(0, document.size());
+        Assert.assertEquals("", document.getText());
+        try {
+            document.edit(1, 0, "a");
+            Assert.fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    /**
+     * 编辑的耗时与文档的长度无关：没有标点符号的长语块中，重新分词的区域不随文档变长而变大
+     */
+    @Test
+    public void testEditLatency() {
+        StringBuilder letters = new StringBuilder();
+        for (String line : lines) {
+            for (char ch : line.toCharArray()) {
+                if (CharacterUtil.isChineseLetter(ch)) {
+                    letters.append(ch);
+                }
+            }
+        }
+        String paragraph = letters.toString();
+        int[] copiesList = {10, 100};
+        int[] regions = new int[copiesList.length];
+        for (int c = 0; c < copiesList.length; c++) {
+            int copies = copiesList[c];
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < copies; i++) {
+                sb.append(paragraph);
+            }
+            String text = sb.toString();
+            SegmentedDocument document = new SegmentedDocument(segmenter, text, SegMode.SEARCH, true);
+            // 在文档中部逐字输入一段文字，再逐字删除
+            int offset = text.length() / 2;
+            String typed = lines.get(0) + lines.get(1);
+            int rounds = 20;
+            long best = Long.MAX_VALUE;
+            for (int pass = 0; pass < 5; pass++) {
+                long s = System.nanoTime();
+                for (int k = 0; k < rounds; k++) {
+                    for (int i = 0; i < typed.length(); i++) {
+                        regions[c] = Math.max(regions[c], document.edit(offset + i, 0, typed.substring(i, i + 1)));
+                    }
+                    for (int i = typed.length() - 1; i >= 0; i--) {
+                        regions[c] = Math.max(regions[c], document.edit(offset + i, 1, ""));
+                    }
+                }
+                best = Math.min(best, System.nanoTime() - s);
+            }
+            Assert.assertEquals(text, document.getText());
+            long full = System.nanoTime();
+            List<SegToken> expected = segmenter.process(text, SegMode.SEARCH, true);
+            full = System.nanoTime() - full;
+            Assert.assertEquals(expected.toString(), document.getTokens().toString());
+            System.out.println(String.format("%d chars: %.1f us per edit, at most %d chars resegmented, "
+                            + "full segmentation %.1f ms", text.length(),
+                    best / 1000.0 / (rounds * typed.length() * 2), regions[c], full / 1e6));
+        }
+        Assert.assertTrue(regions[0] < 200);
+        Assert.assertEquals(regions[0], regions[1]);
+    }
+}
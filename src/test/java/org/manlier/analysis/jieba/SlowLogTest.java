@@ -0,0 +1,177 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+import org.manlier.analysis.jieba.viterbi.FinalSeg;
+import org.manlier.analysis.jieba.viterbi.HmmCache;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class SlowLogTest {
+
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        SlowLog slowLog = new SlowLog(0, 16, 8);
+        segmenter.setSlowLog(slowLog);
+        String text = "他来到了网易杭研大厦，abc123也来了";
+        segmenter.process(text, SegMode.SEARCH, true);
+        segmenter.process(text, SegMode.FAST, false);
+        slowLog.awaitIdle();
+
+        List<SlowLog.Record> records = slowLog.getRecords();
+        records.forEach(System.out::println);
+        Assert.assertEquals(2, records.size());
+        SlowLog.Record record = records.get(0);
+        Assert.assertEquals(text.length(), record.getLength());
+        Assert.assertEquals("他来到了网易杭研", record.getSample());
+        Assert.assertEquals(records.get(1).getHash(), record.getHash());
+        Assert.assertEquals(SegMode.SEARCH, record.getMode());
+        Assert.assertTrue(record.isHMM());
+        Assert.assertEquals("他来到了网易杭研大厦".length(), record.getLongestRun());
+        Assert.assertTrue(record.getOovFragments() > 0);
+        Assert.assertTrue(record.getDagNanos() > 0);
+        Assert.assertTrue(record.getRouteNanos() > 0);
+        Assert.assertTrue(record.getViterbiNanos() > 0);
+
+        record = records.get(1);
+        Assert.assertEquals(SegMode.FAST, record.getMode());
+        Assert.assertTrue(record.getDagNanos() > 0);
+        Assert.assertEquals(0, record.getViterbiNanos());
+        slowLog.close();
+    }
+
+    /**
+     * 重新分词经过与原分词相同的路径：交给HMM的片段数与原分词查询HMM缓存的次数相同，
+     * 且重新分词时不使用HMM缓存，缓存已命中时仍统计HMM的实际耗时
+     */
+    @Test
+    public void testStageTimes() {
+        HmmCache cache = FinalSeg.getInstance().getCache();
+        Assume.assumeNotNull(cache);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            sb.append(lines.get(i));
+        }
+        String text = sb.toString();
+        for (int window : new int[]{0, 16}) {
+            segmenter.setWindowSize(window);
+            long lookups = cache.getHitCount() + cache.getMissCount();
+            segmenter.process(text, SegMode.SEARCH, true);
+            long fragments = cache.getHitCount() + cache.getMissCount() - lookups;
+            // 缓存中已有全部片段
+            segmenter.process(text, SegMode.SEARCH, true);
+
+            lookups = cache.getHitCount() + cache.getMissCount();
+            long start = System.nanoTime();
+            SlowLog.Record record = segmenter.profile(text, SegMode.SEARCH, true, false, 0, 0);
+            long wall = System.nanoTime() - start;
+            System.out.println(record + ", wall=" + wall / 1000 + "us");
+            Assert.assertEquals(lookups, cache.getHitCount() + cache.getMissCount());
+            Assert.assertTrue(fragments > 0);
+            Assert.assertEquals(fragments, record.getOovFragments());
+            Assert.assertTrue(record.getDagNanos() > 0);
+            Assert.assertTrue(record.getRouteNanos() > 0);
+            Assert.assertTrue(record.getViterbiNanos() > 0);
+            Assert.assertTrue(record.getDagNanos() + record.getRouteNanos() + record.getViterbiNanos() <= wall);
+
+            record = segmenter.profile(text, SegMode.SEARCH, false, false, 0, 0);
+            Assert.assertEquals(0, record.getOovFragments());
+            Assert.assertEquals(0, record.getViterbiNanos());
+            Assert.assertTrue(record.getDagNanos() + record.getRouteNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testRingBuffer() throws Exception {
+        SlowLog slowLog = new SlowLog(0, 4, 64);
+        segmenter.setSlowLog(slowLog);
+        for (int i = 0; i < 10; i++) {
+            segmenter.process(lines.get(i), SegMode.SEARCH, true);
+            slowLog.awaitIdle();
+        }
+        List<SlowLog.Record> records = slowLog.getRecords();
+        Assert.assertEquals(10, slowLog.getCount());
+        Assert.assertEquals(4, records.size());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(SlowLog.hash(lines.get(6 + i)), records.get(i).getHash());
+        }
+        slowLog.clear();
+        Assert.assertEquals(0, slowLog.getRecords().size());
+
+        // 未超过阈值的输入不记录
+        segmenter.setSlowLog(SlowLog.ofMillis(TimeUnit.HOURS.toMillis(1)));
+        for (String line : lines) {
+            segmenter.process(line, SegMode.SEARCH, true);
+        }
+        segmenter.getSlowLog().awaitIdle();
+        Assert.assertEquals(0, segmenter.getSlowLog().getCount());
+        slowLog.close();
+    }
+
+    @Test
+    public void testSystemProperty() {
+        System.setProperty("jieba.slowLogMillis", "50");
+        try {
+            SlowLog slowLog = new JiebaSegmenter().getSlowLog();
+            Assert.assertNotNull(slowLog);
+            Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(50), slowLog.getThresholdNanos());
+            slowLog.close();
+        } finally {
+            System.clearProperty("jieba.slowLogMillis");
+        }
+        Assert.assertNull(new JiebaSegmenter().getSlowLog());
+    }
+
+    /**
+     * 开启慢分词日志但没有输入超过阈值时，对吞吐量的影响
+     */
+    @Test
+    public void testOverhead() {
+        SlowLog slowLog = SlowLog.ofMillis(TimeUnit.HOURS.toMillis(1));
+        long[] count = {0};
+        JiebaSegmenter.TokenSink sink = (word, start, end) -> count[0]++;
+        double[] best = new double[2];
+        int rounds = 200;
+        for (int pass = 0; pass < 5; pass++) {
+            for (int k = 0; k < 2; k++) {
+                segmenter.setSlowLog(k == 0 ? null : slowLog);
+                long s = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    for (String line : lines) {
+                        segmenter.process(line, SegMode.SEARCH, true, sink);
+                    }
+                }
+                best[k] = Math.max(best[k], rounds * lines.size() / ((System.nanoTime() - s) / 1e9));
+            }
+        }
+        System.out.println(String.format("without slow log: %.0f calls/s, with slow log: %.0f calls/s", best[0], best[1]));
+        Assert.assertEquals(0, slowLog.getCount());
+        Assert.assertTrue(count[0] > 0);
+        slowLog.close();
+    }
+}
@@ -0,0 +1,220 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+import org.manlier.analysis.jieba.dao.PureDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class TokenFilterTest {
+
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = new ArrayList<>(Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8));
+        lines.add("价格是3.14元，共２０１８件　ＡＢＣ．ｘ 𠮷野家 C++和.NET ...");
+    }
+
+    /**
+     * 先分词再逐个判断得到的结果
+     */
+    private List<SegToken> filterAfter(String text, SegMode mode, boolean HMM, TokenFilter filter) {
+        segmenter.setTokenFilter(null);
+        List<SegToken> tokens = new ArrayList<>();
+        for (SegToken token : segmenter.process(text, mode, HMM)) {
+            if (filter.accept(token.word)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private List<SegToken> filterInPass(String text, SegMode mode, boolean HMM, TokenFilter filter) {
+        segmenter.setTokenFilter(filter);
+        try {
+            return segmenter.process(text, mode, HMM);
+        } finally {
+            segmenter.setTokenFilter(null);
+        }
+    }
+
+    @Test
+    public void testTypes() {
+        TokenFilter filter = TokenFilter.create()
+                .withoutTypes(SegResult.TYPE_PUNCTUATION, SegResult.TYPE_WHITESPACE, SegResult.TYPE_NUMBER);
+        for (SegMode mode : SegMode.values()) {
+            for (boolean HMM : new boolean[]{true, false}) {
+                for (String line : lines) {
+                    List<SegToken> tokens = filterInPass(line, mode, HMM, filter);
+                    Assert.assertEquals(filterAfter(line, mode, HMM, filter).toString(), tokens.toString());
+                    for (SegToken token : tokens) {
+                        byte type = SegResult.typeOf(line, token.startOffset, token.endOffset);
+                        Assert.assertTrue(type == SegResult.TYPE_CHINESE || type == SegResult.TYPE_ALPHANUMERIC);
+                    }
+                }
+            }
+        }
+        List<SegToken> tokens = filterInPass(lines.get(lines.size() - 1), SegMode.SEARCH, true, filter);
+        System.out.println(tokens);
+        for (SegToken token : tokens) {
+            Assert.assertFalse("3.14".equals(token.word));
+            Assert.assertFalse("2018".equals(token.word));
+        }
+
+        // 与列式结果中记录的类型一致
+        SegResult result = segmenter.processColumnar(lines.get(lines.size() - 1), SegMode.SEARCH, true, true);
+        for (int i = 0; i < result.size(); i++) {
+            Assert.assertEquals(!filter.isDropped(result.getType(i)), filter.accept(result.getWord(i)));
+        }
+
+        try {
+            TokenFilter.create().withoutTypes((byte) 5);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    /**
+     * 语块中的数字及英文数字串在切分时即被丢弃，不截取字符串，结果与分词后再过滤相同
+     */
+    @Test
+    public void testAlphanumericRuns() {
+        TokenFilter filter = TokenFilter.create().withoutTypes(SegResult.TYPE_NUMBER);
+        List<String> tokens = new ArrayList<>();
+        String text = "v1.2-beta 3.14 2018 c++";
+        CharacterUtil.splitAlphanumeric(text, 0, text.length(), tokens, filter);
+        List<String> expected = new ArrayList<>();
+        CharacterUtil.splitAlphanumeric(text, 0, text.length(), expected);
+        Assert.assertEquals(expected.size(), tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            Assert.assertEquals(expected.get(i).length(), token.length());
+            Assert.assertEquals(!filter.accept(expected.get(i)), TokenFilter.isGap(token));
+            if (!TokenFilter.isGap(token)) {
+                Assert.assertEquals(expected.get(i), token);
+            }
+        }
+        Assert.assertTrue(TokenFilter.isGap(tokens.get(expected.indexOf("3.14"))));
+        Assert.assertTrue(TokenFilter.isGap(tokens.get(expected.indexOf("2018"))));
+        Assert.assertTrue(tokens.contains("v1"));
+
+        filter = filter.withoutTypes(SegResult.TYPE_ALPHANUMERIC, SegResult.TYPE_WHITESPACE);
+        List<String> texts = new ArrayList<>(lines);
+        texts.add("他在2024年买了abc123和iphone15，版本v2.0.1的k8s在3.5GB内存上跑了12h");
+        texts.add("编号ab12cd34ef56gh78价格99.9元x86_64和arm64架构" + String.join("", Collections.nCopies(10, "1234567890")));
+        for (int window : new int[]{0, 8}) {
+            segmenter.setWindowSize(window);
+            for (SegMode mode : SegMode.values()) {
+                for (boolean HMM : new boolean[]{true, false}) {
+                    for (String line : texts) {
+                        Assert.assertEquals(filterAfter(line, mode, HMM, filter).toString(),
+                                filterInPass(line, mode, HMM, filter).toString());
+                    }
+                }
+            }
+        }
+        segmenter.setWindowSize(0);
+        System.out.println(filterInPass(texts.get(texts.size() - 2), SegMode.SEARCH, true, filter));
+    }
+
+    @Test
+    public void testStopWords() throws IOException {
+        TokenFilter filter = TokenFilter.create()
+                .withStopWords(new PureDictSource(Arrays.asList("的", "了 10", "", "，", "ABC")))
+                .withStopWords(Arrays.asList("我们", "的"))
+                .withoutTypes(SegResult.TYPE_WHITESPACE);
+        Assert.assertEquals(5, filter.getStopWordCount());
+        Assert.assertTrue(filter.isStopWord("abc"));
+        Assert.assertFalse(filter.isStopWord("ABC"));
+        for (SegMode mode : SegMode.values()) {
+            for (String line : lines) {
+                List<SegToken> tokens = filterInPass(line, mode, true, filter);
+                Assert.assertEquals(filterAfter(line, mode, true, filter).toString(), tokens.toString());
+                for (SegToken token : tokens) {
+                    Assert.assertFalse(filter.isStopWord(token.word));
+                    Assert.assertFalse(token.word.trim().isEmpty());
+                }
+            }
+        }
+        String text = "我们 的 ABC，了";
+        List<SegToken> tokens = filterInPass(text, SegMode.SEARCH, true, filter);
+        System.out.println(tokens);
+        Assert.assertTrue(tokens.isEmpty());
+    }
+
+    @Test
+    public void testUtf8() {
+        TokenFilter filter = TokenFilter.create()
+                .withoutTypes(SegResult.TYPE_PUNCTUATION, SegResult.TYPE_WHITESPACE)
+                .withStopWords(Arrays.asList("的", "是"));
+        segmenter.setTokenFilter(filter);
+        for (boolean charOffsets : new boolean[]{true, false}) {
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                List<SegToken> tokens = new ArrayList<>();
+                segmenter.process(ByteBuffer.wrap(bytes), SegMode.SEARCH, true, charOffsets,
+                        (word, start, end) -> tokens.add(new SegToken(word, start, end)));
+                List<SegToken> expected = new ArrayList<>();
+                segmenter.setTokenFilter(null);
+                segmenter.process(ByteBuffer.wrap(bytes), SegMode.SEARCH, true, charOffsets, (word, start, end) -> {
+                    if (filter.accept(word)) {
+                        expected.add(new SegToken(word, start, end));
+                    }
+                });
+                segmenter.setTokenFilter(filter);
+                Assert.assertEquals(expected.toString(), tokens.toString());
+            }
+        }
+        segmenter.setTokenFilter(null);
+    }
+
+    /**
+     * 分词时过滤与分词后再过滤的吞吐量
+     */
+    @Test
+    public void testThroughput() {
+        TokenFilter filter = TokenFilter.create()
+                .withoutTypes(SegResult.TYPE_PUNCTUATION, SegResult.TYPE_WHITESPACE, SegResult.TYPE_NUMBER)
+                .withStopWords(Arrays.asList("的", "了", "是", "在", "和"));
+        double[] best = new double[2];
+        long[] kept = new long[2];
+        int rounds = 200;
+        for (int pass = 0; pass < 5; pass++) {
+            for (int k = 0; k < 2; k++) {
+                kept[k] = 0;
+                long s = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    for (String line : lines) {
+                        List<SegToken> tokens = k == 0 ? filterAfter(line, SegMode.SEARCH, true, filter)
+                                : filterInPass(line, SegMode.SEARCH, true, filter);
+                        kept[k] += tokens.size();
+                    }
+                }
+                best[k] = Math.max(best[k], rounds * lines.size() / ((System.nanoTime() - s) / 1e9));
+            }
+        }
+        System.out.println(String.format("filter after: %.0f lines/s, filter in pass: %.0f lines/s", best[0], best[1]));
+        Assert.assertEquals(kept[0], kept[1]);
+    }
+}
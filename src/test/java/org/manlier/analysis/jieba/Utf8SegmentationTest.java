@@ -0,0 +1,181 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class Utf8SegmentationTest {
+
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+    }
+
+    private List<SegToken> process(ByteBuffer buf, SegMode mode, boolean charOffsets) {
+        List<SegToken> tokens = new ArrayList<>();
+        segmenter.process(buf, mode, true, charOffsets,
+                (word, start, end) -> tokens.add(new SegToken(word, start, end)));
+        return tokens;
+    }
+
+    /**
+     * 字符偏移量与字符串分词的结果相同，字节偏移量对应原文中的同一段文本
+     */
+    private void assertSameAsString(String text, SegMode mode) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        List<SegToken> expected = segmenter.process(text, mode, true);
+        Assert.assertEquals(expected.toString(), process(ByteBuffer.wrap(bytes), mode, true).toString());
+
+        List<SegToken> byteTokens = process(ByteBuffer.wrap(bytes), mode, false);
+        Assert.assertEquals(expected.size(), byteTokens.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SegToken token = byteTokens.get(i);
+            Assert.assertEquals(expected.get(i).word, token.word);
+            Assert.assertEquals(text.substring(expected.get(i).startOffset, expected.get(i).endOffset),
+                    new String(bytes, token.startOffset, token.endOffset - token.startOffset, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSameAsString() {
+        List<String> texts = new ArrayList<>(lines);
+        texts.add("ＡＢＣ全角Ｄ３.１４，Hello World！\t€5 ©");
+        texts.add("");
+        for (SegMode mode : SegMode.values()) {
+            for (String text : texts) {
+                assertSameAsString(text, mode);
+            }
+        }
+    }
+
+    @Test
+    public void testWindowed() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            for (char ch : line.toCharArray()) {
+                if (CharacterUtil.ccFind(CharacterUtil.regularize(ch))) {
+                    sb.append(ch);
+                }
+            }
+        }
+        String longRun = sb.toString() + "。" + sb;
+        segmenter.setWindowSize(16);
+        assertSameAsString(longRun, SegMode.SEARCH);
+        assertSameAsString(longRun, SegMode.INDEX);
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] bytes = {'a', (byte) 0xE4, (byte) 0xB8, (byte) 0xE4, (byte) 0xB8, (byte) 0xAD, (byte) 0xFF,
+                (byte) 0xED, (byte) 0xA0, (byte) 0x80, 'b', (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, (byte) 0xE6};
+        List<SegToken> tokens = process(ByteBuffer.wrap(bytes), SegMode.SEARCH, false);
+        System.out.println(tokens);
+        List<String> words = new ArrayList<>();
+        StringBuilder joined = new StringBuilder();
+        int offset = 0;
+        for (SegToken token : tokens) {
+            Assert.assertEquals(offset, token.startOffset);
+            offset = token.endOffset;
+            words.add(token.word);
+            joined.append(token.word);
+        }
+        Assert.assertEquals(bytes.length, offset);
+        // 截断的序列及非法的字节各为一个U+FFFD，代理区字符的每个字节各为一个U+FFFD
+        Assert.assertEquals("a\uFFFD中\uFFFD\uFFFD\uFFFD\uFFFDb" + new String(Character.toChars(0x1F600)) + "\uFFFD",
+                joined.toString());
+        // 辅助平面的字符作为一个词元输出
+        Assert.assertTrue(words.contains(new String(Character.toChars(0x1F600))));
+    }
+
+    @Test
+    public void testDirectAndMapped() throws IOException {
+        String text = String.join("\n", lines);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        List<SegToken> expected = process(ByteBuffer.wrap(bytes), SegMode.SEARCH, false);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        Assert.assertEquals(expected.toString(), process(direct, SegMode.SEARCH, false).toString());
+        Assert.assertEquals(0, direct.position());
+
+        Path file = Files.createTempFile("utf8", ".txt");
+        Files.write(file, bytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Assert.assertEquals(expected.toString(), process(mapped, SegMode.SEARCH, false).toString());
+        } finally {
+            Files.delete(file);
+        }
+
+        // 字节数组中的一段，偏移量为在数组中的下标
+        String line = lines.get(0);
+        byte[] padded = ("前缀" + line).getBytes(StandardCharsets.UTF_8);
+        int start = "前缀".getBytes(StandardCharsets.UTF_8).length;
+        List<SegToken> range = new ArrayList<>();
+        segmenter.process(padded, start, padded.length - start, SegMode.SEARCH, true, false,
+                (word, s, e) -> range.add(new SegToken(word, s, e)));
+        Assert.assertEquals(start, range.get(0).startOffset);
+        Assert.assertEquals(padded.length, range.get(range.size() - 1).endOffset);
+        Assert.assertEquals(segmenter.process(line, SegMode.SEARCH).size(), range.size());
+    }
+
+    /**
+     * 对比先解码为字符串再分词与直接在字节上分词的吞吐量
+     */
+    @Test
+    public void testThroughput() {
+        String text = String.join("\n", lines);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        long[] count = {0};
+        JiebaSegmenter.TokenSink sink = (word, start, end) -> count[0]++;
+        String[] names = {"decode + String", "heap bytes", "direct bytes"};
+        double[] best = new double[names.length];
+        int rounds = 100;
+        // 轮流测量，每种方式取最好的一次，减少JIT预热及噪声的影响
+        for (int pass = 0; pass < 5; pass++) {
+            for (int k = 0; k < names.length; k++) {
+                long s = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    if (k == 0) {
+                        segmenter.process(new String(bytes, StandardCharsets.UTF_8), SegMode.SEARCH, true, sink);
+                    } else {
+                        segmenter.process(k == 1 ? ByteBuffer.wrap(bytes) : direct, SegMode.SEARCH, true, false, sink);
+                    }
+                }
+                double seconds = (System.nanoTime() - s) / 1e9;
+                best[k] = Math.max(best[k], bytes.length * rounds / seconds / 1e6);
+            }
+        }
+        for (int k = 0; k < names.length; k++) {
+            System.out.println(String.format("%-16s %6.2f MB/s", names[k], best[k]));
+        }
+        Assert.assertTrue(count[0] > 0);
+    }
+}
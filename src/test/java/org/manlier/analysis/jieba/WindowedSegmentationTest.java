@@ -0,0 +1,86 @@
+package org.manlier.analysis.jieba;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class WindowedSegmentationTest {
+
+    private JiebaSegmenter segmenter;
+    // 去掉标点与空白后的长语块，模拟OCR或抓取的网页文本
+    private String longRun;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+
+        StringBuilder sb = new StringBuilder();
+        List<String> lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            for (char ch : line.toCharArray()) {
+                if (CharacterUtil.ccFind(CharacterUtil.regularize(ch))) {
+                    sb.append(ch);
+                }
+            }
+        }
+        longRun = sb.toString();
+    }
+
+    @Test
+    public void testSameAsUnbounded() {
+        for (SegMode mode : SegMode.values()) {
+            for (boolean hmm : new boolean[]{true, false}) {
+                segmenter.setWindowSize(0);
+                List<SegToken> expected = segmenter.process(longRun, mode, hmm);
+                for (int windowSize : new int[]{16, 64, 500}) {
+                    segmenter.setWindowSize(windowSize);
+                    Assert.assertEquals("window " + windowSize + ", " + mode + ", HMM " + hmm,
+                            expected.toString(), segmenter.process(longRun, mode, hmm).toString());
+                    Assert.assertEquals(expected.toString(),
+                            segmenter.process(longRun + "。" + longRun, mode, hmm).subList(0, expected.size()).toString());
+                }
+            }
+        }
+        segmenter.setWindowSize(0);
+        System.out.println("run length: " + longRun.length());
+    }
+
+    @Test
+    public void testForcedCut() {
+        // 连续的单字找不到安全切分点，达到上限后强制切分，词元仍需首尾相接地覆盖原文
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("qx");
+        }
+        String text = sb.toString();
+        segmenter.setWindowSize(32);
+        try {
+            List<SegToken> tokens = segmenter.process(text, SegMode.SEARCH, true);
+            int offset = 0;
+            StringBuilder joined = new StringBuilder();
+            for (SegToken token : tokens) {
+                Assert.assertEquals(offset, token.startOffset);
+                offset = token.endOffset;
+                joined.append(token.word);
+            }
+            Assert.assertEquals(text, joined.toString());
+        } finally {
+            segmenter.setWindowSize(0);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.manlier.analysis.jieba.corpus;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.SegToken;
+import org.manlier.analysis.jieba.WordDictionary;
+import org.manlier.analysis.jieba.corpus.CorpusSegmenter.Format;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class CorpusSegmenterTest {
+
+    private JiebaSegmenter segmenter;
+    private List<String> lines;
+    private Path corpus;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        lines = new ArrayList<>();
+        List<String> text = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+        for (int i = 0; i < 50; i++) {
+            lines.addAll(text);
+            lines.add("");
+            lines.add("Windows换行\r");
+        }
+        corpus = Files.createTempFile("corpus", ".txt");
+        Files.write(corpus, lines, StandardCharsets.UTF_8);
+    }
+
+    private String segment(List<Path> inputs, Format format, int threads, boolean sentences) throws IOException {
+        CorpusSegmenter corpusSegmenter = new CorpusSegmenter(segmenter, SegMode.SEARCH, true, format, threads);
+        corpusSegmenter.setSplitOnSentences(sentences);
+        // 使小文件也被分为多段
+        corpusSegmenter.setSplitBytes(1024);
+        Path output = Files.createTempFile("segmented", ".txt");
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+            corpusSegmenter.segment(inputs, channel);
+        }
+        String result = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+        Files.delete(output);
+        return result;
+    }
+
+    /**
+     * 逐行分词得到的TEXT格式的输出
+     */
+    private String expectedText(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            List<String> words = new ArrayList<>();
+            for (SegToken token : segmenter.process(line, SegMode.SEARCH, true)) {
+                if (!token.word.trim().isEmpty()) {
+                    words.add(token.word);
+                }
+            }
+            sb.append(String.join(" ", words)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testOrderedOutput() throws IOException {
+        String expected = expectedText(lines);
+        for (int threads : new int[]{1, 4}) {
+            Assert.assertEquals(expected, segment(Collections.singletonList(corpus), Format.TEXT, threads, false));
+        }
+
+        // 只有一行的文件按句末的标点分段，结果不变
+        Path single = Files.createTempFile("corpus", ".txt");
+        Files.write(single, String.join("", lines).replace("\r", "").getBytes(StandardCharsets.UTF_8));
+        List<String> one = Collections.singletonList(new String(Files.readAllBytes(single), StandardCharsets.UTF_8));
+        Assert.assertTrue(CorpusSplit.split(single, 8, true).size() > 1);
+        Assert.assertEquals(1, CorpusSplit.split(single, 8, false).size());
+        String text = segment(Collections.singletonList(single), Format.TEXT, 4, true);
+        Assert.assertEquals(expectedText(one).trim(), text.trim().replaceAll(" +", " "));
+        Files.delete(single);
+    }
+
+    @Test
+    public void testFormats() throws IOException {
+        byte[] bytes = Files.readAllBytes(corpus);
+        String offsets = segment(Collections.singletonList(corpus), Format.OFFSETS, 4, false);
+        String[] outputLines = offsets.split("\n", -1);
+        Assert.assertEquals(lines.size() + 1, outputLines.length);
+        // 偏移量首尾相接，覆盖除换行符之外的所有字节
+        StringBuilder rebuilt = new StringBuilder();
+        for (String outputLine : outputLines) {
+            if (outputLine.isEmpty()) {
+                continue;
+            }
+            for (String pair : outputLine.split(" ")) {
+                int comma = pair.indexOf(',');
+                int start = Integer.parseInt(pair.substring(0, comma));
+                int end = Integer.parseInt(pair.substring(comma + 1));
+                rebuilt.append(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            }
+        }
+        Assert.assertEquals(new String(bytes, StandardCharsets.UTF_8).replace("\r\n", "").replace("\n", ""),
+                rebuilt.toString());
+
+        String jsonl = segment(Collections.singletonList(corpus), Format.JSONL, 4, false);
+        String[] records = jsonl.split("\n");
+        Assert.assertEquals(lines.size(), records.length);
+        Assert.assertTrue(records[0].startsWith("{\"file\":\"" + corpus.toString().replace("\\", "\\\\")
+                + "\",\"offset\":0,\"tokens\":[\""));
+        Assert.assertTrue(records[0].endsWith("\"]}"));
+        System.out.println(records[0]);
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        Path dir = Files.createTempDirectory("corpus");
+        Files.write(dir.resolve("b.txt"), lines.subList(0, 10), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("a.txt"), lines.subList(10, 20), StandardCharsets.UTF_8);
+        List<Path> inputs = CorpusSegmenter.listInputs(dir);
+        Assert.assertEquals(dir.resolve("a.txt"), inputs.get(0));
+        List<String> expected = new ArrayList<>(lines.subList(10, 20));
+        expected.addAll(lines.subList(0, 10));
+        Assert.assertEquals(expectedText(expected), segment(inputs, Format.TEXT, 2, false));
+    }
+
+    /**
+     * 文件的最后一行没有换行符时，不与下一个文件的第一行相连
+     */
+    @Test
+    public void testMissingFinalNewline() throws IOException {
+        Path dir = Files.createTempDirectory("corpus");
+        Files.write(dir.resolve("a.txt"), "我爱北京天安门".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.txt"), "今天天气很好\n".getBytes(StandardCharsets.UTF_8));
+        List<Path> inputs = CorpusSegmenter.listInputs(dir);
+        String expected = expectedText(Arrays.asList("我爱北京天安门", "今天天气很好"));
+        for (int threads : new int[]{1, 4}) {
+            Assert.assertEquals(expected, segment(inputs, Format.TEXT, threads, false));
+            Assert.assertEquals(expected, segment(inputs, Format.TEXT, threads, true));
+        }
+        String[] offsets = segment(inputs, Format.OFFSETS, 2, false).split("\n", -1);
+        Assert.assertEquals(3, offsets.length);
+        Assert.assertTrue(offsets[0].startsWith("0,") && offsets[1].startsWith("0,"));
+    }
+
+    @Test
+    public void testThroughput() throws IOException {
+        Path large = Files.createTempFile("corpus", ".txt");
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            many.addAll(lines);
+        }
+        Files.write(large, many, StandardCharsets.UTF_8);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[]{1, cores}) {
+            CorpusSegmenter corpusSegmenter = new CorpusSegmenter(segmenter, SegMode.SEARCH, true, Format.TEXT, threads);
+            corpusSegmenter.setSplitBytes(64 * 1024);
+            Path output = Files.createTempFile("segmented", ".txt");
+            long s = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                corpusSegmenter.segment(Collections.singletonList(large), channel);
+            }
+            double seconds = (System.nanoTime() - s) / 1e9;
+            System.out.println(String.format("%d threads: %.2f MB/s", threads, Files.size(large) / seconds / 1048576));
+            Assert.assertEquals(Files.size(large), corpusSegmenter.getBytes());
+            Files.delete(output);
+        }
+        Files.delete(large);
+    }
+}
@@ -0,0 +1,132 @@
+package org.manlier.analysis.jieba.corpus;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.Pair;
+import org.manlier.analysis.jieba.WordDictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+@RunWith(JUnit4.class)
+public class FrequencyEstimatorTest {
+
+    private Path corpus;
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("jieba.defaultDict", "false");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            lines.add("鼷鼯，" + i);
+            if (i % 10 == 0) {
+                lines.add("鼹鼷鼯");
+                lines.add("鼹鼷鼯");
+            }
+            if (i % 50 == 0) {
+                lines.add("鼹鼷");
+            }
+            if (i % 5 < 3) {
+                lines.add("鼹，");
+            }
+        }
+        corpus = Files.createTempFile("corpus", ".txt");
+        Files.write(corpus, lines, StandardCharsets.UTF_8);
+    }
+
+    private JiebaSegmenter newSegmenter() {
+        JiebaSegmenter segmenter = new JiebaSegmenter(WordDictionary.getInstance().newOverlay());
+        segmenter.applyChanges(Arrays.asList(new Pair<>("鼹鼷", 1000), new Pair<>("鼷鼯", 10),
+                new Pair<>("鼹", 1), new Pair<>("鼷", 1), new Pair<>("鼯", 1)));
+        return segmenter;
+    }
+
+    @Test
+    public void testSplits() throws IOException {
+        List<String> expected = Files.readAllLines(corpus, StandardCharsets.UTF_8);
+        for (int count : new int[]{1, 2, 7, 100, 10000}) {
+            List<CorpusSplit> splits = CorpusSplit.split(corpus, count);
+            List<String> lines = new ArrayList<>();
+            long position = 0;
+            for (CorpusSplit split : splits) {
+                Assert.assertEquals(position, split.getStart());
+                position = split.getEnd();
+                split.forEachLine(lines::add);
+            }
+            Assert.assertEquals(Files.size(corpus), position);
+            Assert.assertEquals(expected, lines);
+        }
+
+        Path windows = Files.createTempFile("corpus", ".txt");
+        Files.write(windows, "﻿第一行\r\n第二行\r\n没有换行".getBytes(StandardCharsets.UTF_8));
+        List<String> lines = new ArrayList<>();
+        for (CorpusSplit split : CorpusSplit.split(windows, 3)) {
+            split.forEachLine(lines::add);
+        }
+        Assert.assertEquals(Arrays.asList("第一行", "第二行", "没有换行"), lines);
+    }
+
+    @Test
+    public void testParallelSameAsSequential() throws IOException {
+        List<CorpusSplit> splits = CorpusSplit.split(corpus, 16);
+        Map<String, Long> sequential = new FrequencyEstimator(newSegmenter(), 1).count(splits);
+        Map<String, Long> parallel = new FrequencyEstimator(newSegmenter(), 3).count(splits);
+        Assert.assertEquals(sequential, parallel);
+        // 鼹鼷的频率较高，鼹鼷鼯被切分为鼹鼷/鼯
+        Assert.assertEquals(Long.valueOf(100 + 10 + 1), sequential.get("鼹鼷"));
+        Assert.assertEquals(Long.valueOf(500 + 1), sequential.get("鼷鼯"));
+        Assert.assertEquals(Long.valueOf(100 + 1), sequential.get("鼯"));
+        Assert.assertEquals(Long.valueOf(300 + 1), sequential.get("鼹"));
+    }
+
+    /**
+     * 覆盖层之下基础词典中的词同样参与统计，在覆盖层中被删除的词除外
+     */
+    @Test
+    public void testBaseWords() throws IOException {
+        new JiebaSegmenter(WordDictionary.getInstance()).applyChanges(Arrays.asList(
+                new Pair<>("鼩鼱", 1000), new Pair<>("鼩鼹", 1000)));
+        JiebaSegmenter segmenter = newSegmenter();
+        segmenter.delWord("鼩鼹");
+        Path text = Files.createTempFile("corpus", ".txt");
+        Files.write(text, Arrays.asList("鼩鼱，鼹鼷", "鼩鼱", "鼩鼹"), StandardCharsets.UTF_8);
+        Map<String, Long> freqs = new FrequencyEstimator(segmenter, 2).count(CorpusSplit.split(text, 2));
+        System.out.println(freqs);
+        Assert.assertEquals(Long.valueOf(2 + 1), freqs.get("鼩鼱"));
+        Assert.assertEquals(Long.valueOf(1 + 1), freqs.get("鼹鼷"));
+        Assert.assertFalse(freqs.containsKey("鼩鼹"));
+    }
+
+    @Test
+    public void testIterations() throws IOException {
+        JiebaSegmenter segmenter = newSegmenter();
+        FrequencyEstimator estimator = new FrequencyEstimator(segmenter, 2);
+        Map<String, Long> freqs = estimator.estimate(corpus, 2);
+        System.out.println(freqs + ", tokens " + estimator.getTokens() + ", unknown " + estimator.getUnknownTokens());
+        // 第一次迭代后鼹与鼷鼯的频率更高，第二次迭代中鼹鼷鼯被切分为鼹/鼷鼯
+        Assert.assertEquals(Long.valueOf(10 + 1), freqs.get("鼹鼷"));
+        Assert.assertEquals(Long.valueOf(500 + 100 + 1), freqs.get("鼷鼯"));
+        Assert.assertEquals(Arrays.asList("鼹", "鼷鼯"), segmenter.sentenceProcess("鼹鼷鼯", false));
+
+        Path output = Files.createTempFile("estimated", ".dict");
+        FrequencyEstimator.write(freqs, output);
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            // 只检查覆盖层中的词，基础词典中的词同样会被写出
+            if (segmenter.getWordDictionary().freqs.containsKey(line.substring(0, line.indexOf(' ')))) {
+                lines.add(line);
+            }
+        }
+        Assert.assertEquals(Arrays.asList("鼯 1", "鼷 1", "鼷鼯 601", "鼹 401", "鼹鼷 11"), lines);
+        Assert.assertEquals("鼹", segmenter.process("鼹鼷鼯", SegMode.SEARCH, false).get(0).word);
+    }
+}
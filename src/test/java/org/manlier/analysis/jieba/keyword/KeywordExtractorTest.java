@@ -0,0 +1,188 @@
+package org.manlier.analysis.jieba.keyword;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.CharacterUtil;
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.JiebaSegmenter.SegMode;
+import org.manlier.analysis.jieba.SegToken;
+import org.manlier.analysis.jieba.WordDictionary;
+import org.manlier.analysis.jieba.dao.FileDictSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@RunWith(JUnit4.class)
+public class KeywordExtractorTest {
+
+    private JiebaSegmenter segmenter;
+    private IdfTable idfTable;
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("jieba.defaultDict", "false");
+        WordDictionary.getInstance().loadUserDict(new FileDictSource(Paths.get("conf")));
+        segmenter = new JiebaSegmenter();
+        Path idf = Files.createTempFile("idf", ".txt");
+        Files.write(idf, Arrays.asList("北京 8.5", "天安门 11.2", "我们 1.5", "中国 4.0", "没有IDF的行"), StandardCharsets.UTF_8);
+        idfTable = IdfTable.load(new FileDictSource(idf));
+        lines = Files.readAllLines(Paths.get(getClass().getResource("/test.txt").toURI()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testIdfTable() {
+        Assert.assertEquals(4, idfTable.size());
+        Assert.assertEquals(11.2, idfTable.get("天安门"), 1e-9);
+        Assert.assertEquals(8.5, idfTable.getMedian(), 1e-9);
+        Assert.assertEquals(8.5, idfTable.get("没有的词"), 1e-9);
+        Assert.assertEquals(0, IdfTable.empty().get("北京"), 1e-9);
+    }
+
+    @Test
+    public void testExtract() throws IOException {
+        KeywordExtractor extractor = new KeywordExtractor(segmenter, idfTable);
+        Path stopWords = Files.createTempFile("stop", ".txt");
+        Files.write(stopWords, Collections.singletonList("我们"), StandardCharsets.UTF_8);
+        extractor.loadStopWords(new FileDictSource(stopWords));
+
+        List<Keyword> keywords = extractor.extract("我们爱北京天安门，我们去北京看天安门升旗。", 3);
+        System.out.println(keywords);
+        Assert.assertEquals("天安门", keywords.get(0).getWord());
+        Assert.assertEquals(2, keywords.get(0).getCount());
+        Assert.assertEquals("北京", keywords.get(1).getWord());
+        Assert.assertTrue(keywords.stream().noneMatch(k -> k.getWord().equals("我们")));
+        Assert.assertTrue(extractor.extract("，。", 3).isEmpty());
+    }
+
+    @Test
+    public void testSameAsFullSort() {
+        KeywordExtractor extractor = new KeywordExtractor(segmenter, idfTable);
+        for (String line : lines) {
+            for (int k : new int[]{1, 3, 10}) {
+                Assert.assertEquals(line, format(reference(line, k)), format(extractor.extract(line, k)));
+            }
+        }
+    }
+
+    @Test
+    public void testDocumentFrequency() {
+        CountMinSketch sketch = CountMinSketch.withError(0.001, 0.99);
+        KeywordExtractor extractor = new KeywordExtractor(segmenter, IdfTable.empty(), sketch);
+        for (String line : lines) {
+            extractor.extract(line, 5);
+        }
+        // 不含任何词的文档及不需要关键词的调用同样计入语料
+        extractor.extract("，。！", 5);
+        extractor.extract(lines.get(0), 0);
+        Assert.assertEquals(lines.size() + 2, extractor.getDocuments());
+        // 出现在多篇文档中的词IDF较低
+        System.out.println(String.format("documents %d, idf(我爱)=%.3f, idf(天安门)=%.3f, idf(从未出现)=%.3f",
+                extractor.getDocuments(), extractor.idf("我爱"), extractor.idf("天安门"), extractor.idf("从未出现")));
+        Assert.assertTrue(extractor.idf("我爱") <= extractor.idf("天安门"));
+        Assert.assertTrue(extractor.idf("天安门") <= extractor.idf("从未出现"));
+    }
+
+    @Test
+    public void testSketchSize() {
+        try {
+            new CountMinSketch(1 << 20, 1 << 12);
+            Assert.fail("width × depth overflows int");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+        try {
+            CountMinSketch.withError(1e-10, 0.99);
+            Assert.fail("width × depth overflows int");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testConcurrentSketch() throws InterruptedException {
+        CountMinSketch sketch = CountMinSketch.withError(0.001, 0.99);
+        int threads = 4;
+        int words = 2000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < words; i++) {
+                    // 词i出现i % 10 + 1次
+                    sketch.add("词" + i, i % 10 + 1);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long total = sketch.getTotal();
+        long maxError = 0;
+        for (int i = 0; i < words; i++) {
+            long expected = (long) threads * (i % 10 + 1);
+            long estimate = sketch.estimate("词" + i);
+            Assert.assertTrue(estimate >= expected);
+            maxError = Math.max(maxError, estimate - expected);
+        }
+        System.out.println(String.format("sketch %dx%d, total %d, max error %d", sketch.getWidth(), sketch.getDepth(), total, maxError));
+        Assert.assertEquals((long) threads * words / 10 * 55, total);
+        Assert.assertTrue(maxError <= total * 0.001);
+    }
+
+    @Test
+    public void testSpeed() {
+        KeywordExtractor extractor = new KeywordExtractor(segmenter, idfTable, CountMinSketch.withError(0.0001, 0.99));
+        String doc = String.join("\n", lines);
+        for (int round = 0; round < 2; round++) {
+            long s = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                reference(doc, 20);
+            }
+            long naive = System.nanoTime() - s;
+            s = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                extractor.extract(doc, 20);
+            }
+            long streaming = System.nanoTime() - s;
+            System.out.println(String.format("HashMap and full sort %.1f us/doc, keyword extractor %.1f us/doc",
+                    naive / 200e3, streaming / 200e3));
+        }
+    }
+
+    /**
+     * 在分词结果上用HashMap统计词频并全部排序
+     */
+    private List<Keyword> reference(String text, int k) {
+        Map<String, Integer> counts = new HashMap<>();
+        int terms = 0;
+        for (SegToken token : segmenter.process(text, SegMode.SEARCH, true)) {
+            String word = token.word;
+            char ch = word.charAt(0);
+            if (word.length() >= 2 && (CharacterUtil.isChineseLetter(ch) || CharacterUtil.isEnglishLetter(ch) || CharacterUtil.isDigit(ch))) {
+                counts.merge(word, 1, Integer::sum);
+                terms++;
+            }
+        }
+        int total = terms;
+        return counts.entrySet().stream()
+                .map(e -> new Keyword(e.getKey(), e.getValue() * idfTable.get(e.getKey()) / total, e.getValue()))
+                .sorted(Comparator.comparingDouble(Keyword::getWeight).reversed().thenComparing(Keyword::getWord))
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    private static String format(List<Keyword> keywords) {
+        return keywords.stream().map(k -> k.getWord() + ":" + String.format("%.6f", k.getWeight())).collect(Collectors.joining(","));
+    }
+}
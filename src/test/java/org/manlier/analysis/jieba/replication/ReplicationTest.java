@@ -0,0 +1,204 @@
+package org.manlier.analysis.jieba.replication;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.DictChange;
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.Pair;
+import org.manlier.analysis.jieba.WordDictionary;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+@RunWith(JUnit4.class)
+public class ReplicationTest {
+
+    private static final int FOLLOWERS = 4;
+    private static final int WORDS = 5000;
+
+    @Before
+    public void setUp() {
+        System.setProperty("jieba.defaultDict", "false");
+    }
+
+    private JiebaSegmenter newSegmenter() {
+        return new JiebaSegmenter(WordDictionary.getInstance().newOverlay());
+    }
+
+    @Test
+    public void testLoopbackLag() throws Exception {
+        replicate(new LoopbackTransport());
+    }
+
+    @Test
+    public void testTcpLag() throws Exception {
+        replicate(new TcpTransport("127.0.0.1", 0, 16));
+    }
+
+    /**
+     * 在写入的同时复制到多个跟随者，测量每个词从写入到在跟随者上生效的时间
+     */
+    private void replicate(Transport leaderTransport) throws Exception {
+        JiebaSegmenter leaderSegmenter = newSegmenter();
+        Map<String, Long> writeTimes = new ConcurrentHashMap<>();
+        List<Long> lags = Collections.synchronizedList(new ArrayList<>());
+        try (ReplicationLeader leader = new ReplicationLeader(leaderSegmenter, leaderTransport, 1000, 2, 16)) {
+            Transport followerTransport = leaderTransport instanceof TcpTransport
+                    ? new TcpTransport("127.0.0.1", ((TcpTransport) leaderTransport).getLocalPort())
+                    : leaderTransport;
+            List<ReplicationFollower> followers = new ArrayList<>();
+            List<JiebaSegmenter> followerSegmenters = new ArrayList<>();
+            for (int i = 0; i < FOLLOWERS; i++) {
+                JiebaSegmenter segmenter = newSegmenter();
+                segmenter.subscribe((List<Pair<String>> changes) -> {
+                    long now = System.nanoTime();
+                    for (Pair<String> change : changes) {
+                        Long written = writeTimes.get(change.key);
+                        if (written != null) {
+                            lags.add(now - written);
+                        }
+                    }
+                });
+                followerSegmenters.add(segmenter);
+                followers.add(new ReplicationFollower(segmenter, followerTransport));
+            }
+
+            for (int i = 0; i < WORDS; i++) {
+                String word = "复制词" + i;
+                writeTimes.put(word, System.nanoTime());
+                leaderSegmenter.applyChanges(Collections.singletonList(new Pair<>(word, 10 + i)));
+                if (i % 500 == 0) {
+                    leaderSegmenter.delWord("复制词" + (i / 2));
+                }
+                if (i % 50 == 49) {
+                    Thread.sleep(1);
+                }
+            }
+
+            // 写入结束后加入的跟随者需要通过同步补齐所有变更
+            JiebaSegmenter late = newSegmenter();
+            followerSegmenters.add(late);
+            followers.add(new ReplicationFollower(late, followerTransport));
+
+            long deadline = System.currentTimeMillis() + 10000;
+            for (ReplicationFollower follower : followers) {
+                while (follower.getVersion() < leader.getVersion() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+                Assert.assertEquals(leader.getVersion(), follower.getVersion());
+            }
+            // 只保留16个增量，落后的跟随者通过快照补齐
+            Assert.assertEquals(1, followers.get(FOLLOWERS).getSnapshots());
+            WordDictionary leaderDict = leaderSegmenter.getWordDictionary();
+            for (JiebaSegmenter segmenter : followerSegmenters) {
+                WordDictionary dict = segmenter.getWordDictionary();
+                Assert.assertTrue(dict.containsWord("复制词" + (WORDS - 1)));
+                Assert.assertFalse(dict.containsWord("复制词0"));
+                // 与领导者的规格化频率及强制切分词完全相同
+                Assert.assertEquals(leaderDict.freqs, dict.freqs);
+                Assert.assertEquals(leaderDict.getForceSplitWords(), dict.getForceSplitWords());
+            }
+
+            // 重复投递已应用的增量不会产生影响
+            for (Delta delta : leader.sync(0)) {
+                Assert.assertTrue(delta.getVersion() <= followers.get(0).getVersion());
+            }
+
+            List<Long> sorted = new ArrayList<>(lags);
+            Collections.sort(sorted);
+            System.out.println(String.format("%s: version %d, followers %d, snapshots of late follower %d, lag p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    leaderTransport.getClass().getSimpleName(), leader.getVersion(), followers.size(),
+                    followers.get(FOLLOWERS).getSnapshots(),
+                    sorted.get(sorted.size() / 2) / 1e6, sorted.get(sorted.size() * 99 / 100) / 1e6,
+                    sorted.get(sorted.size() - 1) / 1e6));
+            for (ReplicationFollower follower : followers) {
+                follower.close();
+            }
+        }
+    }
+
+    /**
+     * 可以控制同步结果的传输层，用于模拟增量丢失及同步失败
+     */
+    private static class ScriptedTransport implements Transport {
+        volatile Consumer<Delta> listener;
+        volatile List<Delta> syncResult;
+
+        @Override
+        public Publisher bind(SyncHandler handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Connection connect(Consumer<Delta> listener) {
+            this.listener = listener;
+            return new Connection() {
+                @Override
+                public List<Delta> sync(long afterVersion) throws IOException {
+                    List<Delta> result = syncResult;
+                    if (result == null) {
+                        throw new IOException("leader unreachable");
+                    }
+                    List<Delta> deltas = new ArrayList<>();
+                    for (Delta delta : result) {
+                        if (delta.getVersion() > afterVersion) {
+                            deltas.add(delta);
+                        }
+                    }
+                    return deltas;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    private static Delta delta(long version, String word) {
+        return new Delta(version, Delta.NORMAL, System.currentTimeMillis(),
+                Collections.singletonList(DictChange.put(word, 10, -10)));
+    }
+
+    private static void awaitQuiet() throws InterruptedException {
+        // 跟随者在自己的线程中处理收到的增量
+        Thread.sleep(300);
+    }
+
+    /**
+     * 丢失增量后同步失败时，跟随者不会越过未应用的增量
+     */
+    @Test
+    public void testGapWithFailedSync() throws Exception {
+        ScriptedTransport transport = new ScriptedTransport();
+        transport.syncResult = Collections.emptyList();
+        JiebaSegmenter segmenter = newSegmenter();
+        try (ReplicationFollower follower = new ReplicationFollower(segmenter, transport)) {
+            awaitQuiet();
+            // 版本1的增量被丢弃，同步也失败
+            transport.syncResult = null;
+            transport.listener.accept(new Delta(1, Delta.HEARTBEAT, System.currentTimeMillis(), Collections.emptyList()));
+            transport.listener.accept(delta(2, "缺口词乙"));
+            awaitQuiet();
+            Assert.assertEquals(0, follower.getVersion());
+            Assert.assertFalse(segmenter.getWordDictionary().containsWord("缺口词乙"));
+
+            // 恢复后由下一个心跳触发同步补齐
+            transport.syncResult = Arrays.asList(delta(1, "缺口词甲"), delta(2, "缺口词乙"));
+            transport.listener.accept(new Delta(2, Delta.HEARTBEAT, System.currentTimeMillis(), Collections.emptyList()));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (follower.getVersion() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Assert.assertEquals(2, follower.getVersion());
+            Assert.assertTrue(segmenter.getWordDictionary().containsWord("缺口词甲"));
+            Assert.assertTrue(segmenter.getWordDictionary().containsWord("缺口词乙"));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.manlier.analysis.jieba.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分词服务的压测工具，按固定的QPS发送请求（开环），延迟从计划发送的时间开始计算，
+ * 因此服务端变慢时排队的时间也会计入延迟。
+ * <p>
+ * 用法：SegmentLoadGenerator &lt;url&gt; &lt;qps&gt; &lt;秒数&gt; [客户端线程数]
+ */
+public class SegmentLoadGenerator {
+
+    private final URL url;
+    private final byte[] body;
+    private final String contentType;
+
+    public SegmentLoadGenerator(URL url, byte[] body, String contentType) {
+        this.url = url;
+        this.body = body;
+        this.contentType = contentType;
+    }
+
+    /**
+     * 压测结果，延迟单位为毫秒
+     */
+    public static class Result {
+        public final long sent;
+        public final long ok;
+        public final long rejected;
+        public final long failed;
+        public final double p50;
+        public final double p99;
+        public final double max;
+        public final double seconds;
+
+        Result(long sent, long ok, long rejected, long failed, List<Long> latencies, double seconds) {
+            this.sent = sent;
+            this.ok = ok;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.seconds = seconds;
+            Collections.sort(latencies);
+            this.p50 = latencies.isEmpty() ? 0 : latencies.get(latencies.size() / 2) / 1e6;
+            this.p99 = latencies.isEmpty() ? 0 : latencies.get(latencies.size() * 99 / 100) / 1e6;
+            this.max = latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1) / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sent %d, ok %d, rejected %d, failed %d, achieved %.0f qps, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    sent, ok, rejected, failed, ok / seconds, p50, p99, max);
+        }
+    }
+
+    public Result run(int qps, int seconds, int threads) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong sent = new AtomicLong();
+        AtomicLong ok = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long total = (long) qps * seconds;
+        long intervalNanos = 1_000_000_000L / qps;
+        long begin = System.nanoTime();
+        CountDownLatch done = new CountDownLatch((int) total);
+
+        scheduler.scheduleAtFixedRate(() -> {
+            long index = sent.getAndIncrement();
+            if (index >= total) {
+                return;
+            }
+            long intended = begin + index * intervalNanos;
+            clients.execute(() -> {
+                try {
+                    int status = send();
+                    if (status == 200) {
+                        ok.incrementAndGet();
+                        latencies.add(System.nanoTime() - intended);
+                    } else if (status == 503) {
+                        rejected.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+
+        done.await(seconds + 30L, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        scheduler.shutdownNow();
+        clients.shutdownNow();
+        return new Result(Math.min(sent.get(), total), ok.get(), rejected.get(), failed.get(), latencies, elapsed);
+    }
+
+    private int send() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write(body);
+        }
+        int status = connection.getResponseCode();
+        InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (is != null) {
+            // 读完响应体，使连接可以复用
+            try (InputStream in = is) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // skip
+                }
+            }
+        }
+        return status;
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: SegmentLoadGenerator <url> <qps> <seconds> [threads]");
+            System.exit(1);
+        }
+        byte[] body = "这是一个伸手不见五指的黑夜。我叫孙悟空，我爱北京，我爱Python和C++。".getBytes(StandardCharsets.UTF_8);
+        SegmentLoadGenerator generator = new SegmentLoadGenerator(new URL(args[0]), body, "text/plain; charset=utf-8");
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        System.out.println(generator.run(Integer.parseInt(args[1]), Integer.parseInt(args[2]), threads));
+    }
+}
@@ -0,0 +1,195 @@
+package org.manlier.analysis.jieba.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import org.manlier.analysis.jieba.JiebaSegmenter;
+import org.manlier.analysis.jieba.SegToken;
+import org.manlier.analysis.jieba.WordDictionary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class SegmentServerTest {
+
+    private static final String DOC = "我爱北京天安门，雷猴回归人间。";
+
+    private JiebaSegmenter segmenter;
+    private SegmentServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        // 使用独立的空词典，不修改全局的系统属性
+        segmenter = new JiebaSegmenter(new WordDictionary(false) {
+        });
+        server = new SegmentServer(segmenter, new InetSocketAddress("127.0.0.1", 0), 4, 2, 64, 16);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private URL url(String query) throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + SegmentServer.PATH + query);
+    }
+
+    private static HttpURLConnection post(URL url, String contentType, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    private String expectedOffsets(String doc) {
+        StringBuilder sb = new StringBuilder("[");
+        List<SegToken> tokens = segmenter.process(doc, JiebaSegmenter.SegMode.SEARCH, true);
+        for (SegToken token : tokens) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(token.startOffset).append(',').append(token.endOffset);
+        }
+        return sb.append(']').toString();
+    }
+
+    @Test
+    public void testSingleAndBatch() throws IOException {
+        HttpURLConnection single = post(url(""), "text/plain; charset=utf-8", DOC);
+        Assert.assertEquals(200, single.getResponseCode());
+        String response = new String(SegmentLoadGenerator.readAll(single.getInputStream()), StandardCharsets.UTF_8);
+        Assert.assertEquals("[" + expectedOffsets(DOC) + "]", response);
+
+        HttpURLConnection batch = post(url("?format=json"), "application/json", "[\"" + DOC + "\", \"abc\\n\\u4e2d\", \"\"]");
+        Assert.assertEquals(200, batch.getResponseCode());
+        response = new String(SegmentLoadGenerator.readAll(batch.getInputStream()), StandardCharsets.UTF_8);
+        Assert.assertEquals("[" + expectedOffsets(DOC) + "," + expectedOffsets("abc\n中") + ",[]]", response);
+        System.out.println(response);
+    }
+
+    private boolean assertBinary(String mode, String doc) throws IOException {
+        HttpURLConnection connection = post(url("?format=binary&mode=" + mode), "text/plain", doc);
+        Assert.assertEquals(200, connection.getResponseCode());
+        byte[] bytes = SegmentLoadGenerator.readAll(connection.getInputStream());
+        List<SegToken> tokens = segmenter.process(doc, JiebaSegmenter.SegMode.valueOf(mode.toUpperCase()), true);
+        int[] pos = {0};
+        Assert.assertEquals(tokens.size(), readVarInt(bytes, pos));
+        int start = 0;
+        boolean backwards = false;
+        for (SegToken token : tokens) {
+            int zigzag = readVarInt(bytes, pos);
+            int delta = (zigzag >>> 1) ^ -(zigzag & 1);
+            backwards |= delta < 0;
+            start += delta;
+            Assert.assertEquals(token.startOffset, start);
+            Assert.assertEquals(token.endOffset, start + readVarInt(bytes, pos));
+        }
+        Assert.assertEquals(bytes.length, pos[0]);
+        System.out.println(mode + " binary response: " + bytes.length + " bytes for " + tokens.size()
+                + " tokens, backwards deltas " + backwards);
+        return backwards;
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        assertBinary("search", DOC);
+    }
+
+    /**
+     * INDEX模式下子词的起始位置可能小于前一个词元
+     */
+    @Test
+    public void testBinaryIndexMode() throws IOException {
+        segmenter.addWord("鼋鼍鳏鳍", 100000);
+        for (String word : new String[]{"鼋鼍", "鳏鳍", "鼍鳏鳍"}) {
+            segmenter.addWord(word, 10);
+        }
+        // 子词"鼍鳏鳍"在"鳏鳍"之后写出，起始位置的差值为负数
+        Assert.assertTrue(assertBinary("index", "鼋鼍鳏鳍"));
+    }
+
+    private static String batchOf(int n) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < n; i++) {
+            sb.append(i > 0 ? "," : "").append("\"").append(DOC).append("\"");
+        }
+        return sb.append("]").toString();
+    }
+
+    @Test
+    public void testLoadShedding() throws Exception {
+        // 文档数超过队列容量的请求永远不会被接受
+        HttpURLConnection tooLarge = post(url(""), "application/json", batchOf(65));
+        Assert.assertEquals(413, tooLarge.getResponseCode());
+        Assert.assertNull(tooLarge.getHeaderField("Retry-After"));
+        Assert.assertEquals(0, server.getRejectedRequests());
+        HttpURLConnection bad = post(url("?mode=bogus"), "text/plain", DOC);
+        Assert.assertEquals(400, bad.getResponseCode());
+
+        // 没有分词线程的服务，第一个请求占满队列后，之后的请求被拒绝
+        SegmentServer idle = new SegmentServer(segmenter, new InetSocketAddress("127.0.0.1", 0), 2, 0, 64, 16);
+        idle.start();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            URL idleUrl = new URL("http://127.0.0.1:" + idle.getAddress().getPort() + SegmentServer.PATH);
+            executor.submit(() -> {
+                HttpURLConnection full = post(idleUrl, "application/json", batchOf(64));
+                full.setReadTimeout(10000);
+                return full.getResponseCode();
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (idle.getAcceptedRequests() == 0) {
+                Assert.assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+            HttpURLConnection overloaded = post(idleUrl, "text/plain", DOC);
+            Assert.assertEquals(503, overloaded.getResponseCode());
+            Assert.assertEquals("1", overloaded.getHeaderField("Retry-After"));
+            Assert.assertEquals(1, idle.getRejectedRequests());
+        } finally {
+            idle.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        SegmentLoadGenerator generator = new SegmentLoadGenerator(url(""), DOC.getBytes(StandardCharsets.UTF_8),
+                "text/plain; charset=utf-8");
+        // 预热
+        generator.run(200, 1, 32);
+        SegmentLoadGenerator.Result result = generator.run(500, 3, 32);
+        System.out.println("500 qps: " + result + ", average batch size " + server.getAverageBatchSize());
+        Assert.assertEquals(result.sent, result.ok + result.rejected + result.failed);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
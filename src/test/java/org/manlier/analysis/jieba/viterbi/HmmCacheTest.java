@@ -0,0 +1,60 @@
+package org.manlier.analysis.jieba.viterbi;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class HmmCacheTest {
+
+    private FinalSeg finalSeg = FinalSeg.getInstance();
+
+    @Test
+    public void testCacheHit() {
+        HmmCache cache = finalSeg.getCache();
+        Assert.assertNotNull(cache);
+        List<String> first = new ArrayList<>();
+        finalSeg.cut("雷猴欺实马abc", first);
+        long hits = cache.getHitCount();
+        List<String> second = new ArrayList<>();
+        finalSeg.cut("雷猴欺实马abc", second);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(hits + 1, cache.getHitCount());
+        System.out.println(cache);
+    }
+
+    @Test
+    public void testInvalidateOnForceSplit() {
+        List<String> tokens = new ArrayList<>();
+        finalSeg.cut("草泥马", tokens);
+        String word = tokens.get(0);
+        Assert.assertTrue(word.length() > 1);
+
+        finalSeg.addForceSplit(word);
+        try {
+            tokens.clear();
+            finalSeg.cut("草泥马", tokens);
+            Assert.assertFalse(tokens.contains(word));
+        } finally {
+            finalSeg.delForceSplit(word);
+        }
+        tokens.clear();
+        finalSeg.cut("草泥马", tokens);
+        Assert.assertTrue(tokens.contains(word));
+    }
+
+    @Test
+    public void testExtraForceSplitWords() {
+        List<String> tokens = new ArrayList<>();
+        finalSeg.cut("草泥马", tokens);
+        String word = tokens.get(0);
+        List<String> split = new ArrayList<>();
+        finalSeg.cut("草泥马", split, Collections.singleton(word));
+        Assert.assertFalse(split.contains(word));
+    }
+}
@@ -0,0 +1,86 @@
+package org.manlier.analysis.jieba.viterbi;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class HmmModelTest {
+
+    private static final List<String> EXPECTED = Arrays.asList("孙悟", "空雷猴", "回归人间");
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        HmmModel text;
+        try (InputStream is = getClass().getResourceAsStream("/prob_emit.txt")) {
+            text = HmmModel.parseText(is);
+        }
+        Path bin = Files.createTempFile("prob_emit", ".bin");
+        try (OutputStream os = Files.newOutputStream(bin)) {
+            text.write(os);
+        }
+        HmmModel read;
+        try (InputStream is = Files.newInputStream(bin)) {
+            read = HmmModel.read(is);
+        }
+        HmmModel mapped = HmmModel.map(bin);
+        System.out.println(String.format("chars: %d, text: %d bytes, binary: %d bytes", text.size(),
+                Files.size(Paths.get(getClass().getResource("/prob_emit.txt").getPath())), Files.size(bin)));
+
+        Assert.assertEquals(text.size(), mapped.size());
+        for (char ch : "我爱北京天安门abc，".toCharArray()) {
+            for (int state = 0; state < HmmModel.STATE_COUNT; state++) {
+                Assert.assertEquals(text.emit(state, ch), read.emit(state, ch), 0d);
+                Assert.assertEquals(text.emit(state, ch), mapped.emit(state, ch), 0d);
+            }
+        }
+        for (int from = 0; from < HmmModel.STATE_COUNT; from++) {
+            Assert.assertEquals(text.start(from), mapped.start(from), 0d);
+            for (int to = 0; to < HmmModel.STATE_COUNT; to++) {
+                Assert.assertEquals(text.trans(from, to), mapped.trans(from, to), 0d);
+            }
+        }
+        Assert.assertEquals(HmmModel.MIN_FLOAT, mapped.emit(HmmModel.B, '￿'), 0d);
+    }
+
+    /**
+     * 二进制模型（读取及内存映射）与文本模型的切分结果相同
+     */
+    @Test
+    public void testViterbi() throws IOException {
+        HmmModel text;
+        try (InputStream is = getClass().getResourceAsStream("/prob_emit.txt")) {
+            text = HmmModel.parseText(is);
+        }
+        Path bin = Files.createTempFile("prob_emit", ".bin");
+        try (OutputStream os = Files.newOutputStream(bin)) {
+            text.write(os);
+        }
+        HmmModel read;
+        try (InputStream is = Files.newInputStream(bin)) {
+            read = HmmModel.read(is);
+        }
+        HmmModel mapped = HmmModel.map(bin);
+
+        String sentence = "孙悟空雷猴回归人间";
+        List<String> expected = FinalSeg.viterbi(text, sentence);
+        System.out.println(String.join("/", expected));
+        Assert.assertEquals(EXPECTED, expected);
+        Assert.assertEquals(expected, FinalSeg.viterbi(read, sentence));
+        Assert.assertEquals(expected, FinalSeg.viterbi(mapped, sentence));
+        Assert.assertEquals(expected, FinalSeg.getInstance().viterbi(sentence));
+        for (String s : new String[]{"他来到了网易杭研大厦", "小明硕士毕业于中国科学院计算所", "我"}) {
+            Assert.assertEquals(FinalSeg.viterbi(text, s), FinalSeg.viterbi(mapped, s));
+        }
+    }
+}